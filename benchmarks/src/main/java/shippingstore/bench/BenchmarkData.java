@@ -0,0 +1,255 @@
+package shippingstore.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import shippingstore.PackageDatabase;
+import shippingstore.TransactionDatabase;
+import shippingstore.User;
+import shippingstore.UserDatabase;
+
+/**
+ * This class builds the synthetic databases the benchmarks run against. The data is
+ * generated from a fixed seed, so every run of a benchmark at a given size sees the
+ * same records. Each database is written to its own temporary directory and saved
+ * with <CODE>flush()</CODE>, so it can then be opened like a real one.
+ * <p>
+ * Package order <CODE>i</CODE> has the tracking number <CODE>trackingNumber(i)</CODE>.
+ * User <CODE>i</CODE> has the ID # 100001 + i and is a customer when i is even and
+ * an employee when i is odd.
+ *
+ * @author Emily Beaudoin
+ */
+final class BenchmarkData
+{
+    /** The seed every generator starts from. */
+    static final long SEED = 20210304L;
+
+    /** The ID # of the first user. */
+    static final int FIRST_ID = 100001;
+
+    private static final String DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final String[] TYPES = {"Envelope", "Box", "Crate", "Drum"};
+    private static final String[] SPECIFICATIONS = {"Fragile", "Books", "Catalogs", "Do-not-Bend", "N/A"};
+    private static final String[] MAILING_CLASSES = {"First-Class", "Priority", "Retail", "Ground", "Metro"};
+
+    /**
+     * Private constructor; this class only has static methods.
+     */
+    private BenchmarkData()
+    {
+    }
+
+    /**
+     * This method returns the tracking number of the i-th package order: i written in
+     * base 36 with five digits.
+     *
+     * @param i the number of the order, below 36 to the power 5
+     * @return the tracking number
+     */
+    static String trackingNumber(int i)
+    {
+        char[] digits = new char[5];
+        for (int k = 4; k >= 0; k--) {
+            digits[k] = DIGITS.charAt(i % 36);
+            i /= 36;
+        }
+        return new String(digits);
+    }
+
+    /**
+     * This method returns the special fields of a random package order of the given
+     * type, in the order <CODE>addOrder()</CODE> takes them.
+     *
+     * @param type the package type
+     * @param random the generator to draw from
+     * @return the two special fields
+     */
+    static String[] specialFields(String type, Random random)
+    {
+        switch (type) {
+            case "Envelope":
+                return new String[] {"" + random.nextInt(100), "" + random.nextInt(100)};
+            case "Box":
+                return new String[] {"" + random.nextInt(1000), "" + random.nextInt(1000000)};
+            case "Crate":
+                return new String[] {String.format("%d.%02d", 1 + random.nextInt(500), random.nextInt(100)),
+                    "Contents" + random.nextInt(1000)};
+            default:
+                return new String[] {random.nextBoolean() ? "Plastic" : "Fiber", "" + random.nextInt(1000)};
+        }
+    }
+
+    /**
+     * This method creates an empty temporary directory for a database.
+     *
+     * @param name a name for the directory
+     * @return the directory
+     * @throws IOException if it cannot be created
+     */
+    static Path createDirectory(String name) throws IOException
+    {
+        return Files.createTempDirectory("shippingstore-" + name + "-");
+    }
+
+    /**
+     * This method deletes a directory made by <CODE>createDirectory()</CODE> and
+     * everything in it.
+     *
+     * @param directory the directory, or null
+     * @throws IOException if it cannot be deleted
+     */
+    static void deleteDirectory(Path directory) throws IOException
+    {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * This method stops the console output of the databases from being printed,
+     * so the benchmarks measure the operations rather than the terminal.
+     *
+     * @return the console stream to restore with <CODE>System.setOut()</CODE>
+     */
+    static PrintStream silenceConsole()
+    {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return console;
+    }
+
+    /**
+     * This method writes a package order database of the given size to a directory,
+     * loading it through <CODE>importOrders()</CODE>.
+     *
+     * @param directory the directory to write to
+     * @param size the number of package orders
+     * @throws IOException if the database cannot be written
+     */
+    static void writePackages(Path directory, int size) throws IOException
+    {
+        Random random = new Random(SEED);
+        Path csv = directory.resolve("packages.csv");
+        try (BufferedWriter out = Files.newBufferedWriter(csv)) {
+            for (int i = 0; i < size; i++) {
+                String type = TYPES[random.nextInt(TYPES.length)];
+                String[] special = specialFields(type, random);
+                out.write(type + "," + trackingNumber(i) + ","
+                    + SPECIFICATIONS[random.nextInt(SPECIFICATIONS.length)] + ","
+                    + MAILING_CLASSES[random.nextInt(MAILING_CLASSES.length)] + ","
+                    + special[0] + "," + special[1] + "\n");
+            }
+        }
+
+        PackageDatabase packages = new PackageDatabase(directory);
+        try (Reader in = Files.newBufferedReader(csv)) {
+            packages.importOrders(in);
+        }
+        packages.flush();
+        Files.delete(csv);
+    }
+
+    /**
+     * This method writes a user database of the given size to a directory.
+     *
+     * @param directory the directory to write to
+     * @param size the number of users
+     * @throws IOException if the database cannot be written
+     */
+    static void writeUsers(Path directory, int size) throws IOException
+    {
+        Random random = new Random(SEED + 1);
+        UserDatabase users = new UserDatabase(directory);
+        for (int i = 0; i < size; i++) {
+            if (i % 2 == 0) {
+                users.insertUser("Customer", "First" + i, "Last" + i,
+                    String.format("555-%04d", random.nextInt(10000)), random.nextInt(10000) + " Main St", "");
+            } else {
+                users.insertUser("Employee", "First" + i, "Last" + i,
+                    String.format("%09d", random.nextInt(1000000000)),
+                    String.format("%d.%02d", 1000 + random.nextInt(9000), random.nextInt(100)),
+                    "" + (10000000 + random.nextInt(900000000)));
+            }
+        }
+        users.flush();
+    }
+
+    /**
+     * This method writes a transaction database of the given size to a directory.
+     * The transactions name users and package orders of databases written with
+     * <CODE>writeUsers()</CODE> and <CODE>writePackages()</CODE> of the given sizes.
+     *
+     * @param directory the directory to write to
+     * @param size the number of transactions
+     * @param users the user database the transactions refer to
+     * @param userCount the number of users in it
+     * @param packages the package order database the transactions refer to
+     * @param packageCount the number of package orders in it
+     * @throws IOException if the database cannot be written
+     */
+    static void writeTransactions(Path directory, int size, UserDatabase users, int userCount,
+        PackageDatabase packages, int packageCount) throws IOException
+    {
+        Random random = new Random(SEED + 2);
+        TransactionDatabase transactions = new TransactionDatabase(directory);
+        String[] ships = new String[366];
+        String[] delivers = new String[366];
+        for (int d = 0; d < 366; d++) {
+            ships[d] = String.format("%02d/%02d/21", 1 + d / 31 % 12, 1 + d % 28);
+            delivers[d] = String.format("%02d/%02d/22", 1 + d / 31 % 12, 1 + d % 28);
+        }
+
+        for (int i = 0; i < size; i++) {
+            int day = random.nextInt(366);
+            transactions.insertTransaction(randomCustomer(users, userCount, random),
+                randomEmployee(users, userCount, random),
+                packages.getPackageOrder(i % packageCount), ships[day], delivers[day],
+                String.format("%d.%02d", random.nextInt(500), random.nextInt(100)), packages, users);
+        }
+        transactions.flush();
+    }
+
+    /**
+     * This method picks a random customer of a database written by
+     * <CODE>writeUsers()</CODE>.
+     *
+     * @param users the user database
+     * @param userCount the number of users in it
+     * @param random the generator to draw from
+     * @return a customer
+     */
+    static User randomCustomer(UserDatabase users, int userCount, Random random)
+    {
+        int count = (userCount + 1) / 2;
+        return users.getUser(Integer.toString(FIRST_ID + 2 * random.nextInt(count)));
+    }
+
+    /**
+     * This method picks a random employee of a database written by
+     * <CODE>writeUsers()</CODE>, which must hold at least two users.
+     *
+     * @param users the user database
+     * @param userCount the number of users in it
+     * @param random the generator to draw from
+     * @return an employee
+     */
+    static User randomEmployee(UserDatabase users, int userCount, Random random)
+    {
+        int count = userCount / 2;
+        return users.getUser(Integer.toString(FIRST_ID + 1 + 2 * random.nextInt(count)));
+    }
+}
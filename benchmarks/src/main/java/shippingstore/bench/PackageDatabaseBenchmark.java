@@ -0,0 +1,149 @@
+package shippingstore.bench;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import shippingstore.PackageDatabase;
+
+/**
+ * This class measures the package order database at sizes from a thousand to a
+ * million orders: looking up an order, adding and removing one, saving the database
+ * with <CODE>flush()</CODE>, and loading it with the constructor. Journal records are
+ * not forced to disk, so the numbers leave out the cost of the disk itself; run with
+ * <CODE>-jvmArgs -Dshippingstore.journal.syncEvery=1</CODE> to include it.
+ *
+ * @author Emily Beaudoin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dshippingstore.journal.syncEvery=0")
+public class PackageDatabaseBenchmark
+{
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int size;
+
+    private Path directory;
+    private PrintStream console;
+    private PackageDatabase packages;
+    private String[] lookups;
+    private int next;
+    private String newTrackingNumber;
+
+    /**
+     * This method writes the database and opens it.
+     *
+     * @throws IOException if the database cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        console = BenchmarkData.silenceConsole();
+        directory = BenchmarkData.createDirectory("packages");
+        BenchmarkData.writePackages(directory, size);
+        packages = new PackageDatabase(directory);
+
+        Random random = new Random(BenchmarkData.SEED);
+        lookups = new String[4096];
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = BenchmarkData.trackingNumber(random.nextInt(size));
+        }
+        newTrackingNumber = BenchmarkData.trackingNumber(size);
+    }
+
+    /**
+     * This method saves the database after each iteration, which empties the journal
+     * the add and remove benchmark fills.
+     *
+     * @throws IOException if the database cannot be saved
+     */
+    @TearDown(Level.Iteration)
+    public void saveJournal() throws IOException
+    {
+        packages.flush();
+    }
+
+    /**
+     * This method restores the console and deletes the database.
+     *
+     * @throws IOException if the database cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        System.setOut(console);
+        BenchmarkData.deleteDirectory(directory);
+    }
+
+    /**
+     * This benchmark looks up an existing order by tracking number.
+     *
+     * @return the index of the order
+     */
+    @Benchmark
+    public int findPackageOrder()
+    {
+        return packages.findPackageOrder(lookups[next++ & (lookups.length - 1)]);
+    }
+
+    /**
+     * This benchmark adds a new order and removes it again, so the size stays the
+     * same.
+     */
+    @Benchmark
+    public void addAndRemoveOrder()
+    {
+        packages.addOrder(newTrackingNumber, "Box", "Fragile", "First-Class", "30", "2500");
+        packages.removeOrder(newTrackingNumber);
+    }
+
+    /**
+     * This benchmark saves the whole database.
+     *
+     * @throws IOException if the database cannot be saved
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public void flush() throws IOException
+    {
+        packages.flush();
+    }
+
+    /**
+     * This benchmark loads the whole database from its files.
+     *
+     * @return the loaded database
+     * @throws IOException if the database cannot be read
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public PackageDatabase load() throws IOException
+    {
+        return new PackageDatabase(directory);
+    }
+}
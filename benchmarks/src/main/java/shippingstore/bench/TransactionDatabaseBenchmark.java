@@ -0,0 +1,158 @@
+package shippingstore.bench;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import shippingstore.PackageDatabase;
+import shippingstore.PackageOrder;
+import shippingstore.TransactionDatabase;
+import shippingstore.User;
+import shippingstore.UserDatabase;
+
+/**
+ * This class measures the transaction database at sizes from a thousand to a million
+ * transactions: completing a transaction, saving the database with
+ * <CODE>flush()</CODE>, and loading it with the constructor. The transactions refer
+ * to a thousand users and a thousand package orders. Transactions cannot be removed,
+ * so the database is reopened from its saved file before every iteration to start
+ * each one at the same size. As for <CODE>PackageDatabaseBenchmark</CODE>, journal
+ * records are not forced to disk.
+ *
+ * @author Emily Beaudoin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dshippingstore.journal.syncEvery=0")
+public class TransactionDatabaseBenchmark
+{
+    private static final int USERS = 1000;
+    private static final int PACKAGES = 1000;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int size;
+
+    private Path directory;
+    private PrintStream console;
+    private TransactionDatabase transactions;
+    private UserDatabase users;
+    private PackageDatabase packages;
+    private User[] customers;
+    private User[] employees;
+    private PackageOrder[] orders;
+    private int next;
+
+    /**
+     * This method writes the users, package orders and transactions.
+     *
+     * @throws IOException if the databases cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        console = BenchmarkData.silenceConsole();
+        directory = BenchmarkData.createDirectory("transactions");
+        BenchmarkData.writeUsers(directory, USERS);
+        BenchmarkData.writePackages(directory, PACKAGES);
+        users = new UserDatabase(directory);
+        packages = new PackageDatabase(directory);
+        BenchmarkData.writeTransactions(directory, size, users, USERS, packages, PACKAGES);
+
+        Random random = new Random(BenchmarkData.SEED);
+        customers = new User[4096];
+        employees = new User[4096];
+        orders = new PackageOrder[4096];
+        for (int i = 0; i < customers.length; i++) {
+            customers[i] = BenchmarkData.randomCustomer(users, USERS, random);
+            employees[i] = BenchmarkData.randomEmployee(users, USERS, random);
+            orders[i] = packages.getPackageOrder(random.nextInt(PACKAGES));
+        }
+    }
+
+    /**
+     * This method opens the transactions as saved, dropping whatever the previous
+     * iteration added to the journal.
+     *
+     * @throws IOException if the database cannot be read
+     */
+    @Setup(Level.Iteration)
+    public void reopen() throws IOException
+    {
+        Files.deleteIfExists(directory.resolve("TransactionDB.journal"));
+        transactions = new TransactionDatabase(directory);
+    }
+
+    /**
+     * This method restores the console and deletes the databases.
+     *
+     * @throws IOException if the databases cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        System.setOut(console);
+        BenchmarkData.deleteDirectory(directory);
+    }
+
+    /**
+     * This benchmark completes a transaction.
+     */
+    @Benchmark
+    public void addTransaction()
+    {
+        int i = next++ & (customers.length - 1);
+        transactions.addTransaction(customers[i], employees[i], orders[i], "03/04/21", "03/09/21", "19.99",
+            packages, users);
+    }
+
+    /**
+     * This benchmark saves the whole database.
+     *
+     * @throws IOException if the database cannot be saved
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public void flush() throws IOException
+    {
+        transactions.flush();
+    }
+
+    /**
+     * This benchmark loads the whole database from its files.
+     *
+     * @return the loaded database
+     * @throws IOException if the database cannot be read
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public TransactionDatabase load() throws IOException
+    {
+        return new TransactionDatabase(directory);
+    }
+}
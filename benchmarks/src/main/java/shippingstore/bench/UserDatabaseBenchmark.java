@@ -0,0 +1,163 @@
+package shippingstore.bench;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import shippingstore.User;
+import shippingstore.UserDatabase;
+
+/**
+ * This class measures the user database at sizes from a thousand to a million
+ * users: looking up a user, adding and removing one, updating a field, saving the
+ * database with <CODE>flush()</CODE>, and loading it with the constructor. As for
+ * <CODE>PackageDatabaseBenchmark</CODE>, journal records are not forced to disk.
+ *
+ * @author Emily Beaudoin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dshippingstore.journal.syncEvery=0")
+public class UserDatabaseBenchmark
+{
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int size;
+
+    private Path directory;
+    private PrintStream console;
+    private UserDatabase users;
+    private String[] lookups;
+    private User[] employees;
+    private int next;
+    private int nextId;
+
+    /**
+     * This method writes the database and opens it.
+     *
+     * @throws IOException if the database cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        console = BenchmarkData.silenceConsole();
+        directory = BenchmarkData.createDirectory("users");
+        BenchmarkData.writeUsers(directory, size);
+        users = new UserDatabase(directory);
+
+        Random random = new Random(BenchmarkData.SEED);
+        lookups = new String[4096];
+        employees = new User[4096];
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = Integer.toString(BenchmarkData.FIRST_ID + random.nextInt(size));
+            employees[i] = BenchmarkData.randomEmployee(users, size, random);
+        }
+        nextId = BenchmarkData.FIRST_ID + size;
+    }
+
+    /**
+     * This method saves the database after each iteration, which empties the journal
+     * the add, remove and update benchmarks fill.
+     *
+     * @throws IOException if the database cannot be saved
+     */
+    @TearDown(Level.Iteration)
+    public void saveJournal() throws IOException
+    {
+        users.flush();
+    }
+
+    /**
+     * This method restores the console and deletes the database.
+     *
+     * @throws IOException if the database cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        System.setOut(console);
+        BenchmarkData.deleteDirectory(directory);
+    }
+
+    /**
+     * This benchmark looks up an existing user by ID #.
+     *
+     * @return the index of the user
+     */
+    @Benchmark
+    public int findUser()
+    {
+        return users.findUser(lookups[next++ & (lookups.length - 1)]);
+    }
+
+    /**
+     * This benchmark adds a new customer and removes it again, so the size stays
+     * the same. New users always get the next ID #.
+     */
+    @Benchmark
+    public void addAndRemoveUser()
+    {
+        users.addUser("Customer", "New", "Customer", "555-0000", "1 Main St", "");
+        users.removeUser(Integer.toString(nextId++));
+    }
+
+    /**
+     * This benchmark changes the salary of an employee.
+     */
+    @Benchmark
+    public void updateUserInfo()
+    {
+        int i = next++;
+        users.updateUserInfo(employees[i & (employees.length - 1)], "Employee", "Salary",
+            (i & 1) == 0 ? "2000.00" : "2500.00");
+    }
+
+    /**
+     * This benchmark saves the whole database.
+     *
+     * @throws IOException if the database cannot be saved
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public void flush() throws IOException
+    {
+        users.flush();
+    }
+
+    /**
+     * This benchmark loads the whole database from its files.
+     *
+     * @return the loaded database
+     * @throws IOException if the database cannot be read
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public UserDatabase load() throws IOException
+    {
+        return new UserDatabase(directory);
+    }
+}
@@ -0,0 +1,134 @@
+package shippingstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * This class tests that <CODE>BatchRunner</CODE> runs each command of a script,
+ * logs one JSON line per command, and carries on after a command fails.
+ *
+ * @author Emily Beaudoin
+ */
+class BatchRunnerTest
+{
+    @TempDir
+    Path directory;
+
+    private PackageDatabase packages;
+    private UserDatabase users;
+    private TransactionDatabase transactions;
+    private BatchRunner runner;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        packages = new PackageDatabase(directory);
+        users = new UserDatabase(directory);
+        transactions = new TransactionDatabase(directory);
+        runner = new BatchRunner(packages, users, transactions);
+    }
+
+    @Test
+    void commandsAreLoggedInOrder() throws IOException
+    {
+        StringWriter log = new StringWriter();
+        assertEquals(0, runner.run(new StringReader(
+            "# Two orders\n"
+            + "add-package Box AB123 Books Priority 12 1728\n"
+            + "\n"
+            + "add-package Crate CR001 Catalogs Retail 40.5 \"Tools, \"\"spare\"\"\"\n"
+            + "find-package ab123\n"
+            + "remove-package AB123\n"), log));
+
+        String[] lines = log.toString().split("\n");
+        assertEquals(5, lines.length);
+        assertEquals("{\"line\":2,\"command\":\"add-package\",\"ok\":true,\"result\":{\"type\":\"Box\","
+            + "\"trackingNumber\":\"AB123\",\"specification\":\"Books\",\"mailingClass\":\"Priority\","
+            + "\"largestDimension\":12,\"volume\":1728}}", lines[0]);
+        assertTrue(lines[1].startsWith("{\"line\":4,"), lines[1]);
+        assertTrue(lines[2].startsWith("{\"line\":5,\"command\":\"find-package\",\"ok\":true"), lines[2]);
+        assertEquals("{\"commands\":4,\"succeeded\":4,\"failed\":0}", lines[4]);
+
+        assertEquals("Tools, \"spare\"", ((Crate) packages.getPackageOrder("CR001")).getContent());
+        assertNull(packages.getPackageOrder("AB123"));
+    }
+
+    @Test
+    void failedCommandsDoNotStopTheScript() throws IOException
+    {
+        StringWriter log = new StringWriter();
+        assertEquals(4, runner.run(new StringReader(
+            "ship-package AB123\n"
+            + "add-package Box AB123 Books Priority 12\n"
+            + "add-user Employee Rick Sanchez 12 2342.23 1335664564\n"
+            + "find-user 999999\n"
+            + "add-package Box AB123 Books Priority 12 1728\n"), log));
+
+        String[] lines = log.toString().split("\n");
+        assertEquals("{\"line\":1,\"command\":\"ship-package\",\"ok\":false,"
+            + "\"error\":\"Unknown command ship-package\"}", lines[0]);
+        assertEquals("{\"line\":2,\"command\":\"add-package\",\"ok\":false,\"error\":\"Expected: "
+            + "add-package TYPE TRACKING# SPECIFICATION CLASS SPECIAL1 SPECIAL2\"}", lines[1]);
+        assertTrue(lines[2].contains("\"ok\":false"), lines[2]);
+        assertEquals("{\"line\":4,\"command\":\"find-user\",\"ok\":false,"
+            + "\"error\":\"No user found with that ID\"}", lines[3]);
+        assertTrue(lines[4].contains("\"ok\":true"), lines[4]);
+        assertEquals("{\"commands\":5,\"succeeded\":1,\"failed\":4}", lines[5]);
+        assertNotNull(packages.getPackageOrder("AB123"));
+    }
+
+    @Test
+    void transactionsFollowTheRemovalPolicy() throws IOException
+    {
+        User customer = users.insertUser("Customer", "Morty", "Smith", "123-124-5234", "PLACE", null);
+        User employee = users.insertUser("Employee", "Rick", "Sanchez", "123456780", "2342.23", "1335664564");
+        int c = customer.getIdNumber();
+        int e = employee.getIdNumber();
+
+        StringWriter log = new StringWriter();
+        assertEquals(1, runner.run(new StringReader(
+            "add-package Box AB123 Books Priority 12 1728\n"
+            + "add-transaction " + c + " AB123 01/01/20 01/03/20 12.50 " + e + "\n"
+            + "remove-user " + c + " restrict\n"
+            + "update-user " + c + " Address \"1 Main St\"\n"
+            + "remove-package AB123 cascade\n"), log));
+
+        String[] lines = log.toString().split("\n");
+        assertTrue(lines[1].contains("\"ok\":true,\"result\":{\"customerId\":" + c), lines[1]);
+        assertTrue(lines[2].startsWith("{\"line\":3,\"command\":\"remove-user\",\"ok\":false"), lines[2]);
+        assertEquals("1 Main St", ((Customer) users.getUser(Integer.toString(c))).getAddress());
+        assertTrue(lines[4].contains("\"ok\":true"), lines[4]);
+        assertEquals(0, transactions.getTransactionsByCustomer(c).size());
+    }
+
+    @Test
+    void importReadsTheNamedFile() throws IOException
+    {
+        Path csv = directory.resolve("orders.csv");
+        Files.write(csv, ("Type,Tracking#,Specification,Class,Special1,Special2\n"
+            + "Box,AB123,Books,Priority,12,1728\n"
+            + "Box,AB124,Books,Priority,twelve,1728\n").getBytes("UTF-8"));
+
+        StringWriter log = new StringWriter();
+        assertEquals(1, runner.run(new StringReader(
+            "import \"" + csv + "\"\n"
+            + "import \"" + directory.resolve("missing.csv") + "\"\n"), log));
+
+        String[] lines = log.toString().split("\n");
+        assertEquals("{\"line\":1,\"command\":\"import\",\"ok\":true,"
+            + "\"result\":{\"linesRead\":2,\"added\":1,\"rejected\":1}}", lines[0]);
+        assertTrue(lines[1].contains("\"error\":\"Import failed: "), lines[1]);
+    }
+}
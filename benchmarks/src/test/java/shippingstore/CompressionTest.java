@@ -0,0 +1,150 @@
+package shippingstore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * This class tests that <CODE>RecordCodec</CODE> writes compressed files that read
+ * back the same records as uncompressed ones, and that the databases open them.
+ *
+ * @author Emily Beaudoin
+ */
+class CompressionTest
+{
+    @TempDir
+    Path directory;
+
+    @Test
+    void everyLevelReadsBackTheSameRecords() throws IOException
+    {
+        List<Object> records = records(500);
+        for (int level = 0; level <= 9; level++) {
+            byte[] file = write(records, level);
+            assertEquals("SSDZ", new String(file, 0, 4, StandardCharsets.US_ASCII), "level " + level);
+            assertSameRecords(records, read(file));
+        }
+    }
+
+    @Test
+    void repetitiveRecordsShrink() throws IOException
+    {
+        List<Object> records = records(5000);
+        byte[] plain = write(records, RecordCodec.NO_COMPRESSION);
+        byte[] compressed = write(records, 6);
+
+        assertEquals("SSDB", new String(plain, 0, 4, StandardCharsets.US_ASCII));
+        assertTrue(compressed.length * 2 < plain.length, compressed.length + " of " + plain.length);
+        assertTrue(write(records, 0).length > plain.length);
+    }
+
+    @Test
+    void databasesOpenCompressedFiles() throws IOException
+    {
+        List<Object> customers = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            customers.add(new Customer(100001 + i, "First" + i, "Smith", "123-124-5234", "PLACE"));
+        }
+        try (OutputStream out = Files.newOutputStream(directory.resolve("UserDB.ser"))) {
+            RecordCodec.write(out, customers, 9);
+        }
+
+        UserDatabase users = new UserDatabase(directory);
+        assertNotNull(users.getUser("100001"));
+        assertNotNull(users.getUser("100100"));
+        assertEquals(100, users.findUsersByName("smith", 1000).size());
+    }
+
+    @Test
+    void badLevelsAndTruncatedFilesAreRejected() throws IOException
+    {
+        assertThrows(IllegalArgumentException.class, () -> write(records(1), 10));
+
+        byte[] file = write(records(500), 6);
+        byte[] truncated = Arrays.copyOf(file, file.length / 2);
+        assertThrows(IOException.class, () -> read(truncated));
+    }
+
+    /**
+     * Private method used to build package orders and users that repeat the same
+     * few strings, as a real database does.
+     *
+     * @param count the number of package orders
+     * @return the records
+     */
+    private static List<Object> records(int count)
+    {
+        List<Object> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            records.add(new Envelope(String.format("E%04d", i), "Fragile", "First-Class", 4, 9));
+            if (i % 10 == 0) {
+                records.add(new Customer(100001 + i, "Morty", "Smith", "123-124-5234",
+                    i + " Long Street Name, Springfield"));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Private method used to write records to memory.
+     *
+     * @param records the records
+     * @param level the Deflate level, or <CODE>RecordCodec.NO_COMPRESSION</CODE>
+     * @return the file contents
+     * @throws IOException if a record cannot be encoded
+     */
+    private static byte[] write(List<Object> records, int level) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RecordCodec.write(out, records, level);
+        return out.toByteArray();
+    }
+
+    /**
+     * Private method used to read a whole file from memory.
+     *
+     * @param file the file contents
+     * @return the records
+     * @throws IOException if the file cannot be read
+     */
+    private static List<Object> read(byte[] file) throws IOException
+    {
+        try (InputStream in = new ByteArrayInputStream(file)) {
+            return RecordCodec.read(in, Object.class);
+        }
+    }
+
+    /**
+     * Private method used to check that two lists hold the same records in the same
+     * order, by their encoded bytes.
+     *
+     * @param expected the records written
+     * @param actual the records read back
+     * @throws IOException if a record cannot be encoded
+     */
+    private static void assertSameRecords(List<?> expected, List<?> actual) throws IOException
+    {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(RecordCodec.encode(expected.get(i)), RecordCodec.encode(actual.get(i)),
+                "record " + i);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package shippingstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * This class tests that the three databases recover the changes made since their
+ * last snapshot from their journals, and that records a snapshot already holds are
+ * not applied twice.
+ *
+ * @author Emily Beaudoin
+ */
+class DatabaseRecoveryTest
+{
+    @TempDir
+    Path directory;
+
+    @Test
+    void usersAndPackagesComeBackFromTheJournal() throws IOException
+    {
+        PackageDatabase packages = new PackageDatabase(directory);
+        UserDatabase users = new UserDatabase(directory);
+        assertNull(packages.insertOrder("AB123", "Box", "Books", "Priority", "12", "1728"));
+        assertNull(packages.insertOrder("CD456", "Envelope", "Fragile", "Metro", "4", "9"));
+        User customer = users.insertUser("Customer", "Morty", "Smith", "123-124-5234", "PLACE", null);
+        User other = users.insertUser("Customer", "Summer", "Smith", "123-124-5235", "PLACE", null);
+
+        assertNotNull(packages.deleteOrder("CD456"));
+        assertNull(users.changeUserInfo(customer, "Customer", "Address", "ELSEWHERE"));
+        assertNotNull(users.deleteUser(Integer.toString(other.getIdNumber())));
+
+        // Reopened without a flush, so every change comes back from the journals
+        PackageDatabase packagesAgain = new PackageDatabase(directory);
+        assertNotNull(packagesAgain.getPackageOrder("AB123"));
+        assertNull(packagesAgain.getPackageOrder("CD456"));
+
+        UserDatabase usersAgain = new UserDatabase(directory);
+        Customer stored = (Customer) usersAgain.getUser(Integer.toString(customer.getIdNumber()));
+        assertEquals("ELSEWHERE", stored.getAddress());
+        assertNull(usersAgain.getUser(Integer.toString(other.getIdNumber())));
+        assertEquals(4, usersAgain.getPendingChanges());
+    }
+
+    @Test
+    void identicalTransactionsSurviveReplay() throws IOException
+    {
+        PackageDatabase packages = new PackageDatabase(directory);
+        UserDatabase users = new UserDatabase(directory);
+        User customer = users.insertUser("Customer", "Morty", "Smith", "123-124-5234", "PLACE", null);
+        User employee = users.insertUser("Employee", "Rick", "Sanchez", "123456780", "2342.23", "1335664564");
+        assertNull(packages.insertOrder("AB123", "Box", "Books", "Priority", "12", "1728"));
+        PackageOrder p = packages.getPackageOrder("AB123");
+
+        TransactionDatabase transactions = new TransactionDatabase(directory);
+        for (int i = 0; i < 2; i++) {
+            assertNotNull(transactions.insertTransaction(customer, employee, p, "01/01/20", "01/03/20", "12.50",
+                packages, users));
+        }
+
+        // Reopened without a flush, so both come back from the journal
+        int id = customer.getIdNumber();
+        assertEquals(2, new TransactionDatabase(directory).getTransactionsByCustomer(id).size());
+
+        // A crash after the snapshot was renamed into place but before the journal
+        // was cut leaves the records the snapshot holds in the journal
+        Path journal = directory.resolve("TransactionDB.journal");
+        byte[] unflushed = Files.readAllBytes(journal);
+        transactions.flush();
+        Files.write(journal, unflushed);
+
+        TransactionDatabase reopened = new TransactionDatabase(directory);
+        assertEquals(2, reopened.getTransactionsByCustomer(id).size());
+        assertEquals(0, reopened.getPendingChanges());
+
+        // Records appended after reopening are numbered after the snapshot's
+        assertNotNull(reopened.insertTransaction(customer, employee, p, "01/01/20", "01/03/20", "12.50",
+            packages, users));
+        assertEquals(3, new TransactionDatabase(directory).getTransactionsByCustomer(id).size());
+    }
+
+    @Test
+    void removalsInTheJournalAreNotReplayedOverTheSnapshot() throws IOException
+    {
+        PackageDatabase packages = new PackageDatabase(directory);
+        UserDatabase users = new UserDatabase(directory);
+        User customer = users.insertUser("Customer", "Morty", "Smith", "123-124-5234", "PLACE", null);
+        User employee = users.insertUser("Employee", "Rick", "Sanchez", "123456780", "2342.23", "1335664564");
+        assertNull(packages.insertOrder("AB123", "Box", "Books", "Priority", "12", "1728"));
+        assertNull(packages.insertOrder("CD456", "Box", "Books", "Priority", "12", "1728"));
+
+        TransactionDatabase transactions = new TransactionDatabase(directory);
+        for (String tn : new String[] {"AB123", "AB123", "CD456"}) {
+            assertNotNull(transactions.insertTransaction(customer, employee, packages.getPackageOrder(tn),
+                "01/01/20", "01/03/20", "12.50", packages, users));
+        }
+        assertNotNull(packages.deleteOrder("CD456", transactions, RemovalPolicy.CASCADE));
+
+        // The same crash, with a cascaded removal in the journal
+        Path journal = directory.resolve("TransactionDB.journal");
+        byte[] unflushed = Files.readAllBytes(journal);
+        transactions.flush();
+        Files.write(journal, unflushed);
+
+        TransactionDatabase reopened = new TransactionDatabase(directory);
+        assertEquals(2, reopened.getTransactionsByTrackingNumber("AB123").size());
+        assertEquals(0, reopened.getTransactionsByTrackingNumber("CD456").size());
+    }
+}
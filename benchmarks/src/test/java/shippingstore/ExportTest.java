@@ -0,0 +1,247 @@
+package shippingstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * This class tests that the databases export their records as CSV or JSON Lines,
+ * in key order and each at most once, even when the database changes while the
+ * export is being written.
+ *
+ * @author Emily Beaudoin
+ */
+class ExportTest
+{
+    private static final int ORDERS = 10000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void exportedOrdersImportBackUnchanged() throws IOException
+    {
+        PackageDatabase packages = new PackageDatabase(directory);
+        assertNull(packages.insertOrder("AB123", "Box", "Books", "Priority", "12", "1728"));
+        assertNull(packages.insertOrder("CR001", "Crate", "Catalogs", "Retail", "40.5", "Tools, \"spare\""));
+        assertNull(packages.insertOrder("DR001", "Drum", "N/A", "Metro", "Fiber", "18"));
+        assertNull(packages.insertOrder("EN001", "Envelope", "Fragile", "First-Class", "4", "9"));
+
+        StringWriter csv = new StringWriter();
+        assertEquals(4, packages.export(csv, ExportFormat.CSV, null));
+        assertEquals(Arrays.asList(
+            "Type,Tracking#,Specification,Class,Special1,Special2",
+            "Box,AB123,Books,Priority,12,1728",
+            "Crate,CR001,Catalogs,Retail,40.5,\"Tools, \"\"spare\"\"\"",
+            "Drum,DR001,N/A,Metro,Fiber,18",
+            "Envelope,EN001,Fragile,First-Class,4,9"), lines(csv));
+
+        Path other = Files.createDirectory(directory.resolve("other"));
+        PackageDatabase copy = new PackageDatabase(other);
+        assertEquals(4, copy.importOrders(new StringReader(csv.toString())).getAdded());
+        StringWriter again = new StringWriter();
+        copy.export(again, ExportFormat.CSV, null);
+        assertEquals(csv.toString(), again.toString());
+    }
+
+    @Test
+    void filterPicksOrdersAcrossChunks() throws IOException
+    {
+        PackageDatabase packages = ordered();
+        StringWriter json = new StringWriter();
+        assertEquals(ORDERS / 10, packages.export(json, ExportFormat.JSON,
+            p -> p.getTrackingNumber().endsWith("7")));
+
+        List<String> lines = lines(json);
+        assertEquals(ORDERS / 10, lines.size());
+        assertEquals("{\"type\":\"Envelope\",\"trackingNumber\":\"00007\",\"specification\":\"Fragile\","
+            + "\"mailingClass\":\"Metro\",\"height\":4,\"width\":9}", lines.get(0));
+    }
+
+    @Test
+    void ordersChangedDuringTheExportAreWrittenAtMostOnce() throws IOException
+    {
+        PackageDatabase packages = ordered();
+
+        // Once the first chunk is being written, remove its last order and some
+        // later ones, and add one past the end
+        Writer out = new HookedWriter(() -> {
+            assertNotNull(packages.deleteOrder(trackingNumber(4095)));
+            assertNotNull(packages.deleteOrder(trackingNumber(4096)));
+            assertNotNull(packages.deleteOrder(trackingNumber(9000)));
+            assertNull(packages.insertOrder("ZZZZZ", "Envelope", "Fragile", "Metro", "4", "9"));
+        });
+        int written = packages.export(out, ExportFormat.CSV, null);
+
+        List<String> lines = lines(out);
+        lines.remove(0);
+        assertEquals(written, lines.size());
+        String previous = "";
+        for (String line : lines) {
+            String tn = line.split(",")[1];
+            assertTrue(tn.compareTo(previous) > 0, tn + " after " + previous);
+            previous = tn;
+        }
+        assertFalse(lines.contains("Envelope,09000,Fragile,Metro,4,9"));
+        assertEquals("Envelope,ZZZZZ,Fragile,Metro,4,9", lines.get(lines.size() - 1));
+    }
+
+    @Test
+    void usersAreExportedWithTheirOwnFields() throws IOException
+    {
+        UserDatabase users = new UserDatabase(directory);
+        User customer = users.insertUser("Customer", "Morty", "Smith", "123-124-5234", "1 \"Main\" St", null);
+        User employee = users.insertUser("Employee", "Rick", "Sanchez", "023456780", "2342.5", "1335664564");
+
+        StringWriter csv = new StringWriter();
+        assertEquals(2, users.export(csv, ExportFormat.CSV, null));
+        assertEquals(Arrays.asList(
+            "Type,ID#,First-name,Last-name,Phone,Address,Social,Salary,Account",
+            "Customer," + customer.getIdNumber() + ",Morty,Smith,123-124-5234,\"1 \"\"Main\"\" St\",,,",
+            "Employee," + employee.getIdNumber() + ",Rick,Sanchez,,,023456780,2342.5,1335664564"), lines(csv));
+
+        StringWriter json = new StringWriter();
+        assertEquals(1, users.export(json, ExportFormat.JSON, u -> u instanceof Customer));
+        assertEquals("{\"type\":\"Customer\",\"id\":" + customer.getIdNumber()
+            + ",\"firstName\":\"Morty\",\"lastName\":\"Smith\",\"phone\":\"123-124-5234\","
+            + "\"address\":\"1 \\\"Main\\\" St\"}", json.toString().trim());
+    }
+
+    @Test
+    void manyUsersAreExportedInIdOrder() throws IOException
+    {
+        UserDatabase users = new UserDatabase(directory);
+        for (int i = 0; i < 9000; i++) {
+            assertNotNull(users.insertUser("Customer", "First" + i, "Last", "123-124-5234", "PLACE", null));
+        }
+
+        StringWriter csv = new StringWriter();
+        assertEquals(9000, users.export(csv, ExportFormat.CSV, null));
+        List<String> lines = lines(csv);
+        assertEquals(9001, lines.size());
+        int previous = 0;
+        for (String line : lines.subList(1, lines.size())) {
+            int id = Integer.parseInt(line.split(",")[1]);
+            assertTrue(id > previous);
+            previous = id;
+        }
+    }
+
+    @Test
+    void transactionsAreExportedWithIsoDates() throws IOException
+    {
+        PackageDatabase packages = new PackageDatabase(directory);
+        UserDatabase users = new UserDatabase(directory);
+        TransactionDatabase transactions = new TransactionDatabase(directory);
+        User customer = users.insertUser("Customer", "Morty", "Smith", "123-124-5234", "PLACE", null);
+        User employee = users.insertUser("Employee", "Rick", "Sanchez", "123456780", "2342.23", "1335664564");
+        assertNull(packages.insertOrder("AB123", "Box", "Books", "Priority", "12", "1728"));
+        assertNotNull(transactions.insertTransaction(customer, employee, packages.getPackageOrder("AB123"),
+            "12/31/19", "01/02/20", "25.5", packages, users));
+
+        StringWriter csv = new StringWriter();
+        assertEquals(1, transactions.export(csv, ExportFormat.CSV, null));
+        assertEquals(Arrays.asList(
+            "Customer ID,Tracking#,Ship Date,Deliver Date,Cost,Employee ID",
+            customer.getIdNumber() + ",AB123,2019-12-31,2020-01-02,25.5," + employee.getIdNumber()), lines(csv));
+        assertEquals(0, transactions.export(new StringWriter(), ExportFormat.JSON,
+            t -> t.getCost() > 100));
+    }
+
+    /**
+     * Private method used to open a database holding <CODE>ORDERS</CODE> envelopes
+     * numbered from 00000.
+     *
+     * @return the database
+     * @throws IOException if the database cannot be opened
+     */
+    private PackageDatabase ordered() throws IOException
+    {
+        PackageDatabase packages = new PackageDatabase(directory);
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < ORDERS; i++) {
+            csv.append("Envelope,").append(trackingNumber(i)).append(",Fragile,Metro,4,9\n");
+        }
+        assertEquals(ORDERS, packages.importOrders(new StringReader(csv.toString())).getAdded());
+        return packages;
+    }
+
+    /**
+     * Private method used to make the tracking number of the i-th test order.
+     *
+     * @param i the number of the order
+     * @return the tracking number
+     */
+    private static String trackingNumber(int i)
+    {
+        return String.format("%05d", i);
+    }
+
+    /**
+     * Private method used to split what was written into lines.
+     *
+     * @param out the writer the export wrote to
+     * @return the lines
+     */
+    private static List<String> lines(Writer out)
+    {
+        return new ArrayList<>(Arrays.asList(out.toString().split("\n")));
+    }
+
+    /**
+     * This class collects what is written like a <CODE>StringWriter</CODE>, and runs
+     * an action the first time anything reaches it.
+     */
+    private static class HookedWriter extends Writer
+    {
+        private final StringWriter text = new StringWriter();
+        private Runnable hook;
+
+        HookedWriter(Runnable hook)
+        {
+            this.hook = hook;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length)
+        {
+            if (hook != null) {
+                Runnable run = hook;
+                hook = null;
+                run.run();
+            }
+            text.write(buffer, offset, length);
+        }
+
+        @Override
+        public void flush()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public String toString()
+        {
+            return text.toString();
+        }
+    }
+}
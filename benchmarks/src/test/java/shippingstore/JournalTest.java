@@ -0,0 +1,214 @@
+package shippingstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * This class tests that a <CODE>Journal</CODE> replays the records appended to it in
+ * order, cuts off a torn tail, keeps only the records after a mark once
+ * <CODE>discardBefore()</CODE> has been called, and skips the records a snapshot
+ * already holds.
+ *
+ * @author Emily Beaudoin
+ */
+class JournalTest
+{
+    @TempDir
+    Path directory;
+
+    private Path file;
+
+    @BeforeEach
+    void setUp()
+    {
+        file = directory.resolve("Test.journal");
+    }
+
+    @Test
+    void replayReturnsRecordsInOrder() throws IOException
+    {
+        Journal journal = open();
+        journal.append(Journal.ADD, bytes("one"));
+        journal.append(Journal.REMOVE, bytes("two"));
+        journal.appendAll(Journal.UPDATE, Arrays.asList(bytes("three"), bytes("four")));
+        journal.close();
+
+        assertEquals(Arrays.asList("1 one", "2 two", "3 three", "3 four"), replay());
+    }
+
+    @Test
+    void tornTailIsCutOff() throws IOException
+    {
+        Journal journal = open();
+        journal.append(Journal.ADD, bytes("one"));
+        journal.append(Journal.ADD, bytes("two"));
+        journal.close();
+        long complete = Files.size(file);
+
+        // A record whose length promises more than was written
+        Files.write(file, new byte[] {0, 0, 0, 100, Journal.ADD, 1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        journal = new Journal(file.toString());
+        List<String> replayed = new ArrayList<>();
+        assertEquals(2, journal.replay(0, (op, payload) -> replayed.add(op + " " + text(payload))));
+        assertEquals(Arrays.asList("1 one", "1 two"), replayed);
+        assertEquals(complete, Files.size(file));
+
+        journal.append(Journal.ADD, bytes("three"));
+        journal.close();
+        assertEquals(Arrays.asList("1 one", "1 two", "1 three"), replay());
+    }
+
+    @Test
+    void damagedRecordEndsReplay() throws IOException
+    {
+        Journal journal = open();
+        journal.append(Journal.ADD, bytes("one"));
+        long first = journal.size();
+        journal.append(Journal.ADD, bytes("two"));
+        journal.close();
+
+        // Flip a payload byte of the second record so its checksum fails
+        byte[] contents = Files.readAllBytes(file);
+        contents[(int) first + 13] ^= 1;
+        Files.write(file, contents);
+
+        assertEquals(Arrays.asList("1 one"), replay());
+    }
+
+    @Test
+    void discardBeforeKeepsLaterRecords() throws IOException
+    {
+        Journal journal = open();
+        journal.append(Journal.ADD, bytes("one"));
+        journal.append(Journal.ADD, bytes("two"));
+        long mark = journal.size();
+        journal.append(Journal.REMOVE, bytes("three"));
+
+        journal.discardBefore(mark);
+        journal.append(Journal.ADD, bytes("four"));
+        journal.close();
+
+        assertEquals(Arrays.asList("2 three", "1 four"), replay());
+    }
+
+    @Test
+    void discardBeforeTheEndEmptiesTheJournal() throws IOException
+    {
+        Journal journal = open();
+        journal.append(Journal.ADD, bytes("one"));
+        journal.discardBefore(journal.size());
+        assertEquals(0, journal.size());
+        journal.close();
+
+        assertEquals(0, Files.size(file));
+        assertEquals(new ArrayList<String>(), replay());
+    }
+
+    @Test
+    void replaySkipsRecordsTheSnapshotHolds() throws IOException
+    {
+        Journal journal = open();
+        journal.append(Journal.ADD, bytes("one"));
+        journal.append(Journal.ADD, bytes("two"));
+        long covered = journal.lastSequence();
+        journal.append(Journal.REMOVE, bytes("three"));
+        journal.close();
+
+        journal = new Journal(file.toString());
+        List<String> replayed = new ArrayList<>();
+        assertEquals(1, journal.replay(covered, (op, payload) -> replayed.add(op + " " + text(payload))));
+        assertEquals(Arrays.asList("2 three"), replayed);
+        journal.close();
+    }
+
+    @Test
+    void sequenceContinuesPastDiscardedRecords() throws IOException
+    {
+        Journal journal = open();
+        journal.append(Journal.ADD, bytes("one"));
+        journal.append(Journal.ADD, bytes("two"));
+        long covered = journal.lastSequence();
+        journal.discardBefore(journal.size());
+        journal.close();
+
+        // Reopened empty over a snapshot holding both records
+        journal = new Journal(file.toString());
+        assertEquals(0, journal.replay(covered, (op, payload) -> { }));
+        journal.append(Journal.ADD, bytes("three"));
+        assertEquals(covered + 1, journal.lastSequence());
+        journal.close();
+
+        List<String> replayed = new ArrayList<>();
+        journal = new Journal(file.toString());
+        journal.replay(covered, (op, payload) -> replayed.add(op + " " + text(payload)));
+        journal.close();
+        assertEquals(Arrays.asList("1 three"), replayed);
+    }
+
+    /**
+     * Private method used to open the journal file and replay it, as a database
+     * does before appending.
+     *
+     * @return the journal
+     * @throws IOException if the journal cannot be opened
+     */
+    private Journal open() throws IOException
+    {
+        Journal journal = new Journal(file.toString());
+        journal.replay(0, (op, payload) -> { });
+        return journal;
+    }
+
+    /**
+     * Private method used to reopen the journal and list its records as "op payload".
+     *
+     * @return the replayed records
+     * @throws IOException if the journal cannot be read
+     */
+    private List<String> replay() throws IOException
+    {
+        List<String> replayed = new ArrayList<>();
+        Journal journal = new Journal(file.toString());
+        try {
+            journal.replay(0, (op, payload) -> replayed.add(op + " " + text(payload)));
+        } finally {
+            journal.close();
+        }
+        return replayed;
+    }
+
+    /**
+     * Private method used to turn a test payload into bytes.
+     *
+     * @param s the payload text
+     * @return the UTF-8 bytes
+     */
+    private static byte[] bytes(String s)
+    {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Private method used to turn a replayed payload back into text.
+     *
+     * @param payload the payload bytes
+     * @return the payload text
+     */
+    private static String text(byte[] payload)
+    {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,120 @@
+package shippingstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * This class tests that <CODE>LatencyRecorder</CODE> counts calls and failures, and
+ * reports percentiles within the precision of its histogram.
+ *
+ * @author Emily Beaudoin
+ */
+class LatencyRecorderTest
+{
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordersAreSharedAndRegistered() throws Exception
+    {
+        LatencyRecorder recorder = LatencyRecorder.forOperation("LatencyRecorderTest", "shared");
+        assertSame(recorder, LatencyRecorder.forOperation("LatencyRecorderTest", "shared"));
+        assertEquals("LatencyRecorderTest.shared", recorder.getName());
+        assertTrue(LatencyRecorder.all().contains(recorder));
+
+        recorder.record(System.nanoTime(), false);
+        ObjectName name = new ObjectName("shippingstore:type=LatencyRecorderTest,name=shared");
+        assertEquals(recorder.getCount(), ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Count"));
+    }
+
+    @Test
+    void percentilesAreWithinTheBucketPrecision()
+    {
+        LatencyRecorder recorder = LatencyRecorder.forOperation("LatencyRecorderTest", "percentiles");
+        recorder.reset();
+
+        // 1ms to 100ms, so the time spent recording is lost in the rounding
+        for (int i = 1; i <= 100; i++) {
+            recorder.record(System.nanoTime() - i * 1_000_000L, i % 10 == 0);
+        }
+
+        assertEquals(100, recorder.getCount());
+        assertEquals(10, recorder.getErrorCount());
+        assertClose(50_000, recorder.getP50Micros());
+        assertClose(99_000, recorder.getP99Micros());
+        assertClose(50_500, recorder.getMeanMicros());
+        assertTrue(recorder.getMaxMicros() >= 100_000, Double.toString(recorder.getMaxMicros()));
+        assertTrue(recorder.getP99Micros() <= recorder.getMaxMicros());
+
+        recorder.reset();
+        assertEquals(0, recorder.getCount());
+        assertEquals(0, recorder.getP50Micros());
+        assertEquals(0, recorder.getMaxMicros());
+    }
+
+    @Test
+    void concurrentCallsAreAllCounted() throws InterruptedException
+    {
+        LatencyRecorder recorder = LatencyRecorder.forOperation("LatencyRecorderTest", "concurrent");
+        recorder.reset();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    recorder.record(System.nanoTime(), i % 4 == 0);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(80000, recorder.getCount());
+        assertEquals(20000, recorder.getErrorCount());
+    }
+
+    @Test
+    void databaseOperationsAreRecorded() throws IOException
+    {
+        PackageDatabase packages = new PackageDatabase(directory);
+        LatencyRecorder add = LatencyRecorder.forOperation("PackageDatabase", "addOrder");
+        long calls = add.getCount();
+        long errors = add.getErrorCount();
+
+        packages.insertOrder("AB123", "Box", "Books", "Priority", "12", "1728");
+        packages.insertOrder("AB123", "Box", "Books", "Priority", "12", "1728");
+        assertNotNull(packages.getPackageOrder("AB123"));
+
+        assertEquals(calls + 2, add.getCount());
+        assertEquals(errors + 1, add.getErrorCount());
+    }
+
+    /**
+     * Private method used to check a time reported from the histogram against the
+     * true value, allowing the 1/16 width of a bucket.
+     *
+     * @param expected the true time in microseconds
+     * @param actual the reported time in microseconds
+     */
+    private static void assertClose(double expected, double actual)
+    {
+        assertTrue(Math.abs(actual - expected) <= expected / 16 + 1000,
+            "expected about " + expected + " but was " + actual);
+    }
+}
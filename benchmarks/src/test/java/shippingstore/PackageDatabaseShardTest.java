@@ -0,0 +1,224 @@
+package shippingstore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * This class tests that <CODE>PackageDatabase</CODE> loads its orders from hash
+ * shards, moves them between layouts when the number of shards changes, and refuses
+ * to open when a shard cannot be read.
+ *
+ * @author Emily Beaudoin
+ */
+class PackageDatabaseShardTest
+{
+    private static final int ORDERS = 200;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void ordersMoveBetweenLayouts() throws IOException
+    {
+        PackageDatabase single = new PackageDatabase(directory, 1);
+        addOrders(single, 0, ORDERS);
+        single.flush();
+
+        PackageDatabase four = new PackageDatabase(directory, 4);
+        assertOrders(four, ORDERS);
+        four.flush();
+        assertFalse(Files.exists(directory.resolve("PackageDB.ser")));
+        assertEquals(ORDERS, countShardRecords(4));
+
+        PackageDatabase eight = new PackageDatabase(directory, 8);
+        assertOrders(eight, ORDERS);
+        eight.flush();
+        assertFalse(Files.exists(directory.resolve("PackageDB.0-of-4.ser")));
+        assertEquals(ORDERS, countShardRecords(8));
+
+        PackageDatabase back = new PackageDatabase(directory, 1);
+        assertOrders(back, ORDERS);
+        back.flush();
+        assertFalse(Files.exists(directory.resolve("PackageDB.0-of-8.ser")));
+        assertOrders(new PackageDatabase(directory, 1), ORDERS);
+    }
+
+    @Test
+    void onlyChangedShardsAreRewritten() throws IOException
+    {
+        PackageDatabase packages = new PackageDatabase(directory, 4);
+        addOrders(packages, 0, ORDERS);
+        packages.flush();
+
+        byte[][] before = new byte[4][];
+        for (int i = 0; i < 4; i++) {
+            before[i] = Files.readAllBytes(shard(i, 4));
+        }
+
+        assertNotNull(packages.deleteOrder(trackingNumber(7)));
+        packages.flush();
+
+        int changed = 0;
+        for (int i = 0; i < 4; i++) {
+            if (!Arrays.equals(before[i], Files.readAllBytes(shard(i, 4)))) {
+                changed++;
+            }
+        }
+        assertEquals(1, changed);
+
+        PackageDatabase reopened = new PackageDatabase(directory, 4);
+        assertEquals(ORDERS - 1, count(reopened));
+        assertNull(reopened.getPackageOrder(trackingNumber(7)));
+    }
+
+    @Test
+    void journalIsReplayedOverShards() throws IOException
+    {
+        PackageDatabase packages = new PackageDatabase(directory, 4);
+        addOrders(packages, 0, ORDERS);
+        packages.flush();
+        addOrders(packages, ORDERS, 10);
+        packages.deleteOrder(trackingNumber(0));
+
+        PackageDatabase reopened = new PackageDatabase(directory, 4);
+        assertEquals(ORDERS + 9, count(reopened));
+        assertNull(reopened.getPackageOrder(trackingNumber(0)));
+        assertNotNull(reopened.getPackageOrder(trackingNumber(ORDERS + 9)));
+    }
+
+    @Test
+    void unreadableShardFailsTheOpen() throws IOException
+    {
+        PackageDatabase packages = new PackageDatabase(directory, 4);
+        addOrders(packages, 0, ORDERS);
+        packages.flush();
+
+        byte[] damaged = {1, 2, 3, 4, 5};
+        Files.write(shard(2, 4), damaged);
+        byte[] other = Files.readAllBytes(shard(1, 4));
+
+        assertThrows(IOException.class, () -> new PackageDatabase(directory, 4));
+        assertThrows(IOException.class, () -> new PackageDatabase(directory, 8));
+
+        // Nothing was migrated, rewritten or deleted
+        assertArrayEquals(damaged, Files.readAllBytes(shard(2, 4)));
+        assertArrayEquals(other, Files.readAllBytes(shard(1, 4)));
+        assertFalse(Files.exists(shard(0, 8)));
+    }
+
+    @Test
+    void shardCountMustBePositive()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new PackageDatabase(directory, 0));
+    }
+
+    /**
+     * Private method used to add orders with consecutive tracking numbers.
+     *
+     * @param packages the database
+     * @param from the number of the first order
+     * @param count the number of orders to add
+     */
+    private static void addOrders(PackageDatabase packages, int from, int count)
+    {
+        String[] types = {"Box", "Envelope", "Crate", "Drum"};
+        String[][] special = {{"12", "1728"}, {"4", "9"}, {"40.5", "Tools"}, {"Fiber", "18"}};
+        for (int i = from; i < from + count; i++) {
+            int type = i % types.length;
+            assertNull(packages.insertOrder(trackingNumber(i), types[type], "Fragile", "First-Class",
+                special[type][0], special[type][1]));
+        }
+    }
+
+    /**
+     * Private method used to check that a database holds exactly the first orders
+     * added by <CODE>addOrders()</CODE>.
+     *
+     * @param packages the database
+     * @param count the number of orders it should hold
+     * @throws IOException if the orders cannot be counted
+     */
+    private static void assertOrders(PackageDatabase packages, int count) throws IOException
+    {
+        assertEquals(count, count(packages));
+        for (int i = 0; i < count; i++) {
+            assertNotNull(packages.getPackageOrder(trackingNumber(i)), trackingNumber(i));
+        }
+    }
+
+    /**
+     * Private method used to count the orders in a database.
+     *
+     * @param packages the database
+     * @return the number of orders
+     * @throws IOException if the orders cannot be exported
+     */
+    private static int count(PackageDatabase packages) throws IOException
+    {
+        return packages.export(new StringWriter(), ExportFormat.CSV, null);
+    }
+
+    /**
+     * Private method used to count the orders in the shard files of a layout, checking
+     * that no order is in more than one of them.
+     *
+     * @param shards the number of shards
+     * @return the number of orders in all the files
+     * @throws IOException if a file cannot be read
+     */
+    private int countShardRecords(int shards) throws IOException
+    {
+        Set<String> seen = new HashSet<>();
+        int count = 0;
+        for (int i = 0; i < shards; i++) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(shard(i, shards)))) {
+                for (PackageOrder p : RecordCodec.read(in, PackageOrder.class)) {
+                    assertTrue(seen.add(p.getTrackingNumber()), p.getTrackingNumber());
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Private method used to name a shard file.
+     *
+     * @param i the shard
+     * @param shards the number of shards
+     * @return the file
+     */
+    private Path shard(int i, int shards)
+    {
+        return directory.resolve("PackageDB." + i + "-of-" + shards + ".ser");
+    }
+
+    /**
+     * Private method used to make the tracking number of the i-th test order.
+     *
+     * @param i the number of the order
+     * @return the tracking number
+     */
+    private static String trackingNumber(int i)
+    {
+        return String.format("S%04d", i);
+    }
+}
@@ -0,0 +1,98 @@
+package shippingstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * This class tests that <CODE>PackageDatabase.importOrders()</CODE> adds the valid
+ * lines of a CSV file, reports the rejected ones with their line number, and
+ * journals what it added.
+ *
+ * @author Emily Beaudoin
+ */
+class PackageImportTest
+{
+    @TempDir
+    Path directory;
+
+    @Test
+    void validLinesAreAdded() throws IOException
+    {
+        PackageDatabase packages = new PackageDatabase(directory);
+        ImportReport report = packages.importOrders(new StringReader(
+            "Type,Tracking#,Specification,Class,Special1,Special2\n"
+            + "Box,AB123,Books,Priority,12,1728\n"
+            + "\n"
+            + "Crate,CR001,Catalogs,Retail,40.5,\"Tools, spare\"\n"
+            + "Drum,DR001,N/A,Metro,Fiber,18\n"
+            + "Envelope,EN001,Fragile,First-Class,4,9\n"));
+
+        assertEquals(4, report.getLinesRead());
+        assertEquals(4, report.getAdded());
+        assertTrue(report.getRejected().isEmpty());
+
+        Box box = (Box) packages.getPackageOrder("ab123");
+        assertEquals("Books", box.getSpecification());
+        assertEquals(1728, box.getVolume());
+        assertEquals("Tools, spare", ((Crate) packages.getPackageOrder("CR001")).getContent());
+        assertEquals("Fiber", ((Drum) packages.getPackageOrder("DR001")).getMaterial());
+        assertEquals(0, packages.findPackageOrder("AB123"));
+    }
+
+    @Test
+    void badLinesAreRejectedWithTheirLineNumber() throws IOException
+    {
+        PackageDatabase packages = new PackageDatabase(directory);
+        assertNull(packages.insertOrder("OLD01", "Box", "Books", "Priority", "12", "1728"));
+
+        ImportReport report = packages.importOrders(new StringReader(
+            "Box,AB123,Books,Priority,12,1728\n"
+            + "Box,AB124,Books,Priority,twelve,1728\n"
+            + "Box,AB123,Books,Priority,12,1728\n"
+            + "Box,OLD01,Books,Priority,12,1728\n"
+            + "Barrel,AB125,Books,Priority,12,1728\n"
+            + "Box,AB126,Books\n"));
+
+        assertEquals(6, report.getLinesRead());
+        assertEquals(1, report.getAdded());
+        List<ImportReport.Rejection> rejected = report.getRejected();
+        assertEquals(5, rejected.size());
+        for (int i = 0; i < rejected.size(); i++) {
+            assertEquals(i + 2, rejected.get(i).getLine());
+        }
+        assertTrue(rejected.get(1).getReason().contains("line 1"), rejected.get(1).getReason());
+
+        assertNotNull(packages.getPackageOrder("AB123"));
+        assertNull(packages.getPackageOrder("AB124"));
+        assertNull(packages.getPackageOrder("AB126"));
+    }
+
+    @Test
+    void importsLargerThanABatchAreJournaled() throws IOException
+    {
+        int orders = 40000;
+        StringBuilder csv = new StringBuilder();
+        for (int i = orders - 1; i >= 0; i--) {
+            csv.append("Envelope,").append(String.format("%05d", i)).append(",Fragile,Metro,4,9\n");
+        }
+
+        PackageDatabase packages = new PackageDatabase(directory);
+        assertEquals(orders, packages.importOrders(new StringReader(csv.toString())).getAdded());
+
+        PackageDatabase reopened = new PackageDatabase(directory);
+        for (int i = 0; i < orders; i += 997) {
+            assertEquals(i, reopened.findPackageOrder(String.format("%05d", i)));
+        }
+        assertEquals(orders - 1, reopened.findPackageOrder(String.format("%05d", orders - 1)));
+    }
+}
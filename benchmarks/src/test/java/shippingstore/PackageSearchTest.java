@@ -0,0 +1,162 @@
+package shippingstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * This class tests that <CODE>PackageDatabase.findByPattern()</CODE> finds the same
+ * orders, in the same order, as checking every tracking number against the pattern.
+ *
+ * @author Emily Beaudoin
+ */
+class PackageSearchTest
+{
+    /** The characters of the test tracking numbers. */
+    private static final String ALPHABET = "AB1";
+
+    @TempDir
+    Path directory;
+
+    private PackageDatabase packages;
+
+    /** Every tracking number of five <CODE>ALPHABET</CODE> characters, sorted. */
+    private final List<String> trackingNumbers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        packages = new PackageDatabase(directory);
+        for (int i = 0; i < 243; i++) {
+            StringBuilder tn = new StringBuilder();
+            for (int n = i, k = 0; k < 5; k++, n /= 3) {
+                tn.insert(0, ALPHABET.charAt(n % 3));
+            }
+            trackingNumbers.add(tn.toString());
+        }
+        trackingNumbers.sort(null);
+
+        // Added out of order, so the search cannot lean on the order they came in
+        for (int i = 0; i < trackingNumbers.size(); i++) {
+            String tn = trackingNumbers.get(i * 100 % trackingNumbers.size());
+            assertNull(packages.insertOrder(tn, "Envelope", "Fragile", "Metro", "4", "9"));
+        }
+    }
+
+    @Test
+    void examplePatterns()
+    {
+        assertEquals(List.of("AB1A1", "AB1AA", "AB1AB"), found("ab1a?"));
+        assertEquals(found("AB1"), found("AB1*"));
+        assertEquals(27, found("AB?").size());
+        assertEquals(List.of("A1A1B"), found("A1A1B"));
+        assertEquals(243, found("").size());
+        assertEquals(243, found("*").size());
+        assertEquals(0, found("C").size());
+        assertEquals(243, found("?????").size());
+    }
+
+    @Test
+    void randomPatternsMatchAScan()
+    {
+        Random random = new Random(42);
+        String characters = ALPHABET + "?b2C";
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder pattern = new StringBuilder();
+            int length = random.nextInt(6);
+            for (int k = 0; k < length; k++) {
+                pattern.append(characters.charAt(random.nextInt(characters.length())));
+            }
+            if (random.nextBoolean()) {
+                pattern.append('*');
+            }
+            assertEquals(scan(pattern.toString()), found(pattern.toString()), pattern.toString());
+        }
+    }
+
+    @Test
+    void limitStopsTheSearch()
+    {
+        List<PackageOrder> first = packages.findByPattern("?1", 5);
+        assertEquals(5, first.size());
+        assertEquals(scan("?1").subList(0, 5), trackingNumbers(first));
+        assertEquals(0, packages.findByPattern("A", 0).size());
+    }
+
+    @Test
+    void removedOrdersAreNotFound()
+    {
+        packages.deleteOrder("AB1AB");
+        assertEquals(List.of("AB1A1", "AB1AA"), found("AB1A?"));
+    }
+
+    @Test
+    void invalidPatternsAreRejected()
+    {
+        for (String pattern : new String[] {"AB1234", "A*B", "AB-1", "**"}) {
+            assertThrows(IllegalArgumentException.class, () -> packages.findByPattern(pattern, 10), pattern);
+        }
+        assertThrows(IllegalArgumentException.class, () -> packages.findByPattern("A", -1));
+    }
+
+    /**
+     * Private method used to search the database without a limit.
+     *
+     * @param pattern the pattern
+     * @return the tracking numbers found, in the order found
+     */
+    private List<String> found(String pattern)
+    {
+        return trackingNumbers(packages.findByPattern(pattern, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Private method used to check every test tracking number against a pattern, as
+     * <CODE>findByPattern()</CODE> describes it.
+     *
+     * @param pattern the pattern
+     * @return the matching tracking numbers, sorted
+     */
+    private List<String> scan(String pattern)
+    {
+        String key = pattern.toUpperCase().replace("*", "");
+        List<String> matches = new ArrayList<>();
+        for (String tn : trackingNumbers) {
+            boolean match = true;
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) != '?' && key.charAt(i) != tn.charAt(i)) {
+                    match = false;
+                }
+            }
+            if (match) {
+                matches.add(tn);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Private method used to list the tracking numbers of orders.
+     *
+     * @param orders the orders
+     * @return their tracking numbers, in the same order
+     */
+    private static List<String> trackingNumbers(List<PackageOrder> orders)
+    {
+        List<String> numbers = new ArrayList<>();
+        for (PackageOrder order : orders) {
+            numbers.add(order.getTrackingNumber());
+        }
+        return numbers;
+    }
+}
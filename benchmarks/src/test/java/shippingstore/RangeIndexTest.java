@@ -0,0 +1,186 @@
+package shippingstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * This class tests that a <CODE>RangeIndex</CODE> answers range queries like a sorted
+ * scan of its orders as orders are added and removed, and that
+ * <CODE>PackageDatabase</CODE> keeps its indexes in step with the orders.
+ *
+ * @author Emily Beaudoin
+ */
+class RangeIndexTest
+{
+    /** Orders in index order: by value, then by tracking number. */
+    private static final Comparator<PackageOrder> BY_WEIGHT = Comparator
+        .comparingDouble((PackageOrder p) -> PackageAttribute.CRATE_WEIGHT.valueOf(p))
+        .thenComparing(p -> p);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rangesMatchASortedScan()
+    {
+        Random random = new Random(7);
+        RangeIndex index = new RangeIndex(PackageAttribute.CRATE_WEIGHT);
+        List<PackageOrder> expected = new ArrayList<>();
+
+        // Enough orders, with enough equal values, to split blocks several times
+        for (int i = 0; i < 5000; i++) {
+            PackageOrder p = crate(String.format("C%04d", i), random.nextInt(200) / 2f);
+            index.add(p);
+            expected.add(p);
+        }
+        for (int i = 0; i < 5000; i += 3) {
+            assertTrue(index.remove(expected.get(i)));
+        }
+        for (int i = 0; i < 5000; i += 3) {
+            expected.set(i, null);
+        }
+        expected.removeIf(p -> p == null);
+        expected.sort(BY_WEIGHT);
+        assertEquals(expected.size(), index.size());
+
+        for (int q = 0; q < 500; q++) {
+            double low = random.nextInt(210) / 2.0 - 5;
+            double high = low + random.nextInt(40) / 2.0 - 2;
+            List<PackageOrder> scan = scan(expected, low, high);
+            assertEquals(scan, index.range(low, high, Integer.MAX_VALUE), low + ".." + high);
+            assertEquals(scan.size(), index.count(low, high), low + ".." + high);
+        }
+        assertEquals(expected, index.range(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Integer.MAX_VALUE));
+        assertEquals(expected.subList(0, 10), index.range(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 10));
+    }
+
+    @Test
+    void addAllMergesWithTheIndex()
+    {
+        Random random = new Random(11);
+        RangeIndex index = new RangeIndex(PackageAttribute.CRATE_WEIGHT);
+        List<PackageOrder> expected = new ArrayList<>();
+        for (int i = 0; i < 3000; i += 2) {
+            PackageOrder p = crate(String.format("C%04d", i), random.nextInt(100) + 0.5f);
+            index.add(p);
+            expected.add(p);
+        }
+
+        // The batch is in tracking number order and includes orders of another type
+        List<PackageOrder> batch = new ArrayList<>();
+        for (int i = 1; i < 3000; i += 2) {
+            batch.add(i % 5 == 0 ? new Box(String.format("C%04d", i), "Books", "Priority", 12, 1728)
+                : crate(String.format("C%04d", i), random.nextInt(100) + 0.5f));
+        }
+        index.addAll(batch);
+        for (PackageOrder p : batch) {
+            if (p instanceof Crate) {
+                expected.add(p);
+            }
+        }
+        expected.sort(BY_WEIGHT);
+
+        assertEquals(expected.size(), index.size());
+        assertEquals(expected, index.range(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Integer.MAX_VALUE));
+        assertEquals(scan(expected, 20, 40), index.range(20, 40, Integer.MAX_VALUE));
+
+        // Single adds and removes still work on the merged blocks
+        PackageOrder extra = crate("Z0000", 30.5f);
+        index.add(extra);
+        assertTrue(index.range(30.5, 30.5, Integer.MAX_VALUE).contains(extra));
+        assertTrue(index.remove(extra));
+        assertFalse(index.remove(extra));
+    }
+
+    @Test
+    void databaseKeepsItsIndexesInStep() throws IOException
+    {
+        PackageDatabase packages = new PackageDatabase(directory);
+        assertNull(packages.insertOrder("CR001", "Crate", "Books", "Retail", "40.5", "Tools"));
+        assertNull(packages.insertOrder("CR002", "Crate", "Books", "Retail", "12", "Tools"));
+        assertNull(packages.insertOrder("BX001", "Box", "Books", "Priority", "12", "1728"));
+        assertEquals(3, packages.importOrders(new StringReader(
+            "Crate,CR003,Books,Retail,40.5,Tools\n"
+            + "Crate,CR004,Books,Retail,99,Tools\n"
+            + "Drum,DR001,N/A,Metro,Fiber,18\n")).getAdded());
+
+        assertEquals(List.of("CR001", "CR003", "CR004"),
+            trackingNumbers(packages.findInRange(PackageAttribute.CRATE_WEIGHT, 40, Double.POSITIVE_INFINITY, 10)));
+        assertEquals(1, packages.countInRange(PackageAttribute.BOX_DIMENSION, 12, 12));
+        assertEquals(1, packages.countInRange(PackageAttribute.DRUM_DIAMETER, Double.NEGATIVE_INFINITY, 100));
+
+        packages.deleteOrder("CR003");
+        assertEquals(2, packages.countInRange(PackageAttribute.CRATE_WEIGHT, 40, 100));
+
+        PackageDatabase reopened = new PackageDatabase(directory);
+        assertEquals(List.of("CR002", "CR001", "CR004"), trackingNumbers(reopened.findInRange(
+            PackageAttribute.CRATE_WEIGHT, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 10)));
+        assertEquals(0, reopened.countInRange(PackageAttribute.CRATE_WEIGHT, 50, 40));
+        assertThrows(IllegalArgumentException.class,
+            () -> reopened.countInRange(PackageAttribute.CRATE_WEIGHT, Double.NaN, 40));
+        assertThrows(IllegalArgumentException.class,
+            () -> reopened.findInRange(PackageAttribute.CRATE_WEIGHT, 0, 40, -1));
+    }
+
+    /**
+     * Private method used to make a crate with the given load weight.
+     *
+     * @param trackingNumber the tracking number
+     * @param weight the load weight
+     * @return the crate
+     */
+    private static PackageOrder crate(String trackingNumber, float weight)
+    {
+        return new Crate(trackingNumber, "Books", "Retail", weight, "Tools");
+    }
+
+    /**
+     * Private method used to pick the orders of a sorted list whose load weight lies
+     * between two bounds, both included.
+     *
+     * @param sorted the orders, in index order
+     * @param low the lowest weight to include
+     * @param high the highest weight to include
+     * @return the orders in range, in index order
+     */
+    private static List<PackageOrder> scan(List<PackageOrder> sorted, double low, double high)
+    {
+        List<PackageOrder> matches = new ArrayList<>();
+        for (PackageOrder p : sorted) {
+            double weight = PackageAttribute.CRATE_WEIGHT.valueOf(p);
+            if (weight >= low && weight <= high) {
+                matches.add(p);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Private method used to list the tracking numbers of orders.
+     *
+     * @param orders the orders
+     * @return their tracking numbers, in the same order
+     */
+    private static List<String> trackingNumbers(List<PackageOrder> orders)
+    {
+        List<String> numbers = new ArrayList<>();
+        for (PackageOrder order : orders) {
+            numbers.add(order.getTrackingNumber());
+        }
+        return numbers;
+    }
+}
@@ -0,0 +1,173 @@
+package shippingstore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * This class tests that <CODE>RecordCodec</CODE> reads back every kind of record it
+ * writes, and that it still reads the Java serialization files the program shipped
+ * with.
+ *
+ * @author Emily Beaudoin
+ */
+class RecordCodecTest
+{
+    /** The legacy database files kept at the root of the repository. */
+    private static final Path LEGACY = Paths.get("..");
+
+    @Test
+    void roundTripKeepsEveryKindOfRecord() throws IOException
+    {
+        List<Object> records = sampleRecords();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RecordCodec.write(out, records);
+
+        assertSameRecords(records, read(out.toByteArray(), Object.class));
+    }
+
+    @Test
+    void snapshotSequenceIsReadBack() throws IOException
+    {
+        for (int level : new int[] {RecordCodec.NO_COMPRESSION, 6}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            RecordCodec.write(out, sampleRecords(), level, 1234567890123L);
+
+            List<Object> records = new ArrayList<>();
+            try (InputStream in = new ByteArrayInputStream(out.toByteArray())) {
+                assertEquals(1234567890123L, RecordCodec.read(in, Object.class, records::add));
+            }
+            assertSameRecords(sampleRecords(), records);
+        }
+    }
+
+    @Test
+    void emptyStreamIsEmptyDatabase() throws IOException
+    {
+        assertTrue(read(new byte[0], PackageOrder.class).isEmpty());
+    }
+
+    @Test
+    void singleRecordsAndKeysRoundTrip() throws IOException
+    {
+        for (Object record : sampleRecords()) {
+            assertArrayEquals(RecordCodec.encode(record),
+                RecordCodec.encode(RecordCodec.decode(RecordCodec.encode(record))));
+        }
+        assertEquals("AB123", RecordCodec.decode(RecordCodec.encode("AB123")));
+        assertEquals(100042, RecordCodec.decode(RecordCodec.encode(100042)));
+    }
+
+    @Test
+    void foreignFileIsRejected()
+    {
+        byte[] junk = "not a database".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(IOException.class, () -> read(junk, Object.class));
+    }
+
+    @Test
+    void serializedJournalPayloadIsRejected() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject("AB123");
+        }
+        assertThrows(IOException.class, () -> RecordCodec.decode(bytes.toByteArray()));
+    }
+
+    @Test
+    void legacyFilesReadLikeJavaSerialization() throws Exception
+    {
+        for (String name : Arrays.asList("PackageDB.ser", "UserDB.ser", "TransactionDB.ser")) {
+            byte[] file = Files.readAllBytes(LEGACY.resolve(name));
+
+            List<?> expected;
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(file))) {
+                expected = (List<?>) in.readObject();
+            }
+            List<Object> legacy = read(file, Object.class);
+            assertFalse(legacy.isEmpty(), name);
+            assertSameRecords(expected, legacy);
+
+            // Saving a legacy file in the new format loses nothing
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            RecordCodec.write(out, legacy);
+            assertSameRecords(expected, read(out.toByteArray(), Object.class));
+        }
+    }
+
+    /**
+     * Private method used to build one record of every class the codec supports.
+     *
+     * @return the records
+     */
+    private static List<Object> sampleRecords()
+    {
+        List<Object> records = new ArrayList<>();
+        records.add(new Envelope("EN001", "Fragile", "First-Class", 4, 9));
+        records.add(new Box("BX002", "Books", "Priority", 12, 1728));
+        records.add(new Crate("CR003", "Catalogs", "Retail", 40.5f, "Tools"));
+        records.add(new Drum("DR005", "N/A", "Metro", "Fiber", 18));
+        records.add(new Customer(100001, "Morty", "Smith", "123-124-5234", "PLACE"));
+        records.add(new Employee(100002, "Rick", "Sanchez", 123456780, 2342.23f, 1335664564));
+        records.add(new Transaction(100001, "BX002", new Date(1577836800000L),
+            new Date(1578009600000L), 12.5f, 100002));
+        return records;
+    }
+
+    /**
+     * Private method used to read a whole database file from memory.
+     *
+     * @param <T> the type of the records
+     * @param file the file contents
+     * @param type the class of the records
+     * @return the records
+     * @throws IOException if the file cannot be read
+     */
+    private static <T> List<T> read(byte[] file, Class<T> type) throws IOException
+    {
+        try (InputStream in = new BufferedInputStream(new ByteArrayInputStream(file))) {
+            return RecordCodec.read(in, type);
+        }
+    }
+
+    /**
+     * Private method used to check that two lists hold the same records in the same
+     * order. The records do not override <CODE>equals()</CODE>, so they are compared
+     * by their encoded bytes, which hold every field.
+     *
+     * @param expected the records written
+     * @param actual the records read back
+     * @throws IOException if a record cannot be encoded
+     */
+    private static void assertSameRecords(List<?> expected, List<?> actual) throws IOException
+    {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getClass(), actual.get(i).getClass());
+            assertArrayEquals(RecordCodec.encode(expected.get(i)), RecordCodec.encode(actual.get(i)),
+                "record " + i);
+        }
+    }
+}
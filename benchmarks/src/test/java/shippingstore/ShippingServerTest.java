@@ -0,0 +1,160 @@
+package shippingstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * This class tests the HTTP/JSON API of <CODE>ShippingServer</CODE> against a server
+ * listening on a free local port.
+ *
+ * @author Emily Beaudoin
+ */
+class ShippingServerTest
+{
+    @TempDir
+    Path directory;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private PackageDatabase packages;
+    private UserDatabase users;
+    private TransactionDatabase transactions;
+    private ShippingServer server;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        packages = new PackageDatabase(directory);
+        users = new UserDatabase(directory);
+        transactions = new TransactionDatabase(directory);
+        server = new ShippingServer(packages, users, transactions, 0);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        server.stop();
+    }
+
+    @Test
+    void packagesAreAddedFoundAndRemoved() throws Exception
+    {
+        String box = "{\"type\":\"Box\",\"trackingNumber\":\"AB123\",\"specification\":\"Books\","
+            + "\"mailingClass\":\"Priority\",\"largestDimension\":12,\"volume\":1728}";
+        HttpResponse<String> created = send("POST", "/packages", box);
+        assertEquals(201, created.statusCode());
+        assertEquals("{\"type\":\"Box\",\"trackingNumber\":\"AB123\",\"specification\":\"Books\","
+            + "\"mailingClass\":\"Priority\",\"largestDimension\":12,\"volume\":1728}", created.body().trim());
+        assertEquals(409, send("POST", "/packages", box).statusCode());
+        assertEquals(201, send("POST", "/packages", "{\"type\":\"Envelope\",\"trackingNumber\":\"CD456\","
+            + "\"specification\":\"Fragile\",\"mailingClass\":\"Metro\",\"height\":4,\"width\":9}").statusCode());
+
+        assertEquals(200, send("GET", "/packages/AB123", null).statusCode());
+        assertEquals(2, send("GET", "/packages", null).body().trim().split("\n").length);
+        assertEquals("Type,Tracking#,Specification,Class,Special1,Special2\n"
+            + "Envelope,CD456,Fragile,Metro,4,9\n", send("GET", "/packages?match=CD4??&format=csv", null).body());
+
+        assertEquals(200, send("DELETE", "/packages/AB123", null).statusCode());
+        assertNull(packages.getPackageOrder("AB123"));
+        HttpResponse<String> missing = send("GET", "/packages/AB123", null);
+        assertEquals(404, missing.statusCode());
+        assertEquals("{\"error\":\"No package found with that tracking number\"}", missing.body().trim());
+    }
+
+    @Test
+    void usersAreAddedAndChanged() throws Exception
+    {
+        HttpResponse<String> created = send("POST", "/users", "{\"type\":\"Customer\",\"firstName\":\"Morty\","
+            + "\"lastName\":\"Smith\",\"phone\":\"123-124-5234\",\"address\":\"PLACE\"}");
+        assertEquals(201, created.statusCode());
+        String id = Json.parseObject(created.body().trim()).get("id");
+
+        HttpResponse<String> changed = send("PATCH", "/users/" + id, "{\"address\":\"ELSEWHERE\"}");
+        assertEquals(200, changed.statusCode());
+        assertEquals("ELSEWHERE", ((Customer) users.getUser(id)).getAddress());
+
+        // A request with one bad field changes nothing
+        assertEquals(400, send("PATCH", "/users/" + id, "{\"address\":\"AWAY\",\"id\":\"1\"}").statusCode());
+        assertEquals("ELSEWHERE", ((Customer) users.getUser(id)).getAddress());
+
+        assertEquals(400, send("POST", "/users", "{\"type\":\"Employee\",\"firstName\":\"Rick\","
+            + "\"lastName\":\"Sanchez\",\"social\":\"12\",\"salary\":\"2342.23\",\"account\":\"1335664564\"}")
+            .statusCode());
+        assertEquals(1, send("GET", "/users?name=morty", null).body().trim().split("\n").length);
+    }
+
+    @Test
+    void transactionsAreAddedAndFiltered() throws Exception
+    {
+        User customer = users.insertUser("Customer", "Morty", "Smith", "123-124-5234", "PLACE", null);
+        User employee = users.insertUser("Employee", "Rick", "Sanchez", "123456780", "2342.23", "1335664564");
+        assertNull(packages.insertOrder("AB123", "Box", "Books", "Priority", "12", "1728"));
+
+        String transaction = "{\"customerId\":" + customer.getIdNumber() + ",\"employeeId\":"
+            + employee.getIdNumber() + ",\"trackingNumber\":\"AB123\",\"shippingDate\":\"2020-01-01\","
+            + "\"deliverDate\":\"2020-01-03\",\"cost\":12.5}";
+        HttpResponse<String> created = send("POST", "/transactions", transaction);
+        assertEquals(201, created.statusCode(), created.body());
+        Map<String, String> stored = Json.parseObject(created.body().trim());
+        assertEquals("2020-01-01", stored.get("shippingDate"));
+        assertEquals("2020-01-03", stored.get("deliverDate"));
+
+        assertEquals(1, send("GET", "/transactions?from=2020-01-01&to=2020-01-01", null)
+            .body().trim().split("\n").length);
+        assertTrue(send("GET", "/transactions?from=2020-01-02", null).body().trim().isEmpty());
+
+        // Restricted removals are refused while the transaction refers to the order
+        assertEquals(409, send("DELETE", "/packages/AB123?policy=restrict", null).statusCode());
+        assertEquals(200, send("DELETE", "/packages/AB123?policy=cascade", null).statusCode());
+        assertTrue(send("GET", "/transactions", null).body().trim().isEmpty());
+
+        assertEquals(400, send("POST", "/transactions", transaction).statusCode());
+    }
+
+    @Test
+    void badRequestsAreRejected() throws Exception
+    {
+        assertEquals(400, send("POST", "/packages", "{\"type\":").statusCode());
+        assertEquals(400, send("POST", "/packages", "{\"type\":\"Barrel\"}").statusCode());
+        assertEquals(400, send("GET", "/packages?format=xml", null).statusCode());
+        assertEquals(400, send("GET", "/reports?groupBy=planet", null).statusCode());
+        assertEquals(404, send("GET", "/packages/AB123/more", null).statusCode());
+        assertEquals(405, send("PUT", "/packages", "{}").statusCode());
+
+        HttpResponse<String> report = send("GET", "/reports?groupBy=customer", null);
+        assertEquals(200, report.statusCode());
+        assertTrue(report.body().startsWith("{\"groupBy\":\"CUSTOMER\",\"lines\":[],\"total\":"), report.body());
+    }
+
+    /**
+     * Private method used to send a request to the server and wait for the answer.
+     *
+     * @param method the HTTP method
+     * @param path the path and query
+     * @param body the JSON request body, or null for none
+     * @return the response
+     */
+    private HttpResponse<String> send(String method, String path, String body)
+        throws IOException, InterruptedException
+    {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + path))
+            .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofString(body))
+            .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
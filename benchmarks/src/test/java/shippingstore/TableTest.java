@@ -0,0 +1,136 @@
+package shippingstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * This class tests that <CODE>Table</CODE> prints the same text as the
+ * <CODE>printf()</CODE> calls it replaced, whole, in slices and one page at a time.
+ *
+ * @author Emily Beaudoin
+ */
+class TableTest
+{
+    /** A table of numbers, one line each, as the show commands print them. */
+    private static final Table<Integer> NUMBERS = new Table<>("HEAD\n", "FOOT\n",
+        (out, n) -> Table.right(Table.left(out.append("| "), "N" + n, 8).append(" | "), n, 9).append(" |\n"));
+
+    @Test
+    void fieldsMatchPrintf()
+    {
+        long[] whole = {0, 7, -7, 42, 123456789, -1234567890, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long n : whole) {
+            assertEquals(String.format("%12d", n), Table.right(new StringBuilder(), n, 12).toString());
+            assertEquals(String.format("%d", n), Table.right(new StringBuilder(), n, 0).toString());
+            assertEquals(String.format("%09d", n), Table.zeroPadded(new StringBuilder(), n, 9).toString());
+        }
+
+        double[] decimals = {0, 0.005, 0.125, 1.5, 2.675, 12.345, -0.001, -0.0, -2.5, 1e10, 2342.23f,
+            Double.NaN, Double.POSITIVE_INFINITY};
+        for (double d : decimals) {
+            assertEquals(String.format("%10.2f", d), Table.fixed2(new StringBuilder(), d, 10).toString(),
+                Double.toString(d));
+            assertEquals(String.format("%.2f", d), Table.fixed2(new StringBuilder(), d, 0).toString());
+        }
+
+        assertEquals(String.format("%-8s|", "AB123"), Table.left(new StringBuilder(), "AB123", 8) + "|");
+        assertEquals(String.format("%8s", (Object) null), Table.right(new StringBuilder(), null, 8).toString());
+        assertEquals("too long", Table.left(new StringBuilder(), "too long", 3).toString());
+
+        Date date = new Date(1578009600000L);
+        assertEquals(String.format("%1$tm/%1$te/%1$tY", date), Table.date(new StringBuilder(), date).toString());
+        assertEquals("null/null/null", Table.date(new StringBuilder(), null).toString());
+    }
+
+    @Test
+    void largeTablesAreWrittenWhole() throws IOException
+    {
+        List<Integer> rows = numbers(10000);
+        StringBuilder expected = new StringBuilder("HEAD\n");
+        for (int n : rows) {
+            expected.append(String.format("| %-8s | %9d |%n", "N" + n, n).replace(System.lineSeparator(), "\n"));
+        }
+        expected.append("FOOT\n");
+
+        StringBuilder out = new StringBuilder();
+        assertEquals(10000, NUMBERS.write(rows, 0, Integer.MAX_VALUE, out));
+        assertEquals(expected.toString(), out.toString());
+    }
+
+    @Test
+    void slicesStopAtTheEndOfTheList() throws IOException
+    {
+        List<Integer> rows = numbers(5);
+
+        StringBuilder out = new StringBuilder();
+        assertEquals(2, NUMBERS.write(rows, 3, Integer.MAX_VALUE, out));
+        assertEquals("HEAD\n| N3       |         3 |\n| N4       |         4 |\nFOOT\n", out.toString());
+
+        out.setLength(0);
+        assertEquals(0, NUMBERS.write(rows, 9, 1, out));
+        assertEquals("HEAD\nFOOT\n", out.toString());
+
+        assertThrows(IllegalArgumentException.class, () -> NUMBERS.write(rows, -1, 1, new StringBuilder()));
+    }
+
+    @Test
+    void pagesHoldEveryRecordOnce() throws IOException
+    {
+        List<Integer> rows = numbers(25);
+        List<String> pages = new ArrayList<>();
+        NUMBERS.pages(rows, 10).forEachRemaining(pages::add);
+
+        assertEquals(3, pages.size());
+        for (int i = 0; i < pages.size(); i++) {
+            StringBuilder expected = new StringBuilder();
+            NUMBERS.write(rows, i * 10, 10, expected);
+            assertEquals(expected.toString(), pages.get(i));
+        }
+        assertTrue(pages.get(2).contains("N24 "));
+        assertFalse(pages.get(2).contains("N19 "));
+
+        // A list that fills its last page exactly has no empty page after it
+        List<String> exact = new ArrayList<>();
+        NUMBERS.pages(numbers(20), 10).forEachRemaining(exact::add);
+        assertEquals(2, exact.size());
+    }
+
+    @Test
+    void emptyListHasOneEmptyPage()
+    {
+        Iterator<String> pages = NUMBERS.pages(Collections.emptyList(), 10);
+        assertTrue(pages.hasNext());
+        assertEquals("HEAD\nFOOT\n", pages.next());
+        assertFalse(pages.hasNext());
+        assertThrows(NoSuchElementException.class, pages::next);
+
+        assertThrows(IllegalArgumentException.class, () -> NUMBERS.pages(numbers(1), 0));
+    }
+
+    /**
+     * Private method used to build the list 0, 1, ..., count - 1.
+     *
+     * @param count the size of the list
+     * @return the list
+     */
+    private static List<Integer> numbers(int count)
+    {
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(i);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,165 @@
+package shippingstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * This class tests that removing a package order or a user applies its
+ * <CODE>RemovalPolicy</CODE> to the transactions that refer to it, and that no
+ * transaction can be added for a package order or user that has been removed.
+ *
+ * @author Emily Beaudoin
+ */
+class TransactionReferenceTest
+{
+    @TempDir
+    Path directory;
+
+    private PackageDatabase packages;
+    private UserDatabase users;
+    private TransactionDatabase transactions;
+    private User customer;
+    private User employee;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        packages = new PackageDatabase(directory);
+        users = new UserDatabase(directory);
+        transactions = new TransactionDatabase(directory);
+        customer = users.insertUser("Customer", "Morty", "Smith", "123-124-5234", "PLACE", null);
+        employee = users.insertUser("Employee", "Rick", "Sanchez", "123456780", "2342.23", "1335664564");
+        assertNull(packages.insertOrder("AB123", "Box", "Books", "Priority", "12", "1728"));
+        assertNull(packages.insertOrder("CD456", "Box", "Books", "Priority", "12", "1728"));
+    }
+
+    @Test
+    void restrictRefusesReferencedPackage()
+    {
+        ship("AB123");
+
+        assertThrows(IllegalStateException.class,
+            () -> packages.deleteOrder("AB123", transactions, RemovalPolicy.RESTRICT));
+        assertNotNull(packages.getPackageOrder("AB123"));
+        assertTrue(transactions.isPackageReferenced("AB123"));
+
+        assertNotNull(packages.deleteOrder("CD456", transactions, RemovalPolicy.RESTRICT));
+        assertNull(packages.getPackageOrder("CD456"));
+    }
+
+    @Test
+    void restrictRefusesReferencedUser()
+    {
+        ship("AB123");
+        String id = Integer.toString(customer.getIdNumber());
+
+        assertThrows(IllegalStateException.class,
+            () -> users.deleteUser(id, transactions, RemovalPolicy.RESTRICT));
+        assertSame(customer, users.getUser(id));
+        assertTrue(transactions.isUserReferenced(customer.getIdNumber()));
+    }
+
+    @Test
+    void cascadedRemovalsAreReplayed() throws IOException
+    {
+        ship("AB123");
+        ship("CD456");
+
+        assertNotNull(packages.deleteOrder("AB123", transactions, RemovalPolicy.CASCADE));
+        assertFalse(transactions.isPackageReferenced("AB123"));
+
+        TransactionDatabase reopened = new TransactionDatabase(directory);
+        assertFalse(reopened.isPackageReferenced("AB123"));
+        assertTrue(reopened.isPackageReferenced("CD456"));
+        assertEquals(1, reopened.getTransactionsByCustomer(customer.getIdNumber()).size());
+    }
+
+    @Test
+    void removedPackageCannotBeShipped()
+    {
+        PackageOrder p = packages.getPackageOrder("AB123");
+        assertNotNull(packages.deleteOrder("AB123", transactions, RemovalPolicy.RESTRICT));
+
+        assertNull(transactions.insertTransaction(customer, employee, p, "01/01/20", "01/03/20", "12.50",
+            packages, users));
+        assertFalse(transactions.isPackageReferenced("AB123"));
+
+        // An order stored again under the same tracking number is a different order
+        assertNull(packages.insertOrder("AB123", "Box", "Books", "Priority", "12", "1728"));
+        assertNull(transactions.insertTransaction(customer, employee, p, "01/01/20", "01/03/20", "12.50",
+            packages, users));
+        assertFalse(transactions.isPackageReferenced("AB123"));
+    }
+
+    @Test
+    void removedUserCannotShip()
+    {
+        PackageOrder p = packages.getPackageOrder("AB123");
+        assertNotNull(users.deleteUser(Integer.toString(employee.getIdNumber()), transactions,
+            RemovalPolicy.RESTRICT));
+
+        assertNull(transactions.insertTransaction(customer, employee, p, "01/01/20", "01/03/20", "12.50",
+            packages, users));
+        assertEquals(0, transactions.getTransactionsByCustomer(customer.getIdNumber()).size());
+    }
+
+    @Test
+    void concurrentRemovalLeavesNoDanglingTransactions() throws InterruptedException
+    {
+        int orders = 500;
+        for (int i = 0; i < orders; i++) {
+            assertNull(packages.insertOrder(String.format("R%04d", i), "Box", "Books", "Priority", "12", "1728"));
+        }
+
+        Thread shipper = new Thread(() -> {
+            for (int i = 0; i < orders; i++) {
+                PackageOrder p = packages.getPackageOrder(String.format("R%04d", i));
+                if (p != null) {
+                    transactions.insertTransaction(customer, employee, p, "01/01/20", "01/03/20", "1.00",
+                        packages, users);
+                }
+            }
+        });
+        shipper.start();
+        for (int i = 0; i < orders; i++) {
+            String tn = String.format("R%04d", i);
+            try {
+                packages.deleteOrder(tn, transactions, RemovalPolicy.RESTRICT);
+            } catch (IllegalStateException e) {
+                // Shipped before it could be removed, so it stays
+            }
+        }
+        shipper.join();
+
+        for (int i = 0; i < orders; i++) {
+            String tn = String.format("R%04d", i);
+            if (packages.getPackageOrder(tn) == null) {
+                assertFalse(transactions.isPackageReferenced(tn), tn);
+            }
+        }
+    }
+
+    /**
+     * Private method used to add a transaction shipping a stored package order from
+     * the test employee to the test customer.
+     *
+     * @param trackingNumber the tracking number of the package order
+     */
+    private void ship(String trackingNumber)
+    {
+        assertNotNull(transactions.insertTransaction(customer, employee, packages.getPackageOrder(trackingNumber),
+            "01/01/20", "01/03/20", "12.50", packages, users));
+    }
+}
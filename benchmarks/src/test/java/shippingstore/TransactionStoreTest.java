@@ -0,0 +1,122 @@
+package shippingstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * This class tests adding, finding and removing transactions in a
+ * <CODE>TransactionStore</CODE>.
+ *
+ * @author Emily Beaudoin
+ */
+class TransactionStoreTest
+{
+    @Test
+    void addedTransactionsKeepTheirValues()
+    {
+        TransactionStore store = new TransactionStore(0);
+        store.add(transaction(100001, "AB123", 12.5f, 100002));
+        store.add(transaction(100003, "odd tracking #", 0.1f, 100002));
+
+        assertEquals(2, store.size());
+        Transaction t = store.byCustomer(100001).get(0);
+        assertEquals("AB123", t.getTrackingNumber());
+        assertEquals(day(1), t.getShippingDate());
+        assertEquals(day(3), t.getDeliverDate());
+        assertEquals(12.5f, t.getCost());
+        assertEquals(100002, t.getEmployeeId());
+
+        assertEquals(2, store.byEmployee(100002).size());
+        assertEquals(1, store.byTrackingNumber("ab123").size());
+        assertEquals(1, store.byTrackingNumber("odd tracking #").size());
+        assertEquals(2, store.shippedBetween(day(0), day(2)).size());
+    }
+
+    @Test
+    void storeGrowsPastItsCapacity()
+    {
+        TransactionStore store = new TransactionStore(16);
+        for (int i = 0; i < 1000; i++) {
+            store.add(transaction(100000 + i % 7, String.format("T%04d", i), i, 100002));
+        }
+
+        assertEquals(1000, store.size());
+        assertEquals(1000, store.all().size());
+        assertEquals(143, store.byCustomer(100000).size());
+    }
+
+    @Test
+    void removeTakesOneOfIdenticalRows()
+    {
+        TransactionStore store = new TransactionStore(0);
+        Transaction t = transaction(100001, "AB123", 12.5f, 100002);
+        store.add(t);
+        store.add(t);
+        List<Transaction> before = store.all();
+
+        assertTrue(store.remove(t));
+        assertEquals(1, store.size());
+        assertEquals(1, store.byTrackingNumber("AB123").size());
+        assertTrue(store.remove(t));
+        assertFalse(store.remove(t));
+        assertEquals(0, store.countByUser(100001));
+
+        // Views taken earlier do not change
+        assertEquals(2, before.size());
+    }
+
+    @Test
+    void removeByReferenceDropsEveryMatchingRow()
+    {
+        TransactionStore store = new TransactionStore(0);
+        store.add(transaction(100001, "AB123", 1, 100002));
+        store.add(transaction(100003, "AB123", 2, 100004));
+        store.add(transaction(100001, "CD456", 3, 100004));
+
+        assertEquals(2, store.countByTrackingNumber("AB123"));
+        assertEquals(2, store.removeByTrackingNumber("AB123").size());
+        assertEquals(0, store.countByTrackingNumber("AB123"));
+        assertEquals(1, store.size());
+
+        assertEquals(1, store.countByUser(100004));
+        assertEquals(1, store.removeByUser(100004).size());
+        assertEquals(0, store.size());
+        assertTrue(store.all().isEmpty());
+    }
+
+    /**
+     * Private method used to build a transaction shipped on day 1 and delivered on
+     * day 3 of January 2020.
+     *
+     * @param customer the ID # of the customer
+     * @param trackingNumber the tracking number of the package order
+     * @param cost the cost
+     * @param employee the ID # of the employee
+     * @return the transaction
+     */
+    private static Transaction transaction(int customer, String trackingNumber, float cost, int employee)
+    {
+        return new Transaction(customer, trackingNumber, day(1), day(3), cost, employee);
+    }
+
+    /**
+     * Private method used to get midnight of a day in January 2020, as the store
+     * keeps dates.
+     *
+     * @param day the day of the month
+     * @return the date
+     */
+    private static Date day(int day)
+    {
+        return Date.from(LocalDate.of(2020, 1, 1).plusDays(day - 1)
+            .atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
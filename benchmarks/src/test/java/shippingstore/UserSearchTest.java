@@ -0,0 +1,97 @@
+package shippingstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * This class tests that <CODE>UserDatabase.findUsersByName()</CODE> finds users by the
+ * starts of the words of their names, and that its <CODE>NameIndex</CODE> follows
+ * users as they are added, renamed and removed.
+ *
+ * @author Emily Beaudoin
+ */
+class UserSearchTest
+{
+    @TempDir
+    Path directory;
+
+    private UserDatabase users;
+    private User john;
+    private User joanna;
+    private User doe;
+    private User maryJane;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        users = new UserDatabase(directory);
+        john = customer("John", "Smith");
+        joanna = users.insertUser("Employee", "Joanna", "Smythe", "123456780", "2342.23", "1335664564");
+        doe = customer("John", "Doe");
+        maryJane = customer("Mary-Jane", "O'Neil");
+    }
+
+    @Test
+    void everyQueryWordMustStartANameWord()
+    {
+        assertEquals(List.of(joanna, john), users.findUsersByName("jo sm", 10));
+        assertEquals(List.of(john, doe), users.findUsersByName("JOHN", 10));
+        assertEquals(List.of(maryJane), users.findUsersByName("jane", 10));
+        assertEquals(List.of(maryJane), users.findUsersByName("oneil mary", 10));
+        assertEquals(List.of(maryJane), users.findUsersByName("O'Ne", 10));
+        assertTrue(users.findUsersByName("smithers", 10).isEmpty());
+        assertTrue(users.findUsersByName(" - , ", 10).isEmpty());
+    }
+
+    @Test
+    void eachUserComesOnceInWordOrder()
+    {
+        User jojo = customer("Jo", "Jones");
+
+        // The name word matching the longest query word orders the users
+        assertEquals(List.of(jojo, joanna, john, doe), users.findUsersByName("jo", 10));
+        assertEquals(List.of(jojo), users.findUsersByName("jo jones", 10));
+        assertEquals(2, users.findUsersByName("jo", 2).size());
+        assertTrue(users.findUsersByName("jo", 0).isEmpty());
+    }
+
+    @Test
+    void indexFollowsChangesAndReopening() throws IOException
+    {
+        assertNull(users.changeUserInfo(john, "Customer", "Last-name", "Smithson"));
+        assertEquals(List.of(john), users.findUsersByName("smithson", 10));
+        assertEquals(List.of(joanna), users.findUsersByName("smy", 10));
+
+        assertNotNull(users.deleteUser(Integer.toString(doe.getIdNumber())));
+        assertEquals(List.of(john), users.findUsersByName("john", 10));
+
+        List<Integer> ids = new ArrayList<>();
+        for (User user : new UserDatabase(directory).findUsersByName("j", 10)) {
+            ids.add(user.getIdNumber());
+        }
+        assertEquals(List.of(maryJane.getIdNumber(), joanna.getIdNumber(), john.getIdNumber()), ids);
+    }
+
+    /**
+     * Private method used to add a customer with the given name.
+     *
+     * @param firstName the first name
+     * @param lastName the last name
+     * @return the new customer
+     */
+    private User customer(String firstName, String lastName)
+    {
+        return users.insertUser("Customer", firstName, lastName, "123-124-5234", "PLACE", null);
+    }
+}
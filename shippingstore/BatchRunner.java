@@ -0,0 +1,402 @@
+package shippingstore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class runs a script of commands against the databases without any prompts,
+ * for replaying operations from other systems. Each line of the script is one
+ * command followed by its fields, separated by spaces; a field that contains spaces
+ * is written in double quotes, with a doubled quote standing for a quote character.
+ * Blank lines and lines starting with # are skipped. The commands are:
+ * <p>
+ * <CODE>add-package TYPE TRACKING# SPECIFICATION CLASS SPECIAL1 SPECIAL2</CODE>
+ * <br><CODE>remove-package TRACKING# [POLICY]</CODE>
+ * <br><CODE>find-package TRACKING#</CODE>
+ * <br><CODE>add-user Employee FIRST LAST SOCIAL SALARY ACCOUNT</CODE>
+ * <br><CODE>add-user Customer FIRST LAST PHONE ADDRESS</CODE>
+ * <br><CODE>remove-user ID [POLICY]</CODE>
+ * <br><CODE>find-user ID</CODE>
+ * <br><CODE>update-user ID FIELD VALUE</CODE>
+ * <br><CODE>add-transaction CUSTOMERID TRACKING# SHIP-DATE DELIVER-DATE COST EMPLOYEEID</CODE>
+ * <br><CODE>import CSV-FILE</CODE>
+ * <p>
+ * The fields are the same as the console takes and are checked by the same rules.
+ * POLICY is a <CODE>RemovalPolicy</CODE> name: <CODE>restrict</CODE> fails the command
+ * if a transaction still refers to the record, <CODE>cascade</CODE> removes those
+ * transactions too, and <CODE>unchecked</CODE>, the default, leaves them alone.
+ * The result of every command is written to the log as one JSON object per line:
+ * <CODE>{"line":N,"command":"...","ok":true,"result":{...}}</CODE> on success, where
+ * the result is the record added, found or removed, or
+ * <CODE>{"line":N,"command":"...","ok":false,"error":"..."}</CODE> otherwise. A last
+ * line counts the commands that succeeded and failed. A failed command does not stop
+ * the script.
+ *
+ * @author Emily Beaudoin
+ */
+final class BatchRunner
+{
+    private final PackageDatabase packages;
+    private final UserDatabase users;
+    private final TransactionDatabase transactions;
+
+    /**
+     * This class carries the reason a command failed out of the method running it.
+     */
+    private static class CommandException extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        CommandException(String message)
+        {
+            super(message);
+        }
+    }
+
+    /**
+     * This constructor sets up a runner for the given databases.
+     *
+     * @param packages the package order database
+     * @param users the user database
+     * @param transactions the transaction database
+     */
+    BatchRunner(PackageDatabase packages, UserDatabase users, TransactionDatabase transactions)
+    {
+        this.packages = packages;
+        this.users = users;
+        this.transactions = transactions;
+    }
+
+    /**
+     * This method runs every command of a script and logs the results. The log is
+     * written through a large buffer and is flushed once, at the end.
+     *
+     * @param script the script to run
+     * @param log the <CODE>Writer</CODE> to write the log to
+     * @return the number of commands that failed
+     * @throws IOException if the script cannot be read or the log cannot be written
+     */
+    int run(Reader script, Writer log) throws IOException
+    {
+        BufferedReader in = script instanceof BufferedReader
+            ? (BufferedReader) script : new BufferedReader(script, 1 << 16);
+        StringBuilder out = new StringBuilder(1 << 16);
+        StringWriter record = new StringWriter();
+        int lineNumber = 0;
+        int succeeded = 0;
+        int failed = 0;
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+
+            record.getBuffer().setLength(0);
+            List<String> fields = null;
+            try {
+                fields = split(trimmed);
+                run(fields, record);
+                succeeded++;
+                out.append("{\"line\":").append(lineNumber).append(",\"command\":");
+                appendString(out, fields.get(0));
+                out.append(",\"ok\":true,\"result\":").append(record.getBuffer()).append("}\n");
+            } catch (CommandException | RuntimeException e) {
+                failed++;
+                out.append("{\"line\":").append(lineNumber).append(",\"command\":");
+                appendString(out, fields == null ? null : fields.get(0));
+                out.append(",\"ok\":false,\"error\":");
+                appendString(out, e instanceof CommandException ? e.getMessage().trim() : e.toString());
+                out.append("}\n");
+            }
+
+            if (out.length() >= 1 << 16) {
+                log.append(out);
+                out.setLength(0);
+            }
+        }
+
+        out.append("{\"commands\":").append(succeeded + failed)
+            .append(",\"succeeded\":").append(succeeded)
+            .append(",\"failed\":").append(failed).append("}\n");
+        log.append(out);
+        log.flush();
+        return failed;
+    }
+
+    /**
+     * Private method used to run one command.
+     *
+     * @param fields the command name followed by its fields
+     * @param result the <CODE>Writer</CODE> to write the result object to
+     * @throws CommandException if the command is unknown or fails
+     */
+    private void run(List<String> fields, Writer result) throws CommandException, IOException
+    {
+        String command = fields.get(0);
+        switch (command) {
+            case "add-package": {
+                expect(fields, 7, "TYPE TRACKING# SPECIFICATION CLASS SPECIAL1 SPECIAL2");
+                String error = packages.insertOrder(fields.get(2), fields.get(1), fields.get(3),
+                    fields.get(4), fields.get(5), fields.get(6));
+                if (error != null) {
+                    throw new CommandException(error);
+                }
+                write(result, packages.getPackageOrder(fields.get(2)));
+                break;
+            }
+            case "remove-package": {
+                RemovalPolicy policy = policy(fields, "TRACKING# [POLICY]");
+                try {
+                    write(result, found(packages.deleteOrder(fields.get(1), transactions, policy), "package"));
+                } catch (IllegalStateException e) {
+                    throw new CommandException(e.getMessage());
+                }
+                break;
+            }
+            case "find-package": {
+                expect(fields, 2, "TRACKING#");
+                write(result, found(packages.getPackageOrder(fields.get(1)), "package"));
+                break;
+            }
+            case "add-user": {
+                User user;
+                if (fields.size() > 1 && fields.get(1).equals("Employee")) {
+                    expect(fields, 7, "Employee FIRST LAST SOCIAL SALARY ACCOUNT");
+                    String error = UserDatabase.validateUser("Employee", fields.get(4),
+                        fields.get(5), fields.get(6));
+                    if (error != null) {
+                        throw new CommandException(error);
+                    }
+                    user = users.insertUser("Employee", fields.get(2), fields.get(3),
+                        fields.get(4), fields.get(5), fields.get(6));
+                } else if (fields.size() > 1 && fields.get(1).equals("Customer")) {
+                    expect(fields, 6, "Customer FIRST LAST PHONE ADDRESS");
+                    user = users.insertUser("Customer", fields.get(2), fields.get(3),
+                        fields.get(4), fields.get(5), "");
+                } else {
+                    throw new CommandException("The user type must be Employee or Customer");
+                }
+                write(result, user);
+                break;
+            }
+            case "remove-user": {
+                RemovalPolicy policy = policy(fields, "ID [POLICY]");
+                try {
+                    write(result, found(users.deleteUser(fields.get(1), transactions, policy), "user"));
+                } catch (IllegalStateException e) {
+                    throw new CommandException(e.getMessage());
+                }
+                break;
+            }
+            case "find-user": {
+                expect(fields, 2, "ID");
+                write(result, found(users.getUser(fields.get(1)), "user"));
+                break;
+            }
+            case "update-user": {
+                expect(fields, 4, "ID FIELD VALUE");
+                User user = found(users.getUser(fields.get(1)), "user");
+                String error = users.changeUserInfo(user, users.getUserType(user), fields.get(2),
+                    fields.get(3));
+                if (error != null) {
+                    throw new CommandException(error);
+                }
+                write(result, user);
+                break;
+            }
+            case "add-transaction": {
+                expect(fields, 7, "CUSTOMERID TRACKING# SHIP-DATE DELIVER-DATE COST EMPLOYEEID");
+                User customer = found(users.getUser(fields.get(1)), "customer");
+                User employee = found(users.getUser(fields.get(6)), "employee");
+                PackageOrder order = found(packages.getPackageOrder(fields.get(2)), "package");
+                String error = TransactionDatabase.validateTransaction(customer, employee,
+                    fields.get(3), fields.get(4), fields.get(5));
+                if (error != null) {
+                    throw new CommandException(error);
+                }
+                Transaction t = transactions.insertTransaction(customer, employee, order,
+                    fields.get(3), fields.get(4), fields.get(5), packages, users);
+                if (t == null) {
+                    throw new CommandException(TransactionDatabase.REMOVED_REFERENCE);
+                }
+                Exporter.writeTransaction(result, ExportFormat.JSON, t);
+                trimNewline(result);
+                break;
+            }
+            case "import": {
+                expect(fields, 2, "CSV-FILE");
+                ImportReport report;
+                try (Reader reader = Files.newBufferedReader(Paths.get(fields.get(1)))) {
+                    report = packages.importOrders(reader);
+                } catch (IOException | InvalidPathException e) {
+                    throw new CommandException("Import failed: " + e.getMessage());
+                }
+                result.write('{');
+                Exporter.json(result, "linesRead", report.getLinesRead(), false);
+                Exporter.json(result, "added", report.getAdded(), true);
+                Exporter.json(result, "rejected", report.getRejected().size(), true);
+                result.write('}');
+                break;
+            }
+            default:
+                throw new CommandException("Unknown command " + command);
+        }
+    }
+
+    /**
+     * Private method used to check the number of fields of a command.
+     *
+     * @param fields the command name followed by its fields
+     * @param count the number of fields the command takes, its name included
+     * @param usage the fields the command takes, for the error message
+     * @throws CommandException if the number is wrong
+     */
+    private static void expect(List<String> fields, int count, String usage) throws CommandException
+    {
+        if (fields.size() != count) {
+            throw new CommandException("Expected: " + fields.get(0) + " " + usage);
+        }
+    }
+
+    /**
+     * Private method used to read the optional removal policy of a remove command,
+     * which is its third field.
+     *
+     * @param fields the command name followed by its fields
+     * @param usage the fields the command takes
+     * @return the policy, <CODE>UNCHECKED</CODE> if none is given
+     * @throws CommandException if there are too few or too many fields or the
+     * policy is unknown
+     */
+    private static RemovalPolicy policy(List<String> fields, String usage) throws CommandException
+    {
+        if (fields.size() == 2) {
+            return RemovalPolicy.UNCHECKED;
+        }
+        expect(fields, 3, usage);
+        RemovalPolicy policy = RemovalPolicy.fromName(fields.get(2));
+        if (policy == null) {
+            throw new CommandException("The removal policy must be unchecked, restrict or cascade");
+        }
+        return policy;
+    }
+
+    /**
+     * Private method used to fail a command when the record it names does not exist.
+     *
+     * @param record the record that was looked up, possibly null
+     * @param kind what kind of record it is
+     * @return the record
+     * @throws CommandException if the record is null
+     */
+    private static <T> T found(T record, String kind) throws CommandException
+    {
+        if (record == null) {
+            throw new CommandException("No " + kind + " found with that "
+                + (kind.equals("package") ? "tracking number" : "ID"));
+        }
+        return record;
+    }
+
+    /**
+     * Private method used to write a package order or user as a JSON object.
+     *
+     * @param result the <CODE>Writer</CODE> to write to
+     * @param record the <CODE>PackageOrder</CODE> or <CODE>User</CODE>
+     */
+    private static void write(Writer result, Object record) throws IOException
+    {
+        if (record instanceof PackageOrder) {
+            Exporter.writeOrder(result, ExportFormat.JSON, (PackageOrder) record);
+        } else {
+            Exporter.writeUser(result, ExportFormat.JSON, (User) record);
+        }
+        trimNewline(result);
+    }
+
+    /**
+     * Private method used to drop the line break <CODE>Exporter</CODE> writes after
+     * a record, so the record can be nested in a log line.
+     */
+    private static void trimNewline(Writer result)
+    {
+        StringBuffer buffer = ((StringWriter) result).getBuffer();
+        if (buffer.length() > 0 && buffer.charAt(buffer.length() - 1) == '\n') {
+            buffer.setLength(buffer.length() - 1);
+        }
+    }
+
+    /**
+     * Private method used to append a JSON string, or null.
+     */
+    private static void appendString(StringBuilder out, String s) throws IOException
+    {
+        if (s == null) {
+            out.append("null");
+            return;
+        }
+        StringWriter w = new StringWriter(s.length() + 2);
+        Exporter.jsonString(w, s);
+        out.append(w.getBuffer());
+    }
+
+    /**
+     * Private method used to split one line of a script into fields separated by spaces or
+     * tabs. A field may be enclosed in double quotes to hold spaces, in which case a
+     * doubled quote stands for a quote character.
+     *
+     * @param line the line
+     * @return the fields of the line
+     * @throws CommandException if a quoted field is not closed
+     */
+    private static List<String> split(String line) throws CommandException
+    {
+        List<String> fields = new ArrayList<>(8);
+        int i = 0;
+        int n = line.length();
+
+        while (i < n) {
+            char c = line.charAt(i);
+            if (c == ' ' || c == '\t') {
+                i++;
+                continue;
+            }
+
+            StringBuilder field = new StringBuilder();
+            if (c == '"') {
+                i++;
+                while (true) {
+                    if (i >= n) {
+                        throw new CommandException("Unclosed quote");
+                    }
+                    c = line.charAt(i++);
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < n && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+            } else {
+                while (i < n && line.charAt(i) != ' ' && line.charAt(i) != '\t') {
+                    field.append(line.charAt(i++));
+                }
+            }
+            fields.add(field.toString());
+        }
+        return fields;
+    }
+}
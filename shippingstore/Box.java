@@ -11,6 +11,8 @@ package shippingstore;
  */
 public class Box extends PackageOrder
 {
+	private static final long serialVersionUID = 6463271336765933204L;
+
 	private final int largestdimension; //in inches
 	private final int volume; //in inches cubed
 
@@ -68,4 +70,18 @@ public class Box extends PackageOrder
     public String toString() {
         return super.toString() + " " + largestdimension + " " + volume + "\n";
     }
+
+    /**
+     * This method builds a box with the given common fields and this box's own fields.
+     *
+     * @param trackingnumber the tracking number
+     * @param type the type of package, always "Box"
+     * @param specification the specification
+     * @param mailingclass the mailing class
+     * @return the new box
+     */
+    @Override
+    PackageOrder rebuild(String trackingnumber, String type, String specification, String mailingclass) {
+        return new Box(trackingnumber, specification, mailingclass, largestdimension, volume);
+    }
 }
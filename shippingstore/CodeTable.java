@@ -0,0 +1,141 @@
+package shippingstore;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is a dictionary that maps the few values a package order field can take
+ * to one byte codes, so an order can store a <CODE>byte</CODE> instead of a
+ * <CODE>String</CODE> for its type, specification, mailing class and drum material.
+ * Each table starts with the standard values the program accepts, in a fixed order,
+ * so their codes never change. Any other value met in an old database file or a
+ * journal is given the next free code the first time it is seen, so such records are
+ * kept exactly as they were.
+ * <p>
+ * The tables are safe to use from several threads.
+ *
+ * @author Emily Beaudoin
+ */
+final class CodeTable
+{
+    /** The package types: Envelope, Box, Crate and Drum. */
+    static final CodeTable TYPES = new CodeTable("Envelope", "Box", "Crate", "Drum");
+    /** The specifications: Fragile, Books, Catalogs, Do-not-Bend and N/A. */
+    static final CodeTable SPECIFICATIONS = new CodeTable("Fragile", "Books", "Catalogs",
+        "Do-not-Bend", "N/A");
+    /** The mailing classes: First-Class, Priority, Retail, Ground and Metro. */
+    static final CodeTable MAILING_CLASSES = new CodeTable("First-Class", "Priority", "Retail",
+        "Ground", "Metro");
+    /** The drum materials: Plastic and Fiber. */
+    static final CodeTable MATERIALS = new CodeTable("Plastic", "Fiber");
+
+    /** The code stored for a null value. */
+    static final byte NULL_CODE = -1;
+
+    private static final int MAX_CODES = Byte.MAX_VALUE + 1;
+
+    private final int standard;
+    private volatile String[] names;
+    private final ConcurrentHashMap<String, Byte> codes = new ConcurrentHashMap<>();
+
+    /**
+     * This constructor creates a table holding the given standard values, which get
+     * the codes 0, 1, 2 and so on.
+     *
+     * @param standardNames the standard values in code order
+     */
+    private CodeTable(String... standardNames)
+    {
+        this.standard = standardNames.length;
+        this.names = standardNames.clone();
+        for (int i = 0; i < standardNames.length; i++) {
+            codes.put(standardNames[i], (byte) i);
+        }
+    }
+
+    /**
+     * This method returns the code of a value, giving the value a new code if it has
+     * not been seen before.
+     *
+     * @param name the value, possibly null
+     * @return the code of the value, or <CODE>NULL_CODE</CODE> for null
+     * @throws IllegalStateException if the table has no free codes left
+     */
+    byte code(String name)
+    {
+        if (name == null) {
+            return NULL_CODE;
+        }
+        Byte code = codes.get(name);
+        return code != null ? code : add(name);
+    }
+
+    /**
+     * Private method used to give a value that is not in the table the next code.
+     *
+     * @param name the new value
+     * @return the code of the value
+     */
+    private synchronized byte add(String name)
+    {
+        Byte code = codes.get(name);
+        if (code != null) {
+            return code;
+        }
+        if (names.length == MAX_CODES) {
+            throw new IllegalStateException("Too many distinct values, cannot add " + name);
+        }
+
+        String[] grown = Arrays.copyOf(names, names.length + 1);
+        grown[names.length] = name;
+        names = grown;
+        codes.put(name, (byte) (grown.length - 1));
+        return (byte) (grown.length - 1);
+    }
+
+    /**
+     * This method returns the value of a code.
+     *
+     * @param code a code returned by <CODE>code()</CODE>
+     * @return the value, or null for <CODE>NULL_CODE</CODE>
+     */
+    String name(byte code)
+    {
+        return code == NULL_CODE ? null : names[code];
+    }
+
+    /**
+     * This method returns the code of a value without adding it to the table, for
+     * filtering on a value that may not exist.
+     *
+     * @param name the value
+     * @return the code of the value, or -1 if it is not in the table
+     */
+    int find(String name)
+    {
+        Byte code = name == null ? null : codes.get(name);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * This method tells whether a value is one of the standard values of the table.
+     *
+     * @param name the value
+     * @return true if the value is standard
+     */
+    boolean isStandard(String name)
+    {
+        int code = find(name);
+        return code >= 0 && code < standard;
+    }
+
+    /**
+     * This method returns the number of codes in use, standard or not.
+     *
+     * @return the number of codes
+     */
+    int size()
+    {
+        return names.length;
+    }
+}
@@ -11,6 +11,8 @@ package shippingstore;
  */
 public class Crate extends PackageOrder
 {
+	private static final long serialVersionUID = -5293863179323896817L;
+
 	private final Float loadweight;
 	private final String content;
 
@@ -68,4 +70,18 @@ public class Crate extends PackageOrder
     public String toString() {
         return super.toString() + " " + loadweight + " " + content + "\n";
     }
+
+    /**
+     * This method builds a crate with the given common fields and this crate's own fields.
+     *
+     * @param trackingnumber the tracking number
+     * @param type the type of package, always "Crate"
+     * @param specification the specification
+     * @param mailingclass the mailing class
+     * @return the new crate
+     */
+    @Override
+    PackageOrder rebuild(String trackingnumber, String type, String specification, String mailingclass) {
+        return new Crate(trackingnumber, specification, mailingclass, loadweight, content);
+    }
 }
@@ -0,0 +1,57 @@
+package shippingstore;
+
+import java.util.ArrayList;
+
+/**
+ * This class holds the small amount of CSV handling the import and export commands
+ * need. Fields are separated by commas and may be enclosed in double quotes, in
+ * which case a doubled quote stands for a quote character.
+ *
+ * @author Emily Beaudoin
+ */
+final class Csv
+{
+    /**
+     * Private constructor; this class only has static methods.
+     */
+    private Csv()
+    {
+    }
+
+    /**
+     * This method splits one line of CSV text into its fields.
+     *
+     * @param line the line, without its line terminator
+     * @return the fields of the line, with quotes removed
+     */
+    static String[] split(String line)
+    {
+        ArrayList<String> fields = new ArrayList<>(8);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+
+        return fields.toArray(new String[0]);
+    }
+}
@@ -1,19 +1,37 @@
 package shippingstore;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+
 /**
  * This class is a specialized representation of a package order, specific to drums. 
  * There are only getter methods and no setter methods and as a result an drum package 
  * cannot be mutated once initialized. A drum package order object can also call the two 
  * override methods via inheritance from PackageOrder
  * <CODE>toString()</CODE> and <CODE>equals()</CODE>
+ * <p>
+ * The material is stored as a one byte code from <CODE>CodeTable.MATERIALS</CODE>. The
+ * serialized form holds it as a string.
  *
  * @author Emily Beaudoin
  */
 public class Drum extends PackageOrder
 {
-	private final String material;
+	private static final long serialVersionUID = -1489978814675275254L;
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("diameter", int.class),
+		new ObjectStreamField("material", String.class)
+	};
+
+	private final byte material;
 	private final int diameter;
 
+	/** The material and diameter read from a stream, until the drum is rebuilt. */
+	private transient String serializedMaterial;
+	private transient int serializedDiameter;
+
     /**
      * This constructor initializes the drum object. The constructor provides no
      * user input validation. That should be handled by the class that creates a
@@ -36,7 +54,7 @@ public class Drum extends PackageOrder
      */
 	public Drum (String trackingnumber, String specification, String mailingclass, String material, int diameter){
 		super(trackingnumber, "Drum", specification, mailingclass);
-		this.material = material;
+		this.material = CodeTable.MATERIALS.code(material);
 		this.diameter = diameter;
 	}
 
@@ -46,6 +64,15 @@ public class Drum extends PackageOrder
      * @return a <b><CODE>String</CODE></b> that is the drum's material.
      */
 	public String getMaterial(){
+		return CodeTable.MATERIALS.name(material);
+	}
+
+	/**
+     * This method returns the code of the drum's material in <CODE>CodeTable.MATERIALS</CODE>.
+     *
+     * @return a <b><CODE>byte</CODE></b> that is the material code.
+     */
+	byte getMaterialCode(){
 		return material;
 	}
 
@@ -66,6 +93,48 @@ public class Drum extends PackageOrder
      */
     @Override
     public String toString() {
-        return super.toString() + " " + material + " " + diameter + "\n";
+        return super.toString() + " " + getMaterial() + " " + diameter + "\n";
+    }
+
+    /**
+     * Private method used by serialization to write the material as a string.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("material", getMaterial());
+        fields.put("diameter", diameter);
+        out.writeFields();
+    }
+
+    /**
+     * Private method used by serialization to keep the material and diameter until
+     * <CODE>readResolve()</CODE> rebuilds the drum.
+     *
+     * @param in the stream to read from
+     * @throws IOException if the stream cannot be read
+     * @throws ClassNotFoundException if a class in the stream cannot be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        serializedMaterial = (String) fields.get("material", null);
+        serializedDiameter = fields.get("diameter", 0);
+    }
+
+    /**
+     * This method builds a drum with the given common fields and the material and
+     * diameter read from the stream.
+     *
+     * @param trackingnumber the tracking number
+     * @param type the type of package, always "Drum"
+     * @param specification the specification
+     * @param mailingclass the mailing class
+     * @return the new drum
+     */
+    @Override
+    PackageOrder rebuild(String trackingnumber, String type, String specification, String mailingclass) {
+        return new Drum(trackingnumber, specification, mailingclass, serializedMaterial, serializedDiameter);
     }
 }
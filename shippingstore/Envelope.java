@@ -11,6 +11,8 @@ package shippingstore;
  */
 public class Envelope extends PackageOrder
 {
+	private static final long serialVersionUID = -1929519672946084817L;
+
 	private final int height;
 	private final int width;
 
@@ -68,4 +70,18 @@ public class Envelope extends PackageOrder
     public String toString() {
         return super.toString() + " " + height + " " + width + "\n";
     }
+
+    /**
+     * This method builds an envelope with the given common fields and this envelope's own fields.
+     *
+     * @param trackingnumber the tracking number
+     * @param type the type of package, always "Envelope"
+     * @param specification the specification
+     * @param mailingclass the mailing class
+     * @return the new envelope
+     */
+    @Override
+    PackageOrder rebuild(String trackingnumber, String type, String specification, String mailingclass) {
+        return new Envelope(trackingnumber, specification, mailingclass, height, width);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package shippingstore;
+
+/**
+ * This enum lists the formats the databases can be exported in.
+ *
+ * @author Emily Beaudoin
+ */
+public enum ExportFormat
+{
+    /** Comma separated values with a header line. */
+    CSV,
+    /** JSON Lines: one JSON object per line. */
+    JSON
+}
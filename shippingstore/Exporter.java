@@ -0,0 +1,319 @@
+package shippingstore;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * This class writes package orders, users and transactions as CSV or JSON Lines for
+ * the export methods of the database classes. Each record is written straight to the
+ * given <CODE>Writer</CODE>, so an export never holds more than one row in memory.
+ * <p>
+ * The CSV columns for package orders are the same as the ones
+ * <CODE>PackageDatabase.importOrders()</CODE> reads, so an export can be imported
+ * again. Dates are written as <CODE>yyyy-mm-dd</CODE>.
+ *
+ * @author Emily Beaudoin
+ */
+final class Exporter
+{
+    /**
+     * Private constructor; this class only has static methods.
+     */
+    private Exporter()
+    {
+    }
+
+    /**
+     * This method writes the CSV header line for package orders; JSON Lines has no
+     * header.
+     *
+     * @param out the <CODE>Writer</CODE> to write to
+     * @param format the export format
+     * @throws IOException if the writer fails
+     */
+    static void writeOrderHeader(Writer out, ExportFormat format) throws IOException
+    {
+        if (format == ExportFormat.CSV) {
+            out.write("Type,Tracking#,Specification,Class,Special1,Special2\n");
+        }
+    }
+
+    /**
+     * This method writes one package order.
+     *
+     * @param out the <CODE>Writer</CODE> to write to
+     * @param format the export format
+     * @param p the <CODE>PackageOrder</CODE> to write
+     * @throws IOException if the writer fails
+     */
+    static void writeOrder(Writer out, ExportFormat format, PackageOrder p) throws IOException
+    {
+        String name1;
+        String name2;
+        Object value1;
+        Object value2;
+        if (p instanceof Envelope) {
+            name1 = "height";
+            value1 = ((Envelope) p).getHeight();
+            name2 = "width";
+            value2 = ((Envelope) p).getWidth();
+        } else if (p instanceof Box) {
+            name1 = "largestDimension";
+            value1 = ((Box) p).getLargestDimension();
+            name2 = "volume";
+            value2 = ((Box) p).getVolume();
+        } else if (p instanceof Crate) {
+            name1 = "loadWeight";
+            value1 = ((Crate) p).getLoadWeight();
+            name2 = "content";
+            value2 = ((Crate) p).getContent();
+        } else {
+            name1 = "material";
+            value1 = ((Drum) p).getMaterial();
+            name2 = "diameter";
+            value2 = ((Drum) p).getDiameter();
+        }
+
+        if (format == ExportFormat.CSV) {
+            csv(out, p.getType(), false);
+            csv(out, p.getTrackingNumber(), true);
+            csv(out, p.getSpecification(), true);
+            csv(out, p.getMailingClass(), true);
+            csv(out, value1, true);
+            csv(out, value2, true);
+            out.write('\n');
+        } else {
+            out.write('{');
+            json(out, "type", p.getType(), false);
+            json(out, "trackingNumber", p.getTrackingNumber(), true);
+            json(out, "specification", p.getSpecification(), true);
+            json(out, "mailingClass", p.getMailingClass(), true);
+            json(out, name1, value1, true);
+            json(out, name2, value2, true);
+            out.write("}\n");
+        }
+    }
+
+    /**
+     * This method writes the CSV header line for users; JSON Lines has no header.
+     *
+     * @param out the <CODE>Writer</CODE> to write to
+     * @param format the export format
+     * @throws IOException if the writer fails
+     */
+    static void writeUserHeader(Writer out, ExportFormat format) throws IOException
+    {
+        if (format == ExportFormat.CSV) {
+            out.write("Type,ID#,First-name,Last-name,Phone,Address,Social,Salary,Account\n");
+        }
+    }
+
+    /**
+     * This method writes one user. Customers leave the employee columns empty and
+     * employees leave the customer columns empty.
+     *
+     * @param out the <CODE>Writer</CODE> to write to
+     * @param format the export format
+     * @param u the <CODE>User</CODE> to write
+     * @throws IOException if the writer fails
+     */
+    static void writeUser(Writer out, ExportFormat format, User u) throws IOException
+    {
+        boolean customer = u instanceof Customer;
+        String type = customer ? "Customer" : "Employee";
+
+        if (format == ExportFormat.CSV) {
+            csv(out, type, false);
+            csv(out, u.getIdNumber(), true);
+            csv(out, u.getFirstName(), true);
+            csv(out, u.getLastName(), true);
+            if (customer) {
+                csv(out, ((Customer) u).getPhone(), true);
+                csv(out, ((Customer) u).getAddress(), true);
+                out.write(",,,");
+            } else {
+                out.write(",,");
+                csv(out, String.format("%09d", ((Employee) u).getSocial()), true);
+                csv(out, ((Employee) u).getSalary(), true);
+                csv(out, ((Employee) u).getAccount(), true);
+            }
+            out.write('\n');
+        } else {
+            out.write('{');
+            json(out, "type", type, false);
+            json(out, "id", u.getIdNumber(), true);
+            json(out, "firstName", u.getFirstName(), true);
+            json(out, "lastName", u.getLastName(), true);
+            if (customer) {
+                json(out, "phone", ((Customer) u).getPhone(), true);
+                json(out, "address", ((Customer) u).getAddress(), true);
+            } else {
+                json(out, "social", String.format("%09d", ((Employee) u).getSocial()), true);
+                json(out, "salary", ((Employee) u).getSalary(), true);
+                json(out, "account", ((Employee) u).getAccount(), true);
+            }
+            out.write("}\n");
+        }
+    }
+
+    /**
+     * This method writes the CSV header line for transactions; JSON Lines has no
+     * header.
+     *
+     * @param out the <CODE>Writer</CODE> to write to
+     * @param format the export format
+     * @throws IOException if the writer fails
+     */
+    static void writeTransactionHeader(Writer out, ExportFormat format) throws IOException
+    {
+        if (format == ExportFormat.CSV) {
+            out.write("Customer ID,Tracking#,Ship Date,Deliver Date,Cost,Employee ID\n");
+        }
+    }
+
+    /**
+     * This method writes one transaction.
+     *
+     * @param out the <CODE>Writer</CODE> to write to
+     * @param format the export format
+     * @param t the <CODE>Transaction</CODE> to write
+     * @throws IOException if the writer fails
+     */
+    static void writeTransaction(Writer out, ExportFormat format, Transaction t) throws IOException
+    {
+        if (format == ExportFormat.CSV) {
+            csv(out, t.getCustomerId(), false);
+            csv(out, t.getTrackingNumber(), true);
+            csv(out, date(t.getShippingDate()), true);
+            csv(out, date(t.getDeliverDate()), true);
+            csv(out, t.getCost(), true);
+            csv(out, t.getEmployeeId(), true);
+            out.write('\n');
+        } else {
+            out.write('{');
+            json(out, "customerId", t.getCustomerId(), false);
+            json(out, "trackingNumber", t.getTrackingNumber(), true);
+            json(out, "shippingDate", date(t.getShippingDate()), true);
+            json(out, "deliverDate", date(t.getDeliverDate()), true);
+            json(out, "cost", t.getCost(), true);
+            json(out, "employeeId", t.getEmployeeId(), true);
+            out.write("}\n");
+        }
+    }
+
+    /**
+     * Private method used to format a date as <CODE>yyyy-mm-dd</CODE> in the local
+     * time zone, which is the zone the dates were entered in.
+     *
+     * @param d the date, possibly null
+     * @return the formatted date, or null
+     */
+    private static String date(Date d)
+    {
+        return d == null ? null : d.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().toString();
+    }
+
+    /**
+     * Private method used to write one CSV field, quoting it if it contains a comma,
+     * quote or line break.
+     *
+     * @param out the <CODE>Writer</CODE> to write to
+     * @param value the field value, possibly null
+     * @param separator whether to write a comma before the field
+     * @throws IOException if the writer fails
+     */
+    private static void csv(Writer out, Object value, boolean separator) throws IOException
+    {
+        if (separator) {
+            out.write(',');
+        }
+        if (value == null) {
+            return;
+        }
+
+        String s = value.toString();
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = (c == ',' || c == '"' || c == '\n' || c == '\r');
+        }
+
+        if (!quote) {
+            out.write(s);
+            return;
+        }
+        out.write('"');
+        out.write(s.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    /**
+     * Private method used to write one JSON member. Numbers are written bare and
+     * everything else as an escaped string.
+     *
+     * @param out the <CODE>Writer</CODE> to write to
+     * @param name the member name
+     * @param value the member value, possibly null
+     * @param separator whether to write a comma before the member
+     * @throws IOException if the writer fails
+     */
+    static void json(Writer out, String name, Object value, boolean separator) throws IOException
+    {
+        if (separator) {
+            out.write(',');
+        }
+        out.write('"');
+        out.write(name);
+        out.write("\":");
+
+        if (value == null) {
+            out.write("null");
+        } else if (value instanceof Number) {
+            out.write(value.toString());
+        } else {
+            jsonString(out, value.toString());
+        }
+    }
+
+    /**
+     * This method writes a JSON string literal with the characters JSON requires
+     * escaped.
+     *
+     * @param out the <CODE>Writer</CODE> to write to
+     * @param s the string to write
+     * @throws IOException if the writer fails
+     */
+    static void jsonString(Writer out, String s) throws IOException
+    {
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,21 @@
+package shippingstore;
+
+/**
+ * This enum lists the ways <CODE>TransactionDatabase.aggregate()</CODE> can group
+ * transactions in a <CODE>RevenueReport</CODE>.
+ *
+ * @author Emily Beaudoin
+ */
+public enum GroupBy
+{
+    /** One line per employee ID #. */
+    EMPLOYEE,
+    /** One line per customer ID #. */
+    CUSTOMER,
+    /** One line per mailing class of the shipped package. */
+    MAILING_CLASS,
+    /** One line per type of the shipped package. */
+    PACKAGE_TYPE,
+    /** One line per calendar month of the shipping date. */
+    SHIP_MONTH
+}
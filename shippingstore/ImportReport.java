@@ -0,0 +1,134 @@
+package shippingstore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class is the outcome of a bulk import: how many lines were read, how many
+ * records were added, and which lines were rejected and why. Rejected lines are
+ * listed in line number order.
+ *
+ * @author Emily Beaudoin
+ */
+public class ImportReport
+{
+    private int linesRead;
+    private int added;
+    private final ArrayList<Rejection> rejected = new ArrayList<>();
+
+    /**
+     * This class describes one rejected input line.
+     */
+    public static class Rejection implements Comparable<Rejection>
+    {
+        private final int line;
+        private final String reason;
+
+        /**
+         * This constructor records a rejected line.
+         *
+         * @param line the line number, starting at 1
+         * @param reason why the line was rejected
+         */
+        Rejection(int line, String reason)
+        {
+            this.line = line;
+            this.reason = reason;
+        }
+
+        /**
+         * This method returns the number of the rejected line.
+         *
+         * @return an <b><CODE>int</CODE></b> line number, starting at 1
+         */
+        public int getLine()
+        {
+            return line;
+        }
+
+        /**
+         * This method returns why the line was rejected.
+         *
+         * @return a <b><CODE>String</CODE></b> reason on a single line
+         */
+        public String getReason()
+        {
+            return reason;
+        }
+
+        @Override
+        public int compareTo(Rejection r)
+        {
+            return Integer.compare(line, r.line);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "line " + line + ": " + reason;
+        }
+    }
+
+    /**
+     * Package-private method used by the importer to count a non-blank data line.
+     */
+    void lineRead()
+    {
+        linesRead++;
+    }
+
+    /**
+     * Package-private method used by the importer to record records added.
+     *
+     * @param count the number of records added
+     */
+    void added(int count)
+    {
+        added += count;
+    }
+
+    /**
+     * Package-private method used by the importer to record a rejected line. The
+     * multi-line messages of the validation methods are folded onto one line.
+     *
+     * @param line the line number
+     * @param reason why the line was rejected
+     */
+    void reject(int line, String reason)
+    {
+        rejected.add(new Rejection(line, reason.trim().replaceAll("\\s*\n\\s*", " ")));
+    }
+
+    /**
+     * This method returns the number of data lines read, not counting blank lines
+     * or a header.
+     *
+     * @return the number of lines read
+     */
+    public int getLinesRead()
+    {
+        return linesRead;
+    }
+
+    /**
+     * This method returns the number of records added to the database.
+     *
+     * @return the number of records added
+     */
+    public int getAdded()
+    {
+        return added;
+    }
+
+    /**
+     * This method returns the rejected lines in line number order.
+     *
+     * @return a read-only <CODE>List</CODE> of rejections
+     */
+    public List<Rejection> getRejected()
+    {
+        Collections.sort(rejected);
+        return Collections.unmodifiableList(rejected);
+    }
+}
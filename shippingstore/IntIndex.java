@@ -0,0 +1,225 @@
+package shippingstore;
+
+import java.util.Arrays;
+
+/**
+ * This class is a small hash index from primitive <CODE>int</CODE> keys to objects. It
+ * is used by the database classes to look records up by their numeric ID without
+ * boxing every key into an <CODE>Integer</CODE>. Keys are stored in a plain
+ * <CODE>int</CODE> array with open addressing and linear probing, and the table
+ * doubles in size once it is half full.
+ * <p>
+ * The index is not synchronized; the owning database is responsible for guarding it.
+ *
+ * @param <V> the type of the indexed values
+ *
+ * @author Emily Beaudoin
+ */
+final class IntIndex<V>
+{
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    /**
+     * This interface is implemented by the callers of <CODE>forEach()</CODE> to receive
+     * the entries of the index.
+     *
+     * @param <V> the type of the indexed values
+     */
+    interface EntryConsumer<V>
+    {
+        /**
+         * This method receives one entry.
+         *
+         * @param key the key
+         * @param value the value stored under the key
+         */
+        void accept(int key, V value);
+    }
+
+    /**
+     * This constructor creates an empty index sized for the expected number of keys.
+     *
+     * @param expectedSize the number of keys the index should hold without resizing
+     */
+    IntIndex(int expectedSize)
+    {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    /**
+     * Private method used to spread the bits of a key before it is mapped to a slot.
+     *
+     * @param key the key to hash
+     * @param mask the table size minus one
+     * @return the home slot of the key
+     */
+    private static int slot(int key, int mask)
+    {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * This method returns the value stored under a key.
+     *
+     * @param key the <CODE>int</CODE> key to look up
+     * @return the value, or null if the key is not in the index
+     */
+    @SuppressWarnings("unchecked")
+    V get(int key)
+    {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * This method checks whether a key is in the index.
+     *
+     * @param key the <CODE>int</CODE> key to look up
+     * @return true if the key has a value
+     */
+    boolean containsKey(int key)
+    {
+        return get(key) != null;
+    }
+
+    /**
+     * This method stores a value under a key, replacing any previous value.
+     *
+     * @param key the <CODE>int</CODE> key
+     * @param value the value to store, which must not be null
+     * @return the previous value, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    V put(int key, V value)
+    {
+        if (value == null) {
+            throw new NullPointerException("IntIndex does not store null values");
+        }
+
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) {
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * This method removes a key from the index. Entries following the removed slot
+     * are shifted back so that lookups never need tombstones.
+     *
+     * @param key the <CODE>int</CODE> key to remove
+     * @return the removed value, or null if the key was not in the index
+     */
+    @SuppressWarnings("unchecked")
+    V remove(int key)
+    {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (values[i] == null) {
+            return null;
+        }
+
+        V old = (V) values[i];
+        size--;
+
+        // Shift back any entry whose probe sequence passes through the freed slot
+        int free = i;
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - free) & mask)) {
+                keys[free] = keys[j];
+                values[free] = values[j];
+                free = j;
+            }
+        }
+        values[free] = null;
+        return old;
+    }
+
+    /**
+     * This method returns the number of keys in the index.
+     *
+     * @return the number of keys
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * This method hands every entry of the index to the given consumer, in no
+     * particular order. The index must not be changed while this runs.
+     *
+     * @param action the consumer that receives the entries
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(EntryConsumer<? super V> action)
+    {
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                action.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    /**
+     * This method removes every key from the index.
+     */
+    void clear()
+    {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Private method used to rehash every entry into a larger table.
+     *
+     * @param capacity the new table size, a power of two
+     */
+    private void resize(int capacity)
+    {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] != null) {
+                int i = slot(oldKeys[j], mask);
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+}
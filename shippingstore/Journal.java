@@ -0,0 +1,375 @@
+package shippingstore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * This class is an append-only journal of the changes made to one database since its
+ * last snapshot was written by <CODE>flush()</CODE>. Every add, remove or update is
+ * appended as a single record, so the cost of a write follows the size of the change
+ * rather than the size of the database. When the database is opened again the
+ * journal is replayed over the snapshot to recover changes from a session that never
+ * reached <CODE>flush()</CODE>.
+ * <p>
+ * Each record is laid out as a 4 byte length, a 1 byte operation code, an 8 byte
+ * sequence number, the payload, and a CRC32 of the operation code, sequence number
+ * and payload. Sequence numbers go up by one with every record and keep counting
+ * across <CODE>discardBefore()</CODE> and <CODE>reset()</CODE>. A snapshot stores
+ * the sequence number of the last record it covers, and <CODE>replay()</CODE> skips
+ * the records up to it, so records left behind by a crash between writing a
+ * snapshot and discarding them are not applied twice. A record that was only partly
+ * written when the program died fails its length or checksum test; replay stops
+ * there and the torn tail is cut off. Payloads are encoded with
+ * <CODE>RecordCodec</CODE>.
+ * <p>
+ * Records are always handed to the operating system as soon as they are appended.
+ * They are forced to disk (group commit) every <CODE>shippingstore.journal.syncEvery</CODE>
+ * records, a system property which defaults to 1, unless the database sets its own
+ * value with <CODE>setSyncEvery()</CODE>. A value of 0 leaves forcing to
+ * <CODE>sync()</CODE> and <CODE>close()</CODE>.
+ *
+ * @author Emily Beaudoin
+ */
+final class Journal
+{
+    /** Operation code for a record that was added. */
+    static final byte ADD = 1;
+    /** Operation code for a record that was removed. */
+    static final byte REMOVE = 2;
+    /** Operation code for a record that was changed in place. */
+    static final byte UPDATE = 3;
+
+    private static final int HEADER_SIZE = 13;
+    private static final int TRAILER_SIZE = 4;
+
+    /**
+     * This interface is implemented by the databases to apply journal records while
+     * the journal is being replayed.
+     */
+    interface Replayer
+    {
+        /**
+         * This method applies one journal record.
+         *
+         * @param op the operation code of the record
+         * @param payload the payload bytes of the record
+         * @throws IOException if the payload cannot be decoded
+         */
+        void replay(byte op, byte[] payload) throws IOException;
+    }
+
+    private final String fileName;
+    private FileChannel channel;
+    private int syncEvery;
+    private long end;
+    private int unsynced;
+    private long sequence;
+
+    /**
+     * This constructor opens the journal file, creating it if it does not exist.
+     * <CODE>replay()</CODE> should be called before anything is appended.
+     *
+     * @param fileName the name of the journal file
+     * @throws IOException if the file cannot be opened
+     */
+    Journal(String fileName) throws IOException
+    {
+        this.fileName = fileName;
+        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.syncEvery = Math.max(0, Integer.getInteger("shippingstore.journal.syncEvery", 1));
+        this.end = channel.size();
+    }
+
+    /**
+     * This method reads every complete record in the journal, in the order they
+     * were written, and hands each record after the given sequence number to the
+     * given replayer. Anything after the last complete record is truncated so new
+     * records start on a clean boundary, and new records are numbered after both
+     * the last record read and the given sequence number.
+     *
+     * @param covered the sequence number of the last record the snapshot holds, or 0
+     * @param replayer the <CODE>Replayer</CODE> that applies each record
+     * @return the number of records replayed
+     * @throws IOException if the journal cannot be read
+     */
+    int replay(long covered, Replayer replayer) throws IOException
+    {
+        long size = channel.size();
+        long position = 0;
+        int count = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        CRC32 crc = new CRC32();
+
+        while (position + HEADER_SIZE + TRAILER_SIZE <= size) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            int length = header.getInt();
+            byte op = header.get();
+            long number = header.getLong();
+
+            if (length < 0 || position + HEADER_SIZE + length + TRAILER_SIZE > size) {
+                break;
+            }
+
+            ByteBuffer body = ByteBuffer.allocate(length + TRAILER_SIZE);
+            readFully(body, position + HEADER_SIZE);
+            body.flip();
+            byte[] payload = new byte[length];
+            body.get(payload);
+
+            crc.reset();
+            crc.update(header.array(), 4, HEADER_SIZE - 4);
+            crc.update(payload);
+            if ((int) crc.getValue() != body.getInt()) {
+                break;
+            }
+
+            // Records up to the snapshot's are already in it
+            if (number > covered) {
+                replayer.replay(op, payload);
+                count++;
+            }
+            sequence = Math.max(sequence, number);
+            position += HEADER_SIZE + length + TRAILER_SIZE;
+        }
+        sequence = Math.max(sequence, covered);
+
+        if (position < size) {
+            System.out.println(fileName + " ends with an incomplete record, discarding it . . .");
+            channel.truncate(position);
+        }
+        end = position;
+        return count;
+    }
+
+    /**
+     * Private method used to fill a buffer from the given file position.
+     *
+     * @param buffer the buffer to fill
+     * @param position the file position to read from
+     * @throws IOException if the file ends first
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of " + fileName);
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * This method appends one record to the end of the journal and forces the
+     * journal to disk if the group commit size has been reached.
+     *
+     * @param op the operation code
+     * @param payload the encoded record
+     * @throws IOException if the record cannot be written
+     */
+    void append(byte op, byte[] payload) throws IOException
+    {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length + TRAILER_SIZE);
+        put(record, op, payload, new CRC32());
+        record.flip();
+
+        while (record.hasRemaining()) {
+            end += channel.write(record, end);
+        }
+
+        if (syncEvery > 0 && ++unsynced >= syncEvery) {
+            sync();
+        }
+    }
+
+    /**
+     * This method appends a batch of records with the same operation code in one
+     * write and forces them to disk together, as used by bulk imports.
+     *
+     * @param op the operation code
+     * @param payloads the encoded records
+     * @throws IOException if the records cannot be written
+     */
+    void appendAll(byte op, List<byte[]> payloads) throws IOException
+    {
+        ByteBuffer batch = ByteBuffer.allocate(1 << 16);
+        CRC32 crc = new CRC32();
+
+        for (byte[] payload : payloads) {
+            int size = HEADER_SIZE + payload.length + TRAILER_SIZE;
+            if (batch.remaining() < size) {
+                writeBatch(batch);
+                if (batch.capacity() < size) {
+                    batch = ByteBuffer.allocate(size);
+                }
+            }
+
+            put(batch, op, payload, crc);
+        }
+        writeBatch(batch);
+
+        if (syncEvery > 0) {
+            sync();
+        }
+    }
+
+    /**
+     * Private method used to lay out one record in a buffer under the next sequence
+     * number.
+     *
+     * @param buffer the buffer to put the record in
+     * @param op the operation code
+     * @param payload the encoded record
+     * @param crc the checksum to compute the trailer with
+     */
+    private void put(ByteBuffer buffer, byte op, byte[] payload, CRC32 crc)
+    {
+        int start = buffer.position();
+        buffer.putInt(payload.length).put(op).putLong(++sequence).put(payload);
+
+        crc.reset();
+        ByteBuffer checked = buffer.duplicate();
+        checked.flip().position(start + 4);
+        crc.update(checked);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Private method used to write out and clear a buffer of whole records.
+     *
+     * @param batch the buffer, positioned after its last record
+     * @throws IOException if the records cannot be written
+     */
+    private void writeBatch(ByteBuffer batch) throws IOException
+    {
+        batch.flip();
+        while (batch.hasRemaining()) {
+            end += channel.write(batch, end);
+        }
+        batch.clear();
+    }
+
+    /**
+     * This method forces every appended record to disk.
+     *
+     * @throws IOException if the journal cannot be forced
+     */
+    void sync() throws IOException
+    {
+        channel.force(false);
+        unsynced = 0;
+    }
+
+    /**
+     * This method changes how many records are appended before the journal is
+     * forced to disk, overriding <CODE>shippingstore.journal.syncEvery</CODE>.
+     *
+     * @param records the group commit size, or 0 to force only on
+     * <CODE>sync()</CODE> and <CODE>close()</CODE>
+     */
+    void setSyncEvery(int records)
+    {
+        syncEvery = Math.max(0, records);
+    }
+
+    /**
+     * This method returns the sequence number of the last record appended, or of
+     * the last record the snapshot held if nothing has been appended since. A
+     * snapshot stores it so that <CODE>replay()</CODE> can skip the records it holds.
+     *
+     * @return the last sequence number used
+     */
+    long lastSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * This method returns the current end of the journal. A snapshotter records it
+     * while it copies a database, so that it later knows which records the snapshot
+     * covers.
+     *
+     * @return the length of the journal in bytes
+     */
+    long size()
+    {
+        return end;
+    }
+
+    /**
+     * This method drops every record before the given position, which must be a
+     * value returned by <CODE>size()</CODE>. It is called once a snapshot holding
+     * those records has safely been written; records appended while the snapshot was
+     * being written are copied into a new journal file that replaces the old one.
+     *
+     * @param mark the journal length at the time the snapshot was taken
+     * @throws IOException if the journal cannot be rewritten
+     */
+    void discardBefore(long mark) throws IOException
+    {
+        if (mark >= end) {
+            reset();
+            return;
+        }
+
+        Path path = Paths.get(fileName);
+        Path temp = Paths.get(fileName + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (long position = mark; position < end; ) {
+                position += channel.transferTo(position, end - position, out);
+            }
+            out.force(true);
+        }
+
+        channel.close();
+        try {
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        end -= mark;
+        unsynced = 0;
+    }
+
+    /**
+     * This method empties the journal. It is called once a snapshot holding every
+     * journaled change has safely been written.
+     *
+     * @throws IOException if the journal cannot be truncated
+     */
+    void reset() throws IOException
+    {
+        channel.truncate(0);
+        channel.force(true);
+        end = 0;
+        unsynced = 0;
+    }
+
+    /**
+     * This method forces any remaining records to disk and closes the journal.
+     *
+     * @throws IOException if the journal cannot be closed
+     */
+    void close() throws IOException
+    {
+        if (channel.isOpen()) {
+            sync();
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package shippingstore;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class holds the small amount of JSON parsing the HTTP server needs. Requests
+ * carry one flat object whose values are strings, numbers, booleans or null; nested
+ * objects and arrays are not accepted. Writing JSON is done by <CODE>Exporter</CODE>.
+ *
+ * @author Emily Beaudoin
+ */
+final class Json
+{
+    private final String text;
+    private int pos;
+
+    /**
+     * Private constructor; use <CODE>parseObject()</CODE>.
+     *
+     * @param text the text to parse
+     */
+    private Json(String text)
+    {
+        this.text = text;
+    }
+
+    /**
+     * This method parses one flat JSON object. Every value is returned as the text
+     * the program's other commands would take: strings without their quotes, numbers
+     * and booleans as written, and null as a null value.
+     *
+     * @param text the JSON text
+     * @return the members of the object, in the order they were written
+     * @throws IllegalArgumentException if the text is not a flat JSON object
+     */
+    static Map<String, String> parseObject(String text)
+    {
+        Json parser = new Json(text);
+        Map<String, String> members = new LinkedHashMap<>();
+
+        parser.expect('{');
+        if (!parser.skip('}')) {
+            do {
+                String name = parser.string();
+                parser.expect(':');
+                members.put(name, parser.value());
+            } while (parser.skip(','));
+            parser.expect('}');
+        }
+
+        parser.whitespace();
+        if (parser.pos != text.length()) {
+            throw parser.error("Unexpected text after the object");
+        }
+        return members;
+    }
+
+    /**
+     * Private method used to read one member value.
+     *
+     * @return the value as text, or null for a JSON null
+     */
+    private String value()
+    {
+        whitespace();
+        if (pos < text.length() && text.charAt(pos) == '"') {
+            return string();
+        }
+
+        int start = pos;
+        while (pos < text.length() && ",}] \t\r\n".indexOf(text.charAt(pos)) < 0) {
+            pos++;
+        }
+        String literal = text.substring(start, pos);
+        if (literal.equals("null")) {
+            return null;
+        }
+        if (literal.equals("true") || literal.equals("false")
+                || literal.matches("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?")) {
+            return literal;
+        }
+        throw error(literal.isEmpty() ? "Missing value" : "Unsupported value " + literal);
+    }
+
+    /**
+     * Private method used to read one string literal and undo its escapes.
+     *
+     * @return the string
+     */
+    private String string()
+    {
+        expect('"');
+        StringBuilder s = new StringBuilder();
+        while (pos < text.length()) {
+            char c = text.charAt(pos++);
+            if (c == '"') {
+                return s.toString();
+            }
+            if (c != '\\') {
+                s.append(c);
+                continue;
+            }
+            if (pos >= text.length()) {
+                break;
+            }
+            char e = text.charAt(pos++);
+            switch (e) {
+                case '"':
+                case '\\':
+                case '/':
+                    s.append(e);
+                    break;
+                case 'b':
+                    s.append('\b');
+                    break;
+                case 'f':
+                    s.append('\f');
+                    break;
+                case 'n':
+                    s.append('\n');
+                    break;
+                case 'r':
+                    s.append('\r');
+                    break;
+                case 't':
+                    s.append('\t');
+                    break;
+                case 'u':
+                    if (pos + 4 > text.length()) {
+                        throw error("Incomplete \\u escape");
+                    }
+                    try {
+                        s.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        throw error("Invalid \\u escape");
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    throw error("Invalid escape \\" + e);
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    /**
+     * Private method used to consume the given character, skipping whitespace
+     * before it.
+     *
+     * @param c the expected character
+     */
+    private void expect(char c)
+    {
+        if (!skip(c)) {
+            throw error("Expected '" + c + "'");
+        }
+    }
+
+    /**
+     * Private method used to consume the given character if it comes next, skipping
+     * whitespace before it.
+     *
+     * @param c the character
+     * @return true if it was consumed
+     */
+    private boolean skip(char c)
+    {
+        whitespace();
+        if (pos < text.length() && text.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Private method used to skip whitespace.
+     */
+    private void whitespace()
+    {
+        while (pos < text.length() && " \t\r\n".indexOf(text.charAt(pos)) >= 0) {
+            pos++;
+        }
+    }
+
+    /**
+     * Private method used to build the exception for a parse error.
+     *
+     * @param message what went wrong
+     * @return the exception, naming the position of the error
+     */
+    private IllegalArgumentException error(String message)
+    {
+        return new IllegalArgumentException(message + " at position " + pos);
+    }
+}
@@ -0,0 +1,269 @@
+package shippingstore;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * This class counts the calls of one database operation and records how long they
+ * took, cheaply enough to be left on all the time. Counts are kept in
+ * <CODE>LongAdder</CODE>s and times in a histogram of atomic counters, so threads
+ * recording at once never wait for each other.
+ * <p>
+ * The histogram has 16 buckets for every power of two nanoseconds, so a percentile
+ * is reported within about 6% of the true value. The maximum is exact.
+ * <p>
+ * There is one recorder per operation, shared by every instance of a database, and
+ * each is registered as a platform MBean when it is created (see
+ * <CODE>LatencyRecorderMXBean</CODE>). <CODE>showStats()</CODE> displays them all.
+ *
+ * @author Emily Beaudoin
+ */
+final class LatencyRecorder implements LatencyRecorderMXBean
+{
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private static final ConcurrentSkipListMap<String, LatencyRecorder> RECORDERS =
+        new ConcurrentSkipListMap<>();
+
+    /** The table the recorders are displayed in. */
+    private static final Table<LatencyRecorder> STATS_TABLE = new Table<>(
+          " ----------------------------------------------------------------------------------------------------------- \n"
+        + "| Operation                                        |    Count |  Errors |   p50 (us) |   p99 (us) |   Max (us) |\n"
+        + " ----------------------------------------------------------------------------------------------------------- \n",
+          " -----------------------------------------------------------------------------------------------------------\n\n",
+        LatencyRecorder::appendStats);
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Private constructor; use <CODE>forOperation()</CODE>.
+     *
+     * @param name the name of the operation, "Database.operation"
+     */
+    private LatencyRecorder(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * This method returns the recorder of an operation, creating and registering
+     * it the first time it is asked for.
+     *
+     * @param database the name of the database class
+     * @param operation the name of the operation
+     * @return the <CODE>LatencyRecorder</CODE> of the operation
+     */
+    static LatencyRecorder forOperation(String database, String operation)
+    {
+        return RECORDERS.computeIfAbsent(database + "." + operation, name -> {
+            LatencyRecorder recorder = new LatencyRecorder(name);
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(recorder, LatencyRecorderMXBean.class, true),
+                    new ObjectName("shippingstore:type=" + database + ",name=" + operation));
+            } catch (JMException | SecurityException e) {
+                // Recording still works without JMX, it just cannot be watched remotely
+            }
+            return recorder;
+        });
+    }
+
+    /**
+     * This method returns every recorder created so far, ordered by name.
+     *
+     * @return a read-only <CODE>Collection</CODE> of the recorders
+     */
+    static Collection<LatencyRecorder> all()
+    {
+        return Collections.unmodifiableCollection(RECORDERS.values());
+    }
+
+    /**
+     * This method records one call of the operation.
+     *
+     * @param startNanos the value of <CODE>System.nanoTime()</CODE> when the call began
+     * @param failed whether the call was rejected or threw
+     */
+    void record(long startNanos, boolean failed)
+    {
+        long nanos = Math.max(0, System.nanoTime() - startNanos);
+        count.increment();
+        if (failed) {
+            errors.increment();
+        }
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        histogram.incrementAndGet(bucket(nanos));
+    }
+
+    /**
+     * Private method used to find the histogram bucket of a time. Times below 16ns
+     * get a bucket each; above that, every power of two is split into 16 buckets.
+     *
+     * @param nanos the time in nanoseconds
+     * @return the index of the bucket
+     */
+    private static int bucket(long nanos)
+    {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Private method used to find the largest time that falls in a bucket.
+     *
+     * @param bucket the index of the bucket
+     * @return the time in nanoseconds
+     */
+    private static long bucketLimit(int bucket)
+    {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long low = (1L << exponent) | (sub << (exponent - SUB_BUCKET_BITS));
+        return low + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Private method used to read a percentile from the histogram. The result is
+     * the upper end of the bucket holding it, but never more than the maximum.
+     *
+     * @param fraction the percentile as a fraction, such as 0.99
+     * @return the time in microseconds, or 0 if nothing was recorded
+     */
+    private double percentile(double fraction)
+    {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketLimit(i), maxNanos.get()) / 1000.0;
+            }
+        }
+        return maxNanos.get() / 1000.0;
+    }
+
+    /**
+     * This method returns the name of the operation.
+     *
+     * @return the name, "Database.operation"
+     */
+    String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    @Override
+    public long getErrorCount()
+    {
+        return errors.sum();
+    }
+
+    @Override
+    public double getMeanMicros()
+    {
+        long calls = count.sum();
+        return calls == 0 ? 0 : totalNanos.sum() / 1000.0 / calls;
+    }
+
+    @Override
+    public double getP50Micros()
+    {
+        return percentile(0.50);
+    }
+
+    @Override
+    public double getP99Micros()
+    {
+        return percentile(0.99);
+    }
+
+    @Override
+    public double getMaxMicros()
+    {
+        return maxNanos.get() / 1000.0;
+    }
+
+    @Override
+    public void reset()
+    {
+        count.reset();
+        errors.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+    }
+
+    /**
+     * This method displays the figures of every operation that has run at least
+     * once, as the "stats" command of the console.
+     */
+    static void showStats()
+    {
+        ArrayList<LatencyRecorder> used = new ArrayList<>();
+        for (LatencyRecorder recorder : RECORDERS.values()) {
+            if (recorder.getCount() > 0) {
+                used.add(recorder);
+            }
+        }
+        STATS_TABLE.print(used);
+    }
+
+    /**
+     * Private method used to append the line that displays one recorder in the
+     * table of statistics.
+     *
+     * @param out the buffer to append to
+     * @param r the recorder to display
+     */
+    private static void appendStats(StringBuilder out, LatencyRecorder r)
+    {
+        Table.left(out.append("| "), r.getName(), 49).append("| ");
+        Table.right(out, r.getCount(), 8).append(" | ");
+        Table.right(out, r.getErrorCount(), 7).append(" | ");
+        Table.fixed2(out, r.getP50Micros(), 10).append(" | ");
+        Table.fixed2(out, r.getP99Micros(), 10).append(" | ");
+        Table.fixed2(out, r.getMaxMicros(), 10).append(" |\n");
+    }
+}
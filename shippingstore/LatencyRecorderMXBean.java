@@ -0,0 +1,60 @@
+package shippingstore;
+
+/**
+ * This interface is the management view of one <CODE>LatencyRecorder</CODE>: how
+ * many times a database operation ran, how many times it failed, and how long it
+ * took. Each recorder is registered with the platform MBean server under the name
+ * <CODE>shippingstore:type=DATABASE,name=OPERATION</CODE>, so it can be watched with
+ * JConsole or any other JMX client while the program runs.
+ *
+ * @author Emily Beaudoin
+ */
+public interface LatencyRecorderMXBean
+{
+    /**
+     * This method returns the number of times the operation ran.
+     *
+     * @return a <b><CODE>long</CODE></b> count of calls
+     */
+    long getCount();
+
+    /**
+     * This method returns the number of calls that were rejected or threw.
+     *
+     * @return a <b><CODE>long</CODE></b> count of failed calls
+     */
+    long getErrorCount();
+
+    /**
+     * This method returns the mean time a call took.
+     *
+     * @return a <b><CODE>double</CODE></b> number of microseconds
+     */
+    double getMeanMicros();
+
+    /**
+     * This method returns the median time a call took.
+     *
+     * @return a <b><CODE>double</CODE></b> number of microseconds
+     */
+    double getP50Micros();
+
+    /**
+     * This method returns the time 99% of calls took at most.
+     *
+     * @return a <b><CODE>double</CODE></b> number of microseconds
+     */
+    double getP99Micros();
+
+    /**
+     * This method returns the longest time a call took.
+     *
+     * @return a <b><CODE>double</CODE></b> number of microseconds
+     */
+    double getMaxMicros();
+
+    /**
+     * This method sets every figure back to zero.
+     */
+    void reset();
+}
@@ -1,7 +1,24 @@
 package shippingstore;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.InputMismatchException;
+import java.util.Locale;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * This is the main class of the ShippingStore database manager. It provides a
@@ -11,33 +28,96 @@ import java.util.Scanner;
  */
 public class MainApp {
 
+    /** The console commands that use each database, which wait for it to be loaded. */
+    private static final Set<String> PACKAGE_COMMANDS = new HashSet<>(Arrays.asList(
+        "1", "2", "3", "4", "8", "import", "export", "report", "range"));
+    private static final Set<String> USER_COMMANDS = new HashSet<>(Arrays.asList(
+        "5", "6", "7", "8", "export", "find"));
+    private static final Set<String> TRANSACTION_COMMANDS = new HashSet<>(Arrays.asList(
+        "3", "8", "9", "export", "report"));
+
+    /**
+     * This interface is a step of startup or shutdown that reads or writes files.
+     */
+    private interface Step<T> {
+        T run() throws IOException;
+    }
+
     /**
      * This method will begin the user interface console. Main uses a loop to
      * continue doing commands until the user types '6'. A lot of user input
      * validation is done in the loop. At least enough to allow the interface
      * with ShippingStore to be safe.
+     * <p>
+     * The three databases are loaded at the same time on a small thread pool, and
+     * each reports when it is ready. The menu comes up right away; a command waits
+     * only for the databases it uses. At exit the databases are saved at the same
+     * time as well.
      *
-     * @param args this program expects no command line arguments
+     * @param args no arguments for the console, "--serve [PORT]" to serve the
+     * databases over HTTP instead (see <CODE>ShippingServer</CODE>, default port 8080),
+     * or "--batch [SCRIPT] [--log FILE]" to run a script of commands without prompts
+     * (see <CODE>BatchRunner</CODE>; the script is read from standard input if it is
+     * missing or "-", and the log is written to standard output by default)
      * @throws Exception for some reason
      */
     public static void main(String[] args) throws Exception {
+        // Refuse bad snapshot settings before anything is loaded or saved
+        try {
+            Snapshotter.compressionLevel();
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+
+        if (args.length > 0 && args[0].equals("--batch")) {
+            System.exit(batch(args));
+        }
+
         Scanner in = new Scanner(System.in);
 
-        PackageDatabase packages = new PackageDatabase();
-        UserDatabase users = new UserDatabase();
-        TransactionDatabase transactions = new TransactionDatabase();
+        ExecutorService executor = newStartupExecutor();
+        System.out.println("Loading the databases . . .");
+        CompletableFuture<PackageDatabase> packagesLoad = open("package", PackageDatabase::new, executor, true);
+        CompletableFuture<UserDatabase> usersLoad = open("user", UserDatabase::new, executor, true);
+        CompletableFuture<TransactionDatabase> transactionsLoad = open("transaction", TransactionDatabase::new,
+            executor, true);
+
+        // Save changes in the background so exit does not have to write everything
+        CompletableFuture<Snapshotter> snapshotterStart = CompletableFuture
+            .allOf(packagesLoad, usersLoad, transactionsLoad)
+            .thenApply(loaded -> {
+                Snapshotter snapshotter = new Snapshotter(packagesLoad.join(), usersLoad.join(),
+                    transactionsLoad.join());
+                snapshotter.start();
+                return snapshotter;
+            });
+
+        if (args.length > 0 && args[0].equals("--serve")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+            serve(await(packagesLoad, null), await(usersLoad, null), await(transactionsLoad, null),
+                await(snapshotterStart, null), executor, port);
+            return;
+        }
 
         String welcomeMessage = "\nWelcome to the Shipping Store. Choose one of the following functions:\n\n"
                 + "\t1. Show all existing package records in the database\n"
                 + "\t2. Add a new package order to the database\n"
                 + "\t3. Delete a package order from the database\n"
-                + "\t4. Search for a package order (given its Tracking #)\n"
+                + "\t4. Search for a package order (given its Tracking # or the start of it)\n"
                 + "\t5. Show a list of users in the database\n"
                 + "\t6. Add new user to the database\n"
                 + "\t7. Update user info (given their id)\n"
                 + "\t8. Complete a shipping transation\n"
                 + "\t9. Show completed shipping transations\n"
-                + "\t10. Exit program.\n";
+                + "\t10. Exit program.\n"
+                + "\nOther commands:\n\n"
+                + "\timport. Bulk load package orders from a CSV file\n"
+                + "\texport. Write packages, users or transactions to a CSV or JSON Lines file\n"
+                + "\treport. Show revenue and shipments by employee, customer, class, type or month\n"
+                + "\trange. Find package orders by a size or weight within a range, like crates over 40 lbs\n"
+                + "\tfind. Find users by name, or by the start of their first or last name\n"
+                + "\tstats. Show how many times each database operation ran and how long it took\n";
         String packageMessage = "Please type description of package with the following pattern:\n"
                             + "\nTRACKING# SPECIFICATION CLASS ";
 
@@ -52,6 +132,10 @@ public class MainApp {
 
         String type, inTemp;
         while (!selection.equals("10")) {
+            PackageDatabase packages = PACKAGE_COMMANDS.contains(selection) ? await(packagesLoad, "package") : null;
+            UserDatabase users = USER_COMMANDS.contains(selection) ? await(usersLoad, "user") : null;
+            TransactionDatabase transactions = TRANSACTION_COMMANDS.contains(selection)
+                ? await(transactionsLoad, "transaction") : null;
 
             switch (selection) {
                 case "1":
@@ -121,10 +205,19 @@ public class MainApp {
 
                     System.out.println("\nPlease enter the tracking # of the package order to delete from the database.\n");
                     String orderToDelete = in.nextLine();
-                    packages.removeOrder(orderToDelete);
+                    RemovalPolicy removal = RemovalPolicy.RESTRICT;
+                    if (transactions.isPackageReferenced(orderToDelete)) {
+                        System.out.println("\nThis package order has been shipped in transactions. "
+                            + "Remove those transactions as well? (Y/N)\n");
+                        if (in.nextLine().equalsIgnoreCase("Y")) {
+                            removal = RemovalPolicy.CASCADE;
+                        }
+                    }
+                    packages.removeOrder(orderToDelete, transactions, removal);
                     break;
                 case "4":
-                    System.out.println("\nEnter the Tracking # of the order you wish to see.\n");
+                    System.out.println("\nEnter the Tracking # of the order you wish to see, or the start of one.\n"
+                        + "Use ? for a character you cannot read, as in AB1??.\n");
                     String trackingNum = in.nextLine();
 
                     packages.searchPackageOrder(trackingNum);
@@ -175,14 +268,15 @@ public class MainApp {
                 case "7":
                     System.out.println("\nPlease enter the ID # of the user to update:\n");
                     String id = in.nextLine();
-                    if (users.findUser(id) != -1) {
-                        type = users.getUserType(users.findUser(id));
+                    User u = users.getUser(id);
+                    if (u != null) {
+                        type = users.getUserType(u);
                         System.out.println("\nEnter the field you wish to update: \n" 
                             + "(First-name, Last-name, Social, Salary, Account, Phone, or Address)\n");
                         String field = in.nextLine();
                         System.out.println("\nEnter the updated information: \n");
                         String update = in.nextLine();
-                        users.updateUserInfo(users.findUser(id), type, field, update);
+                        users.updateUserInfo(u, type, field, update);
                     } else {
                         System.out.println("\nNo user found with that ID.\n");
                     }
@@ -199,29 +293,140 @@ public class MainApp {
                         break;
                     }
 
-                    if(users.findUser(atemp[0]) == -1) {
+                    User c = users.getUser(atemp[0]);
+                    if(c == null) {
                         System.out.println("\nNo customer found with that ID");
                         break;
                     } 
-                    if(users.findUser(atemp[5]) == -1) {
+                    User e = users.getUser(atemp[5]);
+                    if(e == null) {
                         System.out.println("\nNo employee found with that ID");
                         break;
                     }
-                    if(packages.findPackageOrder(atemp[1]) == -1) {
+                    PackageOrder p = packages.getPackageOrder(atemp[1]);
+                    if(p == null) {
                         System.out.println("\nNo package found with that tracking number");
                         break;
                     }
 
-                    User c = users.getUser(users.findUser(atemp[0]));
-                    PackageOrder p = packages.getPackageOrder(packages.findPackageOrder(atemp[1]));
-                    User e = users. getUser(users.findUser(atemp[5]));
-
-                    transactions.addTransaction(c, e, p, atemp[2], atemp[3], atemp[4]);
+                    transactions.addTransaction(c, e, p, atemp[2], atemp[3], atemp[4], packages, users);
                 case "9":
                     transactions.showTransactions();
                     break;
                 case "10":
                     break;
+                case "import":
+                    System.out.println("\nEnter the name of the CSV file to import. Each line should read:\n"
+                        + "TYPE,TRACKING#,SPECIFICATION,CLASS,SPECIAL1,SPECIAL2\n"
+                        + "example:\nBox,AB123,Fragile,First-Class,30,2500\n");
+                    String csvFile = in.nextLine();
+                    try (Reader reader = Files.newBufferedReader(Paths.get(csvFile))) {
+                        ImportReport report = packages.importOrders(reader);
+                        System.out.printf("\nRead %d lines: %d package orders added, %d rejected.\n",
+                            report.getLinesRead(), report.getAdded(), report.getRejected().size());
+                        int shown = 0;
+                        for (ImportReport.Rejection r : report.getRejected()) {
+                            if (shown++ == 50) {
+                                System.out.println("(" + (report.getRejected().size() - 50) + " more not shown)");
+                                break;
+                            }
+                            System.out.println(r);
+                        }
+                        System.out.println();
+                    } catch (IOException | InvalidPathException ex) {
+                        System.out.println("\nImport failed: " + ex.getMessage() + "\n");
+                    }
+                    break;
+                case "export":
+                    System.out.println("\nEnter what to export (Packages, Users or Transactions):");
+                    String what = in.nextLine().trim().toLowerCase(Locale.ROOT);
+                    if (!what.equals("packages") && !what.equals("users") && !what.equals("transactions")) {
+                        System.out.println("\nUnknown database. Please enter Packages, Users or Transactions.\n");
+                        break;
+                    }
+                    System.out.println("\nEnter the format (CSV or JSON):");
+                    ExportFormat format;
+                    try {
+                        format = ExportFormat.valueOf(in.nextLine().trim().toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException ex) {
+                        System.out.println("\nUnknown format. Please enter CSV or JSON.\n");
+                        break;
+                    }
+                    System.out.println("\nEnter the name of the file to write:");
+                    String exportFile = in.nextLine();
+                    try (Writer writer = Files.newBufferedWriter(Paths.get(exportFile))) {
+                        int written;
+                        if (what.equals("packages")) {
+                            written = packages.export(writer, format, null);
+                        } else if (what.equals("users")) {
+                            written = users.export(writer, format, null);
+                        } else {
+                            written = transactions.export(writer, format, null);
+                        }
+                        System.out.println("\nExported " + written + " records to " + exportFile + ".\n");
+                    } catch (IOException | InvalidPathException ex) {
+                        System.out.println("\nExport failed: " + ex.getMessage() + "\n");
+                    }
+                    break;
+                case "report":
+                    System.out.println("\nGroup the transactions by (Employee, Customer, Class, Type or Month):");
+                    GroupBy groupBy;
+                    switch (in.nextLine().trim().toLowerCase(Locale.ROOT)) {
+                        case "employee":
+                            groupBy = GroupBy.EMPLOYEE;
+                            break;
+                        case "customer":
+                            groupBy = GroupBy.CUSTOMER;
+                            break;
+                        case "class":
+                            groupBy = GroupBy.MAILING_CLASS;
+                            break;
+                        case "type":
+                            groupBy = GroupBy.PACKAGE_TYPE;
+                            break;
+                        case "month":
+                            groupBy = GroupBy.SHIP_MONTH;
+                            break;
+                        default:
+                            groupBy = null;
+                    }
+                    if (groupBy == null) {
+                        System.out.println("\nUnknown grouping. Please enter Employee, Customer, Class, Type or Month.\n");
+                        break;
+                    }
+                    System.out.println();
+                    transactions.showReport(groupBy, packages);
+                    break;
+                case "range":
+                    System.out.println("\nEnter the attribute to search by (Envelope-Height, Envelope-Width, "
+                        + "Box-Dimension, Box-Volume, Crate-Weight or Drum-Diameter):");
+                    PackageAttribute attribute = PackageAttribute.fromLabel(in.nextLine().trim());
+                    if (attribute == null) {
+                        System.out.println("\nUnknown attribute. Please enter one of the names listed.\n");
+                        break;
+                    }
+                    System.out.println("\nEnter the lowest and highest " + attribute.getLabel() + " ("
+                        + attribute.getUnit() + "), using * for no limit (for example: 40 *):");
+                    String[] bounds = in.nextLine().trim().split("\\s+");
+                    try {
+                        if (bounds.length != 2) {
+                            throw new NumberFormatException();
+                        }
+                        double low = bounds[0].equals("*") ? Double.NEGATIVE_INFINITY : Double.parseDouble(bounds[0]);
+                        double high = bounds[1].equals("*") ? Double.POSITIVE_INFINITY : Double.parseDouble(bounds[1]);
+                        packages.showOrdersInRange(attribute, low, high);
+                    } catch (IllegalArgumentException ex) {
+                        System.out.println("\nPlease enter two numbers, or * for no limit.\n");
+                    }
+                    break;
+                case "find":
+                    System.out.println("\nEnter the name, or the start of it, of the user to find:\n");
+                    users.searchUsers(in.nextLine());
+                    break;
+                case "stats":
+                    System.out.println();
+                    LatencyRecorder.showStats();
+                    break;
                 case "help":
                     System.out.println(welcomeMessage);
                     break;
@@ -236,11 +441,197 @@ public class MainApp {
         }//endof while
 
         in.close();
-        packages.flush();
-        users.flush();
-        transactions.flush();
+        await(snapshotterStart, "all").stop();
+        flushAll(packagesLoad.join(), usersLoad.join(), transactionsLoad.join(), executor);
+        executor.shutdown();
 
         System.out.println("Done!");
 
     }
+
+    /**
+     * This method runs a script of commands in batch mode. Journal records are not
+     * forced to disk one by one unless <CODE>shippingstore.journal.syncEvery</CODE>
+     * is set; instead the databases are saved once, when the script is done.
+     *
+     * @param args the command line arguments, starting with "--batch"
+     * @return the exit status: 0 if every command succeeded, 1 if any failed, 2 if
+     * the arguments are wrong
+     * @throws IOException if the script, the log or the databases cannot be used
+     */
+    private static int batch(String[] args) throws IOException {
+        String script = "-";
+        String logFile = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--log") && i + 1 < args.length) {
+                logFile = args[++i];
+            } else if (script.equals("-") && !args[i].startsWith("--")) {
+                script = args[i];
+            } else {
+                System.err.println("Usage: MainApp --batch [SCRIPT] [--log FILE]");
+                return 2;
+            }
+        }
+
+        ExecutorService executor = newStartupExecutor();
+        CompletableFuture<PackageDatabase> packagesLoad = open("package", PackageDatabase::new, executor, false);
+        CompletableFuture<UserDatabase> usersLoad = open("user", UserDatabase::new, executor, false);
+        CompletableFuture<TransactionDatabase> transactionsLoad = open("transaction", TransactionDatabase::new,
+            executor, false);
+        PackageDatabase packages = await(packagesLoad, null);
+        UserDatabase users = await(usersLoad, null);
+        TransactionDatabase transactions = await(transactionsLoad, null);
+        if (System.getProperty("shippingstore.journal.syncEvery") == null) {
+            packages.setJournalSyncEvery(0);
+            users.setJournalSyncEvery(0);
+            transactions.setJournalSyncEvery(0);
+        }
+
+        int failed;
+        Writer log = logFile == null
+                ? new OutputStreamWriter(System.out) : Files.newBufferedWriter(Paths.get(logFile));
+        try (Reader reader = script.equals("-")
+                ? new InputStreamReader(System.in) : Files.newBufferedReader(Paths.get(script))) {
+            failed = new BatchRunner(packages, users, transactions).run(reader, log);
+        } finally {
+            // Standard output is left open for the messages of flush()
+            if (logFile != null) {
+                log.close();
+            }
+            flushAll(packages, users, transactions, executor);
+            executor.shutdown();
+        }
+        return failed == 0 ? 0 : 1;
+    }
+
+    /**
+     * Private method used to create the pool the databases are loaded and saved on,
+     * with one daemon thread per database.
+     *
+     * @return the executor
+     */
+    private static ExecutorService newStartupExecutor() {
+        return Executors.newFixedThreadPool(3, r -> {
+            Thread t = new Thread(r, "shippingstore-io");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Private method used to start loading a database on the executor.
+     *
+     * @param name the name of the database, as in "the package database"
+     * @param step the constructor of the database
+     * @param executor the executor to load it on
+     * @param verbose whether to report when the database is ready
+     * @return the database, once loaded
+     */
+    private static <T> CompletableFuture<T> open(String name, Step<T> step, ExecutorService executor,
+            boolean verbose) {
+        return run(() -> {
+            long start = System.nanoTime();
+            T db = step.run();
+            if (verbose) {
+                System.out.printf("(The %s database is ready, loaded in %d ms.)\n", name,
+                    (System.nanoTime() - start) / 1000000);
+            }
+            return db;
+        }, executor);
+    }
+
+    /**
+     * Private method used to run a step on the executor.
+     *
+     * @param step the step
+     * @param executor the executor to run it on
+     * @return the result of the step, or its <CODE>IOException</CODE> wrapped in an
+     * <CODE>UncheckedIOException</CODE>
+     */
+    private static <T> CompletableFuture<T> run(Step<T> step, ExecutorService executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return step.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Private method used to wait for a database to be loaded, saying so if it is
+     * not ready yet.
+     *
+     * @param load the loading database
+     * @param name the name of the database for the message, "all" for every one, or
+     * null to wait silently
+     * @return the database
+     * @throws IOException if the database could not be loaded
+     */
+    private static <T> T await(CompletableFuture<T> load, String name) throws IOException {
+        if (name != null && !load.isDone()) {
+            System.out.println(name.equals("all") ? "\nWaiting for the databases to finish loading . . .\n"
+                : "\nWaiting for the " + name + " database to finish loading . . .\n");
+        }
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Private method used to save the three databases at the same time.
+     *
+     * @param packages the package order database
+     * @param users the user database
+     * @param transactions the transaction database
+     * @param executor the executor to save them on
+     * @throws IOException if a database cannot be saved
+     */
+    private static void flushAll(PackageDatabase packages, UserDatabase users,
+            TransactionDatabase transactions, ExecutorService executor) throws IOException {
+        CompletableFuture<Void> flushed = CompletableFuture.allOf(
+            run(() -> { packages.flush(); return null; }, executor),
+            run(() -> { users.flush(); return null; }, executor),
+            run(() -> { transactions.flush(); return null; }, executor));
+        await(flushed, null);
+    }
+
+    /**
+     * This method serves the databases over HTTP until the program is stopped with
+     * Ctrl+C or a termination signal, then saves them just as exiting the console
+     * does.
+     *
+     * @param packages the package order database
+     * @param users the user database
+     * @param transactions the transaction database
+     * @param snapshotter the background saver of the databases
+     * @param executor the executor to save the databases on
+     * @param port the port to listen on
+     * @throws IOException if the port cannot be bound
+     */
+    private static void serve(PackageDatabase packages, UserDatabase users,
+            TransactionDatabase transactions, Snapshotter snapshotter, ExecutorService executor,
+            int port) throws IOException {
+        ShippingServer server = new ShippingServer(packages, users, transactions, port);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            try {
+                snapshotter.stop();
+                flushAll(packages, users, transactions, executor);
+            } catch (IOException | InterruptedException e) {
+                System.out.println("Error saving the databases: " + e);
+            }
+            System.out.println("Done!");
+        }, "shippingstore-shutdown"));
+
+        server.start();
+        System.out.println("Serving the Shipping Store on http://localhost:" + server.getPort()
+                + "/ . . . press Ctrl+C to stop.");
+    }
 }
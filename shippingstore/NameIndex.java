@@ -0,0 +1,212 @@
+package shippingstore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class is an inverted index from the words of users' names to the users. A
+ * name is split into words at spaces, hyphens and commas, other punctuation is
+ * dropped, and the words are lower-cased, so "Mary-Jane O'Neil" is found under
+ * "mary", "jane" and "oneil". The words are kept in a <CODE>TreeMap</CODE>, so every
+ * word that starts with a given prefix sits in one contiguous range of it, and each
+ * word maps to its users sorted by ID number.
+ * <p>
+ * The index is not synchronized; the owning database is responsible for guarding it.
+ * A user must be removed before its name is changed and added again afterwards.
+ *
+ * @author Emily Beaudoin
+ */
+final class NameIndex
+{
+    private final TreeMap<String, ArrayList<User>> index = new TreeMap<>();
+
+    /**
+     * This method adds a user under every word of its first and last name.
+     *
+     * @param user the <CODE>User</CODE> to add
+     */
+    void add(User user)
+    {
+        for (String word : words(user)) {
+            ArrayList<User> users = index.computeIfAbsent(word, w -> new ArrayList<>(1));
+            int position = positionOf(users, user.getIdNumber());
+            if (position < 0) {
+                users.add(-(position + 1), user);
+            } else {
+                users.set(position, user);
+            }
+        }
+    }
+
+    /**
+     * This method removes a user from every word of its first and last name.
+     *
+     * @param user the <CODE>User</CODE> to remove
+     */
+    void remove(User user)
+    {
+        for (String word : words(user)) {
+            ArrayList<User> users = index.get(word);
+            if (users == null) {
+                continue;
+            }
+            int position = positionOf(users, user.getIdNumber());
+            if (position >= 0) {
+                users.remove(position);
+                if (users.isEmpty()) {
+                    index.remove(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method finds the users that have, for every word of the query, a word in
+     * their name starting with it. "jo sm" finds John Smith and Joanna Smythe but
+     * not John Doe. The users come in the order of the name word matching the
+     * longest query word, then by ID number, and each user comes once.
+     * <p>
+     * Only the words in the range of the longest query word are read, and the search
+     * stops as soon as it has <CODE>limit</CODE> users.
+     *
+     * @param query the words to look for
+     * @param limit the largest number of users to return
+     * @return a new <CODE>List</CODE> of the matching users, empty if the query has no words
+     */
+    List<User> search(String query, int limit)
+    {
+        ArrayList<User> matches = new ArrayList<>();
+        List<String> prefixes = split(query);
+        if (prefixes.isEmpty() || limit <= 0) {
+            return matches;
+        }
+
+        String longest = prefixes.get(0);
+        for (String prefix : prefixes) {
+            if (prefix.length() > longest.length()) {
+                longest = prefix;
+            }
+        }
+
+        IntIndex<User> seen = new IntIndex<>(Math.min(limit, 1024));
+        for (Map.Entry<String, ArrayList<User>> entry
+                : index.subMap(longest, true, longest + Character.MAX_VALUE, false).entrySet()) {
+            for (User user : entry.getValue()) {
+                if (seen.containsKey(user.getIdNumber()) || !matchesAll(user, prefixes)) {
+                    continue;
+                }
+                seen.put(user.getIdNumber(), user);
+                matches.add(user);
+                if (matches.size() >= limit) {
+                    return matches;
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Private method used to check that every query word starts a word of a user's name.
+     */
+    private static boolean matchesAll(User user, List<String> prefixes)
+    {
+        List<String> name = words(user);
+        for (String prefix : prefixes) {
+            boolean found = false;
+            for (String word : name) {
+                if (word.startsWith(prefix)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Private method used to list the distinct words of a user's first and last name.
+     */
+    private static List<String> words(User user)
+    {
+        List<String> words = split(user.getFirstName());
+        for (String word : split(user.getLastName())) {
+            if (!words.contains(word)) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Private method used to split text into lower-cased words, as described for
+     * the class.
+     *
+     * @param text the text to split, or null
+     * @return the words, possibly none
+     */
+    private static List<String> split(String text)
+    {
+        List<String> words = new ArrayList<>(2);
+        if (text == null) {
+            return words;
+        }
+
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (Character.isWhitespace(c) || c == '-' || c == ',') {
+                addWord(words, word);
+            }
+        }
+        addWord(words, word);
+        return words;
+    }
+
+    /**
+     * Private method used to add the word being built, if any, and start a new one.
+     */
+    private static void addWord(List<String> words, StringBuilder word)
+    {
+        if (word.length() > 0) {
+            String w = word.toString().toLowerCase(Locale.ROOT);
+            if (!words.contains(w)) {
+                words.add(w);
+            }
+            word.setLength(0);
+        }
+    }
+
+    /**
+     * Private method used to locate a user by ID number in a list sorted by ID number.
+     *
+     * @return the index of the user, or <CODE>-(insertion point + 1)</CODE>
+     */
+    private static int positionOf(List<User> users, int id)
+    {
+        int low = 0;
+        int high = users.size() - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int other = users.get(mid).getIdNumber();
+
+            if (other < id) {
+                low = mid + 1;
+            } else if (other > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -(low + 1);
+    }
+}
@@ -0,0 +1,99 @@
+package shippingstore;
+
+/**
+ * This enum lists the numeric attributes of package orders that
+ * <CODE>PackageDatabase</CODE> keeps range indexes over. Each attribute belongs to
+ * one type of package; orders of the other types do not have it.
+ *
+ * @author Emily Beaudoin
+ */
+public enum PackageAttribute
+{
+    /** The height of an <CODE>Envelope</CODE>, in inches. */
+    ENVELOPE_HEIGHT("Envelope-Height", "in"),
+    /** The width of an <CODE>Envelope</CODE>, in inches. */
+    ENVELOPE_WIDTH("Envelope-Width", "in"),
+    /** The largest dimension of a <CODE>Box</CODE>, in inches. */
+    BOX_DIMENSION("Box-Dimension", "in"),
+    /** The volume of a <CODE>Box</CODE>, in cubic inches. */
+    BOX_VOLUME("Box-Volume", "in^3"),
+    /** The maximum load weight of a <CODE>Crate</CODE>, in pounds. */
+    CRATE_WEIGHT("Crate-Weight", "lbs"),
+    /** The diameter of a <CODE>Drum</CODE>, in inches. */
+    DRUM_DIAMETER("Drum-Diameter", "in");
+
+    private final String label;
+    private final String unit;
+
+    /**
+     * This constructor sets the console name and unit of an attribute.
+     */
+    PackageAttribute(String label, String unit)
+    {
+        this.label = label;
+        this.unit = unit;
+    }
+
+    /**
+     * This method returns the name the console uses for the attribute, such as
+     * "Crate-Weight".
+     *
+     * @return the name
+     */
+    public String getLabel()
+    {
+        return label;
+    }
+
+    /**
+     * This method returns the unit the attribute is measured in.
+     *
+     * @return the unit, such as "in" or "lbs"
+     */
+    public String getUnit()
+    {
+        return unit;
+    }
+
+    /**
+     * This method returns the value of the attribute for a package order.
+     *
+     * @param p the <CODE>PackageOrder</CODE>
+     * @return the value, or NaN if the order is of another type or has no value
+     */
+    public double valueOf(PackageOrder p)
+    {
+        switch (this) {
+            case ENVELOPE_HEIGHT:
+                return (p instanceof Envelope) ? ((Envelope) p).getHeight() : Double.NaN;
+            case ENVELOPE_WIDTH:
+                return (p instanceof Envelope) ? ((Envelope) p).getWidth() : Double.NaN;
+            case BOX_DIMENSION:
+                return (p instanceof Box) ? ((Box) p).getLargestDimension() : Double.NaN;
+            case BOX_VOLUME:
+                return (p instanceof Box) ? ((Box) p).getVolume() : Double.NaN;
+            case CRATE_WEIGHT:
+                return (p instanceof Crate && ((Crate) p).getLoadWeight() != null)
+                    ? ((Crate) p).getLoadWeight() : Double.NaN;
+            default:
+                return (p instanceof Drum) ? ((Drum) p).getDiameter() : Double.NaN;
+        }
+    }
+
+    /**
+     * This method finds an attribute by its console name or its constant name,
+     * ignoring case.
+     *
+     * @param name the name, such as "Crate-Weight" or "CRATE_WEIGHT"
+     * @return the attribute, or null if there is none with that name
+     */
+    public static PackageAttribute fromLabel(String name)
+    {
+        for (PackageAttribute a : values()) {
+            if (a.label.equalsIgnoreCase(name) || a.name().equalsIgnoreCase(name)) {
+                return a;
+            }
+        }
+        return null;
+    }
+}
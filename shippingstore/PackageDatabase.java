@@ -1,15 +1,35 @@
 package shippingstore;
 
 import java.io.IOException;
-import java.io.FileNotFoundException;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.io.Serializable;
-import java.lang.ClassNotFoundException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 
 /**
@@ -21,12 +41,98 @@ import java.lang.ClassNotFoundException;
  * is written to "PackageDB.ser" at the end of the <CODE>PackageDatabase</CODE> object's
  * life by calling <CODE>flush()</CODE>. This class also provides methods for
  * adding, remove, and searching for package orders from the list.
+ * <p>
+ * Lookups by tracking number go through <CODE>trackingIndex</CODE>, a hash index
+ * keyed on the upper-cased tracking number, which is kept in sync with the list on
+ * every add and remove. <CODE>sortedIndex</CODE> holds the same orders under the
+ * same keys in sorted order, for searches by the start of a tracking number.
+ * <CODE>rangeIndexes</CODE> holds a <CODE>RangeIndex</CODE> for each
+ * <CODE>PackageAttribute</CODE>, such as the volume of boxes or the load weight of
+ * crates, for finding the orders whose attribute lies in a range. A range index is
+ * built the first time its attribute is searched, so loading does not pay for it,
+ * and kept in sync from then on.
+ * <p>
+ * The database can be shared by several threads. <CODE>trackingIndex</CODE> is a
+ * <CODE>ConcurrentHashMap</CODE>, so lookups by tracking number take no lock, and
+ * an add claims its tracking number there with an atomic <CODE>putIfAbsent()</CODE>,
+ * so two threads adding the same tracking number cannot both succeed. Everything
+ * else that reads the list holds the read lock of <CODE>lock</CODE>, and only the
+ * short step that changes the list and appends to the journal holds the write lock;
+ * validation and building the order happen before it is taken.
+ * <p>
+ * Every add and remove is also appended to the journal "PackageDB.journal" as it
+ * happens. The constructor replays the journal over "PackageDB.ser", so a session
+ * that ends without reaching <CODE>flush()</CODE> loses nothing. A
+ * <CODE>Snapshotter</CODE> can also save the database in the background.
+ * <p>
+ * A large database can be kept in shards instead of the one file: the orders are
+ * partitioned by a hash of the upper-cased tracking number into N files
+ * "<CODE>PackageDB.i-of-N.ser</CODE>". The shards are read in parallel when the
+ * database is opened and written in parallel by a snapshot, which only rewrites the
+ * shards an add or remove has changed since they were last written. The number of
+ * shards is given to the constructor, or read from the system property
+ * <CODE>shippingstore.packages.shards</CODE> (default 1, the single file). When the
+ * files of the configured layout do not exist yet, the database is read from the
+ * single file or from shards of another count, and the first snapshot saves it in
+ * the new layout and deletes the old files. In memory the orders are kept together
+ * as before, since the list, the sorted index and the range indexes all need them
+ * in one order, and the hash index already spreads the lookups.
  *
  * @author Junye Wen, edited by Emily Beaudoin to fit this application
  */
-public class PackageDatabase 
+public class PackageDatabase implements Snapshottable 
 {
+    private static final Pattern TRACKING_NUMBER = Pattern.compile("[A-Za-z0-9]{5}");
+    private static final Pattern TRACKING_PATTERN = Pattern.compile("[A-Za-z0-9?]{0,5}\\*?");
+    private static final int SEARCH_LIMIT = 50;
+    private static final Pattern UP_TO_2_DIGITS = Pattern.compile("[0-9]{1,2}");
+    private static final Pattern UP_TO_3_DIGITS = Pattern.compile("[0-9]{1,3}");
+    private static final Pattern UP_TO_6_DIGITS = Pattern.compile("[0-9]{1,6}");
+    private static final int IMPORT_BATCH_SIZE = 16384;
+    private static final int EXPORT_CHUNK_SIZE = 4096;
+    private static final String DUPLICATE_ORDER = "Package Order already exists in database. \n";
+    private static final Pattern SHARD_FILE = Pattern.compile("PackageDB\\.(\\d+)-of-(\\d+)\\.ser");
+
+    private static final LatencyRecorder LOAD_STATS = LatencyRecorder.forOperation("PackageDatabase", "load");
+    private static final LatencyRecorder SHOW_STATS = LatencyRecorder.forOperation("PackageDatabase", "showPackageOrders");
+    private static final LatencyRecorder FIND_STATS = LatencyRecorder.forOperation("PackageDatabase", "findPackageOrder");
+    private static final LatencyRecorder GET_STATS = LatencyRecorder.forOperation("PackageDatabase", "getPackageOrder");
+    private static final LatencyRecorder SEARCH_STATS = LatencyRecorder.forOperation("PackageDatabase", "findByPattern");
+    private static final LatencyRecorder RANGE_STATS = LatencyRecorder.forOperation("PackageDatabase", "findInRange");
+    private static final LatencyRecorder ADD_STATS = LatencyRecorder.forOperation("PackageDatabase", "addOrder");
+    private static final LatencyRecorder IMPORT_STATS = LatencyRecorder.forOperation("PackageDatabase", "importOrders");
+    private static final LatencyRecorder REMOVE_STATS = LatencyRecorder.forOperation("PackageDatabase", "removeOrder");
+    private static final LatencyRecorder EXPORT_STATS = LatencyRecorder.forOperation("PackageDatabase", "export");
+    private static final LatencyRecorder SNAPSHOT_STATS = LatencyRecorder.forOperation("PackageDatabase", "snapshot");
+    private static final LatencyRecorder FLUSH_STATS = LatencyRecorder.forOperation("PackageDatabase", "flush");
+
     private ArrayList<PackageOrder> packageOrderList;
+    private ConcurrentHashMap<String, PackageOrder> trackingIndex;
+    private ConcurrentSkipListMap<String, PackageOrder> sortedIndex;
+    private final EnumMap<PackageAttribute, RangeIndex> rangeIndexes = new EnumMap<>(PackageAttribute.class);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final String dataFile;
+    private final Path directory;
+    private final int shards;
+    private final boolean[] dirty;
+    private List<Path> staleFiles;
+    /** The sequence number of the last journal record every loaded file holds. */
+    private long coveredSequence;
+    private final String journalFile;
+    private Journal journal;
+    private volatile long pendingChanges;
+    private final Object snapshotLock = new Object();
+
+    /** The table the package orders are displayed in. */
+    private static final Table<PackageOrder> ORDER_TABLE = new Table<>(
+          " ------------------------------------------------------------------------------ \n"
+        + "|Tracking#|   Type   |Specification|   Class     |                             |\n"
+        + " ------------------------------------------------------------------------------ \n",
+          " ------------------------------------------------------------------------------\n\n",
+        PackageDatabase::appendOrder);
+
+    /** The blank columns in front of the second line of an order. */
+    private static final String INDENT = "|                                                |";
 
      /**
      * Private method used as an auxiliary method to display a given ArrayList
@@ -34,34 +140,44 @@ public class PackageDatabase
      *
      * @param orders the package order list to be displayed.
      */
-    private void showPackageOrders(ArrayList<PackageOrder> orders) {
-
-        System.out.println(" ------------------------------------------------------------------------------ ");
-        System.out.println("|Tracking#|   Type   |Specification|   Class     |                             |");
-        System.out.println(" ------------------------------------------------------------------------------ ");
-
+    private void showPackageOrders(List<PackageOrder> orders) {
+        ORDER_TABLE.print(orders);
+    }
 
-        for (PackageOrder p : orders){
-            System.out.printf("| %-8s| %-9s| %-12s| %-12s|", 
-                              p.getTrackingNumber(), p.getType(), 
-                              p.getSpecification(), p.getMailingClass());
+    /**
+     * Private method used to append the two lines that display one order in the
+     * table of orders.
+     *
+     * @param out the buffer to append to.
+     * @param p the package order to display.
+     */
+    private static void appendOrder(StringBuilder out, PackageOrder p) {
+        out.append("| ");
+        Table.left(out, p.getTrackingNumber(), 8).append("| ");
+        Table.left(out, p.getType(), 9).append("| ");
+        Table.left(out, p.getSpecification(), 12).append("| ");
+        Table.left(out, p.getMailingClass(), 12).append('|');
 
-            if(p instanceof Envelope){
-                System.out.printf(" Height: %17din |  \n|%48s| Width: %18din |\n", ((Envelope)p).getHeight(), 
-                    " ", ((Envelope)p).getWidth());
-            } else if (p instanceof Box){
-                System.out.printf(" Largest Dimension: %6din |\n|%48s| Volume: %15din^3 |\n", 
-                    ((Box)p).getLargestDimension(), " ", ((Box)p).getVolume());
-            } else if (p instanceof Crate){
-                System.out.printf(" Max Load Weight: %8.2flb |\n|%48s| Contents: %17s |\n", ((Crate)p).getLoadWeight(),
-                " ", ((Crate)p).getContent());
-            } else { //(p instanceof Drum)
-                System.out.printf(" Material: %17s |\n|%48s| Diameter: %15din |\n", ((Drum)p).getMaterial(),
-                " ", ((Drum)p).getDiameter());
-            }   
+        if(p instanceof Envelope){
+            Table.right(out.append(" Height: "), ((Envelope)p).getHeight(), 17).append("in |  \n");
+            Table.right(out.append(INDENT).append(" Width: "), ((Envelope)p).getWidth(), 18).append("in |\n");
+        } else if (p instanceof Box){
+            Table.right(out.append(" Largest Dimension: "), ((Box)p).getLargestDimension(), 6).append("in |\n");
+            Table.right(out.append(INDENT).append(" Volume: "), ((Box)p).getVolume(), 15).append("in^3 |\n");
+        } else if (p instanceof Crate){
+            Float weight = ((Crate)p).getLoadWeight();
+            out.append(" Max Load Weight: ");
+            if (weight != null) {
+                Table.fixed2(out, weight, 8);
+            } else {
+                Table.right(out, null, 8);
+            }
+            out.append("lb |\n");
+            Table.right(out.append(INDENT).append(" Contents: "), ((Crate)p).getContent(), 17).append(" |\n");
+        } else { //(p instanceof Drum)
+            Table.right(out.append(" Material: "), ((Drum)p).getMaterial(), 17).append(" |\n");
+            Table.right(out.append(INDENT).append(" Diameter: "), ((Drum)p).getDiameter(), 15).append("in |\n");
         }
-
-        System.out.println(" ------------------------------------------------------------------------------\n");
     }
 
     /**
@@ -74,31 +190,369 @@ public class PackageDatabase
      * the file)
      */
     public PackageDatabase() throws IOException {
-        packageOrderList = new ArrayList<>();
+        this(Paths.get(""));
+    }
 
-        
-        try{
-            FileInputStream fis = new FileInputStream("PackageDB.ser");
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            packageOrderList = (ArrayList<PackageOrder>) ois.readObject();
-            //Log.i("palval", "dir.exists()");
+    /**
+     * This constructor opens the database kept in the given directory, in the files
+     * "<CODE>PackageDB.ser</CODE>" and "<CODE>PackageDB.journal</CODE>", as the
+     * constructor without arguments does in the current directory. If the system
+     * property <CODE>shippingstore.packages.shards</CODE> is set, the orders are kept
+     * in that many shard files instead.
+     *
+     * @param directory the directory holding the database files
+     * @throws IOException if the files cannot be opened or created
+     */
+    public PackageDatabase(Path directory) throws IOException {
+        this(directory, Integer.getInteger("shippingstore.packages.shards", 1));
+    }
 
-            fis.close(); 
+    /**
+     * This constructor opens the database kept in the given directory in the given
+     * number of shard files, "<CODE>PackageDB.0-of-N.ser</CODE>" to
+     * "<CODE>PackageDB.(N-1)-of-N.ser</CODE>", or in "<CODE>PackageDB.ser</CODE>"
+     * for a single shard. The shards are read in parallel.
+     *
+     * @param directory the directory holding the database files
+     * @param shards the number of shard files, at least 1
+     * @throws IOException if the files cannot be opened or created
+     */
+    public PackageDatabase(Path directory, int shards) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            if (shards < 1) {
+                throw new IllegalArgumentException("The number of shards must be at least 1");
+            }
+            this.directory = directory;
+            this.shards = shards;
+            dirty = new boolean[shards];
+            dataFile = directory.resolve("PackageDB.ser").toString();
+            journalFile = directory.resolve("PackageDB.journal").toString();
+            packageOrderList = load();
+
+            // Index the orders from all cores; both maps take concurrent puts
+            trackingIndex = new ConcurrentHashMap<>(packageOrderList.size() * 2);
+            sortedIndex = new ConcurrentSkipListMap<>();
+            packageOrderList.parallelStream().forEach(p -> {
+                trackingIndex.put(indexKey(p.getTrackingNumber()), p);
+                sortedIndex.put(indexKey(p.getTrackingNumber()), p);
+            });
+
+            // Recover the changes made since the last flush
+            journal = new Journal(journalFile);
+            pendingChanges = journal.replay(coveredSequence, this::replay);
+            failed = false;
+        } finally {
+            LOAD_STATS.record(start, failed);
         }
-        catch(FileNotFoundException fnfe)
-        {
-            // If data file does not exist, create it.
-            System.out.println("PackageDB.ser does not exist, creating one now . . .");
-            //if the file doesn't exists, create it
-            FileOutputStream fos = new FileOutputStream("PackageDB.ser");
-            //close newly created file so we can reopen it
-            fos.close();
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
+    }
+
+    /**
+     * Private method used to read the orders from the files of the configured layout,
+     * or from an older layout if there are none yet. The files are read in parallel
+     * and the orders sorted by tracking number with a parallel sort. Every shard is
+     * marked as changed if the orders do not come from the configured layout, or if
+     * any of them is in the wrong shard. Only the shards that changed are written by
+     * a snapshot, so the files can hold different journal records; the lowest of
+     * their sequence numbers is kept in <CODE>coveredSequence</CODE>.
+     *
+     * @return the orders, sorted by tracking number.
+     * @throws IOException if the files cannot be listed or created, or if a file
+     * exists but cannot be read.
+     */
+    private ArrayList<PackageOrder> load() throws IOException {
+        coveredSequence = Long.MAX_VALUE;
+        List<Path> files = new ArrayList<>(shards);
+        boolean found = false;
+        for (int i = 0; i < shards; i++) {
+            files.add(shardFile(i, shards));
+            found |= Files.exists(files.get(i));
+        }
+
+        if (!found) {
+            staleFiles = olderLayout();
+            if (staleFiles == null) {
+                // If the data files do not exist, create them.
+                System.out.println((shards == 1 ? dataFile : directory.resolve("PackageDB.*-of-" + shards + ".ser"))
+                    + " does not exist, creating one now . . .");
+                for (Path file : files) {
+                    new FileOutputStream(file.toFile()).close();
+                }
+                coveredSequence = 0;
+                return new ArrayList<>();
+            }
+            files = staleFiles;
+            Arrays.fill(dirty, true);
+        }
+
+        List<Path> sources = files;
+        List<List<PackageOrder>> parts;
+        try {
+            parts = IntStream.range(0, sources.size()).parallel()
+                .mapToObj(i -> readShard(sources.get(i), sources == staleFiles ? -1 : i))
+                .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            // Opening with a shard missing would lose its orders at the next snapshot
+            throw e.getCause();
+        }
+
+        int size = 0;
+        for (List<PackageOrder> part : parts) {
+            size += part.size();
+        }
+        PackageOrder[] orders = new PackageOrder[size];
+        int count = 0;
+        for (List<PackageOrder> part : parts) {
+            for (PackageOrder p : part) {
+                orders[count++] = p;
+            }
+        }
+
+        // findPackageOrder relies on the list being sorted by tracking number
+        Arrays.parallelSort(orders, (a, b) -> a.compareTo(b));
+        return new ArrayList<>(Arrays.asList(orders));
+    }
+
+    /**
+     * Private method used to read one data file. An order found in a shard it does
+     * not hash to marks every shard as changed, so the next snapshot puts it right.
+     * A file that does not exist is treated as empty.
+     *
+     * @param file the file to read.
+     * @param shard the shard the file holds, or -1 if it is not of the configured layout.
+     * @return the orders in the file.
+     * @throws UncheckedIOException if the file exists but cannot be read.
+     */
+    private List<PackageOrder> readShard(Path file, int shard) {
+        // FileInputStream reports an unreadable file or a directory as not found too
+        if (Files.notExists(file)) {
+            synchronized (dirty) {
+                coveredSequence = 0;
+            }
+            return Collections.emptyList();
+        }
+        try (FileInputStream fis = new FileInputStream(file.toFile())) {
+            List<PackageOrder> orders = new ArrayList<>();
+            long sequence = RecordCodec.read(new BufferedInputStream(fis, 1 << 16), PackageOrder.class,
+                orders::add);
+            synchronized (dirty) {
+                coveredSequence = Math.min(coveredSequence, sequence);
+            }
+            if (shard >= 0 && shards > 1) {
+                for (PackageOrder p : orders) {
+                    if (shardOf(p) != shard) {
+                        synchronized (dirty) {
+                            Arrays.fill(dirty, true);
+                        }
+                        break;
+                    }
+                }
+            }
+            return orders;
         } catch (IOException e) {
+            throw new UncheckedIOException(new IOException(file + " cannot be read", e));
+        }
+    }
+
+    /**
+     * Private method used to find the files of another layout of the database: the
+     * single file, or a complete or partial set of shard files of another count. If
+     * there are several, the one with the most recently written file is taken.
+     *
+     * @return the files of that layout, or null if there are none.
+     * @throws IOException if the directory cannot be listed.
+     */
+    private List<Path> olderLayout() throws IOException {
+        Map<Integer, Long> written = new HashMap<>();
+        Path single = Paths.get(dataFile);
+        if (shards != 1 && Files.exists(single)) {
+            written.put(1, Files.getLastModifiedTime(single).toMillis());
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+                directory.toAbsolutePath(), "PackageDB.*-of-*.ser")) {
+            for (Path file : stream) {
+                Matcher m = SHARD_FILE.matcher(file.getFileName().toString());
+                if (m.matches() && !m.group(2).equals(Integer.toString(shards))) {
+                    written.merge(Integer.parseInt(m.group(2)),
+                        Files.getLastModifiedTime(file).toMillis(), Math::max);
+                }
+            }
+        }
+        if (written.isEmpty()) {
+            return null;
+        }
+
+        int count = Collections.max(written.entrySet(), Map.Entry.comparingByValue()).getKey();
+        List<Path> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            files.add(shardFile(i, count));
+        }
+        return files;
+    }
+
+    /**
+     * Private method used to name the file of one shard of a layout.
+     *
+     * @param shard the shard.
+     * @param count the number of shards of the layout; 1 names "PackageDB.ser".
+     * @return the file.
+     */
+    private Path shardFile(int shard, int count) {
+        if (count == 1) {
+            return Paths.get(dataFile);
+        }
+        return directory.resolve("PackageDB." + shard + "-of-" + count + ".ser");
+    }
+
+    /**
+     * Private method used to find the shard an order belongs to. The hash folds
+     * ASCII letters to upper case itself, so it never depends on the locale or the
+     * Java version, and an order always lands in the same shard.
+     *
+     * @param p the <CODE>PackageOrder</CODE>.
+     * @return the shard, from 0 to the number of shards minus one.
+     */
+    private int shardOf(PackageOrder p) {
+        String trackingNumber = p.getTrackingNumber();
+        int h = 0;
+        for (int i = 0; i < trackingNumber.length(); i++) {
+            char c = trackingNumber.charAt(i);
+            h = 31 * h + ((c >= 'a' && c <= 'z') ? c - ('a' - 'A') : c);
+        }
+        h ^= h >>> 16;
+        return Math.floorMod(h, shards);
+    }
+
+    /**
+     * Private method used to mark the shard of an order as changed since it was
+     * last written. The write lock must be held.
+     *
+     * @param p the added or removed <CODE>PackageOrder</CODE>.
+     */
+    private void touch(PackageOrder p) {
+        dirty[shardOf(p)] = true;
+    }
+
+    /**
+     * Private method used to apply one record of the journal while it is replayed.
+     * <CODE>Journal.replay()</CODE> skips the records every file holds. Records that
+     * only some shards hold are applied again, which is harmless: an order already
+     * stored is not added twice, and removing an order that is gone does nothing.
+     *
+     * @param op the journal operation code.
+     * @param payload the encoded record.
+     * @throws IOException if the record cannot be decoded.
+     */
+    private void replay(byte op, byte[] payload) throws IOException {
+        if (op == Journal.ADD) {
+            PackageOrder p = (PackageOrder) RecordCodec.decode(payload);
+            if (!trackingIndex.containsKey(indexKey(p.getTrackingNumber()))) {
+                insert(p);
+            }
+        } else if (op == Journal.REMOVE) {
+            delete((String) RecordCodec.decode(payload));
+        }
+    }
+
+    /**
+     * Private method used to append a change to the journal. A failure to write
+     * the journal does not undo the change; it is reported and will still be saved
+     * by the next <CODE>flush()</CODE>.
+     *
+     * @param op the journal operation code.
+     * @param record the added order or the removed tracking number.
+     */
+    private void journal(byte op, Object record) {
+        try {
+            pendingChanges++;
+            journal.append(op, RecordCodec.encode(record));
+        } catch (IOException e) {
+            System.out.println("Warning: the change could not be written to PackageDB.journal");
             e.printStackTrace();
         }
-        
+    }
+
+    /**
+     * Private method used to insert an order at its sorted position in the list
+     * and add it to the indexes.
+     *
+     * @param order the <CODE>PackageOrder</CODE> to insert.
+     */
+    private void insert(PackageOrder order) {
+        touch(order);
+        packageOrderList.add(-(positionOf(order) + 1), order);
+        trackingIndex.put(indexKey(order.getTrackingNumber()), order);
+        sortedIndex.put(indexKey(order.getTrackingNumber()), order);
+        for (RangeIndex index : rangeIndexes.values()) {
+            index.add(order);
+        }
+    }
+
+    /**
+     * Private method used to remove an order from the index and the list. An order
+     * that another thread has claimed in the index but not yet put in the list is
+     * treated as not there yet. The write lock must be held.
+     *
+     * @param trackingNum the tracking number of the order to remove.
+     * @return the removed <CODE>PackageOrder</CODE>, or null if there was none.
+     */
+    private PackageOrder delete(String trackingNum) {
+        PackageOrder p = trackingIndex.get(indexKey(trackingNum));
+        if (p == null) {
+            return null;
+        }
+
+        int position = positionOf(p);
+        if (position < 0) {
+            return null;
+        }
+        touch(p);
+        packageOrderList.remove(position);
+        trackingIndex.remove(indexKey(trackingNum), p);
+        sortedIndex.remove(indexKey(trackingNum), p);
+        for (RangeIndex index : rangeIndexes.values()) {
+            index.remove(p);
+        }
+        return p;
+    }
+
+    /**
+     * Private method used to normalize a tracking number into the key used by
+     * <CODE>trackingIndex</CODE>. Tracking numbers are matched case-insensitively.
+     *
+     * @param trackingNumber the tracking number to normalize.
+     * @return the upper-cased tracking number.
+     */
+    private static String indexKey(String trackingNumber) {
+        return trackingNumber.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Private method used to locate an order in the sorted <CODE>packageOrderList</CODE>
+     * with a binary search on the tracking number.
+     *
+     * @param p the <CODE>PackageOrder</CODE> to locate.
+     * @return the index of the order, or a negative value if it is not in the list.
+     */
+    private int positionOf(PackageOrder p) {
+        int low = 0;
+        int high = packageOrderList.size() - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = packageOrderList.get(mid).compareTo(p);
+
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -(low + 1);
     }
 
     /**
@@ -107,7 +561,45 @@ public class PackageDatabase
      *
      */
     public void showPackageOrders() {
-        showPackageOrders(packageOrderList);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            lock.readLock().lock();
+            try {
+                showPackageOrders(packageOrderList);
+            } finally {
+                lock.readLock().unlock();
+            }
+            failed = false;
+        } finally {
+            SHOW_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * This method displays one page of the package orders: at most
+     * <CODE>limit</CODE> orders, starting with the order at <CODE>offset</CODE>
+     * in tracking number order.
+     *
+     * @param offset the index of the first order to display
+     * @param limit the largest number of orders to display
+     * @return the number of orders displayed
+     */
+    public int showPackageOrders(int offset, int limit) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            lock.readLock().lock();
+            try {
+                int shown = ORDER_TABLE.print(packageOrderList, offset, limit);
+                failed = false;
+                return shown;
+            } finally {
+                lock.readLock().unlock();
+            }
+        } finally {
+            SHOW_STATS.record(start, failed);
+        }
     }
 
     /**
@@ -119,34 +611,286 @@ public class PackageDatabase
      * or -1 if the search failed.
      */
     public int findPackageOrder(String trackingNumber) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            PackageOrder p = trackingIndex.get(indexKey(trackingNumber));
+            if (p == null) {
+                failed = false;
+                return -1;
+            }
 
-        int index = -1;
+            lock.readLock().lock();
+            try {
+                failed = false;
+                return Math.max(-1, positionOf(p));
+            } finally {
+                lock.readLock().unlock();
+            }
+        } finally {
+            FIND_STATS.record(start, failed);
+        }
+    }
 
-        for (PackageOrder p : packageOrderList) {
-            String temp = p.getTrackingNumber();
+    /**
+     * This method can be used to look up a package order by its tracking number
+     * without going through its position in the Arraylist of orders.
+     *
+     * @param trackingNumber a <CODE>String</CODE> that represents the tracking number
+     * of the order that to be searched for (case-insensitive).
+     * @return the matching <CODE>PackageOrder</CODE>, or null if there is none.
+     */
+    public PackageOrder getPackageOrder(String trackingNumber) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            PackageOrder p = trackingIndex.get(indexKey(trackingNumber));
+            failed = false;
+            return p;
+        } finally {
+            GET_STATS.record(start, failed);
+        }
+    }
+    
+    /**
+     * This method finds the package orders whose tracking numbers match a pattern,
+     * in tracking number order. A pattern matches every tracking number that starts
+     * with it, where ? stands for any one character and a * at the end changes
+     * nothing: "Z1Y" and "Z1Y*" find the orders starting with Z1Y, and "AB1??" the
+     * orders starting with AB1. Letters match case-insensitively.
+     * <p>
+     * The search walks <CODE>sortedIndex</CODE> and jumps over every run of tracking
+     * numbers that cannot match, so it visits only the matches and the points where
+     * a ? moves on to its next character, however many orders there are. It takes no
+     * lock; orders added or removed while it runs may or may not be found.
+     *
+     * @param pattern the pattern: at most 5 letters, digits or ?, and an optional *
+     * @param limit the largest number of orders to return
+     * @return a new <CODE>List</CODE> of at most <CODE>limit</CODE> matching orders
+     * @throws IllegalArgumentException if the pattern is not valid or the limit is negative
+     */
+    public List<PackageOrder> findByPattern(String pattern, int limit) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            if (!TRACKING_PATTERN.matcher(pattern).matches()) {
+                throw new IllegalArgumentException("Invalid search: a tracking number pattern "
+                    + "is at most 5 letters, digits or ?, optionally followed by *");
+            }
+            if (limit < 0) {
+                throw new IllegalArgumentException("The limit cannot be negative");
+            }
+
+            String key = indexKey(pattern.endsWith("*") 
+                ? pattern.substring(0, pattern.length() - 1) : pattern);
+            int wildcard = key.indexOf('?');
+            String literal = (wildcard < 0) ? key : key.substring(0, wildcard);
 
-            if (trackingNumber.equalsIgnoreCase(temp)) {
-                index = packageOrderList.indexOf(p);
-                break;
+            ArrayList<PackageOrder> matches = new ArrayList<>(Math.min(limit, 1024));
+            Map.Entry<String, PackageOrder> e = sortedIndex.ceilingEntry(literal);
+            while (e != null && matches.size() < limit) {
+                String found = e.getKey();
+                int k = mismatch(found, key);
+                if (k < 0) {
+                    matches.add(e.getValue());
+                    e = sortedIndex.higherEntry(found);
+                } else if (k >= found.length()) {
+                    // Shorter than the pattern, so it cannot match
+                    e = sortedIndex.higherEntry(found);
+                } else if (found.charAt(k) < key.charAt(k)) {
+                    // Skip ahead to the first key that has the right character here
+                    e = sortedIndex.ceilingEntry(found.substring(0, k) + key.charAt(k));
+                } else {
+                    // Move the last ? before k on to its next character
+                    int q = key.lastIndexOf('?', k - 1);
+                    if (q < 0) {
+                        break;
+                    }
+                    e = sortedIndex.ceilingEntry(found.substring(0, q) + (char) (found.charAt(q) + 1));
+                }
             }
+            failed = false;
+            return matches;
+        } finally {
+            SEARCH_STATS.record(start, failed);
         }
+    }
 
-        return index;
+    /**
+     * Private method used to find where a key stops matching a search pattern.
+     *
+     * @param key the upper-cased tracking number.
+     * @param pattern the upper-cased pattern, without a trailing *.
+     * @return the first position that does not match, or -1 if the key matches.
+     */
+    private static int mismatch(String key, String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if (i >= key.length()) {
+                return i;
+            }
+            char c = pattern.charAt(i);
+            if (c != '?' && key.charAt(i) != c) {
+                return i;
+            }
+        }
+        return -1;
     }
-    
+
+    /**
+     * This method finds the package orders whose value of an attribute lies between
+     * two bounds, both included, such as the crates with a load weight of 40 lbs or
+     * more, in ascending order of the value. Orders of the other types of package
+     * are never included. The range is found by binary search in the
+     * <CODE>RangeIndex</CODE> of the attribute instead of a scan of the orders.
+     *
+     * @param attribute the <CODE>PackageAttribute</CODE> to compare
+     * @param low the lowest value to include, or <CODE>Double.NEGATIVE_INFINITY</CODE>
+     * @param high the highest value to include, or <CODE>Double.POSITIVE_INFINITY</CODE>
+     * @param limit the largest number of orders to return
+     * @return a new <CODE>List</CODE> of at most <CODE>limit</CODE> matching orders
+     * @throws IllegalArgumentException if a bound is NaN or the limit is negative
+     */
+    public List<PackageOrder> findInRange(PackageAttribute attribute, double low, double high, int limit) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            checkRange(low, high);
+            if (limit < 0) {
+                throw new IllegalArgumentException("The limit cannot be negative");
+            }
+
+            RangeIndex index = rangeIndex(attribute);
+            lock.readLock().lock();
+            try {
+                List<PackageOrder> matches = index.range(low, high, limit);
+                failed = false;
+                return matches;
+            } finally {
+                lock.readLock().unlock();
+            }
+        } finally {
+            RANGE_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * This method counts the package orders that <CODE>findInRange()</CODE> would
+     * find without a limit.
+     *
+     * @param attribute the <CODE>PackageAttribute</CODE> to compare
+     * @param low the lowest value to include, or <CODE>Double.NEGATIVE_INFINITY</CODE>
+     * @param high the highest value to include, or <CODE>Double.POSITIVE_INFINITY</CODE>
+     * @return the number of matching orders
+     * @throws IllegalArgumentException if a bound is NaN
+     */
+    public int countInRange(PackageAttribute attribute, double low, double high) {
+        checkRange(low, high);
+        RangeIndex index = rangeIndex(attribute);
+        lock.readLock().lock();
+        try {
+            return index.count(low, high);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This method displays the package orders found by <CODE>findInRange()</CODE>,
+     * at most the first 50, after the number of orders found.
+     *
+     * @param attribute the <CODE>PackageAttribute</CODE> to compare
+     * @param low the lowest value to include, or <CODE>Double.NEGATIVE_INFINITY</CODE>
+     * @param high the highest value to include, or <CODE>Double.POSITIVE_INFINITY</CODE>
+     */
+    public void showOrdersInRange(PackageAttribute attribute, double low, double high) {
+        List<PackageOrder> matches = findInRange(attribute, low, high, SEARCH_LIMIT);
+        int count = Math.max(matches.size(), countInRange(attribute, low, high));
+
+        if (count == 0) {
+            System.out.println("\nSearch did not find a match.\n");
+            return;
+        }
+        System.out.println("\n" + count + (count == 1 ? " order matched" : " orders matched")
+            + (count > matches.size() ? ". Here are the first " + matches.size() + ":\n" : ":\n"));
+        showPackageOrders(matches);
+    }
+
+    /**
+     * Private method used to get the range index of an attribute, building it from
+     * the list the first time. It must be called without holding the lock.
+     *
+     * @param attribute the <CODE>PackageAttribute</CODE> of the index.
+     * @return the <CODE>RangeIndex</CODE>.
+     */
+    private RangeIndex rangeIndex(PackageAttribute attribute) {
+        lock.readLock().lock();
+        try {
+            RangeIndex index = rangeIndexes.get(attribute);
+            if (index != null) {
+                return index;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            return rangeIndexes.computeIfAbsent(attribute, a -> {
+                RangeIndex index = new RangeIndex(a);
+                index.addAll(packageOrderList);
+                return index;
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Private method used to reject a range with a NaN bound.
+     */
+    private static void checkRange(double low, double high) {
+        if (Double.isNaN(low) || Double.isNaN(high)) {
+            throw new IllegalArgumentException("The bounds of a range must be numbers");
+        }
+    }
+
     /**
      * This method can be used to search for a package order in the Arraylist of orders.
+     * A whole tracking number shows that order; anything shorter, or with ? or *, is
+     * searched for as a pattern (see <CODE>findByPattern()</CODE>) and shows the first
+     * 50 matches.
      *
      * @param trackingNumber a <CODE>String</CODE> that represents the tracking number
-     * of the order that to be searched for.
+     * of the order that to be searched for, or a pattern.
      */
     public void searchPackageOrder(String trackingNumber) {
 
-        int index = findPackageOrder(trackingNumber);
+        if (!TRACKING_NUMBER.matcher(trackingNumber).matches()) {
+            List<PackageOrder> matches;
+            try {
+                matches = findByPattern(trackingNumber, SEARCH_LIMIT + 1);
+            } catch (IllegalArgumentException e) {
+                System.out.println("\n" + e.getMessage() + "\n");
+                return;
+            }
+
+            if (matches.isEmpty()) {
+                System.out.println("\nSearch did not find a match.\n");
+            } else if (matches.size() > SEARCH_LIMIT) {
+                System.out.println("\nHere are the first " + SEARCH_LIMIT + " orders that matched:\n");
+                showPackageOrders(matches.subList(0, SEARCH_LIMIT));
+            } else {
+                System.out.println("\nHere are the orders that matched:\n");
+                showPackageOrders(matches);
+            }
+            return;
+        }
 
-        if (index != -1) {
+        PackageOrder p = getPackageOrder(trackingNumber);
+
+        if (p != null) {
             ArrayList<PackageOrder> order = new ArrayList<>(1);
-            order.add(getPackageOrder(index));
+            order.add(p);
             System.out.println("\nHere is the order that matched:\n");
             showPackageOrders(order);
         } else {
@@ -186,6 +930,9 @@ public class PackageDatabase
      *    Box: Volume in inches cubed 0-999999
      *    Crate: Content of the crate 
      *    Drum: diameter in inches 0-999
+     * <p>
+     * Rule 1 is checked atomically, so when several threads add the same tracking
+     * number at once exactly one of them succeeds.
      * @param trackingnumber the <CODE>String</CODE> representing tracking number
      * 
      * @param type the <CODE>String</CODE> representing the type of package
@@ -206,112 +953,370 @@ public class PackageDatabase
     public void addOrder(String trackingnumber, String type, String specification, 
         String mailingclass, String special1, String special2) {
 
-        if (this.findPackageOrder(trackingnumber) != -1) {
-            System.out.println("Package Order already exists in database. \n");
-            return;
+        String error = insertOrder(trackingnumber, type, specification, mailingclass, special1, special2);
+        System.out.println(error != null ? error : "Package Order has been added.\n");
+    }
+
+    /**
+     * This method adds a package order like <CODE>addOrder()</CODE> but prints
+     * nothing, for callers such as <CODE>ShippingServer</CODE> that report the
+     * outcome themselves.
+     *
+     * @param trackingnumber the <CODE>String</CODE> representing tracking number
+     * @param type the <CODE>String</CODE> representing the type of package
+     * @param specification the <CODE>String</CODE> representing the specification
+     * @param mailingclass the <CODE>String</CODE> representing the mailing class
+     * @param special1 the first type specific field, see <CODE>addOrder()</CODE>
+     * @param special2 the second type specific field, see <CODE>addOrder()</CODE>
+     * @return null if the order was added, otherwise the message explaining why not
+     */
+    public String insertOrder(String trackingnumber, String type, String specification, 
+        String mailingclass, String special1, String special2) {
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            String error = add(trackingnumber, type, specification, mailingclass, special1, special2);
+            failed = (error != null);
+            return error;
+        } finally {
+            ADD_STATS.record(start, failed);
         }
+    }
 
-        if (!trackingnumber.matches("[A-Za-z0-9]{5}")) {
-            System.out.println("Invalid Tracking Number: not proper format."
-                + "Tracking Number must be 5 alphanumeric characters.");
-            return;
+    /**
+     * Private method used to add an order for <CODE>insertOrder()</CODE>.
+     *
+     * @return null if the order was added, otherwise the message explaining why not
+     */
+    private String add(String trackingnumber, String type, String specification, 
+        String mailingclass, String special1, String special2) {
+
+        if (trackingIndex.containsKey(indexKey(trackingnumber))) {
+            return DUPLICATE_ORDER;
         }
 
-        if (!(specification.equals("Fragile") || specification.equals("Books") || specification.equals("Catalogs")
-            || specification.equals("Do-not-Bend") || specification.toUpperCase().equals("N/A"))) {
-            System.out.println("Invalid specification:\n"
+        String error = validateOrder(trackingnumber, type, specification, mailingclass, special1, special2);
+        if (error != null) {
+            return error;
+        }
+
+        // If it passed all the checks, claim the tracking number in the index, then
+        // insert the order at its sorted position in the list
+        PackageOrder order = createOrder(trackingnumber, type, specification, mailingclass,
+            special1, special2);
+        if (trackingIndex.putIfAbsent(indexKey(trackingnumber), order) != null) {
+            return DUPLICATE_ORDER;
+        }
+
+        lock.writeLock().lock();
+        try {
+            touch(order);
+            packageOrderList.add(-(positionOf(order) + 1), order);
+            sortedIndex.put(indexKey(trackingnumber), order);
+            for (RangeIndex index : rangeIndexes.values()) {
+                index.add(order);
+            }
+            journal(Journal.ADD, order);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return null;
+    }
+
+    /**
+     * This method checks the fields of a package order against rules 2 to 7 listed
+     * for <CODE>addOrder()</CODE>. It does not check for duplicates and touches no
+     * database state, and its patterns are compiled once, so it can be called from
+     * several threads at once.
+     *
+     * @param trackingnumber the <CODE>String</CODE> representing tracking number
+     * @param type the <CODE>String</CODE> representing the type of package
+     * @param specification the <CODE>String</CODE> representing the specification
+     * @param mailingclass the <CODE>String</CODE> representing the mailing class
+     * @param special1 the first type specific field, see <CODE>addOrder()</CODE>
+     * @param special2 the second type specific field, see <CODE>addOrder()</CODE>
+     * @return null if the order is valid, otherwise the message explaining why not
+     */
+    public static String validateOrder(String trackingnumber, String type, String specification, 
+        String mailingclass, String special1, String special2) {
+
+        if (!TRACKING_NUMBER.matcher(trackingnumber).matches()) {
+            return "Invalid Tracking Number: not proper format."
+                + "Tracking Number must be 5 alphanumeric characters.";
+        }
+
+        if (!(CodeTable.SPECIFICATIONS.isStandard(specification) || specification.equalsIgnoreCase("N/A"))) {
+            return "Invalid specification:\n"
                 + "Specification must be one of following: "
-                + "Fragile, Books, Catalogs, Do-not-Bend, N/A.");
-            return;
+                + "Fragile, Books, Catalogs, Do-not-Bend, N/A.";
         }
 
-        if (!(mailingclass.equals("First-Class") || mailingclass.equals("Priority") || mailingclass.equals("Retail")
-            || mailingclass.equals("Ground") || mailingclass.equals("Metro")) ) {
-            System.out.println("Invalid Mailing Class:\n"
+        if (!CodeTable.MAILING_CLASSES.isStandard(mailingclass)) {
+            return "Invalid Mailing Class:\n"
                 + "Mailing Class must be one of following: "
-                + "First-Class, Priority, Retail, Ground, Metro.");
-            return;
+                + "First-Class, Priority, Retail, Ground, Metro.";
         }
 
         if (type.equals("Envelope"))
         {
-            if(!special1.matches("[0-9]{1,2}")){
-                System.out.println("Invalid height:\n"
-                    + "The envelope's height (inches) has to be an integer number between 0 and 99.");
-                return;
+            if(!UP_TO_2_DIGITS.matcher(special1).matches()){
+                return "Invalid height:\n"
+                    + "The envelope's height (inches) has to be an integer number between 0 and 99.";
             }
-            if(!special2.matches("[0-9]{1,2}")){
-                System.out.println("Invalid width:\n"
-                    + "The envelope's width (inches) has to be an integer number between 0 and 99.");
-                return;
+            if(!UP_TO_2_DIGITS.matcher(special2).matches()){
+                return "Invalid width:\n"
+                    + "The envelope's width (inches) has to be an integer number between 0 and 99.";
             }
-
-            // If it passed all the checks, add the order to the list
-            packageOrderList.add(new Envelope(trackingnumber, specification, mailingclass,
-                    Integer.parseInt(special1), Integer.parseInt(special2)));
         }
         else if (type.equals("Box"))
         {
-            if(!special1.matches("[0-9]{1,3}")){
-                System.out.println("Invalid dimension:\n"
-                    + "The box's largest dimension (inches) has to be an integer number between 0 and 999.");
-                return;
+            if(!UP_TO_3_DIGITS.matcher(special1).matches()){
+                return "Invalid dimension:\n"
+                    + "The box's largest dimension (inches) has to be an integer number between 0 and 999.";
             }
-            if(!special2.matches("[0-9]{1,6}")){
-                System.out.println("Invalid volume:\n"
-                    + "The box's volume (inches cubed) has to be an integer number between 0 and 999999.");
-                return;
+            if(!UP_TO_6_DIGITS.matcher(special2).matches()){
+                return "Invalid volume:\n"
+                    + "The box's volume (inches cubed) has to be an integer number between 0 and 999999.";
             }
-
-            // If it passed all the checks, add the order to the list
-            packageOrderList.add(new Box(trackingnumber, specification, mailingclass,
-                    Integer.parseInt(special1), Integer.parseInt(special2)));
         }
         else if (type.equals("Crate"))
         {
             try{
                 if ((Float.parseFloat(special1) < 0)) {
-                    System.out.println("Invalid load weight:\n"
-                        + "The maximum load weight of the crate cannot be negative");
-                return;
+                    return "Invalid load weight:\n"
+                        + "The maximum load weight of the crate cannot be negative";
                 }
-
-                // If it passed all the checks, add the order to the list
-                packageOrderList.add(new Crate(trackingnumber, specification, mailingclass,
-                    Float.parseFloat(special1), special2));
             }
             catch(NumberFormatException e){
-                System.out.println("Invalid weight:\n"
-                    + "must be a real number");
-                return;
+                return "Invalid weight:\n"
+                    + "must be a real number";
             }
         }
         else if (type.equals("Drum"))
         {
-            if (!(special1.equals("Plastic") || special1.equals("Fiber"))){
-                System.out.println("Invalid material:\n"
-                    + "Valid drum material options are: Plastic, Fiber");
-                return;
+            if (!CodeTable.MATERIALS.isStandard(special1)){
+                return "Invalid material:\n"
+                    + "Valid drum material options are: Plastic, Fiber";
             }
-            if(!special2.matches("[0-9]{1,3}")){
-                System.out.println("Invalid diameter:\n"
-                    + "The drums diameter (inches) has to be an integer number between 0 and 999.");
-                return;
+            if(!UP_TO_3_DIGITS.matcher(special2).matches()){
+                return "Invalid diameter:\n"
+                    + "The drums diameter (inches) has to be an integer number between 0 and 999.";
             }
-
-            // If it passed all the checks, add the order to the list
-            packageOrderList.add(new Drum(trackingnumber, specification, mailingclass,
-                    special1, Integer.parseInt(special2)));
         }
         else{
-            System.out.println("Not a valid type.\n"
-                + "Valid package types are: Envelope, Box, Crate, or Drum\n");
+            return "Not a valid type.\n"
+                + "Valid package types are: Envelope, Box, Crate, or Drum\n";
+        }
+
+        return null;
+    }
+
+    /**
+     * Private method used to build the package order object for fields that have
+     * passed <CODE>validateOrder()</CODE>.
+     *
+     * @return the new <CODE>PackageOrder</CODE> of the given type.
+     */
+    private static PackageOrder createOrder(String trackingnumber, String type, String specification, 
+        String mailingclass, String special1, String special2) {
+
+        switch (type) {
+            case "Envelope":
+                return new Envelope(trackingnumber, specification, mailingclass,
+                    Integer.parseInt(special1), Integer.parseInt(special2));
+            case "Box":
+                return new Box(trackingnumber, specification, mailingclass,
+                    Integer.parseInt(special1), Integer.parseInt(special2));
+            case "Crate":
+                return new Crate(trackingnumber, specification, mailingclass,
+                    Float.parseFloat(special1), special2);
+            default: // "Drum"
+                return new Drum(trackingnumber, specification, mailingclass,
+                    special1, Integer.parseInt(special2));
+        }
+    }
+
+    /**
+     * This method loads package orders in bulk from CSV text, one order per line in
+     * the form <CODE>TYPE,TRACKING#,SPECIFICATION,CLASS,SPECIAL1,SPECIAL2</CODE>, with
+     * the type specific fields as described for <CODE>addOrder()</CODE>. A first line
+     * starting with <CODE>Type</CODE> is taken as a header and skipped, as are blank
+     * lines. Fields may be quoted with double quotes.
+     * <p>
+     * The input is streamed in batches that are validated in parallel. Lines that
+     * fail validation, repeat a tracking number seen earlier in the file, or match
+     * an order already in the database are rejected and reported with their reason.
+     * The accepted orders are sorted once and merged into the list in a single pass,
+     * and journaled with a single forced write.
+     *
+     * @param in the <CODE>Reader</CODE> supplying the CSV text
+     * @return an <CODE>ImportReport</CODE> with the number of orders added and the
+     * rejected lines
+     * @throws IOException if the input cannot be read or the journal written
+     */
+    public ImportReport importOrders(Reader in) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            BufferedReader reader = (in instanceof BufferedReader) 
+                ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+            ImportReport report = new ImportReport();
+            HashMap<String, Integer> seen = new HashMap<>();
+            ArrayList<PackageOrder> accepted = new ArrayList<>();
+            ArrayList<Integer> acceptedLines = new ArrayList<>();
+
+            String[] lines = new String[IMPORT_BATCH_SIZE];
+            int lineNumber = 0;
+            boolean eof = false;
+
+            while (!eof) {
+                // Read a batch of lines, then validate the whole batch in parallel
+                int count = 0;
+                int batchStart = lineNumber + 1;
+                while (count < lines.length) {
+                    String line = reader.readLine();
+                    if (line == null) {
+                        eof = true;
+                        break;
+                    }
+                    lines[count++] = line;
+                    lineNumber++;
+                }
+
+                final boolean firstBatch = (batchStart == 1);
+                final String[] errors = new String[count];
+                final PackageOrder[] orders = new PackageOrder[count];
+                final boolean[] skipped = new boolean[count];
+                IntStream.range(0, count).parallel().forEach(i -> {
+                    if (lines[i].trim().isEmpty()) {
+                        skipped[i] = true;
+                        return;
+                    }
+
+                    String[] f = Csv.split(lines[i]);
+                    for (int k = 0; k < f.length; k++) {
+                        f[k] = f[k].trim();
+                    }
+                    if (firstBatch && i == 0 && f[0].equalsIgnoreCase("Type")) {
+                        skipped[i] = true;
+                    } else if (f.length != 6) {
+                        errors[i] = "expected 6 fields but found " + f.length;
+                    } else if ((errors[i] = validateOrder(f[1], f[0], f[2], f[3], f[4], f[5])) == null) {
+                        orders[i] = createOrder(f[1], f[0], f[2], f[3], f[4], f[5]);
+                    }
+                });
+
+                // Check for duplicates within the file in line order
+                for (int i = 0; i < count; i++) {
+                    if (skipped[i]) {
+                        continue;
+                    }
+
+                    int at = batchStart + i;
+                    report.lineRead();
+                    if (errors[i] != null) {
+                        report.reject(at, errors[i]);
+                        continue;
+                    }
+
+                    Integer earlier = seen.putIfAbsent(indexKey(orders[i].getTrackingNumber()), at);
+                    if (earlier != null) {
+                        report.reject(at, "Tracking number already used on line " + earlier);
+                        continue;
+                    }
+                    accepted.add(orders[i]);
+                    acceptedLines.add(at);
+                }
+                Arrays.fill(lines, 0, count, null);
+            }
+
+            mergeImported(accepted, acceptedLines, report);
+            failed = false;
+            return report;
+        } finally {
+            IMPORT_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * Private method used to add the orders accepted by <CODE>importOrders()</CODE>.
+     * Each order claims its tracking number in the index, and orders whose tracking
+     * number is already taken are rejected; the rest are journaled, sorted and merged
+     * with the list in one pass under the write lock.
+     *
+     * @param accepted the orders that passed validation, in file order.
+     * @param lines the line number of each accepted order.
+     * @param report the <CODE>ImportReport</CODE> to record the outcome in.
+     * @throws IOException if the journal cannot be written; nothing is added then.
+     */
+    private void mergeImported(ArrayList<PackageOrder> accepted, 
+        ArrayList<Integer> lines, ImportReport report) throws IOException {
+
+        ArrayList<PackageOrder> fresh = new ArrayList<>(accepted.size());
+        ArrayList<byte[]> payloads = new ArrayList<>(accepted.size());
+        for (int i = 0; i < accepted.size(); i++) {
+            PackageOrder p = accepted.get(i);
+            if (trackingIndex.putIfAbsent(indexKey(p.getTrackingNumber()), p) != null) {
+                report.reject(lines.get(i), DUPLICATE_ORDER.trim());
+            } else {
+                fresh.add(p);
+                payloads.add(RecordCodec.encode(p));
+            }
+        }
+        if (fresh.isEmpty()) {
             return;
         }
 
-        // If an order was added, sort the list and display message
-        System.out.println("Package Order has been added.\n");
-        Collections.sort(packageOrderList);
+        fresh.sort((a, b) -> a.compareTo(b));
+        lock.writeLock().lock();
+        try {
+            journal.appendAll(Journal.ADD, payloads);
+        } catch (IOException e) {
+            lock.writeLock().unlock();
+            for (PackageOrder p : fresh) {
+                trackingIndex.remove(indexKey(p.getTrackingNumber()), p);
+            }
+            throw e;
+        }
+
+        try {
+            pendingChanges += fresh.size();
+            mergeSorted(fresh);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        report.added(fresh.size());
+    }
+
+    /**
+     * Private method used to merge sorted new orders with the list in one pass and
+     * add them to <CODE>sortedIndex</CODE> and the range indexes. The orders must already be in
+     * <CODE>trackingIndex</CODE> and the write lock must be held.
+     *
+     * @param fresh the new orders, sorted by tracking number.
+     */
+    private void mergeSorted(ArrayList<PackageOrder> fresh) {
+        ArrayList<PackageOrder> merged = new ArrayList<>(packageOrderList.size() + fresh.size());
+        int i = 0;
+        int j = 0;
+        while (i < packageOrderList.size() && j < fresh.size()) {
+            if (packageOrderList.get(i).compareTo(fresh.get(j)) < 0) {
+                merged.add(packageOrderList.get(i++));
+            } else {
+                merged.add(fresh.get(j++));
+            }
+        }
+        merged.addAll(packageOrderList.subList(i, packageOrderList.size()));
+        merged.addAll(fresh.subList(j, fresh.size()));
+        packageOrderList = merged;
+        for (PackageOrder p : fresh) {
+            touch(p);
+            sortedIndex.put(indexKey(p.getTrackingNumber()), p);
+        }
+        for (RangeIndex index : rangeIndexes.values()) {
+            index.addAll(fresh);
+        }
     }
 
     /**
@@ -323,13 +1328,116 @@ public class PackageDatabase
      */
     public void removeOrder(String trackingNum) 
     {
-        int orderID = findPackageOrder(trackingNum);
-        if (orderID == -1) {
-            System.out.println("\nAction failed. No package order with the given tracking # exist in database.\n");
+        removeOrder(trackingNum, null, RemovalPolicy.UNCHECKED);
+    }
+
+    /**
+     * This method removes an order like <CODE>removeOrder(String)</CODE>, applying a
+     * removal policy to the transactions that shipped it. If the policy refuses the
+     * removal, it says why.
+     *
+     * @param trackingNum the tracking number of the order to remove (case-insensitive)
+     * @param transactions the <CODE>TransactionDatabase</CODE> that may refer to the
+     * order, or null if the policy is <CODE>UNCHECKED</CODE>
+     * @param policy what to do about the transactions that shipped the order
+     */
+    public void removeOrder(String trackingNum, TransactionDatabase transactions, RemovalPolicy policy)
+    {
+        try {
+            if (deleteOrder(trackingNum, transactions, policy) == null) {
+                System.out.println("\nAction failed. No package order with the given tracking # exist in database.\n");
+            }
+            else {
+                System.out.println("\nAction successful. Package order has been removed from the database.\n");
+            }
+        } catch (IllegalStateException e) {
+            System.out.println("\nAction failed. " + e.getMessage() + ".\n");
         }
-        else {
-            packageOrderList.remove(orderID);
-            System.out.println("\nAction successful. Package order has been removed from the database.\n");
+    }
+
+    /**
+     * This method removes an order like <CODE>removeOrder()</CODE> but prints nothing.
+     *
+     * @param trackingNum the tracking number of the order to remove (case-insensitive)
+     * @return the removed <CODE>PackageOrder</CODE>, or null if there was none
+     */
+    public PackageOrder deleteOrder(String trackingNum)
+    {
+        return deleteOrder(trackingNum, null, RemovalPolicy.UNCHECKED);
+    }
+
+    /**
+     * This method removes an order like <CODE>deleteOrder(String)</CODE>, applying a
+     * removal policy to the transactions that shipped it. Whether the order is
+     * referred to is looked up in the indexes of the transaction database, not by
+     * scanning the transactions. With <CODE>CASCADE</CODE> those transactions are
+     * removed along with the order.
+     *
+     * @param trackingNum the tracking number of the order to remove (case-insensitive)
+     * @param transactions the <CODE>TransactionDatabase</CODE> that may refer to the
+     * order, or null if the policy is <CODE>UNCHECKED</CODE>
+     * @param policy what to do about the transactions that shipped the order
+     * @return the removed <CODE>PackageOrder</CODE>, or null if there was none
+     * @throws IllegalStateException if the policy is <CODE>RESTRICT</CODE> and a
+     * transaction shipped the order
+     */
+    public PackageOrder deleteOrder(String trackingNum, TransactionDatabase transactions, RemovalPolicy policy)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            lock.writeLock().lock();
+            try {
+                PackageOrder p;
+                if (policy == RemovalPolicy.UNCHECKED || trackingIndex.get(indexKey(trackingNum)) == null) {
+                    p = deleteJournaled(trackingNum);
+                } else {
+                    p = transactions.removePackage(trackingNum, policy, () -> deleteJournaled(trackingNum));
+                }
+                failed = false;
+                return p;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            REMOVE_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * Private method used to remove an order and journal the removal. The caller
+     * must hold the write lock.
+     *
+     * @param trackingNum the tracking number of the order to remove.
+     * @return the removed <CODE>PackageOrder</CODE>, or null if there was none.
+     */
+    private PackageOrder deleteJournaled(String trackingNum) {
+        PackageOrder p = delete(trackingNum);
+        if (p != null) {
+            journal(Journal.REMOVE, p.getTrackingNumber());
+        }
+        return p;
+    }
+
+    /**
+     * This method runs an action on behalf of <CODE>TransactionDatabase</CODE> while
+     * the given package order is still stored. The read lock is held while the
+     * action runs, so the order cannot be removed until it returns.
+     *
+     * @param p the <CODE>PackageOrder</CODE> looked up earlier
+     * @param action the action to run
+     * @return what <CODE>action</CODE> returned, or null if the order was removed or
+     * replaced and the action was not run
+     */
+    <T> T whileStored(PackageOrder p, Supplier<T> action) {
+        lock.readLock().lock();
+        try {
+            if (trackingIndex.get(indexKey(p.getTrackingNumber())) != p) {
+                return null;
+            }
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
@@ -343,28 +1451,246 @@ public class PackageDatabase
      */
     public PackageOrder getPackageOrder(int i) 
     {
-        if (i < packageOrderList.size() && i >= 0) {
-            return packageOrderList.get(i);
-        } else {
-            System.out.println("Invalid Index. Please enter another command or 'h' to list the commands.");
-            return null;
+        lock.readLock().lock();
+        try {
+            if (i < packageOrderList.size() && i >= 0) {
+                return packageOrderList.get(i);
+            }
+        } finally {
+            lock.readLock().unlock();
         }
+        System.out.println("Invalid Index. Please enter another command or 'h' to list the commands.");
+        return null;
     }
 
     /**
-     * This method opens <CODE>"PackageOrderDB.ser"</CODE> and overwrites it with a serialization of
-     * all the package orders in the <CODE>PackageOrderList</CODE>.
+     * This method writes the package orders in the <CODE>packageOrderList</CODE> to the given
+     * <CODE>Writer</CODE> as CSV or JSON Lines, one record at a time. Only the package
+     * orders accepted by the filter are written; a null filter writes them all. The
+     * list is read in chunks of at most <CODE>EXPORT_CHUNK_SIZE</CODE> orders under
+     * the read lock, and each chunk is written after the lock is released, so the
+     * export holds one chunk in memory however large the database is and a slow
+     * writer does not hold up changes. Each chunk starts after the tracking number
+     * the previous one ended at, so an order changed during the export is written
+     * at most once. The writer is buffered if it is not already, and flushed but not
+     * closed at the end.
+     *
+     * @param out the <CODE>Writer</CODE> to write to
+     * @param format the export format
+     * @param filter the package orders to include, or null for all of them
+     * @return the number of package orders written
+     * @throws IOException if the writer fails
+     */
+    public int export(Writer out, ExportFormat format, Predicate<? super PackageOrder> filter) throws IOException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Writer w = out instanceof BufferedWriter ? out : new BufferedWriter(out, 1 << 16);
+            List<PackageOrder> chunk = new ArrayList<>(EXPORT_CHUNK_SIZE);
+            PackageOrder last = null;
+            boolean more = true;
+            int written = 0;
+
+            Exporter.writeOrderHeader(w, format);
+            while (more) {
+                chunk.clear();
+                lock.readLock().lock();
+                try {
+                    // Resume after the last order read, even if it has since been deleted
+                    int from = 0;
+                    if (last != null) {
+                        int position = positionOf(last);
+                        from = position >= 0 ? position + 1 : -(position + 1);
+                    }
+                    int to = Math.min(from + EXPORT_CHUNK_SIZE, packageOrderList.size());
+                    for (int i = from; i < to; i++) {
+                        PackageOrder r = packageOrderList.get(i);
+                        if (filter == null || filter.test(r)) {
+                            chunk.add(r);
+                        }
+                    }
+                    if (to > from) {
+                        last = packageOrderList.get(to - 1);
+                    }
+                    more = to < packageOrderList.size();
+                } finally {
+                    lock.readLock().unlock();
+                }
+
+                // Orders are never changed in place, so they can be written unlocked
+                for (PackageOrder r : chunk) {
+                    Exporter.writeOrder(w, format, r);
+                }
+                written += chunk.size();
+            }
+
+            w.flush();
+            failed = false;
+            return written;
+        } finally {
+            EXPORT_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * This method sets how many changes are journaled before the journal is forced
+     * to disk, in place of the system property
+     * <CODE>shippingstore.journal.syncEvery</CODE>. A value of 0 forces it only when
+     * the database is saved, which suits callers that save it themselves when they
+     * are done, such as batch mode.
+     *
+     * @param records the number of changes per forced write, or 0
+     */
+    public void setJournalSyncEvery(int records) {
+        lock.writeLock().lock();
+        try {
+            journal.setSyncEvery(records);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method returns the number of changes made since the last snapshot was
+     * written to <CODE>"PackageDB.ser"</CODE>.
+     *
+     * @return the number of unsaved changes
+     */
+    @Override
+    public long getPendingChanges()
+    {
+        return pendingChanges;
+    }
+
+    /**
+     * This method writes a snapshot of the <CODE>packageOrderList</CODE> to <CODE>"PackageDB.ser"</CODE>
+     * in the <CODE>RecordCodec</CODE> format. The list is copied while holding the
+     * read lock, which only takes as long as an array copy, and the copy is
+     * then written without blocking further changes. The file is replaced atomically
+     * and the journal records the snapshot covers are dropped; anything added
+     * meanwhile stays in the journal.
+     * <p>
+     * When the database is sharded, only the shards changed since they were last
+     * written are written, each to its own file and in parallel. Files of an older
+     * layout are deleted once the snapshot has been written.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    @Override
+    public void snapshot() throws IOException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            synchronized (snapshotLock) {
+                ArrayList<PackageOrder> copy;
+                boolean[] changed;
+                long mark;
+                long sequence;
+                long changes;
+                lock.readLock().lock();
+                try {
+                    copy = new ArrayList<>(packageOrderList);
+                    changed = dirty.clone();
+                    Arrays.fill(dirty, false);
+                    mark = journal.size();
+                    sequence = journal.lastSequence();
+                    changes = pendingChanges;
+                } finally {
+                    lock.readLock().unlock();
+                }
+
+                try {
+                    writeShards(copy, changed, sequence);
+                } catch (IOException | RuntimeException e) {
+                    lock.writeLock().lock();
+                    try {
+                        for (int i = 0; i < shards; i++) {
+                            dirty[i] |= changed[i];
+                        }
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                    throw e;
+                }
+                if (staleFiles != null) {
+                    for (Path file : staleFiles) {
+                        Files.deleteIfExists(file);
+                    }
+                    staleFiles = null;
+                }
+
+                lock.writeLock().lock();
+                try {
+                    journal.discardBefore(mark);
+                    pendingChanges -= changes;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            failed = false;
+        } finally {
+            SNAPSHOT_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * Private method used to write the shards of a snapshot. The single file is
+     * always written; of several shards, only the changed ones are, in parallel.
+     *
+     * @param orders the orders to write, sorted by tracking number.
+     * @param changed which shards to write.
+     * @param sequence the sequence number of the last journal record the orders hold.
+     * @throws IOException if a shard cannot be written.
+     */
+    private void writeShards(List<PackageOrder> orders, boolean[] changed, long sequence) throws IOException {
+        if (shards == 1) {
+            Snapshotter.writeAtomically(dataFile, orders, sequence);
+            return;
+        }
+
+        List<List<PackageOrder>> parts = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            parts.add(changed[i] ? new ArrayList<>(orders.size() / shards + 16) : null);
+        }
+        for (PackageOrder p : orders) {
+            List<PackageOrder> part = parts.get(shardOf(p));
+            if (part != null) {
+                part.add(p);
+            }
+        }
+
+        try {
+            IntStream.range(0, shards).parallel().filter(i -> changed[i]).forEach(i -> {
+                try {
+                    Snapshotter.writeAtomically(shardFile(i, shards).toString(), parts.get(i), sequence);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * This method saves every package order in the <CODE>packageOrderList</CODE> to
+     * <CODE>"PackageDB.ser"</CODE> by writing a snapshot, whether or not anything changed.
+     * A sharded database only writes the shards that changed.
      * This should be the last method to be called before exiting the program.
      * @throws IOException if it cannot create a file in the current directory
      */
     public void flush() throws IOException 
     {
-        FileOutputStream fos = new FileOutputStream("PackageDB.ser");
-        ObjectOutputStream oos = new ObjectOutputStream(fos);
-
-        oos.writeObject(packageOrderList);
-
-        fos.close();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            snapshot();
+            failed = false;
+        } finally {
+            FLUSH_STATS.record(start, failed);
+        }
     }
 
 }
@@ -1,5 +1,10 @@
 package shippingstore;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 
 /**
@@ -7,15 +12,31 @@ import java.io.Serializable;
  * methods and no setter methods and as a result a package order cannot be mutated once
  * initialized. A package order object can also call the two override methods
  * <CODE>toString()</CODE> and <CODE>equals()</CODE> and <CODE>compareTo()</CODE>
+ * <p>
+ * The type, specification and mailing class are stored as one byte codes from a
+ * <CODE>CodeTable</CODE> and turned back into strings by the getters. The serialized
+ * form still holds the strings, so files written by earlier versions can be read. An
+ * order read from a stream is replaced by one built with its constructor.
  *
  * @author Junye Wen, edited by Emily Beaudoin to fit this application
  */
 public class PackageOrder implements Comparable, Serializable
 {
+    private static final long serialVersionUID = -3307837516588006387L;
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("mailingclass", String.class),
+        new ObjectStreamField("specification", String.class),
+        new ObjectStreamField("trackingnumber", String.class),
+        new ObjectStreamField("type", String.class)
+    };
+
     private final String trackingnumber;
-    private final String specification;
-    private final String mailingclass;
-    private final String type;
+    private final byte specification;
+    private final byte mailingclass;
+    private final byte type;
+
+    /** The tracking number, type, specification and mailing class read from a stream. */
+    private transient String[] serialized;
 
     /**
      * This constructor initializes the package order object. The constructor provides no
@@ -35,9 +56,9 @@ public class PackageOrder implements Comparable, Serializable
      */
     public PackageOrder(String trackingnumber, String type, String specification, String mailingclass) {
         this.trackingnumber = trackingnumber;
-        this.type = type;
-        this.specification = specification;
-        this.mailingclass = mailingclass;
+        this.type = CodeTable.TYPES.code(type);
+        this.specification = CodeTable.SPECIFICATIONS.code(specification);
+        this.mailingclass = CodeTable.MAILING_CLASSES.code(mailingclass);
 
     }
 
@@ -57,7 +78,7 @@ public class PackageOrder implements Comparable, Serializable
      * @return a <b><CODE>String</CODE></b> that describes the package
      */
      public String getType(){
-          return type;
+          return CodeTable.TYPES.name(type);
      }
      
 
@@ -67,7 +88,7 @@ public class PackageOrder implements Comparable, Serializable
      * @return a <b><CODE>String</CODE></b> that is the package order's specification.
      */
     public String getSpecification() {
-        return specification;
+        return CodeTable.SPECIFICATIONS.name(specification);
     }
 
     /**
@@ -76,6 +97,35 @@ public class PackageOrder implements Comparable, Serializable
      * @return a <b><CODE>string</CODE></b> that is the package order's mailing class
      */
     public String getMailingClass() {
+        return CodeTable.MAILING_CLASSES.name(mailingclass);
+    }
+
+    /**
+     * This method returns the code of the package's type in <CODE>CodeTable.TYPES</CODE>.
+     *
+     * @return a <b><CODE>byte</CODE></b> that is the type code
+     */
+    byte getTypeCode() {
+        return type;
+    }
+
+    /**
+     * This method returns the code of the package order's specification in
+     * <CODE>CodeTable.SPECIFICATIONS</CODE>.
+     *
+     * @return a <b><CODE>byte</CODE></b> that is the specification code
+     */
+    byte getSpecificationCode() {
+        return specification;
+    }
+
+    /**
+     * This method returns the code of the package order's mailing class in
+     * <CODE>CodeTable.MAILING_CLASSES</CODE>.
+     *
+     * @return a <b><CODE>byte</CODE></b> that is the mailing class code
+     */
+    byte getMailingClassCode() {
         return mailingclass;
     }
 
@@ -87,7 +137,7 @@ public class PackageOrder implements Comparable, Serializable
      */
     @Override
     public String toString() {
-        return trackingnumber + " " + type + " " + specification + " " + mailingclass;
+        return trackingnumber + " " + getType() + " " + getSpecification() + " " + getMailingClass();
     }
 
     /**
@@ -117,4 +167,63 @@ public class PackageOrder implements Comparable, Serializable
         return trackingnumber.compareTo(trackingnum);
     }
 
+    /**
+     * Private method used by serialization to write the coded fields as strings.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("trackingnumber", trackingnumber);
+        fields.put("type", getType());
+        fields.put("specification", getSpecification());
+        fields.put("mailingclass", getMailingClass());
+        out.writeFields();
+    }
+
+    /**
+     * Private method used by serialization to keep the string fields until
+     * <CODE>readResolve()</CODE> turns them into codes.
+     *
+     * @param in the stream to read from
+     * @throws IOException if the stream cannot be read
+     * @throws ClassNotFoundException if a class in the stream cannot be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        serialized = new String[] {
+            (String) fields.get("trackingnumber", null),
+            (String) fields.get("type", null),
+            (String) fields.get("specification", null),
+            (String) fields.get("mailingclass", null)
+        };
+    }
+
+    /**
+     * Method used by serialization to replace the order read from a stream with an
+     * equal one built by <CODE>rebuild()</CODE>.
+     *
+     * @return the order to use in place of this one
+     * @throws ObjectStreamException never, declared as serialization requires
+     */
+    Object readResolve() throws ObjectStreamException {
+        return rebuild(serialized[0], serialized[1], serialized[2], serialized[3]);
+    }
+
+    /**
+     * This method builds a package order of the same class as this one, with the given
+     * common fields and this order's own fields. Subclasses override it to call their
+     * constructor.
+     *
+     * @param trackingnumber the tracking number
+     * @param type the type of package
+     * @param specification the specification
+     * @param mailingclass the mailing class
+     * @return the new package order
+     */
+    PackageOrder rebuild(String trackingnumber, String type, String specification, String mailingclass) {
+        return new PackageOrder(trackingnumber, type, specification, mailingclass);
+    }
+
 }
@@ -0,0 +1,374 @@
+package shippingstore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class is a sorted index from one numeric attribute of package orders to the
+ * orders, for range queries. Orders are kept in ascending order of the value, and
+ * orders with the same value in tracking number order. Orders without the attribute
+ * (a NaN value) are not indexed.
+ * <p>
+ * The entries are stored in blocks of at most <CODE>BLOCK_SIZE</CODE>, each holding
+ * its values in a plain <CODE>double</CODE> array and its orders in a parallel array,
+ * so a range is found with binary searches and read without boxing, and adding or
+ * removing one order only shifts the entries of one block. A full block is split in
+ * two. Many orders at once are merged in one pass by <CODE>addAll()</CODE>.
+ * <p>
+ * The index is not synchronized; the owning database is responsible for guarding it.
+ *
+ * @author Emily Beaudoin
+ */
+final class RangeIndex
+{
+    private static final int BLOCK_SIZE = 1024;
+
+    /**
+     * This class holds a run of consecutive entries of the index.
+     */
+    private static final class Block
+    {
+        final double[] values = new double[BLOCK_SIZE];
+        final PackageOrder[] orders = new PackageOrder[BLOCK_SIZE];
+        int size;
+    }
+
+    private final PackageAttribute attribute;
+    private ArrayList<Block> blocks = new ArrayList<>();
+    private int size;
+
+    /**
+     * This constructor creates an empty index over an attribute.
+     *
+     * @param attribute the attribute to index
+     */
+    RangeIndex(PackageAttribute attribute)
+    {
+        this.attribute = attribute;
+    }
+
+    /**
+     * This method adds an order, if it has the attribute.
+     *
+     * @param p the <CODE>PackageOrder</CODE> to add
+     */
+    void add(PackageOrder p)
+    {
+        double value = attribute.valueOf(p);
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (blocks.isEmpty()) {
+            blocks.add(new Block());
+        }
+
+        int b = blockOf(value, p);
+        Block block = blocks.get(b);
+        int position = positionOf(block, value, p);
+        if (position >= 0) {
+            block.orders[position] = p;
+            return;
+        }
+        position = -(position + 1);
+
+        if (block.size == BLOCK_SIZE) {
+            // Move the upper half to a new block
+            Block upper = new Block();
+            int half = BLOCK_SIZE / 2;
+            System.arraycopy(block.values, half, upper.values, 0, BLOCK_SIZE - half);
+            System.arraycopy(block.orders, half, upper.orders, 0, BLOCK_SIZE - half);
+            Arrays.fill(block.orders, half, BLOCK_SIZE, null);
+            upper.size = BLOCK_SIZE - half;
+            block.size = half;
+            blocks.add(b + 1, upper);
+            if (position > half) {
+                block = upper;
+                position -= half;
+            }
+        }
+
+        System.arraycopy(block.values, position, block.values, position + 1, block.size - position);
+        System.arraycopy(block.orders, position, block.orders, position + 1, block.size - position);
+        block.values[position] = value;
+        block.orders[position] = p;
+        block.size++;
+        size++;
+    }
+
+    /**
+     * This method adds many orders at once. The ones with the attribute are sorted by
+     * value and merged with the index in a single pass, which rebuilds the blocks.
+     *
+     * @param added the orders to add, sorted by tracking number, none of which may be
+     * in the index already
+     */
+    void addAll(List<? extends PackageOrder> added)
+    {
+        // Sort (value, position) pairs packed in longs; the value of every attribute is
+        // a float or a small int, so it keeps its order as a float. The input is in
+        // tracking number order, so sorting by position breaks ties the right way.
+        long[] keys = new long[added.size()];
+        int count = 0;
+        for (int i = 0; i < added.size(); i++) {
+            double value = attribute.valueOf(added.get(i));
+            if (!Double.isNaN(value)) {
+                int bits = Float.floatToIntBits((float) value);
+                bits ^= (bits >> 31) & 0x7fffffff;
+                keys[count++] = ((long) bits << 32) | i;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        Arrays.parallelSort(keys, 0, count);
+
+        ArrayList<Block> merged = new ArrayList<>((size + count) / (BLOCK_SIZE / 2) + 1);
+        Block out = null;
+        int b = 0;
+        int i = 0;
+        int j = 0;
+        while (b < blocks.size() || j < count) {
+            Block in = (b < blocks.size()) ? blocks.get(b) : null;
+            PackageOrder next = (j < count) ? added.get((int) keys[j]) : null;
+            double nextValue = 0;
+            if (next != null) {
+                int bits = (int) (keys[j] >> 32);
+                nextValue = Float.intBitsToFloat(bits ^ ((bits >> 31) & 0x7fffffff));
+            }
+
+            double value;
+            PackageOrder p;
+            if (next == null || (in != null && compare(in.values[i], in.orders[i], nextValue, next) <= 0)) {
+                value = in.values[i];
+                p = in.orders[i];
+                if (++i == in.size) {
+                    b++;
+                    i = 0;
+                }
+            } else {
+                value = nextValue;
+                p = next;
+                j++;
+            }
+
+            // Fill the new blocks three quarters full, leaving room for later adds
+            if (out == null || out.size == BLOCK_SIZE * 3 / 4) {
+                out = new Block();
+                merged.add(out);
+            }
+            out.values[out.size] = value;
+            out.orders[out.size++] = p;
+        }
+        blocks = merged;
+        size += count;
+    }
+
+    /**
+     * This method removes an order.
+     *
+     * @param p the <CODE>PackageOrder</CODE> to remove
+     * @return true if it was in the index
+     */
+    boolean remove(PackageOrder p)
+    {
+        double value = attribute.valueOf(p);
+        if (Double.isNaN(value) || blocks.isEmpty()) {
+            return false;
+        }
+
+        int b = blockOf(value, p);
+        Block block = blocks.get(b);
+        int position = positionOf(block, value, p);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(block.values, position + 1, block.values, position, block.size - position - 1);
+        System.arraycopy(block.orders, position + 1, block.orders, position, block.size - position - 1);
+        block.orders[--block.size] = null;
+        if (block.size == 0) {
+            blocks.remove(b);
+        }
+        size--;
+        return true;
+    }
+
+    /**
+     * This method returns the orders whose value lies between two bounds, both
+     * included, in ascending order of the value.
+     *
+     * @param low the lowest value to include, or negative infinity
+     * @param high the highest value to include, or positive infinity
+     * @param limit the largest number of orders to return
+     * @return a new <CODE>List</CODE> of at most <CODE>limit</CODE> orders
+     */
+    List<PackageOrder> range(double low, double high, int limit)
+    {
+        ArrayList<PackageOrder> matches = new ArrayList<>(Math.min(limit, 1024));
+        int b = firstBlockReaching(low);
+        int i = (b < blocks.size()) ? lowerBound(blocks.get(b), low) : 0;
+        for (; b < blocks.size() && matches.size() < limit; b++, i = 0) {
+            Block block = blocks.get(b);
+            for (; i < block.size && matches.size() < limit; i++) {
+                if (block.values[i] > high) {
+                    return matches;
+                }
+                matches.add(block.orders[i]);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * This method counts the orders whose value lies between two bounds, both included.
+     *
+     * @param low the lowest value to include, or negative infinity
+     * @param high the highest value to include, or positive infinity
+     * @return the number of orders
+     */
+    int count(double low, double high)
+    {
+        return Math.max(0, rank(high, true) - rank(low, false));
+    }
+
+    /**
+     * This method returns the number of orders in the index.
+     *
+     * @return the number of orders
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * Private method used to count the entries below a value, or up to it if
+     * <CODE>inclusive</CODE> is true.
+     */
+    private int rank(double value, boolean inclusive)
+    {
+        int rank = 0;
+        for (Block block : blocks) {
+            if (inclusive ? block.values[block.size - 1] <= value : block.values[block.size - 1] < value) {
+                rank += block.size;
+            } else {
+                return rank + (inclusive ? upperBound(block, value) : lowerBound(block, value));
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Private method used to find the first block whose last value is at least
+     * <CODE>value</CODE>.
+     */
+    private int firstBlockReaching(double value)
+    {
+        int low = 0;
+        int high = blocks.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Block block = blocks.get(mid);
+            if (block.values[block.size - 1] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Private method used to find the block an entry belongs in: the first block
+     * whose last entry is not before it, or the last block.
+     */
+    private int blockOf(double value, PackageOrder p)
+    {
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Block block = blocks.get(mid);
+            if (compare(block.values[block.size - 1], block.orders[block.size - 1], value, p) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Private method used to find the first position of a block whose value is at
+     * least <CODE>value</CODE>.
+     */
+    private static int lowerBound(Block block, double value)
+    {
+        int low = 0;
+        int high = block.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (block.values[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Private method used to find the first position of a block whose value is more
+     * than <CODE>value</CODE>.
+     */
+    private static int upperBound(Block block, double value)
+    {
+        int low = 0;
+        int high = block.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (block.values[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Private method used to locate an entry in a block with a binary search on its
+     * value, then its tracking number.
+     *
+     * @return the position of the entry, or <CODE>-(insertion point + 1)</CODE>
+     */
+    private static int positionOf(Block block, double value, PackageOrder p)
+    {
+        int low = 0;
+        int high = block.size - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(block.values[mid], block.orders[mid], value, p);
+
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    /**
+     * Private method used to order two entries by value, then by tracking number.
+     */
+    private static int compare(double value1, PackageOrder p1, double value2, PackageOrder p2)
+    {
+        int cmp = Double.compare(value1, value2);
+        return (cmp != 0) ? cmp : p1.compareTo(p2);
+    }
+}
@@ -0,0 +1,555 @@
+package shippingstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * This class reads and writes the database files in a compact binary format. A file
+ * starts with the magic bytes "SSDB", a format version and the sequence number of the
+ * last journal record the file holds, followed by one record per package order, user
+ * or transaction and an end tag. Version 1 files have no sequence number. Each record starts with a one
+ * byte tag naming its class (<CODE>Envelope</CODE>, <CODE>Box</CODE>, <CODE>Crate</CODE>,
+ * <CODE>Drum</CODE>, <CODE>Customer</CODE>, <CODE>Employee</CODE> or
+ * <CODE>Transaction</CODE>), and numbers and dates are written as plain primitives.
+ * <p>
+ * Strings are dictionary encoded: the first time a string appears in a file it is
+ * written out and given the next number, and every later occurrence is written as
+ * that number. Specifications, mailing classes, materials and the like therefore cost
+ * a byte or two per record.
+ * <p>
+ * A file can also be compressed: it then starts with the magic bytes "SSDZ",
+ * followed by a whole file in the format above compressed with Deflate. Repeated
+ * strings are already dictionary encoded, but the tracking numbers, names and
+ * addresses still shrink to a fraction of their size. Reading recognizes either
+ * kind of file by its first bytes, so compression can be turned on or off at any
+ * time.
+ * <p>
+ * Files written by the earlier versions of the program with Java serialization are
+ * recognized by their stream header and still read, so existing databases are
+ * migrated the first time they are flushed.
+ *
+ * @author Emily Beaudoin
+ */
+final class RecordCodec
+{
+    private static final byte[] MAGIC = { 'S', 'S', 'D', 'B' };
+    private static final byte[] COMPRESSED_MAGIC = { 'S', 'S', 'D', 'Z' };
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The compression level that stands for no compression at all. */
+    static final int NO_COMPRESSION = -1;
+    private static final int VERSION = 2;
+
+    private static final int TAG_END = 0;
+    private static final int TAG_ENVELOPE = 1;
+    private static final int TAG_BOX = 2;
+    private static final int TAG_CRATE = 3;
+    private static final int TAG_DRUM = 4;
+    private static final int TAG_CUSTOMER = 5;
+    private static final int TAG_EMPLOYEE = 6;
+    private static final int TAG_TRANSACTION = 7;
+    private static final int TAG_STRING_KEY = 8;
+    private static final int TAG_INT_KEY = 9;
+
+    private static final int JAVA_STREAM_MAGIC = 0xACED;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private final HashMap<String, Integer> dictionary = new HashMap<>();
+    private final ArrayList<String> strings = new ArrayList<>();
+
+    /**
+     * Private constructor; a codec instance only carries the string dictionary of one
+     * file or one journal record.
+     */
+    private RecordCodec()
+    {
+    }
+
+    /**
+     * This method writes a whole database file: the header, every record in the given
+     * collection, and the end tag. The file holds no journal records. The stream is
+     * flushed but not closed.
+     *
+     * @param out the <CODE>OutputStream</CODE> to write to, ideally buffered
+     * @param records the package orders, users or transactions to write
+     * @throws IOException if the stream cannot be written
+     */
+    static void write(OutputStream out, Collection<?> records) throws IOException
+    {
+        write(out, records, 0L);
+    }
+
+    /**
+     * Private method used to write a whole uncompressed database file holding the
+     * journal records up to the given sequence number.
+     *
+     * @param out the <CODE>OutputStream</CODE> to write to, ideally buffered
+     * @param records the package orders, users or transactions to write
+     * @param sequence the sequence number of the last journal record the file holds
+     * @throws IOException if the stream cannot be written
+     */
+    private static void write(OutputStream out, Collection<?> records, long sequence) throws IOException
+    {
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(MAGIC);
+        data.writeByte(VERSION);
+        data.writeLong(sequence);
+
+        RecordCodec codec = new RecordCodec();
+        for (Object record : records) {
+            codec.writeRecord(data, record);
+        }
+        data.writeByte(TAG_END);
+        data.flush();
+    }
+
+    /**
+     * This method writes a whole database file like <CODE>write(OutputStream,
+     * Collection)</CODE>, compressed with Deflate at the given level unless the level
+     * is <CODE>NO_COMPRESSION</CODE>. The stream is flushed but not closed.
+     *
+     * @param out the <CODE>OutputStream</CODE> to write to
+     * @param records the package orders, users or transactions to write
+     * @param level a Deflate level from 0 (fastest) to 9 (smallest), or
+     * <CODE>NO_COMPRESSION</CODE>
+     * @throws IOException if the stream cannot be written
+     */
+    static void write(OutputStream out, Collection<?> records, int level) throws IOException
+    {
+        write(out, records, level, 0L);
+    }
+
+    /**
+     * This method writes a whole database file like <CODE>write(OutputStream,
+     * Collection, int)</CODE>, recording that it holds the journal records up to the
+     * given sequence number, as a snapshot does.
+     *
+     * @param out the <CODE>OutputStream</CODE> to write to
+     * @param records the package orders, users or transactions to write
+     * @param level a Deflate level from 0 (fastest) to 9 (smallest), or
+     * <CODE>NO_COMPRESSION</CODE>
+     * @param sequence the sequence number of the last journal record the file holds
+     * @throws IOException if the stream cannot be written
+     */
+    static void write(OutputStream out, Collection<?> records, int level, long sequence) throws IOException
+    {
+        if (level == NO_COMPRESSION) {
+            write(new BufferedOutputStream(out, BUFFER_SIZE), records, sequence);
+            return;
+        }
+
+        out.write(COMPRESSED_MAGIC);
+        Deflater deflater = new Deflater(level);
+        try {
+            DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+            // Records are written a few bytes at a time, so buffer them before the deflater
+            write(new BufferedOutputStream(deflated, BUFFER_SIZE), records, sequence);
+            deflated.finish();
+            out.flush();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * This method reads a whole database file written by <CODE>write()</CODE>, or by
+     * Java serialization of an <CODE>ArrayList</CODE> in the legacy format. An empty
+     * stream is read as an empty database.
+     *
+     * @param <T> the type of the records in the file
+     * @param in the <CODE>InputStream</CODE> to read from, ideally buffered
+     * @param type the class every record must belong to
+     * @return a new <CODE>ArrayList</CODE> of the records in file order
+     * @throws IOException if the stream is not a database file or is damaged
+     */
+    static <T> ArrayList<T> read(InputStream in, Class<T> type) throws IOException
+    {
+        ArrayList<T> records = new ArrayList<>();
+        read(in, type, records::add);
+        return records;
+    }
+
+    /**
+     * This method reads a whole database file like <CODE>read(InputStream, Class)</CODE>,
+     * but hands each record to the given consumer as it is decoded instead of
+     * collecting them in a list.
+     *
+     * @param <T> the type of the records in the file
+     * @param in the <CODE>InputStream</CODE> to read from, ideally buffered
+     * @param type the class every record must belong to
+     * @param sink the consumer that receives the records in file order
+     * @return the sequence number of the last journal record the file holds, or 0 if
+     * it is empty, a legacy file or a version 1 file
+     * @throws IOException if the stream is not a database file or is damaged
+     */
+    static <T> long read(InputStream in, Class<T> type, Consumer<? super T> sink) throws IOException
+    {
+        PushbackInputStream head = new PushbackInputStream(in, COMPRESSED_MAGIC.length);
+
+        byte[] start = new byte[COMPRESSED_MAGIC.length];
+        int length = 0;
+        while (length < start.length) {
+            int n = head.read(start, length, start.length - length);
+            if (n < 0) {
+                break;
+            }
+            length += n;
+        }
+        if (length == 0) {
+            return 0;
+        }
+
+        if (Arrays.equals(start, COMPRESSED_MAGIC)) {
+            Inflater inflater = new Inflater();
+            try {
+                return read(new BufferedInputStream(new InflaterInputStream(head, inflater, BUFFER_SIZE),
+                    BUFFER_SIZE), type, sink);
+            } finally {
+                inflater.end();
+            }
+        }
+        head.unread(start, 0, length);
+
+        int first = start[0] & 0xFF;
+        int second = length > 1 ? start[1] & 0xFF : -1;
+        if (((first << 8) | second) == JAVA_STREAM_MAGIC) {
+            for (Object record : (ArrayList<?>) readLegacy(head)) {
+                sink.accept(type.cast(record));
+            }
+            return 0;
+        }
+
+        DataInputStream data = new DataInputStream(head);
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new StreamCorruptedException("Not a ShippingStore database file");
+        }
+        int version = data.readUnsignedByte();
+        if (version > VERSION) {
+            throw new StreamCorruptedException("Unsupported database file version " + version);
+        }
+        long sequence = version >= 2 ? data.readLong() : 0;
+
+        RecordCodec codec = new RecordCodec();
+        for (Object record = codec.readRecord(data); record != null; record = codec.readRecord(data)) {
+            sink.accept(type.cast(record));
+        }
+        return sequence;
+    }
+
+    /**
+     * This method encodes a single record, such as a journal entry. Besides package
+     * orders, users and transactions it accepts a <CODE>String</CODE> or
+     * <CODE>Integer</CODE> key.
+     *
+     * @param record the record to encode
+     * @return the encoded bytes
+     * @throws IOException if the record is of an unsupported class
+     */
+    static byte[] encode(Object record) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream data = new DataOutputStream(bytes);
+        new RecordCodec().writeRecord(data, record);
+        data.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * This method decodes a single record written by <CODE>encode()</CODE>.
+     *
+     * @param payload the encoded bytes
+     * @return the decoded record
+     * @throws IOException if the bytes are not a valid record
+     */
+    static Object decode(byte[] payload) throws IOException
+    {
+        Object record = new RecordCodec().readRecord(new DataInputStream(new ByteArrayInputStream(payload)));
+        if (record == null) {
+            throw new StreamCorruptedException("Empty record");
+        }
+        return record;
+    }
+
+    /**
+     * Private method used to read one object written with Java serialization.
+     *
+     * @param in the stream positioned at the serialization header
+     * @return the deserialized object
+     * @throws IOException if the object cannot be read
+     */
+    private static Object readLegacy(InputStream in) throws IOException
+    {
+        try {
+            return new ObjectInputStream(in).readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown class in legacy database file", e);
+        }
+    }
+
+    /**
+     * Private method used to write one tagged record.
+     *
+     * @param out the stream to write to
+     * @param record the record to write
+     * @throws IOException if the stream cannot be written or the record is of an
+     * unsupported class
+     */
+    private void writeRecord(DataOutputStream out, Object record) throws IOException
+    {
+        if (record instanceof PackageOrder) {
+            PackageOrder p = (PackageOrder) record;
+            if (p instanceof Envelope) {
+                out.writeByte(TAG_ENVELOPE);
+            } else if (p instanceof Box) {
+                out.writeByte(TAG_BOX);
+            } else if (p instanceof Crate) {
+                out.writeByte(TAG_CRATE);
+            } else if (p instanceof Drum) {
+                out.writeByte(TAG_DRUM);
+            } else {
+                throw new IOException("Cannot encode package order of " + p.getClass());
+            }
+
+            writeString(out, p.getTrackingNumber());
+            writeString(out, p.getSpecification());
+            writeString(out, p.getMailingClass());
+
+            if (p instanceof Envelope) {
+                out.writeInt(((Envelope) p).getHeight());
+                out.writeInt(((Envelope) p).getWidth());
+            } else if (p instanceof Box) {
+                out.writeInt(((Box) p).getLargestDimension());
+                out.writeInt(((Box) p).getVolume());
+            } else if (p instanceof Crate) {
+                out.writeFloat(((Crate) p).getLoadWeight());
+                writeString(out, ((Crate) p).getContent());
+            } else {
+                writeString(out, ((Drum) p).getMaterial());
+                out.writeInt(((Drum) p).getDiameter());
+            }
+        } else if (record instanceof User) {
+            User u = (User) record;
+            if (u instanceof Customer) {
+                out.writeByte(TAG_CUSTOMER);
+            } else if (u instanceof Employee) {
+                out.writeByte(TAG_EMPLOYEE);
+            } else {
+                throw new IOException("Cannot encode user of " + u.getClass());
+            }
+
+            out.writeInt(u.getIdNumber());
+            writeString(out, u.getFirstName());
+            writeString(out, u.getLastName());
+
+            if (u instanceof Customer) {
+                writeString(out, ((Customer) u).getPhone());
+                writeString(out, ((Customer) u).getAddress());
+            } else {
+                out.writeInt(((Employee) u).getSocial());
+                out.writeFloat(((Employee) u).getSalary());
+                out.writeInt(((Employee) u).getAccount());
+            }
+        } else if (record instanceof Transaction) {
+            Transaction t = (Transaction) record;
+            out.writeByte(TAG_TRANSACTION);
+            out.writeInt(t.getCustomerId());
+            writeString(out, t.getTrackingNumber());
+            writeDate(out, t.getShippingDate());
+            writeDate(out, t.getDeliverDate());
+            out.writeFloat(t.getCost());
+            out.writeInt(t.getEmployeeId());
+        } else if (record instanceof String) {
+            out.writeByte(TAG_STRING_KEY);
+            writeString(out, (String) record);
+        } else if (record instanceof Integer) {
+            out.writeByte(TAG_INT_KEY);
+            out.writeInt((Integer) record);
+        } else {
+            throw new IOException("Cannot encode " + (record == null ? "null" : record.getClass()));
+        }
+    }
+
+    /**
+     * Private method used to read one tagged record.
+     *
+     * @param in the stream to read from
+     * @return the record, or null at the end tag
+     * @throws IOException if the stream ends early or holds an unknown tag
+     */
+    private Object readRecord(DataInputStream in) throws IOException
+    {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case TAG_END:
+                return null;
+            case TAG_ENVELOPE:
+                return new Envelope(readString(in), readString(in), readString(in),
+                    in.readInt(), in.readInt());
+            case TAG_BOX:
+                return new Box(readString(in), readString(in), readString(in),
+                    in.readInt(), in.readInt());
+            case TAG_CRATE:
+                return new Crate(readString(in), readString(in), readString(in),
+                    in.readFloat(), readString(in));
+            case TAG_DRUM:
+                return new Drum(readString(in), readString(in), readString(in),
+                    readString(in), in.readInt());
+            case TAG_CUSTOMER:
+                return new Customer(in.readInt(), readString(in), readString(in),
+                    readString(in), readString(in));
+            case TAG_EMPLOYEE:
+                return new Employee(in.readInt(), readString(in), readString(in),
+                    in.readInt(), in.readFloat(), in.readInt());
+            case TAG_TRANSACTION:
+                return new Transaction(in.readInt(), readString(in), readDate(in),
+                    readDate(in), in.readFloat(), in.readInt());
+            case TAG_STRING_KEY:
+                return readString(in);
+            case TAG_INT_KEY:
+                return in.readInt();
+            default:
+                throw new StreamCorruptedException("Unknown record tag " + tag);
+        }
+    }
+
+    /**
+     * Private method used to write a string through the dictionary. The reference is
+     * 0 for null, 1 for a new string that follows as UTF-8, or 2 plus the number of
+     * a string written earlier.
+     *
+     * @param out the stream to write to
+     * @param s the string, possibly null
+     * @throws IOException if the stream cannot be written
+     */
+    private void writeString(DataOutputStream out, String s) throws IOException
+    {
+        if (s == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+
+        Integer ref = dictionary.get(s);
+        if (ref != null) {
+            writeVarInt(out, ref + 2);
+            return;
+        }
+
+        dictionary.put(s, dictionary.size());
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, 1);
+        writeVarInt(out, utf8.length);
+        out.write(utf8);
+    }
+
+    /**
+     * Private method used to read a string written by <CODE>writeString()</CODE>.
+     *
+     * @param in the stream to read from
+     * @return the string, possibly null
+     * @throws IOException if the stream ends early or the reference is unknown
+     */
+    private String readString(DataInputStream in) throws IOException
+    {
+        int ref = readVarInt(in);
+        if (ref == 0) {
+            return null;
+        }
+        if (ref > 1) {
+            if (ref - 2 >= strings.size()) {
+                throw new StreamCorruptedException("Unknown string reference " + ref);
+            }
+            return strings.get(ref - 2);
+        }
+
+        byte[] utf8 = new byte[readVarInt(in)];
+        in.readFully(utf8);
+        String s = new String(utf8, StandardCharsets.UTF_8);
+        strings.add(s);
+        return s;
+    }
+
+    /**
+     * Private method used to write a date as milliseconds since the epoch.
+     *
+     * @param out the stream to write to
+     * @param d the date, possibly null
+     * @throws IOException if the stream cannot be written
+     */
+    private static void writeDate(DataOutputStream out, Date d) throws IOException
+    {
+        out.writeLong(d == null ? NO_DATE : d.getTime());
+    }
+
+    /**
+     * Private method used to read a date written by <CODE>writeDate()</CODE>.
+     *
+     * @param in the stream to read from
+     * @return the date, possibly null
+     * @throws IOException if the stream ends early
+     */
+    private static Date readDate(DataInputStream in) throws IOException
+    {
+        long time = in.readLong();
+        return time == NO_DATE ? null : new Date(time);
+    }
+
+    /**
+     * Private method used to write a non-negative <CODE>int</CODE> in 7 bit groups,
+     * so small values take a single byte.
+     *
+     * @param out the stream to write to
+     * @param value the value to write
+     * @throws IOException if the stream cannot be written
+     */
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException
+    {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Private method used to read a value written by <CODE>writeVarInt()</CODE>.
+     *
+     * @param in the stream to read from
+     * @return the value
+     * @throws IOException if the stream ends early or the value is too long
+     */
+    private static int readVarInt(DataInputStream in) throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed variable length integer");
+    }
+}
@@ -0,0 +1,33 @@
+package shippingstore;
+
+/**
+ * This enum lists what removing a package order or a user does about the
+ * transactions that still refer to it by tracking number or ID #.
+ *
+ * @author Emily Beaudoin
+ */
+public enum RemovalPolicy
+{
+    /** Remove the record and leave its transactions alone. */
+    UNCHECKED,
+    /** Refuse to remove a record that any transaction refers to. */
+    RESTRICT,
+    /** Remove the record together with every transaction that refers to it. */
+    CASCADE;
+
+    /**
+     * This method finds a policy by its name, ignoring case.
+     *
+     * @param name the name, such as "cascade"
+     * @return the policy, or null if there is none with that name
+     */
+    public static RemovalPolicy fromName(String name)
+    {
+        for (RemovalPolicy policy : values()) {
+            if (policy.name().equalsIgnoreCase(name)) {
+                return policy;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,137 @@
+package shippingstore;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class holds the result of <CODE>TransactionDatabase.aggregate()</CODE>: the
+ * number of shipments, the revenue and the average cost of the transactions in each
+ * group, and the same figures over all transactions. Amounts are in dollars and are
+ * summed in whole cents, so they do not drift however many transactions are added up.
+ *
+ * @author Emily Beaudoin
+ */
+public class RevenueReport
+{
+    /**
+     * This class is one line of a report: the figures for one group.
+     */
+    public static class Line
+    {
+        private final String group;
+        private final long shipments;
+        private final long revenueCents;
+
+        /**
+         * This constructor initializes the line.
+         *
+         * @param group the name of the group
+         * @param shipments the number of transactions in the group
+         * @param revenueCents the sum of their costs in cents
+         */
+        Line(String group, long shipments, long revenueCents)
+        {
+            this.group = group;
+            this.shipments = shipments;
+            this.revenueCents = revenueCents;
+        }
+
+        /**
+         * This method returns the name of the group: an ID #, a mailing class, a
+         * package type or a month written as <CODE>yyyy-mm</CODE>.
+         *
+         * @return a <b><CODE>String</CODE></b> that names the group
+         */
+        public String getGroup()
+        {
+            return group;
+        }
+
+        /**
+         * This method returns the number of transactions in the group.
+         *
+         * @return a <b><CODE>long</CODE></b> that is the number of shipments
+         */
+        public long getShipments()
+        {
+            return shipments;
+        }
+
+        /**
+         * This method returns the sum of the costs of the transactions in the group.
+         *
+         * @return a <b><CODE>double</CODE></b> that is the revenue in dollars
+         */
+        public double getRevenue()
+        {
+            return revenueCents / 100.0;
+        }
+
+        /**
+         * This method returns the average cost of the transactions in the group.
+         *
+         * @return a <b><CODE>double</CODE></b> that is the average cost in dollars, or 0
+         * if there are no shipments
+         */
+        public double getAverageCost()
+        {
+            return shipments == 0 ? 0 : revenueCents / 100.0 / shipments;
+        }
+    }
+
+    private final GroupBy groupBy;
+    private final List<Line> lines;
+    private final Line total;
+
+    /**
+     * This constructor initializes the report.
+     *
+     * @param groupBy how the transactions were grouped
+     * @param lines the lines of the report, in display order
+     */
+    RevenueReport(GroupBy groupBy, List<Line> lines)
+    {
+        long shipments = 0;
+        long revenueCents = 0;
+        for (Line line : lines) {
+            shipments += line.shipments;
+            revenueCents += line.revenueCents;
+        }
+
+        this.groupBy = groupBy;
+        this.lines = Collections.unmodifiableList(lines);
+        this.total = new Line("Total", shipments, revenueCents);
+    }
+
+    /**
+     * This method returns how the transactions were grouped.
+     *
+     * @return the <CODE>GroupBy</CODE> of the report
+     */
+    public GroupBy getGroupBy()
+    {
+        return groupBy;
+    }
+
+    /**
+     * This method returns one line per group, ordered by ID #, by month, or by the
+     * order the program lists mailing classes and package types in. Transactions
+     * whose package or shipping date is unknown are grouped on a last line.
+     *
+     * @return a read-only <CODE>List</CODE> of the lines
+     */
+    public List<Line> getLines()
+    {
+        return lines;
+    }
+
+    /**
+     * This method returns the figures over all transactions.
+     *
+     * @return a <CODE>Line</CODE> named "Total"
+     */
+    public Line getTotal()
+    {
+        return total;
+    }
+}
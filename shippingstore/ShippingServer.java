@@ -0,0 +1,798 @@
+package shippingstore;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * This class serves the three databases over a small HTTP/JSON API on the local
+ * machine, so other programs can use the store while it runs. It is built on the
+ * HTTP server that comes with the JDK and only listens on the loopback address.
+ * Every request is handled on its own virtual thread when the Java runtime has them
+ * (Java 21 and later), and on a cached pool of platform threads otherwise. Requests
+ * go through the same database methods as the console, so the same rules apply and
+ * every change is journaled.
+ * <p>
+ * Records are written as the JSON objects of the export command, and lists as JSON
+ * Lines (one object per line). The requests are:
+ * <p>
+ * <CODE>GET /packages</CODE>, <CODE>POST /packages</CODE>,
+ * <CODE>GET /packages/TRACKING#</CODE>, <CODE>DELETE /packages/TRACKING#</CODE>, and
+ * <CODE>GET /packages?match=PATTERN&amp;limit=N</CODE> for the orders whose tracking
+ * numbers match a pattern such as <CODE>AB1??</CODE> (see
+ * <CODE>PackageDatabase.findByPattern()</CODE>; the limit defaults to 1000), or
+ * <CODE>GET /packages?attribute=NAME&amp;min=LOW&amp;max=HIGH&amp;limit=N</CODE> for the orders
+ * whose <CODE>PackageAttribute</CODE> lies in a range, either bound being optional
+ * <p>
+ * <CODE>GET /users</CODE>, <CODE>POST /users</CODE>, <CODE>GET /users/ID</CODE>,
+ * <CODE>PATCH /users/ID</CODE> (or <CODE>PUT</CODE>), <CODE>DELETE /users/ID</CODE>, and
+ * <CODE>GET /users?name=NAME&amp;limit=N</CODE> for the users found by
+ * <CODE>UserDatabase.findUsersByName()</CODE> (the limit defaults to 1000)
+ * <p>
+ * <CODE>GET /transactions</CODE>, optionally filtered by the query parameters
+ * <CODE>customer</CODE>, <CODE>employee</CODE>, <CODE>trackingNumber</CODE>,
+ * <CODE>from</CODE> and <CODE>to</CODE> (shipping dates, <CODE>yyyy-mm-dd</CODE>),
+ * and <CODE>POST /transactions</CODE>
+ * <p>
+ * <CODE>GET /reports?groupBy=GROUP</CODE>, where GROUP is a <CODE>GroupBy</CODE> name
+ * <p>
+ * The <CODE>DELETE</CODE> requests take <CODE>?policy=restrict</CODE> to be refused with
+ * a 409 status while a transaction still refers to the record, or
+ * <CODE>?policy=cascade</CODE> to remove those transactions too (see
+ * <CODE>RemovalPolicy</CODE>).
+ * <p>
+ * The list requests take <CODE>?format=csv</CODE> to get CSV instead. A request that
+ * is rejected gets a 4xx status and the object <CODE>{"error":"..."}</CODE>.
+ *
+ * @author Emily Beaudoin
+ */
+public class ShippingServer
+{
+    private static final String JSON_TYPE = "application/json; charset=utf-8";
+    private static final int MATCH_LIMIT = 1000;
+
+    /** The JSON member names of the user fields, mapped to the console's field names. */
+    private static final Map<String, String> USER_FIELDS = new HashMap<>();
+    static {
+        USER_FIELDS.put("firstName", "First-name");
+        USER_FIELDS.put("lastName", "Last-name");
+        USER_FIELDS.put("social", "Social");
+        USER_FIELDS.put("salary", "Salary");
+        USER_FIELDS.put("account", "Account");
+        USER_FIELDS.put("phone", "Phone");
+        USER_FIELDS.put("address", "Address");
+    }
+
+    private final PackageDatabase packages;
+    private final UserDatabase users;
+    private final TransactionDatabase transactions;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * This class carries a rejected request out of a handler to be answered with
+     * the given status and message.
+     */
+    private static class RequestException extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        RequestException(int status, String message)
+        {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * This interface is one route of the API. It answers the request itself on
+     * success, and throws a <CODE>RequestException</CODE> to reject it.
+     */
+    private interface Route
+    {
+        void handle(HttpExchange exchange, String id) throws IOException, RequestException;
+    }
+
+    /**
+     * This constructor sets up a server for the given databases. Nothing is served
+     * until <CODE>start()</CODE> is called.
+     *
+     * @param packages the package orders to serve
+     * @param users the users to serve
+     * @param transactions the transactions to serve
+     * @param port the port to listen on
+     * @throws IOException if the port cannot be bound
+     */
+    public ShippingServer(PackageDatabase packages, UserDatabase users,
+        TransactionDatabase transactions, int port) throws IOException
+    {
+        this.packages = packages;
+        this.users = users;
+        this.transactions = transactions;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = newPerRequestExecutor();
+        server.setExecutor(executor);
+
+        server.createContext("/packages", handler(this::packages));
+        server.createContext("/users", handler(this::users));
+        server.createContext("/transactions", handler(this::transactions));
+        server.createContext("/reports", handler(this::reports));
+    }
+
+    /**
+     * Private method used to create the executor requests run on: one new virtual
+     * thread per request if the runtime supports them, otherwise a cached pool of
+     * daemon threads. It is looked up by reflection so the program still builds and
+     * runs on Java versions before 21.
+     *
+     * @return the executor
+     */
+    private static ExecutorService newPerRequestExecutor()
+    {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "shippingstore-http");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * This method starts answering requests.
+     */
+    public void start()
+    {
+        server.start();
+    }
+
+    /**
+     * This method stops the server, giving requests in progress up to a second to
+     * finish.
+     */
+    public void stop()
+    {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * This method returns the port the server listens on.
+     *
+     * @return the port number
+     */
+    public int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Private method used to wrap a route in a handler that splits the record ID
+     * off the path and turns rejections and failures into error responses.
+     *
+     * @param route the route to wrap
+     * @return the handler
+     */
+    private HttpHandler handler(Route route)
+    {
+        return exchange -> {
+            try {
+                String context = exchange.getHttpContext().getPath();
+                String rest = exchange.getRequestURI().getPath().substring(context.length());
+                if (!rest.isEmpty() && !rest.startsWith("/")) {
+                    throw new RequestException(404, "Not found");
+                }
+                String id = rest.length() > 1 ? rest.substring(1) : null;
+                if (id != null && id.contains("/")) {
+                    throw new RequestException(404, "Not found");
+                }
+                route.handle(exchange, id);
+            } catch (RequestException e) {
+                sendError(exchange, e.status, e.getMessage());
+            } catch (RuntimeException e) {
+                sendError(exchange, 500, String.valueOf(e));
+            } finally {
+                exchange.close();
+            }
+        };
+    }
+
+    /**
+     * Private method used to answer the package order requests.
+     *
+     * @param exchange the request
+     * @param id the tracking number from the path, or null
+     */
+    private void packages(HttpExchange exchange, String id) throws IOException, RequestException
+    {
+        String method = exchange.getRequestMethod();
+
+        if (id == null && method.equals("GET")) {
+            Map<String, String> query = query(exchange);
+            ExportFormat format = format(exchange);
+            if (query.containsKey("match") || query.containsKey("attribute")) {
+                int limit = query.containsKey("limit") ? number(query.get("limit"), "limit") : MATCH_LIMIT;
+                List<PackageOrder> matches;
+                try {
+                    if (query.containsKey("match")) {
+                        matches = packages.findByPattern(query.get("match"), limit);
+                    } else {
+                        PackageAttribute attribute = PackageAttribute.fromLabel(query.get("attribute"));
+                        if (attribute == null) {
+                            throw new RequestException(400, "Unknown attribute " + query.get("attribute"));
+                        }
+                        matches = packages.findInRange(attribute, bound(query.get("min"), "min", Double.NEGATIVE_INFINITY),
+                            bound(query.get("max"), "max", Double.POSITIVE_INFINITY), limit);
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new RequestException(400, e.getMessage());
+                }
+                Writer out = beginList(exchange, format);
+                Exporter.writeOrderHeader(out, format);
+                for (PackageOrder order : matches) {
+                    Exporter.writeOrder(out, format, order);
+                }
+                out.close();
+                return;
+            }
+            Writer out = beginList(exchange, format);
+            packages.export(out, format, null);
+            out.close();
+        } else if (id == null && method.equals("POST")) {
+            Map<String, String> body = body(exchange);
+            String type = required(body, "type");
+            String special1;
+            String special2;
+            switch (type) {
+                case "Envelope":
+                    special1 = required(body, "height");
+                    special2 = required(body, "width");
+                    break;
+                case "Box":
+                    special1 = required(body, "largestDimension");
+                    special2 = required(body, "volume");
+                    break;
+                case "Crate":
+                    special1 = required(body, "loadWeight");
+                    special2 = required(body, "content");
+                    break;
+                case "Drum":
+                    special1 = required(body, "material");
+                    special2 = required(body, "diameter");
+                    break;
+                default:
+                    throw new RequestException(400, "Invalid type:\nType must be one of "
+                        + "the following: Envelope, Box, Crate, Drum.");
+            }
+            String trackingNumber = required(body, "trackingNumber");
+            String error = packages.insertOrder(trackingNumber, type, required(body, "specification"),
+                required(body, "mailingClass"), special1, special2);
+            if (error != null) {
+                throw new RequestException(error.startsWith("Package Order already exists") ? 409 : 400, error);
+            }
+            sendOrder(exchange, 201, packages.getPackageOrder(trackingNumber));
+        } else if (id != null && method.equals("GET")) {
+            PackageOrder order = packages.getPackageOrder(id);
+            if (order == null) {
+                throw new RequestException(404, "No package found with that tracking number");
+            }
+            sendOrder(exchange, 200, order);
+        } else if (id != null && method.equals("DELETE")) {
+            PackageOrder order;
+            try {
+                order = packages.deleteOrder(id, transactions, policy(exchange));
+            } catch (IllegalStateException e) {
+                throw new RequestException(409, e.getMessage());
+            }
+            if (order == null) {
+                throw new RequestException(404, "No package found with that tracking number");
+            }
+            sendOrder(exchange, 200, order);
+        } else {
+            throw new RequestException(405, "Method not allowed");
+        }
+    }
+
+    /**
+     * Private method used to answer the user requests.
+     *
+     * @param exchange the request
+     * @param id the ID # from the path, or null
+     */
+    private void users(HttpExchange exchange, String id) throws IOException, RequestException
+    {
+        String method = exchange.getRequestMethod();
+
+        if (id == null && method.equals("GET")) {
+            Map<String, String> query = query(exchange);
+            ExportFormat format = format(exchange);
+            if (query.containsKey("name")) {
+                int limit = query.containsKey("limit") ? number(query.get("limit"), "limit") : MATCH_LIMIT;
+                List<User> matches = users.findUsersByName(query.get("name"), limit);
+                Writer out = beginList(exchange, format);
+                Exporter.writeUserHeader(out, format);
+                for (User user : matches) {
+                    Exporter.writeUser(out, format, user);
+                }
+                out.close();
+                return;
+            }
+            Writer out = beginList(exchange, format);
+            users.export(out, format, null);
+            out.close();
+        } else if (id == null && method.equals("POST")) {
+            Map<String, String> body = body(exchange);
+            String type = required(body, "type");
+            String firstName = required(body, "firstName");
+            String lastName = required(body, "lastName");
+            User user;
+            if (type.equals("Employee")) {
+                String social = required(body, "social");
+                String salary = required(body, "salary");
+                String account = required(body, "account");
+                String error = UserDatabase.validateUser(type, social, salary, account);
+                if (error != null) {
+                    throw new RequestException(400, error);
+                }
+                user = users.insertUser(type, firstName, lastName, social, salary, account);
+            } else if (type.equals("Customer")) {
+                user = users.insertUser(type, firstName, lastName, required(body, "phone"),
+                    required(body, "address"), "");
+            } else {
+                throw new RequestException(400, "Type must be Employee or Customer");
+            }
+            sendUser(exchange, 201, user);
+        } else if (id != null && method.equals("GET")) {
+            sendUser(exchange, 200, existingUser(id));
+        } else if (id != null && (method.equals("PATCH") || method.equals("PUT"))) {
+            User user = existingUser(id);
+            String type = users.getUserType(user);
+            // Either every field in the body is changed or none is
+            Map<String, String> updates = new LinkedHashMap<>();
+            for (Map.Entry<String, String> member : body(exchange).entrySet()) {
+                String field = USER_FIELDS.get(member.getKey());
+                if (field == null || member.getValue() == null) {
+                    throw new RequestException(400, "Cannot update the field " + member.getKey());
+                }
+                updates.put(field, member.getValue());
+            }
+            String error = users.changeUserInfo(user, type, updates);
+            if (error != null) {
+                throw new RequestException(400, error);
+            }
+            sendUser(exchange, 200, user);
+        } else if (id != null && method.equals("DELETE")) {
+            User user;
+            try {
+                user = users.deleteUser(id, transactions, policy(exchange));
+            } catch (IllegalStateException e) {
+                throw new RequestException(409, e.getMessage());
+            }
+            if (user == null) {
+                throw new RequestException(404, "No user found with that ID");
+            }
+            sendUser(exchange, 200, user);
+        } else {
+            throw new RequestException(405, "Method not allowed");
+        }
+    }
+
+    /**
+     * Private method used to look up the user named in the path.
+     *
+     * @param id the ID #
+     * @return the user
+     * @throws RequestException if there is no such user
+     */
+    private User existingUser(String id) throws RequestException
+    {
+        User user = users.getUser(id);
+        if (user == null) {
+            throw new RequestException(404, "No user found with that ID");
+        }
+        return user;
+    }
+
+    /**
+     * Private method used to answer the transaction requests.
+     *
+     * @param exchange the request
+     * @param id the path segment after /transactions, which must be absent
+     */
+    private void transactions(HttpExchange exchange, String id) throws IOException, RequestException
+    {
+        String method = exchange.getRequestMethod();
+        if (id != null) {
+            throw new RequestException(404, "Not found");
+        }
+
+        if (method.equals("GET")) {
+            Map<String, String> query = query(exchange);
+            Predicate<Transaction> filter = t -> true;
+            if (query.containsKey("customer")) {
+                int customer = number(query.get("customer"), "customer");
+                filter = filter.and(t -> t.getCustomerId() == customer);
+            }
+            if (query.containsKey("employee")) {
+                int employee = number(query.get("employee"), "employee");
+                filter = filter.and(t -> t.getEmployeeId() == employee);
+            }
+            if (query.containsKey("trackingNumber")) {
+                String trackingNumber = query.get("trackingNumber");
+                filter = filter.and(t -> trackingNumber.equalsIgnoreCase(t.getTrackingNumber()));
+            }
+            if (query.containsKey("from")) {
+                Date from = startOf(query.get("from"), "from", 0);
+                filter = filter.and(t -> t.getShippingDate() != null && !t.getShippingDate().before(from));
+            }
+            if (query.containsKey("to")) {
+                Date to = startOf(query.get("to"), "to", 1);
+                filter = filter.and(t -> t.getShippingDate() != null && t.getShippingDate().before(to));
+            }
+
+            ExportFormat format = format(exchange);
+            Writer out = beginList(exchange, format);
+            transactions.export(out, format, filter);
+            out.close();
+        } else if (method.equals("POST")) {
+            Map<String, String> body = body(exchange);
+            User customer = users.getUser(required(body, "customerId"));
+            if (customer == null) {
+                throw new RequestException(400, "No customer found with that ID");
+            }
+            User employee = users.getUser(required(body, "employeeId"));
+            if (employee == null) {
+                throw new RequestException(400, "No employee found with that ID");
+            }
+            PackageOrder order = packages.getPackageOrder(required(body, "trackingNumber"));
+            if (order == null) {
+                throw new RequestException(400, "No package found with that tracking number");
+            }
+            String ship = consoleDate(required(body, "shippingDate"));
+            String deliver = consoleDate(required(body, "deliverDate"));
+            String cost = required(body, "cost");
+
+            String error = TransactionDatabase.validateTransaction(customer, employee, ship, deliver, cost);
+            if (error != null) {
+                throw new RequestException(400, error);
+            }
+            Transaction t = transactions.insertTransaction(customer, employee, order, ship, deliver, cost,
+                packages, users);
+            if (t == null) {
+                throw new RequestException(409, TransactionDatabase.REMOVED_REFERENCE);
+            }
+
+            StringWriter out = new StringWriter();
+            Exporter.writeTransaction(out, ExportFormat.JSON, t);
+            send(exchange, 201, out.toString());
+        } else {
+            throw new RequestException(405, "Method not allowed");
+        }
+    }
+
+    /**
+     * Private method used to answer the report requests.
+     *
+     * @param exchange the request
+     * @param id the path segment after /reports, which must be absent
+     */
+    private void reports(HttpExchange exchange, String id) throws IOException, RequestException
+    {
+        if (id != null) {
+            throw new RequestException(404, "Not found");
+        }
+        if (!exchange.getRequestMethod().equals("GET")) {
+            throw new RequestException(405, "Method not allowed");
+        }
+
+        String name = query(exchange).get("groupBy");
+        GroupBy by;
+        try {
+            by = GroupBy.valueOf(name.toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (RuntimeException e) {
+            throw new RequestException(400, "groupBy must be one of EMPLOYEE, CUSTOMER, "
+                + "MAILING_CLASS, PACKAGE_TYPE, SHIP_MONTH");
+        }
+        RevenueReport report = transactions.aggregate(by, packages);
+
+        StringWriter out = new StringWriter();
+        out.write('{');
+        Exporter.json(out, "groupBy", by.name(), false);
+        out.write(",\"lines\":[");
+        boolean first = true;
+        for (RevenueReport.Line line : report.getLines()) {
+            if (!first) {
+                out.write(',');
+            }
+            writeLine(out, line);
+            first = false;
+        }
+        out.write("],\"total\":");
+        writeLine(out, report.getTotal());
+        out.write("}\n");
+        send(exchange, 200, out.toString());
+    }
+
+    /**
+     * Private method used to write one report line as a JSON object.
+     *
+     * @param out the <CODE>Writer</CODE> to write to
+     * @param line the line
+     */
+    private static void writeLine(Writer out, RevenueReport.Line line) throws IOException
+    {
+        out.write('{');
+        Exporter.json(out, "group", line.getGroup(), false);
+        Exporter.json(out, "shipments", line.getShipments(), true);
+        Exporter.json(out, "revenue", line.getRevenue(), true);
+        Exporter.json(out, "averageCost", line.getAverageCost(), true);
+        out.write('}');
+    }
+
+    /**
+     * Private method used to read the request body as a flat JSON object.
+     *
+     * @param exchange the request
+     * @return the members of the object
+     * @throws RequestException if the body is not a flat JSON object
+     */
+    private static Map<String, String> body(HttpExchange exchange) throws IOException, RequestException
+    {
+        String text;
+        try (InputStream in = exchange.getRequestBody()) {
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try {
+            return Json.parseObject(text);
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, "Invalid JSON: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Private method used to get a member of the request body that must be present.
+     *
+     * @param body the members of the request body
+     * @param name the member name
+     * @return the member value
+     * @throws RequestException if the member is missing or null
+     */
+    private static String required(Map<String, String> body, String name) throws RequestException
+    {
+        String value = body.get(name);
+        if (value == null) {
+            throw new RequestException(400, "Missing field " + name);
+        }
+        return value;
+    }
+
+    /**
+     * Private method used to decode the query string of the request.
+     *
+     * @param exchange the request
+     * @return the query parameters
+     */
+    private static Map<String, String> query(HttpExchange exchange) throws UnsupportedEncodingException
+    {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            parameters.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return parameters;
+    }
+
+    /**
+     * Private method used to read the <CODE>format</CODE> query parameter.
+     *
+     * @param exchange the request
+     * @return the requested format, JSON by default
+     * @throws RequestException if the format is not csv or json
+     */
+    private static ExportFormat format(HttpExchange exchange) throws IOException, RequestException
+    {
+        String format = query(exchange).getOrDefault("format", "json");
+        try {
+            return ExportFormat.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, "format must be csv or json");
+        }
+    }
+
+    /**
+     * Private method used to read the <CODE>policy</CODE> query parameter.
+     *
+     * @param exchange the request
+     * @return the requested removal policy, <CODE>UNCHECKED</CODE> by default
+     * @throws RequestException if the policy is not unchecked, restrict or cascade
+     */
+    private static RemovalPolicy policy(HttpExchange exchange) throws IOException, RequestException
+    {
+        RemovalPolicy policy = RemovalPolicy.fromName(query(exchange).getOrDefault("policy", "unchecked"));
+        if (policy == null) {
+            throw new RequestException(400, "policy must be unchecked, restrict or cascade");
+        }
+        return policy;
+    }
+
+    /**
+     * Private method used to parse a whole number query parameter.
+     *
+     * @param value the parameter value
+     * @param name the parameter name
+     * @return the number
+     * @throws RequestException if the value is not a number
+     */
+    private static int number(String value, String name) throws RequestException
+    {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, name + " must be a whole number");
+        }
+    }
+
+    /**
+     * Private method used to parse an optional number query parameter.
+     *
+     * @param value the parameter value, or null
+     * @param name the parameter name
+     * @param absent the value to use if the parameter is absent
+     * @return the number
+     */
+    private static double bound(String value, String name, double absent) throws RequestException
+    {
+        if (value == null) {
+            return absent;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, name + " must be a number");
+        }
+    }
+
+    /**
+     * Private method used to parse a <CODE>yyyy-mm-dd</CODE> query parameter as the
+     * start of that day, or of a later day, in the local time zone.
+     *
+     * @param value the parameter value
+     * @param name the parameter name
+     * @param plusDays the number of days to add
+     * @return the start of the day
+     * @throws RequestException if the value is not a date
+     */
+    private static Date startOf(String value, String name, int plusDays) throws RequestException
+    {
+        try {
+            return Date.from(LocalDate.parse(value).plusDays(plusDays)
+                .atStartOfDay(ZoneId.systemDefault()).toInstant());
+        } catch (DateTimeParseException e) {
+            throw new RequestException(400, name + " must be a date written yyyy-mm-dd");
+        }
+    }
+
+    /**
+     * Private method used to turn a <CODE>yyyy-mm-dd</CODE> date, as the export
+     * command writes them, into the <CODE>MM/dd/yy</CODE> form the console takes.
+     * Anything else is passed on as it is, so either form is accepted.
+     *
+     * @param value the date
+     * @return the date as the console would take it
+     */
+    private static String consoleDate(String value)
+    {
+        try {
+            LocalDate day = LocalDate.parse(value);
+            return new SimpleDateFormat("MM/dd/yy").format(
+                Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+        } catch (DateTimeParseException e) {
+            return value;
+        }
+    }
+
+    /**
+     * Private method used to start a streamed list response.
+     *
+     * @param exchange the request
+     * @param format the format of the list
+     * @return a <CODE>Writer</CODE> for the response body, to be closed when done
+     */
+    private static Writer beginList(HttpExchange exchange, ExportFormat format) throws IOException
+    {
+        exchange.getResponseHeaders().set("Content-Type", format == ExportFormat.CSV
+            ? "text/csv; charset=utf-8" : "application/x-ndjson; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(),
+            StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * Private method used to answer with one package order.
+     */
+    private static void sendOrder(HttpExchange exchange, int status, PackageOrder order) throws IOException
+    {
+        StringWriter out = new StringWriter();
+        Exporter.writeOrder(out, ExportFormat.JSON, order);
+        send(exchange, status, out.toString());
+    }
+
+    /**
+     * Private method used to answer with one user.
+     */
+    private static void sendUser(HttpExchange exchange, int status, User user) throws IOException
+    {
+        StringWriter out = new StringWriter();
+        Exporter.writeUser(out, ExportFormat.JSON, user);
+        send(exchange, status, out.toString());
+    }
+
+    /**
+     * Private method used to answer with an error object.
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException
+    {
+        StringWriter out = new StringWriter();
+        out.write('{');
+        Exporter.json(out, "error", message.trim(), false);
+        out.write("}\n");
+        send(exchange, status, out.toString());
+    }
+
+    /**
+     * Private method used to answer with a JSON body.
+     *
+     * @param exchange the request
+     * @param status the HTTP status code
+     * @param json the body
+     */
+    private static void send(HttpExchange exchange, int status, String json) throws IOException
+    {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON_TYPE);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
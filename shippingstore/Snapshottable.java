@@ -0,0 +1,28 @@
+package shippingstore;
+
+import java.io.IOException;
+
+/**
+ * This interface is implemented by the database classes so that a
+ * <CODE>Snapshotter</CODE> can save them in the background.
+ *
+ * @author Emily Beaudoin
+ */
+public interface Snapshottable
+{
+    /**
+     * This method returns the number of changes made since the last snapshot was
+     * written.
+     *
+     * @return the number of unsaved changes
+     */
+    long getPendingChanges();
+
+    /**
+     * This method writes a snapshot of the database to disk. Changes made while the
+     * snapshot is being written are kept in the journal for the next snapshot.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    void snapshot() throws IOException;
+}
@@ -0,0 +1,226 @@
+package shippingstore;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class saves the databases in the background while the program runs, so that a
+ * long session does not have to write everything at exit and a crash loses at most
+ * what is still in the journals. A single daemon thread checks every database once a
+ * second and snapshots it when it has unsaved changes and either the snapshot
+ * interval has passed or the number of unsaved changes has reached the threshold.
+ * Databases without changes are never rewritten.
+ * <p>
+ * The interval and threshold are read from the system properties
+ * <CODE>shippingstore.snapshot.intervalSeconds</CODE> (default 60) and
+ * <CODE>shippingstore.snapshot.dirtyThreshold</CODE> (default 1000).
+ * <p>
+ * Snapshots are written uncompressed unless the system property
+ * <CODE>shippingstore.compression</CODE> is <CODE>deflate</CODE>, in which case they
+ * are compressed at the level in <CODE>shippingstore.compression.level</CODE>, from 0
+ * (fastest) to 9 (smallest), default 6. The databases read either kind of file.
+ * These two properties are read once, by the first call to
+ * <CODE>compressionLevel()</CODE>, which the program makes at startup.
+ * <p>
+ * This class also provides <CODE>writeAtomically()</CODE>, which every snapshot goes
+ * through: the records are written to a temporary file that is forced to disk and
+ * then renamed over the real file, so a crash while saving leaves the previous
+ * snapshot intact.
+ *
+ * @author Emily Beaudoin
+ */
+public class Snapshotter
+{
+    /** Marks the compression level as not read yet. */
+    private static final int UNREAD = Integer.MIN_VALUE;
+    private static int compressionLevel = UNREAD;
+
+    private final Snapshottable[] databases;
+    private final long[] lastSnapshot;
+    private final long intervalMillis;
+    private final long dirtyThreshold;
+    private ScheduledExecutorService executor;
+
+    /**
+     * This constructor sets up a snapshotter for the given databases. Nothing is
+     * saved until <CODE>start()</CODE> is called.
+     *
+     * @param databases the databases to save in the background
+     */
+    public Snapshotter(Snapshottable... databases)
+    {
+        this.databases = databases.clone();
+        this.lastSnapshot = new long[databases.length];
+        this.intervalMillis = TimeUnit.SECONDS.toMillis(
+            Math.max(1, Long.getLong("shippingstore.snapshot.intervalSeconds", 60)));
+        this.dirtyThreshold = Math.max(1, Long.getLong("shippingstore.snapshot.dirtyThreshold", 1000));
+    }
+
+    /**
+     * This method starts the background thread.
+     */
+    public synchronized void start()
+    {
+        if (executor != null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < lastSnapshot.length; i++) {
+            lastSnapshot[i] = now;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "shippingstore-snapshotter");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::check, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * This method stops the background thread, waiting for a snapshot in progress to
+     * finish. The databases still have to be flushed afterwards.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void stop() throws InterruptedException
+    {
+        if (executor == null) {
+            return;
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        executor = null;
+    }
+
+    /**
+     * Private method run once a second on the background thread to snapshot every
+     * database that is due. A failed snapshot is reported and retried later; no
+     * exception may escape, since the executor would then never run the check again.
+     */
+    private void check()
+    {
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < databases.length; i++) {
+            long pending = databases[i].getPendingChanges();
+            if (pending == 0) {
+                lastSnapshot[i] = now;
+                continue;
+            }
+
+            if (pending >= dirtyThreshold || now - lastSnapshot[i] >= intervalMillis) {
+                try {
+                    databases[i].snapshot();
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("Warning: background save failed, will retry");
+                    e.printStackTrace();
+                }
+                lastSnapshot[i] = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * This method replaces a database file with a new snapshot without ever leaving
+     * a partly written file in its place. The records are written to
+     * <CODE>fileName + ".tmp"</CODE>, forced to disk, and renamed over
+     * <CODE>fileName</CODE>. They are compressed if the system properties described
+     * for the class ask for it.
+     *
+     * @param fileName the database file to replace
+     * @param records the records to write with <CODE>RecordCodec</CODE>
+     * @param sequence the sequence number of the last journal record the records hold
+     * @throws IOException if the snapshot cannot be written or renamed
+     */
+    static void writeAtomically(String fileName, Collection<?> records, long sequence) throws IOException
+    {
+        Path target = Paths.get(fileName).toAbsolutePath();
+        Path temp = Paths.get(fileName + ".tmp").toAbsolutePath();
+        int level = compressionLevel();
+
+        try (FileOutputStream fos = new FileOutputStream(temp.toFile())) {
+            RecordCodec.write(fos, records, level, sequence);
+            fos.getFD().sync();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(target.getParent());
+    }
+
+    /**
+     * This method returns the compression level every snapshot is written with. The
+     * system properties described for the class are read and checked the first time
+     * it is called, so the program calls it at startup to refuse bad settings before
+     * anything is loaded or saved.
+     *
+     * @return the Deflate level, or <CODE>RecordCodec.NO_COMPRESSION</CODE>
+     * @throws IllegalArgumentException if the settings are not valid
+     */
+    static synchronized int compressionLevel()
+    {
+        if (compressionLevel == UNREAD) {
+            compressionLevel = readCompressionLevel();
+        }
+        return compressionLevel;
+    }
+
+    /**
+     * Private method used to read the compression settings from the system
+     * properties.
+     *
+     * @return the Deflate level, or <CODE>RecordCodec.NO_COMPRESSION</CODE>
+     * @throws IllegalArgumentException if the settings are not valid
+     */
+    private static int readCompressionLevel()
+    {
+        String compression = System.getProperty("shippingstore.compression", "none");
+        if (compression.equalsIgnoreCase("none")) {
+            return RecordCodec.NO_COMPRESSION;
+        }
+        if (!compression.equalsIgnoreCase("deflate")) {
+            throw new IllegalArgumentException("shippingstore.compression must be none or deflate");
+        }
+
+        int level = Integer.getInteger("shippingstore.compression.level", 6);
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("shippingstore.compression.level must be from 0 to 9");
+        }
+        return level;
+    }
+
+    /**
+     * Private method used to force a directory entry change to disk where the
+     * platform allows it.
+     *
+     * @param dir the directory holding the renamed file
+     */
+    private static void syncDirectory(Path dir)
+    {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not every platform can open or sync a directory; the rename still stands
+        }
+    }
+}
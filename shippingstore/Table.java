@@ -0,0 +1,336 @@
+package shippingstore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This class renders a list of records as one of the text tables the show commands
+ * print: a fixed header, one or more lines per record, and a fixed footer. Each kind
+ * of table is set up once with a <CODE>RowFormat</CODE> that appends the lines of a
+ * record to a <CODE>StringBuilder</CODE> using the padding methods of this class, so
+ * no format string is parsed per record. The output is built in a buffer and handed
+ * to the console in large pieces instead of one call per field.
+ * <p>
+ * A table can be printed whole, as a slice of at most a given number of records, or
+ * one page at a time through <CODE>pages()</CODE>, which builds each page only when
+ * it is asked for. The text is the same as the <CODE>printf()</CODE> calls it
+ * replaces would print.
+ *
+ * @author Emily Beaudoin
+ */
+final class Table<T>
+{
+    /**
+     * This interface appends the lines of one record to the table being built.
+     */
+    interface RowFormat<T>
+    {
+        /**
+         * This method appends the lines of a record, each ending in a line break.
+         *
+         * @param out the buffer to append to
+         * @param row the record
+         */
+        void append(StringBuilder out, T row);
+    }
+
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /**
+     * Whether numbers print the same in the default locale as in the root locale.
+     * If not, numbers are formatted with <CODE>String.format()</CODE> so they still
+     * match the old output exactly.
+     */
+    private static final boolean PLAIN_NUMBERS =
+        String.format("%d|%.2f|%09d", -1234567890, 1.5, 42).equals("-1234567890|1.50|000000042");
+
+    private final String header;
+    private final String footer;
+    private final RowFormat<? super T> format;
+
+    /**
+     * This constructor sets up a kind of table.
+     *
+     * @param header the text printed before the records, line breaks included
+     * @param footer the text printed after the records, line breaks included
+     * @param format the <CODE>RowFormat</CODE> of a record
+     */
+    Table(String header, String footer, RowFormat<? super T> format)
+    {
+        this.header = header;
+        this.footer = footer;
+        this.format = format;
+    }
+
+    /**
+     * This method prints every record of the list to the console.
+     *
+     * @param rows the records
+     */
+    void print(List<? extends T> rows)
+    {
+        print(rows, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * This method prints at most <CODE>limit</CODE> records of the list to the
+     * console, starting at <CODE>offset</CODE>, between the header and footer.
+     *
+     * @param rows the records
+     * @param offset the index of the first record to print
+     * @param limit the largest number of records to print
+     * @return the number of records printed
+     */
+    int print(List<? extends T> rows, int offset, int limit)
+    {
+        try {
+            int count = write(rows, offset, limit, System.out);
+            System.out.flush();
+            return count;
+        } catch (IOException e) {
+            // A PrintStream never throws
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * This method writes at most <CODE>limit</CODE> records of the list, starting at
+     * <CODE>offset</CODE>, between the header and footer. The output is not flushed.
+     *
+     * @param rows the records
+     * @param offset the index of the first record to write
+     * @param limit the largest number of records to write
+     * @param out where to write, such as a <CODE>Writer</CODE> or <CODE>PrintStream</CODE>
+     * @return the number of records written
+     * @throws IOException if the output fails
+     */
+    int write(List<? extends T> rows, int offset, int limit, Appendable out) throws IOException
+    {
+        StringBuilder buffer = new StringBuilder(CHUNK_SIZE + 512);
+        buffer.append(header);
+
+        int end = end(rows, offset, limit);
+        for (int i = offset; i < end; i++) {
+            format.append(buffer, rows.get(i));
+            if (buffer.length() >= CHUNK_SIZE) {
+                out.append(buffer);
+                buffer.setLength(0);
+            }
+        }
+
+        buffer.append(footer);
+        out.append(buffer);
+        return Math.max(0, end - offset);
+    }
+
+    /**
+     * This method returns the table as a sequence of pages of at most
+     * <CODE>pageSize</CODE> records, each with its own header and footer. A page is
+     * built only when <CODE>next()</CODE> is called, and an empty list has one empty
+     * page. The list should not change while the pages are read.
+     *
+     * @param rows the records
+     * @param pageSize the number of records per page
+     * @return an <CODE>Iterator</CODE> over the text of the pages
+     */
+    Iterator<String> pages(List<? extends T> rows, int pageSize)
+    {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+
+        return new Iterator<String>() {
+            private int next = 0;
+            private boolean done = false;
+
+            @Override
+            public boolean hasNext()
+            {
+                return !done;
+            }
+
+            @Override
+            public String next()
+            {
+                if (done) {
+                    throw new NoSuchElementException();
+                }
+                StringBuilder page = new StringBuilder(header.length() + footer.length()
+                    + Math.min(pageSize, 4096) * 160);
+                page.append(header);
+                int end = end(rows, next, pageSize);
+                for (int i = next; i < end; i++) {
+                    format.append(page, rows.get(i));
+                }
+                page.append(footer);
+
+                next = end;
+                done = next >= rows.size();
+                return page.toString();
+            }
+        };
+    }
+
+    /**
+     * Private method used to find the end of a slice of the list without overflow.
+     */
+    private static int end(List<?> rows, int offset, int limit)
+    {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit cannot be negative");
+        }
+        return (int) Math.min(rows.size(), (long) offset + limit);
+    }
+
+    /**
+     * This method appends a value left justified in a field of the given width,
+     * as <CODE>%-Ns</CODE> would.
+     *
+     * @param out the buffer
+     * @param value the value, printed as "null" if null
+     * @param width the field width
+     * @return the buffer
+     */
+    static StringBuilder left(StringBuilder out, Object value, int width)
+    {
+        String s = String.valueOf(value);
+        out.append(s);
+        return spaces(out, width - s.length());
+    }
+
+    /**
+     * This method appends a value right justified in a field of the given width,
+     * as <CODE>%Ns</CODE> would.
+     *
+     * @param out the buffer
+     * @param value the value, printed as "null" if null
+     * @param width the field width
+     * @return the buffer
+     */
+    static StringBuilder right(StringBuilder out, Object value, int width)
+    {
+        String s = String.valueOf(value);
+        return spaces(out, width - s.length()).append(s);
+    }
+
+    /**
+     * This method appends a whole number right justified in a field of the given
+     * width, as <CODE>%Nd</CODE> would.
+     *
+     * @param out the buffer
+     * @param value the number
+     * @param width the field width, 0 for none
+     * @return the buffer
+     */
+    static StringBuilder right(StringBuilder out, long value, int width)
+    {
+        if (!PLAIN_NUMBERS) {
+            return out.append(String.format(width > 0 ? "%" + width + "d" : "%d", value));
+        }
+        return spaces(out, width - digits(value)).append(value);
+    }
+
+    /**
+     * This method appends a whole number padded with zeros to the given width, as
+     * <CODE>%0Nd</CODE> would.
+     *
+     * @param out the buffer
+     * @param value the number
+     * @param width the field width
+     * @return the buffer
+     */
+    static StringBuilder zeroPadded(StringBuilder out, long value, int width)
+    {
+        if (!PLAIN_NUMBERS) {
+            return out.append(String.format("%0" + width + "d", value));
+        }
+        int pad = width - digits(value);
+        if (value < 0) {
+            out.append('-');
+        }
+        for (int i = 0; i < pad; i++) {
+            out.append('0');
+        }
+        String s = Long.toString(value);
+        return out.append(s, value < 0 ? 1 : 0, s.length());
+    }
+
+    /**
+     * This method appends a number with two decimals right justified in a field of
+     * the given width, as <CODE>%N.2f</CODE> would. Like <CODE>printf()</CODE>, it
+     * rounds half up from the shortest decimal form of the value.
+     *
+     * @param out the buffer
+     * @param value the number
+     * @param width the field width, 0 for none
+     * @return the buffer
+     */
+    static StringBuilder fixed2(StringBuilder out, double value, int width)
+    {
+        if (!PLAIN_NUMBERS || Double.isNaN(value) || Double.isInfinite(value)) {
+            return out.append(String.format(width > 0 ? "%" + width + ".2f" : "%.2f", value));
+        }
+        // printf() keeps the sign of a negative value that rounds to zero
+        String s = new BigDecimal(Double.toString(Math.abs(value)))
+            .setScale(2, RoundingMode.HALF_UP).toPlainString();
+        if (value < 0 || 1 / value < 0) {
+            s = "-" + s;
+        }
+        return spaces(out, width - s.length()).append(s);
+    }
+
+    /**
+     * This method appends a date as <CODE>%tm/%te/%tY</CODE> would in the local time
+     * zone: the month with two digits, the day without padding, and the year.
+     *
+     * @param out the buffer
+     * @param date the date, printed as "null/null/null" if null
+     * @return the buffer
+     */
+    static StringBuilder date(StringBuilder out, Date date)
+    {
+        if (date == null) {
+            return out.append("null/null/null");
+        }
+        if (!PLAIN_NUMBERS) {
+            return out.append(String.format("%1$tm/%1$te/%1$tY", date));
+        }
+        LocalDate day = date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        zeroPadded(out, day.getMonthValue(), 2).append('/').append(day.getDayOfMonth()).append('/');
+        return zeroPadded(out, day.getYear(), 4);
+    }
+
+    /**
+     * Private method used to append the given number of spaces, if positive.
+     */
+    private static StringBuilder spaces(StringBuilder out, int count)
+    {
+        for (int i = 0; i < count; i++) {
+            out.append(' ');
+        }
+        return out;
+    }
+
+    /**
+     * Private method used to count the characters of a whole number, sign included.
+     */
+    private static int digits(long value)
+    {
+        if (value == Long.MIN_VALUE) {
+            return 20;
+        }
+        int count = value < 0 ? 2 : 1;
+        for (long v = Math.abs(value); v >= 10; v /= 10) {
+            count++;
+        }
+        return count;
+    }
+}
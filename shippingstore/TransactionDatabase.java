@@ -2,16 +2,20 @@ package shippingstore;
 
 import shippingstore.PackageOrder;
 import java.io.IOException;
-import java.io.FileNotFoundException;
+import java.io.BufferedWriter;
+import java.io.Writer;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.io.Serializable;
-import java.lang.ClassNotFoundException;
+import java.io.BufferedInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.text.SimpleDateFormat;
 import java.text.ParseException;
 
@@ -19,17 +23,70 @@ import java.text.ParseException;
  * This class is used to represent a database interface for a list of
  * <CODE>Transaction</CODE>'s. It using a plain-text file "TransactionDB.ser"
  * to store and write transaction objects in serialized form. It contains
- * an <CODE>ArrayList</CODE> called <CODE>transactionList</CODE> to store the
+ * a <CODE>TransactionStore</CODE> called <CODE>transactionList</CODE> to store the
  * database in a runtime friendly data structure. The <CODE>transactionList</CODE>
  * is written to "TransactionDB.ser" at the end of the <CODE>transactionList</CODE> object's
  * life by calling <CODE>flush()</CODE>. This class also provides methods for
  * adding, remove, and searching for package orders from the list.
+ * <p>
+ * The transactions are held in a <CODE>TransactionStore</CODE>, which keeps them in
+ * columns of primitives instead of one object per transaction, together with indexes
+ * by customer ID, by employee ID, by tracking number and by shipping date. The
+ * <CODE>Transaction</CODE> objects returned by the query methods are built from the
+ * columns as they are read.
+ * <p>
+ * The database can be shared by several threads. Adding a transaction holds the
+ * write lock of <CODE>lock</CODE> and every read holds its read lock. A transaction
+ * is only added while its package order and users are still stored, holding the
+ * read locks of <CODE>PackageDatabase</CODE> and <CODE>UserDatabase</CODE> in that
+ * order before its own, the same order a removal takes them in. Since stored
+ * transactions never change, the lists the query methods return are views taken
+ * under the read lock that stay valid after it is released.
+ * <p>
+ * The indexes of the store also tell, without a scan, whether a package order or a
+ * user is still referred to by any transaction. <CODE>PackageDatabase</CODE> and
+ * <CODE>UserDatabase</CODE> use this to refuse or cascade a removal according to a
+ * <CODE>RemovalPolicy</CODE>; the transactions removed by a cascade are journaled too.
+ * <p>
+ * Every new transaction is also appended to the journal "TransactionDB.journal" as
+ * it happens, and the constructor replays the journal over "TransactionDB.ser". A
+ * <CODE>Snapshotter</CODE> can also save the database in the background.
  *
  * @author Emily Beaudoin
  */
-public class TransactionDatabase
+public class TransactionDatabase implements Snapshottable
 {
-	private ArrayList<Transaction> transactionList;
+	private TransactionStore transactionList;
+	private final String dataFile;
+	private final String journalFile;
+	private Journal journal;
+	private volatile long pendingChanges;
+	private final Object snapshotLock = new Object();
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Why <CODE>insertTransaction()</CODE> returned null for a valid transaction. */
+    static final String REMOVED_REFERENCE =
+        "The package order or a user was removed before the transaction could be added";
+
+    /** The table the transactions are displayed in. */
+    private static final Table<Transaction> TRANSACTION_TABLE = new Table<>(
+          " ------------------------------------------------------------------------------ \n"
+        + "| Customer ID | Tracking # | Ship Date | Deliver Date |   Cost   | Employee ID |\n"
+        + " ------------------------------------------------------------------------------ \n",
+          " ------------------------------------------------------------------------------\n\n",
+        TransactionDatabase::appendTransaction);
+
+    private static final LatencyRecorder LOAD_STATS = LatencyRecorder.forOperation("TransactionDatabase", "load");
+    private static final LatencyRecorder SHOW_STATS = LatencyRecorder.forOperation("TransactionDatabase", "showTransactions");
+    private static final LatencyRecorder ADD_STATS = LatencyRecorder.forOperation("TransactionDatabase", "addTransaction");
+    private static final LatencyRecorder BY_CUSTOMER_STATS = LatencyRecorder.forOperation("TransactionDatabase", "getTransactionsByCustomer");
+    private static final LatencyRecorder BY_EMPLOYEE_STATS = LatencyRecorder.forOperation("TransactionDatabase", "getTransactionsByEmployee");
+    private static final LatencyRecorder BY_TRACKING_STATS = LatencyRecorder.forOperation("TransactionDatabase", "getTransactionsByTrackingNumber");
+    private static final LatencyRecorder SHIPPED_BETWEEN_STATS = LatencyRecorder.forOperation("TransactionDatabase", "getTransactionsShippedBetween");
+    private static final LatencyRecorder REPORT_STATS = LatencyRecorder.forOperation("TransactionDatabase", "aggregate");
+    private static final LatencyRecorder EXPORT_STATS = LatencyRecorder.forOperation("TransactionDatabase", "export");
+    private static final LatencyRecorder SNAPSHOT_STATS = LatencyRecorder.forOperation("TransactionDatabase", "snapshot");
+    private static final LatencyRecorder FLUSH_STATS = LatencyRecorder.forOperation("TransactionDatabase", "flush");
 
 	/**
      * Private method used as an auxiliary method to display a given ArrayList
@@ -37,57 +94,120 @@ public class TransactionDatabase
      *
      * @param orders the package order list to be displayed.
      */
-    private void showTransactions(ArrayList<Transaction> tlist) 
+    private void showTransactions(List<Transaction> tlist) 
     {
+        TRANSACTION_TABLE.print(tlist);
+    }
 
-        System.out.println(" ------------------------------------------------------------------------------ ");
-        System.out.println("| Customer ID | Tracking # | Ship Date | Deliver Date |   Cost   | Employee ID |");
-        System.out.println(" ------------------------------------------------------------------------------ ");
-
-        for (Transaction t : tlist){
-            System.out.printf("| %12s| %11s| %3$tm/%3$te/%3$tY | %4$tm/%4$te/%4$tY | %5$8.2f | %6$11d |\n", 
-                              t.getCustomerId(), t.getTrackingNumber(), t.getShippingDate(), 
-                              t.getDeliverDate(), t.getCost(), t.getEmployeeId());
-        }
-
-        System.out.println(" ------------------------------------------------------------------------------\n");
+    /**
+     * Private method used to append the line that displays one transaction in the
+     * table of transactions.
+     *
+     * @param out the buffer to append to.
+     * @param t the transaction to display.
+     */
+    private static void appendTransaction(StringBuilder out, Transaction t)
+    {
+        Table.right(out.append("| "), t.getCustomerId(), 12).append("| ");
+        Table.right(out, t.getTrackingNumber(), 11).append("| ");
+        Table.date(out, t.getShippingDate()).append(" | ");
+        Table.date(out, t.getDeliverDate()).append(" | ");
+        Table.fixed2(out, t.getCost(), 8).append(" | ");
+        Table.right(out, t.getEmployeeId(), 11).append(" |\n");
     }
 
     /**
      * This constructor is hard-coded to open "<CODE>TransactionDB.ser</CODE>" and
      * initialize the <CODE>transactionList</CODE> with its contents. If no such file
      * exists, then one is created. The contents of the file are "loaded" into
-     * the transactionList ArrayList in no particular order. The file is then closed
+     * the transactionList store in no particular order. The file is then closed
      * during the duration of the program until <CODE>flush()</CODE> is called.
      *
      * @throws IOException if it cannot create a file in the current directory
      */
     public TransactionDatabase() throws IOException 
     {
-        transactionList = new ArrayList<>();
+        this(Paths.get(""));
+    }
 
-        try{
-            FileInputStream fis = new FileInputStream("TransactionDB.ser");
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            transactionList = (ArrayList<Transaction>) ois.readObject();
-
-            fis.close(); 
-        }
-        catch(FileNotFoundException fnfe)
-        {
-            // If data file does not exist, create it.
-            System.out.println("TransactionDB.ser does not exist, creating one now . . .");
-            //if the file doesn't exists, create it
-            FileOutputStream fos = new FileOutputStream("TransactionDB.ser");
-            //close newly created file so we can reopen it
-            fos.close();
-        } catch (ClassNotFoundException e) {
-        	System.out.print(e);
-            e.printStackTrace();
-        } catch (IOException e) {
-        	System.out.print(e);
-            e.printStackTrace();
-        } 
+    /**
+     * This constructor opens the database kept in the given directory, in the files
+     * "<CODE>TransactionDB.ser</CODE>" and "<CODE>TransactionDB.journal</CODE>", as the
+     * constructor without arguments does in the current directory.
+     *
+     * @param directory the directory holding the database files
+     * @throws IOException if the files cannot be opened or created, or if
+     * "<CODE>TransactionDB.ser</CODE>" exists but cannot be read
+     */
+    public TransactionDatabase(Path directory) throws IOException 
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            dataFile = directory.resolve("TransactionDB.ser").toString();
+            journalFile = directory.resolve("TransactionDB.journal").toString();
+            transactionList = new TransactionStore(1024);
+            long covered = 0;
+
+            if (Files.notExists(Paths.get(dataFile))) {
+                // If data file does not exist, create it.
+                System.out.println(dataFile + " does not exist, creating one now . . .");
+                //if the file doesn't exists, create it
+                FileOutputStream fos = new FileOutputStream(dataFile);
+                //close newly created file so we can reopen it
+                fos.close();
+            } else {
+                // Opening with the transactions missing would lose them at the next snapshot
+                try (FileInputStream fis = new FileInputStream(dataFile)) {
+                    covered = RecordCodec.read(new BufferedInputStream(fis, 1 << 16), Transaction.class,
+                        transactionList::add);
+                } catch (IOException e) {
+                    throw new IOException(dataFile + " cannot be read", e);
+                }
+            }
+
+            // Recover the transactions completed since the last flush
+            journal = new Journal(journalFile);
+            pendingChanges = journal.replay(covered, this::replay);
+            failed = false;
+        } finally {
+            LOAD_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * Private method used to apply one record of the journal while it is replayed.
+     * Every record it is handed is applied, since two transactions may legitimately
+     * be identical; <CODE>Journal.replay()</CODE> skips the records the snapshot
+     * already holds, even if a crash kept <CODE>snapshot()</CODE> from dropping them.
+     *
+     * @param op the journal operation code.
+     * @param payload the encoded record.
+     * @throws IOException if the record cannot be decoded.
+     */
+    private void replay(byte op, byte[] payload) throws IOException
+    {
+        if (op == Journal.ADD) {
+            transactionList.add((Transaction) RecordCodec.decode(payload));
+        } else if (op == Journal.REMOVE) {
+            transactionList.remove((Transaction) RecordCodec.decode(payload));
+        }
+    }
+
+    /**
+     * Private method used to take a view of every transaction stored so far under
+     * the read lock.
+     *
+     * @return the view, which stays valid after the lock is released.
+     */
+    private TransactionStore.View all()
+    {
+        lock.readLock().lock();
+        try {
+            return transactionList.all();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -97,7 +217,36 @@ public class TransactionDatabase
      */
     public void showTransactions() 
     {
-        showTransactions(transactionList);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            showTransactions(all());
+            failed = false;
+        } finally {
+            SHOW_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * This method displays one page of the transactions: at most <CODE>limit</CODE>
+     * transactions, starting with the transaction at <CODE>offset</CODE> in the
+     * order they were completed.
+     *
+     * @param offset the index of the first transaction to display
+     * @param limit the largest number of transactions to display
+     * @return the number of transactions displayed
+     */
+    public int showTransactions(int offset, int limit)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            int shown = TRANSACTION_TABLE.print(all(), offset, limit);
+            failed = false;
+            return shown;
+        } finally {
+            SHOW_STATS.record(start, failed);
+        }
     }
 
     /**
@@ -110,7 +259,10 @@ public class TransactionDatabase
      * <p>
      * 2. Valid ship and deliver dates formatted "MM/DD/YY"
      * <p>
-     * 3. A non-negative cost.
+     * 3. A non-negative cost of at most $21,474,836, so that the store can keep it
+     *    in whole cents.
+     * <p>
+     * 4. The package order and both users must still be stored in their databases.
      * 
      * @param customer the <CODE>User</CODE> object who requested the transaction
      * 
@@ -123,53 +275,579 @@ public class TransactionDatabase
 	 * @param deliver the <CODE>String</CODE> which represents the delivery date 
      *
      * @param cost the <CODE>String</CODE> which represents the shipping cost
+     *
+     * @param packages the <CODE>PackageDatabase</CODE> the package order was found in
+     *
+     * @param users the <CODE>UserDatabase</CODE> the users were found in
      */
     public void addTransaction(User customer, User employee, PackageOrder p, 
-    	String ship, String deliver, String cost) 
+    	String ship, String deliver, String cost, PackageDatabase packages, UserDatabase users) 
+    {
+        String error = validateTransaction(customer, employee, ship, deliver, cost);
+        if (error != null) {
+            System.out.println(error);
+            return;
+        }
+
+        if (insertTransaction(customer, employee, p, ship, deliver, cost, packages, users) == null) {
+            System.out.println("\nError: " + REMOVED_REFERENCE + "\n");
+            return;
+        }
+        // If an order was added, sort the list and display message
+        System.out.println("Transaction complete.\n");
+    }
+
+    /**
+     * This method checks a transaction against rules 1 to 3 listed for
+     * <CODE>addTransaction()</CODE>. It touches no database state.
+     *
+     * @param customer the <CODE>User</CODE> who requested the transaction
+     * @param employee the <CODE>User</CODE> who completed the transaction
+     * @param ship the shipping date, "MM/DD/YY"
+     * @param deliver the delivery date, "MM/DD/YY"
+     * @param cost the shipping cost
+     * @return null if the transaction is valid, otherwise the message explaining why not
+     */
+    public static String validateTransaction(User customer, User employee, String ship, 
+        String deliver, String cost)
     {
     	SimpleDateFormat dateFormatter = new SimpleDateFormat("MM/dd/yy"); 
-        Date shipping, delivering;
 
     	if (!(employee instanceof Employee && customer instanceof Customer)){
-    		System.out.println("\nError: Employee and customer specific users are required\n");
-   			return;
+    		return "\nError: Employee and customer specific users are required\n";
     	}
+        try{
+            dateFormatter.parse(ship);
+            dateFormatter.parse(deliver);
+        } catch (ParseException pe) {
+            return "\nError: Date not in correct format. Correct format is \"MM/DD/YY\"\n";
+        }
+
+        try {
+            float amount = Float.parseFloat(cost);
+            if (Float.isNaN(amount) || Float.isInfinite(amount)) {
+                return "Invalid cost:\n"
+                    + "The cost of the transaction must be a number";
+            }
+            if (amount < 0) {
+                return "Invalid cost:\n"
+                    + "The cost of the transaction cannot be negative";
+            }
+            if (amount > Integer.MAX_VALUE / 100) {
+                return "Invalid cost:\n"
+                    + "The cost of the transaction is too large";
+            }
+        } catch (NumberFormatException e) {
+            return "Invalid cost:\n"
+                + "The cost of the transaction must be a number";
+        }
+        return null;
+    }
+
+    /**
+     * This method adds a transaction like <CODE>addTransaction()</CODE> but prints
+     * nothing, and returns the new transaction. It is rejected if the package order
+     * or either user has been removed or replaced since the caller looked it up.
+     *
+     * @param customer the <CODE>User</CODE> who requested the transaction
+     * @param employee the <CODE>User</CODE> who completed the transaction
+     * @param p the <CODE>PackageOrder</CODE> shipped for this transaction
+     * @param ship the shipping date, "MM/DD/YY"
+     * @param deliver the delivery date, "MM/DD/YY"
+     * @param cost the shipping cost
+     * @param packages the <CODE>PackageDatabase</CODE> the package order was found in
+     * @param users the <CODE>UserDatabase</CODE> the users were found in
+     * @return the new <CODE>Transaction</CODE>, or null if
+     * <CODE>validateTransaction()</CODE> rejects it or the package order or a user is
+     * no longer stored
+     */
+    public Transaction insertTransaction(User customer, User employee, PackageOrder p, 
+    	String ship, String deliver, String cost, PackageDatabase packages, UserDatabase users)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Transaction t = add(customer, employee, p, ship, deliver, cost, packages, users);
+            failed = (t == null);
+            return t;
+        } finally {
+            ADD_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * Private method used to add a transaction for <CODE>insertTransaction()</CODE>.
+     *
+     * @return the new <CODE>Transaction</CODE>, or null if it was rejected
+     */
+    private Transaction add(User customer, User employee, PackageOrder p, 
+    	String ship, String deliver, String cost, PackageDatabase packages, UserDatabase users)
+    {
+        if (validateTransaction(customer, employee, ship, deliver, cost) != null) {
+            return null;
+        }
+
+    	SimpleDateFormat dateFormatter = new SimpleDateFormat("MM/dd/yy"); 
+        Date shipping, delivering;
         try{
             shipping = dateFormatter.parse(ship);
             delivering = dateFormatter.parse(deliver);
         } catch (ParseException pe) {
-            System.out.println("\nError: Date not in correct format. Correct format is \"MM/DD/YY\"\n");
-                return;
+            return null;
         }
 
+        // If it passed all the checks, add the transaction to the store and its indexes
+    	Transaction t = new Transaction(customer.getIdNumber(), p.getTrackingNumber(), 
+    		shipping, delivering, Float.parseFloat(cost), 
+    		employee.getIdNumber());
+        // The package order and users cannot be removed while the store is updated
+        return packages.whileStored(p, () -> users.whileStored(customer, employee, () -> store(t)));
+    }
 
-        if (Float.parseFloat(cost) < 0) {
-            System.out.println("Invalid cost:\n"
-                + "The cost of the transaction cannot be negative");
-                return;
+    /**
+     * Private method used to add a checked transaction to the store and the journal.
+     *
+     * @param t the <CODE>Transaction</CODE> to add
+     * @return the transaction
+     */
+    private Transaction store(Transaction t)
+    {
+        lock.writeLock().lock();
+        try {
+            transactionList.add(t);
+            pendingChanges++;
+            journal.append(Journal.ADD, RecordCodec.encode(t));
+        } catch (IOException e) {
+            System.out.println("Warning: the transaction could not be written to TransactionDB.journal");
+            e.printStackTrace();
+        } finally {
+            lock.writeLock().unlock();
         }
+        return t;
+    }
 
-        // If it passed all the checks, add the order to the list
-    	transactionList.add(new Transaction(customer.getIdNumber(), p.getTrackingNumber(), 
-    		shipping, delivering, Float.parseFloat(cost), 
-    		employee.getIdNumber()));
-        // If an order was added, sort the list and display message
-        System.out.println("Transaction complete.\n");
+    /**
+     * This method returns every transaction requested by a customer, in the order
+     * they were added.
+     *
+     * @param customerId the ID # of the <CODE>Customer</CODE>
+     * @return a read-only <CODE>List</CODE> of the customer's transactions, empty if
+     * there are none
+     */
+    public List<Transaction> getTransactionsByCustomer(int customerId)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            lock.readLock().lock();
+            try {
+                List<Transaction> found = transactionList.byCustomer(customerId);
+                failed = false;
+                return found;
+            } finally {
+                lock.readLock().unlock();
+            }
+        } finally {
+            BY_CUSTOMER_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * This method returns every transaction completed by an employee, in the order
+     * they were added.
+     *
+     * @param employeeId the ID # of the <CODE>Employee</CODE>
+     * @return a read-only <CODE>List</CODE> of the employee's transactions, empty if
+     * there are none
+     */
+    public List<Transaction> getTransactionsByEmployee(int employeeId)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            lock.readLock().lock();
+            try {
+                List<Transaction> found = transactionList.byEmployee(employeeId);
+                failed = false;
+                return found;
+            } finally {
+                lock.readLock().unlock();
+            }
+        } finally {
+            BY_EMPLOYEE_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * This method returns the history of one package: every transaction that
+     * shipped the given tracking number, in the order they were added.
+     *
+     * @param trackingNumber the tracking number of the <CODE>PackageOrder</CODE>
+     * (case-insensitive)
+     * @return a read-only <CODE>List</CODE> of transactions, empty if there are none
+     */
+    public List<Transaction> getTransactionsByTrackingNumber(String trackingNumber)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            lock.readLock().lock();
+            try {
+                List<Transaction> found = transactionList.byTrackingNumber(trackingNumber);
+                failed = false;
+                return found;
+            } finally {
+                lock.readLock().unlock();
+            }
+        } finally {
+            BY_TRACKING_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * This method returns every transaction whose shipping date falls within the
+     * given window, ordered by shipping date.
+     *
+     * @param from the first shipping <CODE>Date</CODE> to include
+     * @param to the last shipping <CODE>Date</CODE> to include
+     * @return a new <CODE>List</CODE> of the matching transactions, empty if there
+     * are none or if <CODE>from</CODE> is after <CODE>to</CODE>
+     */
+    public List<Transaction> getTransactionsShippedBetween(Date from, Date to)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            lock.readLock().lock();
+            try {
+                List<Transaction> found = transactionList.shippedBetween(from, to);
+                failed = false;
+                return found;
+            } finally {
+                lock.readLock().unlock();
+            }
+        } finally {
+            SHIPPED_BETWEEN_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * This method tells whether any transaction shipped the given tracking number.
+     * It takes constant time.
+     *
+     * @param trackingNumber the tracking number of the <CODE>PackageOrder</CODE>
+     * (case-insensitive)
+     * @return true if the package order is referred to
+     */
+    public boolean isPackageReferenced(String trackingNumber)
+    {
+        lock.readLock().lock();
+        try {
+            return transactionList.countByTrackingNumber(trackingNumber) > 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This method tells whether any transaction was requested or completed by the
+     * user with the given ID #. It takes constant time.
+     *
+     * @param idNumber the ID # of the <CODE>User</CODE>
+     * @return true if the user is referred to
+     */
+    public boolean isUserReferenced(int idNumber)
+    {
+        lock.readLock().lock();
+        try {
+            return transactionList.countByUser(idNumber) > 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This method removes a package order on behalf of <CODE>PackageDatabase</CODE>,
+     * applying a removal policy to the transactions that shipped it. The check, the
+     * removal and any cascade all happen under the write lock, so the policy sees
+     * every transaction added before the removal. The caller holds the write lock of
+     * <CODE>PackageDatabase</CODE>, and <CODE>insertTransaction()</CODE> only adds a
+     * transaction under its read lock after checking the order is still stored, so
+     * no transaction can refer to the order once it is removed.
+     *
+     * @param trackingNumber the tracking number of the <CODE>PackageOrder</CODE>
+     * @param policy what to do about the transactions that ship it
+     * @param removal removes the package order and returns it, or null if there was none
+     * @return what <CODE>removal</CODE> returned
+     * @throws IllegalStateException if the policy is <CODE>RESTRICT</CODE> and the
+     * package order is referred to
+     */
+    <T> T removePackage(String trackingNumber, RemovalPolicy policy, Supplier<T> removal)
+    {
+        return remove("Package order " + trackingNumber, policy, removal,
+            () -> transactionList.countByTrackingNumber(trackingNumber),
+            () -> transactionList.removeByTrackingNumber(trackingNumber));
+    }
+
+    /**
+     * This method removes a user on behalf of <CODE>UserDatabase</CODE>, applying a
+     * removal policy to the transactions that refer to it, as
+     * <CODE>removePackage()</CODE> does for package orders.
+     *
+     * @param idNumber the ID # of the <CODE>User</CODE>
+     * @param policy what to do about the transactions that refer to the user
+     * @param removal removes the user and returns it, or null if there was none
+     * @return what <CODE>removal</CODE> returned
+     * @throws IllegalStateException if the policy is <CODE>RESTRICT</CODE> and the
+     * user is referred to
+     */
+    <T> T removeUser(int idNumber, RemovalPolicy policy, Supplier<T> removal)
+    {
+        return remove("User " + idNumber, policy, removal,
+            () -> transactionList.countByUser(idNumber),
+            () -> transactionList.removeByUser(idNumber));
+    }
+
+    /**
+     * Private method used to apply a removal policy while holding the write lock.
+     *
+     * @param record names the record being removed, for the error message
+     * @param policy the removal policy
+     * @param removal removes the record and returns it, or null if there was none
+     * @param references counts the transactions referring to the record
+     * @param cascade removes the transactions referring to the record
+     * @return what <CODE>removal</CODE> returned
+     * @throws IllegalStateException if the policy is <CODE>RESTRICT</CODE> and the
+     * record is referred to
+     */
+    private <T> T remove(String record, RemovalPolicy policy, Supplier<T> removal,
+        IntSupplier references, Supplier<List<Transaction>> cascade)
+    {
+        lock.writeLock().lock();
+        try {
+            int count = references.getAsInt();
+            if (policy == RemovalPolicy.RESTRICT && count > 0) {
+                throw new IllegalStateException(record + " is still referred to by " + count
+                    + (count == 1 ? " transaction" : " transactions"));
+            }
+
+            T removed = removal.get();
+            if (removed != null && policy == RemovalPolicy.CASCADE && count > 0) {
+                List<Transaction> gone = cascade.get();
+                pendingChanges += gone.size();
+                try {
+                    for (Transaction t : gone) {
+                        journal.append(Journal.REMOVE, RecordCodec.encode(t));
+                    }
+                } catch (IOException e) {
+                    System.out.println("Warning: the removed transactions could not be written to TransactionDB.journal");
+                    e.printStackTrace();
+                }
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method computes the number of shipments, the revenue and the average cost
+     * of every transaction, grouped by employee, customer, mailing class, package type
+     * or shipping month. Mailing class and package type are those of the package
+     * with the transaction's tracking number in the given package database. The
+     * transactions are added up in parallel over the rows stored when the method is
+     * called; transactions added meanwhile are not counted.
+     *
+     * @param by how to group the transactions
+     * @param packages the <CODE>PackageDatabase</CODE> to look packages up in
+     * @return a <CODE>RevenueReport</CODE> with one line per group
+     */
+    public RevenueReport aggregate(GroupBy by, PackageDatabase packages)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            RevenueReport report = all().aggregate(by, packages);
+            failed = false;
+            return report;
+        } finally {
+            REPORT_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * This method displays a revenue report grouped the given way in a formatted
+     * manner, followed by the totals.
+     *
+     * @param by how to group the transactions
+     * @param packages the <CODE>PackageDatabase</CODE> to look packages up in
+     */
+    public void showReport(GroupBy by, PackageDatabase packages)
+    {
+        RevenueReport report = aggregate(by, packages);
+        String heading;
+        switch (by) {
+            case EMPLOYEE:
+                heading = "Employee ID";
+                break;
+            case CUSTOMER:
+                heading = "Customer ID";
+                break;
+            case MAILING_CLASS:
+                heading = "Mailing Class";
+                break;
+            case PACKAGE_TYPE:
+                heading = "Package Type";
+                break;
+            default:
+                heading = "Ship Month";
+        }
+
+        System.out.println(" ---------------------------------------------------------- ");
+        System.out.printf("| %-15s| Shipments |      Revenue |  Avg. Cost |\n", heading);
+        System.out.println(" ---------------------------------------------------------- ");
+        for (RevenueReport.Line line : report.getLines()) {
+            System.out.printf("| %-15s| %9d | %12.2f | %10.2f |\n", line.getGroup(),
+                line.getShipments(), line.getRevenue(), line.getAverageCost());
+        }
+        System.out.println(" ---------------------------------------------------------- ");
+        RevenueReport.Line total = report.getTotal();
+        System.out.printf("| %-15s| %9d | %12.2f | %10.2f |\n", total.getGroup(),
+            total.getShipments(), total.getRevenue(), total.getAverageCost());
+        System.out.println(" ----------------------------------------------------------\n");
+    }
+
+    /**
+     * This method writes the transactions in the <CODE>transactionList</CODE> to the given
+     * <CODE>Writer</CODE> as CSV or JSON Lines, one record at a time, without copying
+     * the list. Only the transactions accepted by the filter are written; a null filter
+     * writes them all. The writer is buffered if it is not already, and flushed but
+     * not closed at the end.
+     *
+     * @param out the <CODE>Writer</CODE> to write to
+     * @param format the export format
+     * @param filter the transactions to include, or null for all of them
+     * @return the number of transactions written
+     * @throws IOException if the writer fails
+     */
+    public int export(Writer out, ExportFormat format, Predicate<? super Transaction> filter) throws IOException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Writer w = out instanceof BufferedWriter ? out : new BufferedWriter(out, 1 << 16);
+            int count = 0;
+
+            Exporter.writeTransactionHeader(w, format);
+            for (Transaction r : all()) {
+                if (filter == null || filter.test(r)) {
+                    Exporter.writeTransaction(w, format, r);
+                    count++;
+                }
+            }
+
+            w.flush();
+            failed = false;
+            return count;
+        } finally {
+            EXPORT_STATS.record(start, failed);
+        }
     }
 
     /**
-     * This method opens <CODE>"TransactionDB.ser"</CODE> and overwrites it with a serialization of
-     * all the package orders in the <CODE>transactionList</CODE>.
+     * This method sets how many changes are journaled before the journal is forced
+     * to disk, in place of the system property
+     * <CODE>shippingstore.journal.syncEvery</CODE>. A value of 0 forces it only when
+     * the database is saved, which suits callers that save it themselves when they
+     * are done, such as batch mode.
+     *
+     * @param records the number of changes per forced write, or 0
+     */
+    public void setJournalSyncEvery(int records)
+    {
+        lock.writeLock().lock();
+        try {
+            journal.setSyncEvery(records);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method returns the number of changes made since the last snapshot was
+     * written to <CODE>"TransactionDB.ser"</CODE>.
+     *
+     * @return the number of unsaved changes
+     */
+    @Override
+    public long getPendingChanges()
+    {
+        return pendingChanges;
+    }
+
+    /**
+     * This method writes a snapshot of the <CODE>transactionList</CODE> to
+     * <CODE>"TransactionDB.ser"</CODE> in the <CODE>RecordCodec</CODE> format. A view
+     * of the rows stored so far is taken while holding the read lock, which takes
+     * constant time since rows never change (unless some were removed), and the view
+     * is then written without blocking further changes. The file is replaced
+     * atomically and the journal records the snapshot covers are dropped; anything
+     * added meanwhile stays in the journal.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    @Override
+    public void snapshot() throws IOException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            synchronized (snapshotLock) {
+                List<Transaction> copy;
+                long mark;
+                long sequence;
+                long changes;
+                lock.readLock().lock();
+                try {
+                    copy = transactionList.all();
+                    mark = journal.size();
+                    sequence = journal.lastSequence();
+                    changes = pendingChanges;
+                } finally {
+                    lock.readLock().unlock();
+                }
+
+                Snapshotter.writeAtomically(dataFile, copy, sequence);
+
+                lock.writeLock().lock();
+                try {
+                    journal.discardBefore(mark);
+                    pendingChanges -= changes;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            failed = false;
+        } finally {
+            SNAPSHOT_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * This method saves every transaction in the <CODE>transactionList</CODE> to
+     * <CODE>"TransactionDB.ser"</CODE> by writing a snapshot, whether or not anything changed.
      * This should be the last method to be called before exiting the program.
      * @throws IOException if it cannot create a file in the current directory
      */
     public void flush() throws IOException 
     {
-        FileOutputStream fos = new FileOutputStream("TransactionDB.ser");
-        ObjectOutputStream oos = new ObjectOutputStream(fos);
-
-        oos.writeObject(transactionList);
-
-        fos.close();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            snapshot();
+            failed = false;
+        } finally {
+            FLUSH_STATS.record(start, failed);
+        }
     }
 }
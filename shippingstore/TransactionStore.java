@@ -0,0 +1,914 @@
+package shippingstore;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class holds the transactions of a <CODE>TransactionDatabase</CODE> in columns
+ * of primitives rather than as <CODE>Transaction</CODE> objects. Row <i>n</i> of the
+ * store is made of entry <i>n</i> of six <CODE>int</CODE> arrays: the customer ID, the
+ * employee ID, the shipping and delivery dates as days since 1970-01-01, the cost in
+ * cents, and the tracking number packed into a single <CODE>int</CODE>. A row costs
+ * 24 bytes instead of the half dozen heap objects a <CODE>Transaction</CODE> needs,
+ * and a scan reads the arrays front to back.
+ * <p>
+ * A tracking number of five letters and digits, which is every tracking number the
+ * program accepts, is packed as a base 62 number. Anything else is kept in a side
+ * table of strings and the column holds its position there as a negative number.
+ * <p>
+ * Dates are stored as calendar days in the local time zone, which is how they are
+ * entered, and are handed back as local midnight. Costs are stored as a whole number
+ * of cents.
+ * <p>
+ * The store keeps its own indexes by customer, employee, tracking number and
+ * shipping date, and answers queries with read-only lists that build
+ * <CODE>Transaction</CODE> objects only as elements are read. Rows are never changed
+ * once added, so a list keeps showing the rows that existed when it was made.
+ * <p>
+ * The index buckets double as reverse references: whether a package or a user is
+ * still named by any transaction is answered from the size of its bucket, without a
+ * scan. Removing transactions marks their rows in a <CODE>BitSet</CODE> and takes
+ * them out of the buckets they were in; the columns are left as they are and the
+ * rows disappear when the store is next written and loaded. A bucket losing rows
+ * gets a new array, so lists made earlier still show the rows they had.
+ * <p>
+ * The store is not synchronized; the owning database is responsible for guarding it.
+ *
+ * @author Emily Beaudoin
+ */
+final class TransactionStore
+{
+    private static final int NO_DAY = Integer.MIN_VALUE;
+    private static final int TRACKING_LENGTH = 5;
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+    private static final int AGGREGATE_SLICE = 1 << 15;
+
+    private int size;
+    private int removedCount;
+    private final BitSet removed = new BitSet();
+    private int[] customerIds;
+    private int[] employeeIds;
+    private int[] shipDays;
+    private int[] deliverDays;
+    private int[] cents;
+    private int[] trackingCodes;
+    private String[] otherTracking = new String[0];
+    private int otherCount;
+
+    private final IntIndex<Rows> customerIndex;
+    private final IntIndex<Rows> employeeIndex;
+    private final IntIndex<Rows> trackingIndex;
+    private final HashMap<String, Rows> otherTrackingIndex = new HashMap<>();
+    private final TreeMap<Integer, Rows> shipDayIndex = new TreeMap<>();
+
+    /**
+     * This class is a growable list of row numbers, used as the buckets of the
+     * indexes.
+     */
+    private static final class Rows
+    {
+        private int[] rows = new int[2];
+        private int size;
+
+        /**
+         * This method adds a row number to the end of the bucket.
+         *
+         * @param row the row number
+         */
+        void add(int row)
+        {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+
+        /**
+         * This method drops the removed rows from the bucket. The rows left are
+         * copied to a new array, so views of the bucket taken earlier are not disturbed.
+         *
+         * @param removed the row numbers of the removed rows
+         */
+        void dropRemoved(BitSet removed)
+        {
+            int[] kept = new int[Math.max(2, size)];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (!removed.get(rows[i])) {
+                    kept[count++] = rows[i];
+                }
+            }
+            rows = kept;
+            size = count;
+        }
+    }
+
+    /**
+     * This class is a read-only view of some rows of the store. It keeps the columns
+     * as they were when the view was made, so later growth of the store does not
+     * disturb it.
+     */
+    static final class View extends AbstractList<Transaction> implements RandomAccess
+    {
+        private final int[] customerIds;
+        private final int[] employeeIds;
+        private final int[] shipDays;
+        private final int[] deliverDays;
+        private final int[] cents;
+        private final int[] trackingCodes;
+        private final String[] otherTracking;
+        private final int[] rows;
+        private final int size;
+
+        /**
+         * This constructor creates a view of the given rows of a store, or of its
+         * first <CODE>size</CODE> rows when <CODE>rows</CODE> is null.
+         *
+         * @param store the store to view
+         * @param rows the row numbers in the view, or null
+         * @param size the number of rows in the view
+         */
+        View(TransactionStore store, int[] rows, int size)
+        {
+            this.customerIds = store.customerIds;
+            this.employeeIds = store.employeeIds;
+            this.shipDays = store.shipDays;
+            this.deliverDays = store.deliverDays;
+            this.cents = store.cents;
+            this.trackingCodes = store.trackingCodes;
+            this.otherTracking = store.otherTracking;
+            this.rows = rows;
+            this.size = size;
+        }
+
+        @Override
+        public Transaction get(int index)
+        {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            int row = rows == null ? index : rows[index];
+            int code = trackingCodes[row];
+            String trackingNumber = code >= 0 ? unpack(code) : otherTracking[-code - 1];
+
+            return new Transaction(customerIds[row], trackingNumber, toDate(shipDays[row]),
+                toDate(deliverDays[row]), cents[row] / 100f, employeeIds[row]);
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+
+        /**
+         * This method adds up the number and cost of the transactions in the view by
+         * group. The rows are split into slices that are summed in parallel on the
+         * common <CODE>ForkJoinPool</CODE> and the partial sums are merged pairwise.
+         * Mailing class and package type are found by looking each distinct tracking
+         * number up in the package database once per slice.
+         *
+         * @param by how to group the transactions
+         * @param packages the database to look packages up in
+         * @return the <CODE>RevenueReport</CODE>
+         */
+        RevenueReport aggregate(GroupBy by, PackageDatabase packages)
+        {
+            IntIndex<long[]> sums = ForkJoinPool.commonPool().invoke(
+                new AggregateTask(this, by, packages, 0, size));
+
+            int[] keys = new int[sums.size()];
+            int[] count = new int[1];
+            sums.forEach((key, sum) -> keys[count[0]++] = key);
+            Arrays.sort(keys);
+
+            ArrayList<RevenueReport.Line> lines = new ArrayList<>(keys.length);
+            for (int key : keys) {
+                if (key != UNKNOWN) {
+                    long[] sum = sums.get(key);
+                    lines.add(new RevenueReport.Line(label(by, key), sum[0], sum[1]));
+                }
+            }
+            long[] unknown = sums.get(UNKNOWN);
+            if (unknown != null) {
+                lines.add(new RevenueReport.Line(label(by, UNKNOWN), unknown[0], unknown[1]));
+            }
+            return new RevenueReport(by, lines);
+        }
+
+        /**
+         * Private method used to sum one slice of the view by group key.
+         *
+         * @param by how to group the transactions
+         * @param packages the database to look packages up in
+         * @param from the first position of the slice
+         * @param to the position after the last one of the slice
+         * @return the number of rows and the cents in each group, by group key
+         */
+        private IntIndex<long[]> sum(GroupBy by, PackageDatabase packages, int from, int to)
+        {
+            IntIndex<long[]> sums = new IntIndex<>(64);
+            IntIndex<Integer> joined = new IntIndex<>(256);
+
+            for (int i = from; i < to; i++) {
+                int row = rows == null ? i : rows[i];
+                int key;
+                switch (by) {
+                    case EMPLOYEE:
+                        key = employeeIds[row];
+                        break;
+                    case CUSTOMER:
+                        key = customerIds[row];
+                        break;
+                    case SHIP_MONTH:
+                        key = month(shipDays[row]);
+                        break;
+                    default:
+                        key = packageKey(by, packages, joined, trackingCodes[row]);
+                }
+
+                long[] sum = sums.get(key);
+                if (sum == null) {
+                    sum = new long[2];
+                    sums.put(key, sum);
+                }
+                sum[0]++;
+                sum[1] += cents[row];
+            }
+            return sums;
+        }
+
+        /**
+         * Private method used to find the mailing class or type code of the package
+         * a row shipped, remembering the answer for each tracking number.
+         *
+         * @param by <CODE>MAILING_CLASS</CODE> or <CODE>PACKAGE_TYPE</CODE>
+         * @param packages the database to look packages up in
+         * @param joined the codes found so far, by upper-cased packed tracking number
+         * @param code the tracking number column value of the row
+         * @return the group key, or <CODE>UNKNOWN</CODE> if there is no such package
+         */
+        private int packageKey(GroupBy by, PackageDatabase packages, IntIndex<Integer> joined, int code)
+        {
+            if (code < 0) {
+                return groupOf(by, packages.getPackageOrder(otherTracking[-code - 1]));
+            }
+
+            int upper = upperCase(code);
+            Integer key = joined.get(upper);
+            if (key == null) {
+                key = groupOf(by, packages.getPackageOrder(unpack(upper)));
+                joined.put(upper, key);
+            }
+            return key;
+        }
+    }
+
+    /**
+     * This class is the fork-join task behind <CODE>View.aggregate()</CODE>. It splits
+     * its range of the view in half until a slice is small enough to sum directly.
+     */
+    @SuppressWarnings("serial") // Tasks are never serialized
+    private static final class AggregateTask extends RecursiveTask<IntIndex<long[]>>
+    {
+        private final View view;
+        private final GroupBy by;
+        private final PackageDatabase packages;
+        private final int from;
+        private final int to;
+
+        /**
+         * This constructor creates a task for one range of a view.
+         *
+         * @param view the view being aggregated
+         * @param by how to group the transactions
+         * @param packages the database to look packages up in
+         * @param from the first position of the range
+         * @param to the position after the last one of the range
+         */
+        AggregateTask(View view, GroupBy by, PackageDatabase packages, int from, int to)
+        {
+            this.view = view;
+            this.by = by;
+            this.packages = packages;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected IntIndex<long[]> compute()
+        {
+            if (to - from <= AGGREGATE_SLICE) {
+                return view.sum(by, packages, from, to);
+            }
+
+            int middle = (from + to) >>> 1;
+            AggregateTask left = new AggregateTask(view, by, packages, from, middle);
+            left.fork();
+            IntIndex<long[]> right = new AggregateTask(view, by, packages, middle, to).compute();
+            return merge(left.join(), right);
+        }
+
+        /**
+         * Private method used to add the smaller of two partial sums into the larger.
+         *
+         * @param a one partial sum
+         * @param b the other partial sum
+         * @return the merged sums
+         */
+        private static IntIndex<long[]> merge(IntIndex<long[]> a, IntIndex<long[]> b)
+        {
+            IntIndex<long[]> into = a.size() >= b.size() ? a : b;
+            IntIndex<long[]> from = into == a ? b : a;
+            from.forEach((key, sum) -> {
+                long[] total = into.get(key);
+                if (total == null) {
+                    into.put(key, sum);
+                } else {
+                    total[0] += sum[0];
+                    total[1] += sum[1];
+                }
+            });
+            return into;
+        }
+    }
+
+    /**
+     * This constructor creates an empty store with room for the given number of
+     * transactions before its columns have to grow.
+     *
+     * @param capacity the initial number of rows
+     */
+    TransactionStore(int capacity)
+    {
+        capacity = Math.max(16, capacity);
+        customerIds = new int[capacity];
+        employeeIds = new int[capacity];
+        shipDays = new int[capacity];
+        deliverDays = new int[capacity];
+        cents = new int[capacity];
+        trackingCodes = new int[capacity];
+        customerIndex = new IntIndex<>(16);
+        employeeIndex = new IntIndex<>(16);
+        trackingIndex = new IntIndex<>(capacity);
+    }
+
+    /**
+     * This method returns the number of transactions in the store.
+     *
+     * @return the number of rows, not counting removed ones
+     */
+    int size()
+    {
+        return size - removedCount;
+    }
+
+    /**
+     * This method adds a transaction as a new row and indexes it.
+     *
+     * @param t the <CODE>Transaction</CODE> to add
+     */
+    void add(Transaction t)
+    {
+        if (size == customerIds.length) {
+            int capacity = size + (size >> 1);
+            customerIds = Arrays.copyOf(customerIds, capacity);
+            employeeIds = Arrays.copyOf(employeeIds, capacity);
+            shipDays = Arrays.copyOf(shipDays, capacity);
+            deliverDays = Arrays.copyOf(deliverDays, capacity);
+            cents = Arrays.copyOf(cents, capacity);
+            trackingCodes = Arrays.copyOf(trackingCodes, capacity);
+        }
+
+        int row = size;
+        customerIds[row] = t.getCustomerId();
+        employeeIds[row] = t.getEmployeeId();
+        shipDays[row] = toDay(t.getShippingDate());
+        deliverDays[row] = toDay(t.getDeliverDate());
+        cents[row] = toCents(t.getCost());
+
+        String trackingNumber = t.getTrackingNumber();
+        int code = pack(trackingNumber);
+        if (code < 0) {
+            if (otherCount == otherTracking.length) {
+                otherTracking = Arrays.copyOf(otherTracking, Math.max(4, otherCount * 2));
+            }
+            otherTracking[otherCount++] = trackingNumber;
+            code = -otherCount;
+        }
+        trackingCodes[row] = code;
+        size++;
+
+        bucket(customerIndex, customerIds[row]).add(row);
+        bucket(employeeIndex, employeeIds[row]).add(row);
+        int key = trackingKey(trackingNumber);
+        if (key >= 0) {
+            bucket(trackingIndex, key).add(row);
+        } else {
+            otherTrackingIndex.computeIfAbsent(upperCase(trackingNumber), k -> new Rows()).add(row);
+        }
+        if (shipDays[row] != NO_DAY) {
+            shipDayIndex.computeIfAbsent(shipDays[row], k -> new Rows()).add(row);
+        }
+    }
+
+    /**
+     * Private method used to find or create the bucket of a key in an
+     * <CODE>int</CODE> index.
+     *
+     * @param index the index
+     * @param key the key
+     * @return the bucket of row numbers for the key
+     */
+    private static Rows bucket(IntIndex<Rows> index, int key)
+    {
+        Rows rows = index.get(key);
+        if (rows == null) {
+            rows = new Rows();
+            index.put(key, rows);
+        }
+        return rows;
+    }
+
+    /**
+     * This method removes one row with the same values as the given transaction,
+     * as stored.
+     *
+     * @param t the <CODE>Transaction</CODE> to remove
+     * @return true if an identical row was found and removed
+     */
+    boolean remove(Transaction t)
+    {
+        int row = find(t);
+        if (row < 0) {
+            return false;
+        }
+        remove(new int[] {row}, 1);
+        return true;
+    }
+
+    /**
+     * Private method used to find a row with the same values as a transaction.
+     *
+     * @param t the <CODE>Transaction</CODE> to look for
+     * @return the row number, or -1 if there is no identical row
+     */
+    private int find(Transaction t)
+    {
+        Rows rows = trackingRows(t.getTrackingNumber());
+        if (rows == null) {
+            return -1;
+        }
+
+        int shipDay = toDay(t.getShippingDate());
+        int deliverDay = toDay(t.getDeliverDate());
+        int cost = toCents(t.getCost());
+        for (int i = 0; i < rows.size; i++) {
+            int row = rows.rows[i];
+            if (customerIds[row] == t.getCustomerId() && employeeIds[row] == t.getEmployeeId()
+                && shipDays[row] == shipDay && deliverDays[row] == deliverDay
+                && cents[row] == cost) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * This method returns every transaction in the order they were added. This
+     * takes constant time, unless rows have been removed, in which case the row
+     * numbers of the rows left are gathered first.
+     *
+     * @return a read-only <CODE>List</CODE> of the transactions
+     */
+    View all()
+    {
+        if (removedCount == 0) {
+            return new View(this, null, size);
+        }
+
+        int[] rows = new int[size - removedCount];
+        int count = 0;
+        for (int row = removed.nextClearBit(0); row < size; row = removed.nextClearBit(row + 1)) {
+            rows[count++] = row;
+        }
+        return new View(this, rows, count);
+    }
+
+    /**
+     * This method counts the transactions that shipped the given tracking number,
+     * from the size of its index bucket.
+     *
+     * @param trackingNumber the tracking number (case-insensitive)
+     * @return the number of transactions
+     */
+    int countByTrackingNumber(String trackingNumber)
+    {
+        Rows rows = trackingRows(trackingNumber);
+        return rows == null ? 0 : rows.size;
+    }
+
+    /**
+     * This method counts the transactions a user requested as a customer or
+     * completed as an employee, from the sizes of its index buckets.
+     *
+     * @param id the ID # of the <CODE>User</CODE>
+     * @return the number of transactions
+     */
+    int countByUser(int id)
+    {
+        Rows customer = customerIndex.get(id);
+        Rows employee = employeeIndex.get(id);
+        return (customer == null ? 0 : customer.size) + (employee == null ? 0 : employee.size);
+    }
+
+    /**
+     * This method removes every transaction that shipped the given tracking number.
+     *
+     * @param trackingNumber the tracking number (case-insensitive)
+     * @return the removed transactions, in the order they were added
+     */
+    List<Transaction> removeByTrackingNumber(String trackingNumber)
+    {
+        Rows rows = trackingRows(trackingNumber);
+        if (rows == null || rows.size == 0) {
+            return Collections.emptyList();
+        }
+        List<Transaction> gone = remove(rows.rows, rows.size);
+        int key = trackingKey(trackingNumber);
+        if (key >= 0) {
+            trackingIndex.remove(key);
+        } else {
+            otherTrackingIndex.remove(upperCase(trackingNumber));
+        }
+        return gone;
+    }
+
+    /**
+     * This method removes every transaction a user requested as a customer or
+     * completed as an employee.
+     *
+     * @param id the ID # of the <CODE>User</CODE>
+     * @return the removed transactions
+     */
+    List<Transaction> removeByUser(int id)
+    {
+        List<Transaction> gone = new ArrayList<>();
+        Rows customer = customerIndex.remove(id);
+        if (customer != null) {
+            gone.addAll(remove(customer.rows, customer.size));
+        }
+        Rows employee = employeeIndex.remove(id);
+        if (employee != null) {
+            gone.addAll(remove(employee.rows, employee.size));
+        }
+        return gone;
+    }
+
+    /**
+     * Private method used to remove rows from the store. The rows are marked as
+     * removed first, then every bucket that held one of them drops them, once.
+     * Rows already removed are skipped.
+     *
+     * @param rows the row numbers to remove; the array is not changed
+     * @param count the number of row numbers in the array
+     * @return the removed transactions, in the order of the row numbers
+     */
+    private List<Transaction> remove(int[] rows, int count)
+    {
+        View view = new View(this, rows, count);
+        List<Transaction> gone = new ArrayList<>(count);
+        Set<Rows> buckets = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            if (removed.get(row)) {
+                continue;
+            }
+            gone.add(view.get(i));
+            removed.set(row);
+            removedCount++;
+            addBucket(buckets, customerIndex.get(customerIds[row]));
+            addBucket(buckets, employeeIndex.get(employeeIds[row]));
+            int code = trackingCodes[row];
+            addBucket(buckets, code >= 0 ? trackingIndex.get(upperCase(code))
+                : otherTrackingIndex.get(upperCase(otherTracking[-code - 1])));
+            addBucket(buckets, shipDayIndex.get(shipDays[row]));
+        }
+
+        for (Rows bucket : buckets) {
+            bucket.dropRemoved(removed);
+        }
+        return gone;
+    }
+
+    /**
+     * Private method used to add a bucket, if there is one, to a set of buckets.
+     */
+    private static void addBucket(Set<Rows> buckets, Rows bucket)
+    {
+        if (bucket != null) {
+            buckets.add(bucket);
+        }
+    }
+
+    /**
+     * This method returns every transaction requested by a customer, in the order
+     * they were added.
+     *
+     * @param customerId the ID # of the <CODE>Customer</CODE>
+     * @return a read-only <CODE>List</CODE>, empty if there are none
+     */
+    List<Transaction> byCustomer(int customerId)
+    {
+        return view(customerIndex.get(customerId));
+    }
+
+    /**
+     * This method returns every transaction completed by an employee, in the order
+     * they were added.
+     *
+     * @param employeeId the ID # of the <CODE>Employee</CODE>
+     * @return a read-only <CODE>List</CODE>, empty if there are none
+     */
+    List<Transaction> byEmployee(int employeeId)
+    {
+        return view(employeeIndex.get(employeeId));
+    }
+
+    /**
+     * This method returns every transaction that shipped the given tracking number,
+     * in the order they were added.
+     *
+     * @param trackingNumber the tracking number (case-insensitive)
+     * @return a read-only <CODE>List</CODE>, empty if there are none
+     */
+    List<Transaction> byTrackingNumber(String trackingNumber)
+    {
+        return view(trackingRows(trackingNumber));
+    }
+
+    /**
+     * This method returns every transaction shipped on a day between the two dates,
+     * inclusive, ordered by shipping date.
+     *
+     * @param from the first shipping <CODE>Date</CODE> to include
+     * @param to the last shipping <CODE>Date</CODE> to include
+     * @return a new <CODE>List</CODE> of the matching transactions
+     */
+    List<Transaction> shippedBetween(Date from, Date to)
+    {
+        ArrayList<Transaction> result = new ArrayList<>();
+        int firstDay = toDay(from);
+        int lastDay = toDay(to);
+        if (toDate(firstDay).before(from)) {
+            firstDay++;
+        }
+        if (firstDay > lastDay) {
+            return result;
+        }
+
+        for (Rows rows : shipDayIndex.subMap(firstDay, true, lastDay, true).values()) {
+            result.addAll(view(rows));
+        }
+        return result;
+    }
+
+    /**
+     * Private method used to find the bucket of a tracking number.
+     *
+     * @param trackingNumber the tracking number, in any case
+     * @return the bucket, or null if the tracking number is not in the store
+     */
+    private Rows trackingRows(String trackingNumber)
+    {
+        int key = trackingKey(trackingNumber);
+        return key >= 0 ? trackingIndex.get(key) : otherTrackingIndex.get(upperCase(trackingNumber));
+    }
+
+    /**
+     * Private method used to wrap an index bucket in a read-only view.
+     *
+     * @param rows the bucket, possibly null
+     * @return the view, or an empty list
+     */
+    private List<Transaction> view(Rows rows)
+    {
+        if (rows == null) {
+            return Collections.emptyList();
+        }
+        return new View(this, rows.rows, rows.size);
+    }
+
+    /**
+     * Private method used to compute the index key of a tracking number, which is
+     * the packed form of the tracking number in upper case.
+     *
+     * @param trackingNumber the tracking number
+     * @return the key, or -1 if the tracking number cannot be packed
+     */
+    private static int trackingKey(String trackingNumber)
+    {
+        return trackingNumber == null ? -1 : pack(upperCase(trackingNumber));
+    }
+
+    /**
+     * Private method used to upper-case a tracking number the way
+     * <CODE>PackageDatabase</CODE> does.
+     *
+     * @param trackingNumber the tracking number, possibly null
+     * @return the upper-cased tracking number
+     */
+    private static String upperCase(String trackingNumber)
+    {
+        return trackingNumber == null ? null : trackingNumber.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Private method used to turn a packed tracking number into the packed form of
+     * the same tracking number in upper case, without building a string.
+     *
+     * @param code the packed value
+     * @return the packed value of the upper-cased tracking number
+     */
+    private static int upperCase(int code)
+    {
+        int result = 0;
+        int scale = 1;
+        for (int i = 0; i < TRACKING_LENGTH; i++) {
+            int digit = code % 62;
+            code /= 62;
+            if (digit >= 36) {
+                digit -= 26;
+            }
+            result += digit * scale;
+            scale *= 62;
+        }
+        return result;
+    }
+
+    /**
+     * Private method used to find the group key of a package for a report.
+     *
+     * @param by <CODE>MAILING_CLASS</CODE> or <CODE>PACKAGE_TYPE</CODE>
+     * @param p the package, possibly null
+     * @return the mailing class or type code, or <CODE>UNKNOWN</CODE> for null
+     */
+    private static int groupOf(GroupBy by, PackageOrder p)
+    {
+        if (p == null) {
+            return UNKNOWN;
+        }
+        return by == GroupBy.MAILING_CLASS ? p.getMailingClassCode() : p.getTypeCode();
+    }
+
+    /**
+     * Private method used to turn a day number into a month number, counted from
+     * January of year 0.
+     *
+     * @param day the day number
+     * @return the month number, or <CODE>UNKNOWN</CODE> for <CODE>NO_DAY</CODE>
+     */
+    private static int month(int day)
+    {
+        if (day == NO_DAY) {
+            return UNKNOWN;
+        }
+        LocalDate date = LocalDate.ofEpochDay(day);
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    /**
+     * Private method used to name a group of a report.
+     *
+     * @param by how the transactions were grouped
+     * @param key the group key
+     * @return the name of the group
+     */
+    private static String label(GroupBy by, int key)
+    {
+        switch (by) {
+            case EMPLOYEE:
+            case CUSTOMER:
+                return String.valueOf(key);
+            case SHIP_MONTH:
+                if (key == UNKNOWN) {
+                    return "(no date)";
+                }
+                return String.format("%04d-%02d", Math.floorDiv(key, 12), Math.floorMod(key, 12) + 1);
+            default:
+                if (key == UNKNOWN) {
+                    return "(no package)";
+                }
+                CodeTable table = by == GroupBy.MAILING_CLASS ? CodeTable.MAILING_CLASSES : CodeTable.TYPES;
+                String name = table.name((byte) key);
+                return name == null ? "(none)" : name;
+        }
+    }
+
+    /**
+     * Private method used to pack a five character tracking number of letters and
+     * digits into a base 62 number.
+     *
+     * @param s the tracking number, possibly null
+     * @return the packed value, or -1 if the string cannot be packed
+     */
+    private static int pack(String s)
+    {
+        if (s == null || s.length() != TRACKING_LENGTH) {
+            return -1;
+        }
+
+        int value = 0;
+        for (int i = 0; i < TRACKING_LENGTH; i++) {
+            char c = s.charAt(i);
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'A' && c <= 'Z') {
+                digit = c - 'A' + 10;
+            } else if (c >= 'a' && c <= 'z') {
+                digit = c - 'a' + 36;
+            } else {
+                return -1;
+            }
+            value = value * 62 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Private method used to turn a packed tracking number back into a string.
+     *
+     * @param value the packed value
+     * @return the tracking number
+     */
+    private static String unpack(int value)
+    {
+        char[] chars = new char[TRACKING_LENGTH];
+        for (int i = TRACKING_LENGTH - 1; i >= 0; i--) {
+            int digit = value % 62;
+            value /= 62;
+            chars[i] = (char) (digit < 10 ? '0' + digit : digit < 36 ? 'A' + digit - 10 : 'a' + digit - 36);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Private method used to convert a date to days since 1970-01-01 in the local
+     * time zone.
+     *
+     * @param d the date, possibly null
+     * @return the day number, or <CODE>NO_DAY</CODE> for null
+     */
+    private static int toDay(Date d)
+    {
+        if (d == null) {
+            return NO_DAY;
+        }
+        return (int) d.toInstant().atZone(ZONE).toLocalDate().toEpochDay();
+    }
+
+    /**
+     * Private method used to convert a day number back to a date at local midnight.
+     *
+     * @param day the day number
+     * @return the date, or null for <CODE>NO_DAY</CODE>
+     */
+    private static Date toDate(int day)
+    {
+        if (day == NO_DAY) {
+            return null;
+        }
+        Instant midnight = LocalDate.ofEpochDay(day).atStartOfDay(ZONE).toInstant();
+        return Date.from(midnight);
+    }
+
+    /**
+     * Private method used to convert a cost to a whole number of cents.
+     *
+     * @param cost the cost in dollars
+     * @return the cost in cents
+     * @throws ArithmeticException if the cost does not fit in an <CODE>int</CODE>
+     */
+    private static int toCents(Float cost)
+    {
+        return Math.toIntExact(Math.round(cost * 100.0));
+    }
+}
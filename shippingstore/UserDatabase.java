@@ -1,13 +1,22 @@
 package shippingstore;
 
 import java.io.IOException;
+import java.io.BufferedWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.FileNotFoundException;
+import java.io.BufferedInputStream;
 
 /**
  * This class is used to represent a database interface for a list of 
@@ -18,13 +27,61 @@ import java.io.FileNotFoundException;
  * is written to "UserDB.ser" at the end of the <CODE>UserDatabase</CODE> object's
  * life by calling <CODE>flush()</CODE>. This class also provides methods for
  * adding, remove, and searching for users from the list.
+ * <p>
+ * Users are also kept in <CODE>idIndex</CODE>, a primitive hash index from ID number
+ * to <CODE>User</CODE>, so that a lookup by ID resolves with a single probe, and in
+ * <CODE>nameIndex</CODE>, an inverted index from the words of their names, so that
+ * users can be found by the start of their first or last name.
+ * <p>
+ * The database can be shared by several threads. Reads hold the read lock of
+ * <CODE>lock</CODE> and changes hold its write lock, which is only taken once the
+ * new values have been checked. New ID numbers come from an
+ * <CODE>AtomicInteger</CODE>, so every added user gets its own ID without locking.
+ * <p>
+ * Every add, remove and update is also appended to the journal "UserDB.journal" as
+ * it happens, and the constructor replays the journal over "UserDB.ser". A
+ * <CODE>Snapshotter</CODE> can also save the database in the background.
  *
  * @author Emily Beaudoin
  */
-public class UserDatabase 
+public class UserDatabase implements Snapshottable 
 {
     private ArrayList<User> userList;
-    private Integer lastID = 100000;
+    private IntIndex<User> idIndex;
+    private NameIndex nameIndex;
+    private final String dataFile;
+    private final String journalFile;
+    private Journal journal;
+    private volatile long pendingChanges;
+    private final Object snapshotLock = new Object();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicInteger lastID = new AtomicInteger(100000);
+
+    /** The table the users are displayed in. */
+    private static final Table<User> USER_TABLE = new Table<>(
+          " -------------------------------------------------------------------------- \n"
+        + "| ID # | Name               |                                              |\n"
+        + " -------------------------------------------------------------------------- \n",
+          " --------------------------------------------------------------------------\n\n",
+        UserDatabase::appendUser);
+
+    /** The blank columns in front of the later lines of a user. */
+    private static final String INDENT = "|                           |";
+
+    private static final int SEARCH_LIMIT = 50;
+    private static final int EXPORT_CHUNK_SIZE = 4096;
+
+    private static final LatencyRecorder LOAD_STATS = LatencyRecorder.forOperation("UserDatabase", "load");
+    private static final LatencyRecorder SHOW_STATS = LatencyRecorder.forOperation("UserDatabase", "showUsers");
+    private static final LatencyRecorder FIND_STATS = LatencyRecorder.forOperation("UserDatabase", "findUser");
+    private static final LatencyRecorder GET_STATS = LatencyRecorder.forOperation("UserDatabase", "getUser");
+    private static final LatencyRecorder SEARCH_STATS = LatencyRecorder.forOperation("UserDatabase", "findUsersByName");
+    private static final LatencyRecorder ADD_STATS = LatencyRecorder.forOperation("UserDatabase", "addUser");
+    private static final LatencyRecorder UPDATE_STATS = LatencyRecorder.forOperation("UserDatabase", "updateUserInfo");
+    private static final LatencyRecorder REMOVE_STATS = LatencyRecorder.forOperation("UserDatabase", "removeUser");
+    private static final LatencyRecorder EXPORT_STATS = LatencyRecorder.forOperation("UserDatabase", "export");
+    private static final LatencyRecorder SNAPSHOT_STATS = LatencyRecorder.forOperation("UserDatabase", "snapshot");
+    private static final LatencyRecorder FLUSH_STATS = LatencyRecorder.forOperation("UserDatabase", "flush");
 
     /**
      * Private method used as an auxiliary method to display a given ArrayList
@@ -32,27 +89,31 @@ public class UserDatabase
      *
      * @param orders the package order list to be displayed.
      */
-    private void showUsers(ArrayList<User> users) 
+    private void showUsers(List<User> users) 
     {
-        System.out.println(" -------------------------------------------------------------------------- ");
-        System.out.println("| ID # | Name               |                                              |");
-        System.out.println(" -------------------------------------------------------------------------- ");
-
+        USER_TABLE.print(users);
+    }
 
-        for (User u : users){
-            System.out.printf("|%6d| %-19s|", u.getIdNumber(), u.getFullName());
+    /**
+     * Private method used to append the lines that display one user in the table
+     * of users.
+     *
+     * @param out the buffer to append to.
+     * @param u the user to display.
+     */
+    private static void appendUser(StringBuilder out, User u)
+    {
+        Table.right(out.append('|'), u.getIdNumber(), 6).append("| ");
+        Table.left(out, u.getFullName(), 19).append('|');
 
-            if(u instanceof Customer){
-                System.out.printf(" Phone number: %s\n", ((Customer)u).getPhone());
-                System.out.printf("|%27s| Address: %s\n", " ", ((Customer)u).getAddress());
-            } else { //(u instance of Employee)
-                System.out.printf(" Social Security Number: %09d\n", ((Employee)u).getSocial());
-                System.out.printf("|%27s| Monthly Salary: %.02f\n", " ", ((Employee)u).getSalary());
-                System.out.printf("|%27s| Bank Account Number: %d\n", " ", ((Employee)u).getAccount());
-            }   
+        if(u instanceof Customer){
+            out.append(" Phone number: ").append(((Customer)u).getPhone()).append('\n');
+            out.append(INDENT).append(" Address: ").append(((Customer)u).getAddress()).append('\n');
+        } else { //(u instance of Employee)
+            Table.zeroPadded(out.append(" Social Security Number: "), ((Employee)u).getSocial(), 9).append('\n');
+            Table.fixed2(out.append(INDENT).append(" Monthly Salary: "), ((Employee)u).getSalary(), 0).append('\n');
+            Table.right(out.append(INDENT).append(" Bank Account Number: "), ((Employee)u).getAccount(), 0).append('\n');
         }
-
-        System.out.println(" --------------------------------------------------------------------------\n");
     }
 
     /**
@@ -65,30 +126,195 @@ public class UserDatabase
      */
     public UserDatabase() throws IOException 
     {
-        userList = new ArrayList<>();
+        this(Paths.get(""));
+    }
 
-        
-        try{
-            FileInputStream fis = new FileInputStream("UserDB.ser");
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            userList = (ArrayList<User>) ois.readObject();
-            fis.close(); 
-        }
-        catch(FileNotFoundException fnfe)
-        {
-            // If data file does not exist, create it.
-            System.out.println("UserDB.ser does not exist, creating one now . . .");
-            //if the file doesn't exists, create it
-            FileOutputStream fos = new FileOutputStream("UserDB.ser");
-            //close newly created file so we can reopen it
-            fos.close();
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
+    /**
+     * This constructor opens the database kept in the given directory, in the files
+     * "<CODE>UserDB.ser</CODE>" and "<CODE>UserDB.journal</CODE>", as the
+     * constructor without arguments does in the current directory.
+     *
+     * @param directory the directory holding the database files
+     * @throws IOException if the files cannot be opened or created, or if
+     * "<CODE>UserDB.ser</CODE>" exists but cannot be read
+     */
+    public UserDatabase(Path directory) throws IOException 
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            dataFile = directory.resolve("UserDB.ser").toString();
+            journalFile = directory.resolve("UserDB.journal").toString();
+            userList = new ArrayList<>();
+            long covered = 0;
+
+            if (Files.notExists(Paths.get(dataFile))) {
+                // If data file does not exist, create it.
+                System.out.println(dataFile + " does not exist, creating one now . . .");
+                //if the file doesn't exists, create it
+                FileOutputStream fos = new FileOutputStream(dataFile);
+                //close newly created file so we can reopen it
+                fos.close();
+            } else {
+                // Opening with the users missing would lose them at the next snapshot
+                try (FileInputStream fis = new FileInputStream(dataFile)) {
+                    covered = RecordCodec.read(new BufferedInputStream(fis, 1 << 16), User.class, userList::add);
+                } catch (IOException e) {
+                    throw new IOException(dataFile + " cannot be read", e);
+                }
+            }
+
+            // addUser inserts with a binary search, which relies on the list being sorted
+            Collections.sort(userList);
+            idIndex = new IntIndex<>(userList.size());
+            nameIndex = new NameIndex();
+            for (User u : userList) {
+                idIndex.put(u.getIdNumber(), u);
+                nameIndex.add(u);
+            }
+
+            // Recover the changes made since the last flush
+            journal = new Journal(journalFile);
+            pendingChanges = journal.replay(covered, this::replay);
+
+            // Continue numbering after the highest ID on file so new IDs stay unique
+            if (!userList.isEmpty()) {
+                lastID.accumulateAndGet(userList.get(userList.size() - 1).getIdNumber(), Math::max);
+            }
+            failed = false;
+        } finally {
+            LOAD_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * Private method used to apply one record of the journal while it is replayed.
+     * Adds and updates both carry the whole user and simply replace whatever is
+     * stored under its ID, so replaying a journal that survived a flush is harmless.
+     *
+     * @param op the journal operation code.
+     * @param payload the encoded record.
+     * @throws IOException if the record cannot be decoded.
+     */
+    private void replay(byte op, byte[] payload) throws IOException
+    {
+        if (op == Journal.ADD || op == Journal.UPDATE) {
+            put((User) RecordCodec.decode(payload));
+        } else if (op == Journal.REMOVE) {
+            delete((Integer) RecordCodec.decode(payload));
+        }
+    }
+
+    /**
+     * Private method used to append a change to the journal. A failure to write
+     * the journal does not undo the change; it is reported and will still be saved
+     * by the next <CODE>flush()</CODE>.
+     *
+     * @param op the journal operation code.
+     * @param record the added or updated user, or the removed ID number.
+     */
+    private void journal(byte op, Object record)
+    {
+        try {
+            pendingChanges++;
+            journal.append(op, RecordCodec.encode(record));
         } catch (IOException e) {
+            System.out.println("Warning: the change could not be written to UserDB.journal");
             e.printStackTrace();
         }
     }
 
+    /**
+     * Private method used to store a user in the list and the indexes, replacing any
+     * user already stored under the same ID.
+     *
+     * @param user the <CODE>User</CODE> to store.
+     */
+    private void put(User user)
+    {
+        // Insert the user at its sorted position so the list never needs re-sorting
+        int position = positionOf(user);
+        if (position < 0) {
+            userList.add(-(position + 1), user);
+        } else {
+            userList.set(position, user);
+        }
+        User old = idIndex.put(user.getIdNumber(), user);
+        if (old != null) {
+            nameIndex.remove(old);
+        }
+        nameIndex.add(user);
+    }
+
+    /**
+     * Private method used to remove a user from the indexes and the list.
+     *
+     * @param id the ID number of the user to remove.
+     * @return the removed <CODE>User</CODE>, or null if there was none.
+     */
+    private User delete(int id)
+    {
+        User u = idIndex.remove(id);
+        if (u != null) {
+            userList.remove(positionOf(u));
+            nameIndex.remove(u);
+        }
+        return u;
+    }
+
+    /**
+     * Private method used to turn a six digit ID string into its <CODE>int</CODE>
+     * value in one pass, without compiling a regular expression.
+     *
+     * @param idNumber the <CODE>String</CODE> ID number to parse.
+     * @return the ID number, or -1 if the string is not exactly six digits.
+     */
+    private static int parseId(String idNumber)
+    {
+        if (idNumber == null || idNumber.length() != 6) {
+            return -1;
+        }
+
+        int id = 0;
+        for (int i = 0; i < 6; i++) {
+            char c = idNumber.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+
+    /**
+     * Private method used to locate a user in the <CODE>userList</CODE>, which is
+     * kept sorted by ID number, with a binary search.
+     *
+     * @param u the <CODE>User</CODE> to locate.
+     * @return the index of the user, or <CODE>-(insertion point + 1)</CODE> if it is
+     * not in the list.
+     */
+    private int positionOf(User u)
+    {
+        int low = 0;
+        int high = userList.size() - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = userList.get(mid).compareTo(u);
+
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -(low + 1);
+    }
+
     /**
      * Method showUsers displays the current list of Users in the Arraylist in the
      * order they are in storage 
@@ -96,7 +322,45 @@ public class UserDatabase
      */
     public void showUsers() 
     {
-        showUsers(userList);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            lock.readLock().lock();
+            try {
+                showUsers(userList);
+            } finally {
+                lock.readLock().unlock();
+            }
+            failed = false;
+        } finally {
+            SHOW_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * This method displays one page of the users: at most <CODE>limit</CODE> users,
+     * starting with the user at <CODE>offset</CODE> in ID # order.
+     *
+     * @param offset the index of the first user to display
+     * @param limit the largest number of users to display
+     * @return the number of users displayed
+     */
+    public int showUsers(int offset, int limit)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            lock.readLock().lock();
+            try {
+                int shown = USER_TABLE.print(userList, offset, limit);
+                failed = false;
+                return shown;
+            } finally {
+                lock.readLock().unlock();
+            }
+        } finally {
+            SHOW_STATS.record(start, failed);
+        }
     }
 
     /**
@@ -109,19 +373,58 @@ public class UserDatabase
      */
     public int findUser(String idNumber) 
     {
-        int index = -1;
-        if(idNumber.matches("[0-9]{6}")){
-            for (User u : userList) {
-                Integer temp = u.getIdNumber();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            User u = getUser(idNumber);
+            if (u == null) {
+                failed = false;
+                return -1;
+            }
 
-                if (temp.equals(Integer.parseInt(idNumber))) {
-                    index = userList.indexOf(u);
-                    break;
-                }
+            lock.readLock().lock();
+            try {
+                failed = false;
+                return Math.max(-1, positionOf(u));
+            } finally {
+                lock.readLock().unlock();
             }
+        } finally {
+            FIND_STATS.record(start, failed);
         }
+    }
 
-        return index;
+    /**
+     * This method can be used to look up a user by ID number. The ID is parsed and
+     * resolved through the index once, so callers should keep the returned
+     * <CODE>User</CODE> rather than looking it up again.
+     *
+     * @param idNumber a <CODE>String</CODE> that represents the six digit ID number
+     * of the user to be searched for.
+     * @return the matching <CODE>User</CODE>, or null if there is none.
+     */
+    public User getUser(String idNumber)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            int id = parseId(idNumber);
+            if (id == -1) {
+                failed = false;
+                return null;
+            }
+
+            lock.readLock().lock();
+            try {
+                User u = idIndex.get(id);
+                failed = false;
+                return u;
+            } finally {
+                lock.readLock().unlock();
+            }
+        } finally {
+            GET_STATS.record(start, failed);
+        }
     }
 
     /**
@@ -157,45 +460,169 @@ public class UserDatabase
     public void addUser(String type, String firstName, String lastName,
                          String special1, String special2, String special3) 
     {
+        String error = validateUser(type, special1, special2, special3);
+        if (error != null) {
+            System.out.println(error);
+            return;
+        }
 
-        if (type.equals("Employee")){
-            if (!special1.matches("[0-9]{9}")) {
-                System.out.println("Invalid Social Security number. "
-                    + "SS number must be 9 digits.\n");
-                return;
-            }
+        insertUser(type, firstName, lastName, special1, special2, special3);
+        System.out.println("User has been added.\n");
+    }
 
-            try{
-                if (Float.parseFloat(special2) < 0) {
-                    System.out.println("Invalid salary:\n"
-                        + "Monthly salary cannot be negative\n");
-                    return;
-                }
-            }
-            catch(NumberFormatException e){
-                System.out.println("Error: salary must be a real number");
-                return;
-            }
+    /**
+     * This method checks the fields of a new user against rule 3 listed for
+     * <CODE>addUser()</CODE>. It touches no database state.
+     *
+     * @param type the <CODE>String</CODE> which represents the type of user
+     * @param special1 the employee's social or the customer's phone number
+     * @param special2 the employee's monthly salary or the customer's address
+     * @param special3 the employee's account number, ignored for customers
+     * @return null if the fields are valid, otherwise the message explaining why not
+     */
+    public static String validateUser(String type, String special1, String special2, String special3)
+    {
+        if (!type.equals("Employee")) {
+            return null;
+        }
+
+        if (!special1.matches("[0-9]{9}")) {
+            return "Invalid Social Security number. "
+                + "SS number must be 9 digits.\n";
+        }
 
-            if (!special3.matches("[0-9]{8,15}")) {
-                System.out.println("Invalid bank account number:\n"
-                    + "Bank account number must be between 8 and 15 digits.");
-                return;
+        try{
+            if (Float.parseFloat(special2) < 0) {
+                return "Invalid salary:\n"
+                    + "Monthly salary cannot be negative\n";
             }
+        }
+        catch(NumberFormatException e){
+            return "Error: salary must be a real number";
+        }
+
+        if (!special3.matches("[0-9]{8,15}")) {
+            return "Invalid bank account number:\n"
+                + "Bank account number must be between 8 and 15 digits.";
+        }
+        try {
+            Integer.parseInt(special3);
+        } catch (NumberFormatException e) {
+            return "Invalid bank account number:\n"
+                + "Bank account number is too large to store.";
+        }
+        return null;
+    }
+
+    /**
+     * This method adds a user like <CODE>addUser()</CODE> but prints nothing, and
+     * returns the new user so the caller can learn its ID number.
+     *
+     * @param type "Employee" or "Customer"
+     * @param firstName the user's first name
+     * @param lastName the user's last name
+     * @param special1 the employee's social or the customer's phone number
+     * @param special2 the employee's monthly salary or the customer's address
+     * @param special3 the employee's account number, ignored for customers
+     * @return the new <CODE>User</CODE>, or null if <CODE>validateUser()</CODE>
+     * rejects the fields
+     */
+    public User insertUser(String type, String firstName, String lastName,
+                         String special1, String special2, String special3)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            User user = add(type, firstName, lastName, special1, special2, special3);
+            failed = (user == null);
+            return user;
+        } finally {
+            ADD_STATS.record(start, failed);
+        }
+    }
 
-            // If it passed all the checks, add the user to the list
-            userList.add(new Employee(++lastID, firstName, lastName, 
+    /**
+     * Private method used to add a user for <CODE>insertUser()</CODE>.
+     *
+     * @return the new <CODE>User</CODE>, or null if the fields were rejected
+     */
+    private User add(String type, String firstName, String lastName,
+                         String special1, String special2, String special3)
+    {
+        if (validateUser(type, special1, special2, special3) != null) {
+            return null;
+        }
+
+        // If it passed all the checks, create the user
+        User user;
+        if (type.equals("Employee")){
+            user = new Employee(lastID.incrementAndGet(), firstName, lastName, 
                     Integer.parseInt(special1), Float.parseFloat(special2), 
-                    Integer.parseInt(special3)));
+                    Integer.parseInt(special3));
         } else {// (type.equals("Customer"))
-            // If it passed all the checks, add the order to the list
-            userList.add(new Customer(++lastID, firstName, lastName, 
-                    special1, special2)); //phone, address
+            user = new Customer(lastID.incrementAndGet(), firstName, lastName, 
+                    special1, special2); //phone, address
         }
 
-        // If an order was added, sort the list and display message
-        System.out.println("User has been added.\n");
-        Collections.sort(userList);
+        lock.writeLock().lock();
+        try {
+            put(user);
+            journal(Journal.ADD, user);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return user;
+    }
+
+    /**
+     * This method finds users by name. Every word of the query must start one of the
+     * words of the user's first or last name, ignoring case, so "jo sm" finds John
+     * Smith and Joanna Smythe. The users are found through <CODE>nameIndex</CODE>
+     * without reading the list, in the order described for
+     * <CODE>NameIndex.search()</CODE>.
+     *
+     * @param query the name, or the start of it
+     * @param limit the largest number of users to return
+     * @return a new <CODE>List</CODE> of at most <CODE>limit</CODE> matching users,
+     * empty if there are none or the query has no words
+     */
+    public List<User> findUsersByName(String query, int limit)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            lock.readLock().lock();
+            try {
+                List<User> matches = nameIndex.search(query, limit);
+                failed = false;
+                return matches;
+            } finally {
+                lock.readLock().unlock();
+            }
+        } finally {
+            SEARCH_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * This method displays the users found by <CODE>findUsersByName()</CODE>, at
+     * most the first 50, or a message if there are none.
+     *
+     * @param query the name, or the start of it
+     */
+    public void searchUsers(String query)
+    {
+        List<User> matches = findUsersByName(query, SEARCH_LIMIT + 1);
+
+        if (matches.isEmpty()) {
+            System.out.println("\nSearch did not find a match.\n");
+        } else if (matches.size() > SEARCH_LIMIT) {
+            System.out.println("\nHere are the first " + SEARCH_LIMIT + " users that matched:\n");
+            showUsers(matches.subList(0, SEARCH_LIMIT));
+        } else {
+            System.out.println("\nHere are the users that matched:\n");
+            showUsers(matches);
+        }
     }
 
     /**
@@ -207,16 +634,104 @@ public class UserDatabase
      */
     public void removeUser(String idNum) 
     {
-        int userIndex = findUser(idNum);
-        if (userIndex == -1) {
-            System.out.println("\nAction failed. No user with the given ID # exists in database.\n");
+        removeUser(idNum, null, RemovalPolicy.UNCHECKED);
+    }
+
+    /**
+     * This method removes a user like <CODE>removeUser(String)</CODE>, applying a
+     * removal policy to the transactions the user requested or completed. If the
+     * policy refuses the removal, it says why.
+     *
+     * @param idNum the ID # of the user to remove
+     * @param transactions the <CODE>TransactionDatabase</CODE> that may refer to the
+     * user, or null if the policy is <CODE>UNCHECKED</CODE>
+     * @param policy what to do about the transactions that refer to the user
+     */
+    public void removeUser(String idNum, TransactionDatabase transactions, RemovalPolicy policy)
+    {
+        try {
+            if (deleteUser(idNum, transactions, policy) == null) {
+                System.out.println("\nAction failed. No user with the given ID # exists in database.\n");
+            }
+            else {
+                System.out.println("\nAction successful. User has been removed from the database.\n");
+            }
+        } catch (IllegalStateException e) {
+            System.out.println("\nAction failed. " + e.getMessage() + ".\n");
         }
-        else {
-            userList.remove(userIndex);
-            System.out.println("\nAction successful. User has been removed from the database.\n");
+    }
+
+    /**
+     * This method removes a user like <CODE>removeUser()</CODE> but prints nothing.
+     *
+     * @param idNum the ID # of the user to remove
+     * @return the removed <CODE>User</CODE>, or null if there was none
+     */
+    public User deleteUser(String idNum)
+    {
+        return deleteUser(idNum, null, RemovalPolicy.UNCHECKED);
+    }
+
+    /**
+     * This method removes a user like <CODE>deleteUser(String)</CODE>, applying a
+     * removal policy to the transactions the user requested or completed. Whether
+     * the user is referred to is looked up in the indexes of the transaction
+     * database, not by scanning the transactions. With <CODE>CASCADE</CODE> those
+     * transactions are removed along with the user.
+     *
+     * @param idNum the ID # of the user to remove
+     * @param transactions the <CODE>TransactionDatabase</CODE> that may refer to the
+     * user, or null if the policy is <CODE>UNCHECKED</CODE>
+     * @param policy what to do about the transactions that refer to the user
+     * @return the removed <CODE>User</CODE>, or null if there was none
+     * @throws IllegalStateException if the policy is <CODE>RESTRICT</CODE> and a
+     * transaction refers to the user
+     */
+    public User deleteUser(String idNum, TransactionDatabase transactions, RemovalPolicy policy)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            int id = parseId(idNum);
+            if (id == -1) {
+                failed = false;
+                return null;
+            }
+
+            lock.writeLock().lock();
+            try {
+                User u;
+                if (policy == RemovalPolicy.UNCHECKED || idIndex.get(id) == null) {
+                    u = deleteJournaled(id);
+                } else {
+                    u = transactions.removeUser(id, policy, () -> deleteJournaled(id));
+                }
+                failed = false;
+                return u;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            REMOVE_STATS.record(start, failed);
         }
     }
 
+    /**
+     * Private method used to remove a user and journal the removal. The caller must
+     * hold the write lock.
+     *
+     * @param id the ID number of the user to remove.
+     * @return the removed <CODE>User</CODE>, or null if there was none.
+     */
+    private User deleteJournaled(int id)
+    {
+        User u = delete(id);
+        if (u != null) {
+            journal(Journal.REMOVE, u.getIdNumber());
+        }
+        return u;
+    }
+
     /**
      * This method is used to retrieve the User object from the
      * <CODE>userList</CODE> at a given index.
@@ -227,12 +742,16 @@ public class UserDatabase
      */
     public User getUser(int i) 
     {
-        if (i < userList.size() && i >= 0) {
-            return userList.get(i);
-        } else {
-            System.out.println("Invalid Index. Please enter another command or 'h' to list the commands.");
-            return null;
+        lock.readLock().lock();
+        try {
+            if (i < userList.size() && i >= 0) {
+                return userList.get(i);
+            }
+        } finally {
+            lock.readLock().unlock();
         }
+        System.out.println("Invalid Index. Please enter another command or 'h' to list the commands.");
+        return null;
     }
 
     /**
@@ -244,7 +763,22 @@ public class UserDatabase
     */
     public String getUserType(int i)
     {
-        User u = userList.get(i);
+        lock.readLock().lock();
+        try {
+            return getUserType(userList.get(i));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+    * This method returns the type of the given user
+    * 
+    * @param u the <CODE>User</CODE> whose type is wanted
+    * @return the <CODE>String</CODE> description of the type of user
+    */
+    public String getUserType(User u)
+    {
         if ( u instanceof Employee ) {
             return "Employee";
         }
@@ -268,67 +802,377 @@ public class UserDatabase
     * @param update a <b><CODE>String</CODE></b> that represents the updated information
     */
     public void updateUserInfo (int index, String type, String field, String update)
+    {
+        User user;
+        lock.readLock().lock();
+        try {
+            user = userList.get(index);
+        } finally {
+            lock.readLock().unlock();
+        }
+        updateUserInfo(user, type, field, update);
+    }
+
+    /**
+    * This method is used to change a user's info after they have already been added to the
+    * <CODE>userList</CODE>
+    *
+    * @param user the <b><CODE>User</CODE></b> to be updated, as returned by
+    * <CODE>getUser(String)</CODE>
+    *
+    * @param type a <b><CODE>String</CODE></b> that represents the type of user to be updated
+    *
+    * @param field a <b><CODE>String</CODE></b> that represents the type of information 
+    * being updated
+    * 
+    * @param update a <b><CODE>String</CODE></b> that represents the updated information
+    */
+    public void updateUserInfo (User user, String type, String field, String update)
+    {
+        String error = changeUserInfo(user, type, field, update);
+        System.out.println(error != null ? error : "\nUpdate succssful.\n");
+    }
+
+    /**
+     * This method changes one field of a user like <CODE>updateUserInfo()</CODE>
+     * but prints nothing. Nothing is changed or journaled if the new value is
+     * rejected, or if the user has been removed from the database in the meantime.
+     *
+     * @param user the <CODE>User</CODE> to update
+     * @param type the type of the user, "Employee" or "Customer"
+     * @param field the name of the field to update
+     * @param update the new value of the field
+     * @return null if the user was updated, otherwise the message explaining why not
+     */
+    public String changeUserInfo (User user, String type, String field, String update)
+    {
+        return changeUserInfo(user, type, Collections.singletonMap(field, update));
+    }
+
+    /**
+     * This method changes several fields of a user at once, as for a PATCH request
+     * to <CODE>ShippingServer</CODE>. Every new value is checked before any is
+     * applied, so either all of them are changed and journaled as one update, or,
+     * if any is rejected, none of them are.
+     *
+     * @param user the <CODE>User</CODE> to update
+     * @param type the type of the user, "Employee" or "Customer"
+     * @param updates the new values by field name, as for <CODE>changeUserInfo()</CODE>
+     * @return null if the user was updated, otherwise the message explaining why not
+     */
+    public String changeUserInfo (User user, String type, Map<String, String> updates)
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            lock.writeLock().lock();
+            try {
+                // A user removed since it was looked up must not come back on replay
+                if (idIndex.get(user.getIdNumber()) != user) {
+                    return "\nError: No user with the given ID # exists in database.\n";
+                }
+
+                // Try the changes on a copy first, so a rejected value changes nothing
+                User trial = copyOf(user);
+                for (Map.Entry<String, String> update : updates.entrySet()) {
+                    String error = updateUser(trial, type, update.getKey(), update.getValue());
+                    if (error != null) {
+                        return error;
+                    }
+                }
+
+                // The name index must see the old name to drop it
+                boolean rename = false;
+                for (String field : updates.keySet()) {
+                    rename |= field.equalsIgnoreCase("First-name") || field.equalsIgnoreCase("Last-name");
+                }
+                if (rename) {
+                    nameIndex.remove(user);
+                }
+                for (Map.Entry<String, String> update : updates.entrySet()) {
+                    updateUser(user, type, update.getKey(), update.getValue());
+                }
+                if (rename) {
+                    nameIndex.add(user);
+                }
+                journal(Journal.UPDATE, user);
+                failed = false;
+                return null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            UPDATE_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * Private method used to make the change of <CODE>changeUserInfo()</CODE> while
+     * the write lock is held.
+     *
+     * @param user the <CODE>User</CODE> to update
+     * @param type the type of the user
+     * @param field the name of the field to update
+     * @param update the new value of the field
+     * @return null if the field was changed, otherwise the error message
+     */
+    private String updateUser (User user, String type, String field, String update)
     {
         if (field.equalsIgnoreCase("First-name")) 
-            (userList.get(index)).setFirstName(update);
+            user.setFirstName(update);
         else if (field.equalsIgnoreCase("Last-name"))
-            (userList.get(index)).setLastName(update);
+            user.setLastName(update);
         else if (type.equals("Employee")){
             if (field.equalsIgnoreCase("Social")) {
                 if (!update.matches("[0-9]{9}"))
-                    System.out.println("\nError: Social Security number must be 9 digits long.\n");
+                    return "\nError: Social Security number must be 9 digits long.\n";
                 else 
-                    ((Employee)userList.get(index)).setSocial(Integer.parseInt(update));
+                    ((Employee)user).setSocial(Integer.parseInt(update));
 
             } else if (field.equalsIgnoreCase("Salary")) {
                 try{
                     if (!(Float.parseFloat(update) > 0))
-                        System.out.println("\nError: Salary must be greater than 0.\n");
+                        return "\nError: Salary must be greater than 0.\n";
                     else 
-                        ((Employee)userList.get(index)).setSalary(Float.parseFloat(update));
+                        ((Employee)user).setSalary(Float.parseFloat(update));
                 }
                 catch(NumberFormatException e){
-                    System.out.println("Error: salary must be a real number");
-                    return;
+                    return "Error: salary must be a real number";
                 }
             } else if (field.equalsIgnoreCase("Account")) {
                 if (!update.matches("[0-9]{8,15}"))
-                    System.out.println("\nError: Account number must be between 8 and 15 digits\n");
-                else
-                    ((Employee)userList.get(index)).setAccount(Integer.parseInt(update));
+                    return "\nError: Account number must be between 8 and 15 digits\n";
+                try {
+                    ((Employee)user).setAccount(Integer.parseInt(update));
+                } catch (NumberFormatException e) {
+                    return "\nError: Account number is too large to store\n";
+                }
             } else {
-                System.out.println("\nError: this user doesnt have that field to update\n");
-                return;
+                return "\nError: this user doesnt have that field to update\n";
             }
         } else { //type.equals("Customer")
             if (field.equalsIgnoreCase("Phone")) 
-                ((Customer)userList.get(index)).setPhone(update);
+                ((Customer)user).setPhone(update);
             else if (field.equalsIgnoreCase("Address")) 
-                ((Customer)userList.get(index)).setAddress(update);
+                ((Customer)user).setAddress(update);
             else{
-                System.out.println("\nError: this user doesn't have that field to update\n");
-                return;
+                return "\nError: this user doesn't have that field to update\n";
             }
         }
+        return null;
+    }
 
-        System.out.println("\nUpdate succssful.\n");
+    /**
+     * This method runs an action on behalf of <CODE>TransactionDatabase</CODE> while
+     * the given customer and employee are still stored. The read lock is held while
+     * the action runs, so neither can be removed until it returns.
+     *
+     * @param customer the customer looked up earlier
+     * @param employee the employee looked up earlier
+     * @param action the action to run
+     * @return what <CODE>action</CODE> returned, or null if either user was removed or
+     * replaced and the action was not run
+     */
+    <T> T whileStored(User customer, User employee, Supplier<T> action)
+    {
+        lock.readLock().lock();
+        try {
+            if (idIndex.get(customer.getIdNumber()) != customer
+                || idIndex.get(employee.getIdNumber()) != employee) {
+                return null;
+            }
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
+    /**
+     * This method writes the users in the <CODE>userList</CODE> to the given
+     * <CODE>Writer</CODE> as CSV or JSON Lines, one record at a time. Only the users
+     * accepted by the filter are written; a null filter writes them all. The list is
+     * read in chunks of at most <CODE>EXPORT_CHUNK_SIZE</CODE> users, which are
+     * copied under the read lock and written after it is released, so the export
+     * holds one chunk in memory however many users there are and a slow writer does
+     * not hold up changes. Each chunk starts after the ID # the previous one ended
+     * at. The writer is buffered if it is not already, and flushed but not closed at
+     * the end.
+     *
+     * @param out the <CODE>Writer</CODE> to write to
+     * @param format the export format
+     * @param filter the users to include, or null for all of them
+     * @return the number of users written
+     * @throws IOException if the writer fails
+     */
+    public int export(Writer out, ExportFormat format, Predicate<? super User> filter) throws IOException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Writer w = out instanceof BufferedWriter ? out : new BufferedWriter(out, 1 << 16);
+            List<User> chunk = new ArrayList<>(EXPORT_CHUNK_SIZE);
+            User last = null;
+            boolean more = true;
+            int written = 0;
+
+            Exporter.writeUserHeader(w, format);
+            while (more) {
+                chunk.clear();
+                lock.readLock().lock();
+                try {
+                    // Resume after the last user read, even if it has since been removed
+                    int from = 0;
+                    if (last != null) {
+                        int position = positionOf(last);
+                        from = position >= 0 ? position + 1 : -(position + 1);
+                    }
+                    int to = Math.min(from + EXPORT_CHUNK_SIZE, userList.size());
+                    for (int i = from; i < to; i++) {
+                        // Users are changed in place, so each one is copied while it cannot change
+                        User r = userList.get(i);
+                        if (filter == null || filter.test(r)) {
+                            chunk.add(copyOf(r));
+                        }
+                    }
+                    if (to > from) {
+                        last = userList.get(to - 1);
+                    }
+                    more = to < userList.size();
+                } finally {
+                    lock.readLock().unlock();
+                }
+
+                for (User r : chunk) {
+                    Exporter.writeUser(w, format, r);
+                }
+                written += chunk.size();
+            }
+
+            w.flush();
+            failed = false;
+            return written;
+        } finally {
+            EXPORT_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * Private method used to copy a user, so that it can be read without the lock.
+     *
+     * @param user the <CODE>User</CODE> to copy
+     * @return a new user of the same type with the same values
+     */
+    private static User copyOf(User user)
+    {
+        if (user instanceof Employee) {
+            Employee e = (Employee) user;
+            return new Employee(e.getIdNumber(), e.getFirstName(), e.getLastName(), e.getSocial(),
+                e.getSalary(), e.getAccount());
+        } else if (user instanceof Customer) {
+            Customer c = (Customer) user;
+            return new Customer(c.getIdNumber(), c.getFirstName(), c.getLastName(), c.getPhone(),
+                c.getAddress());
+        }
+        return new User(user.getIdNumber(), user.getFirstName(), user.getLastName());
     }
 
     /**
-     * This method opens <CODE>"UserDB.ser"</CODE> and overwrites it with a serialization of
-     * all the users in the <CODE>userList</CODE>.
+     * This method sets how many changes are journaled before the journal is forced
+     * to disk, in place of the system property
+     * <CODE>shippingstore.journal.syncEvery</CODE>. A value of 0 forces it only when
+     * the database is saved, which suits callers that save it themselves when they
+     * are done, such as batch mode.
+     *
+     * @param records the number of changes per forced write, or 0
+     */
+    public void setJournalSyncEvery(int records)
+    {
+        lock.writeLock().lock();
+        try {
+            journal.setSyncEvery(records);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method returns the number of changes made since the last snapshot was
+     * written to <CODE>"UserDB.ser"</CODE>.
+     *
+     * @return the number of unsaved changes
+     */
+    @Override
+    public long getPendingChanges()
+    {
+        return pendingChanges;
+    }
+
+    /**
+     * This method writes a snapshot of the <CODE>userList</CODE> to <CODE>"UserDB.ser"</CODE>
+     * in the <CODE>RecordCodec</CODE> format. The users are copied while holding the
+     * read lock, since <CODE>changeUserInfo()</CODE> updates them in place, and the
+     * copies are then written without blocking further changes. The file is replaced atomically
+     * and the journal records the snapshot covers are dropped; anything added
+     * meanwhile stays in the journal.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    @Override
+    public void snapshot() throws IOException
+    {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            synchronized (snapshotLock) {
+                ArrayList<User> copy;
+                long mark;
+                long sequence;
+                long changes;
+                lock.readLock().lock();
+                try {
+                    copy = new ArrayList<>(userList.size());
+                    for (User u : userList) {
+                        copy.add(copyOf(u));
+                    }
+                    mark = journal.size();
+                    sequence = journal.lastSequence();
+                    changes = pendingChanges;
+                } finally {
+                    lock.readLock().unlock();
+                }
+
+                Snapshotter.writeAtomically(dataFile, copy, sequence);
+
+                lock.writeLock().lock();
+                try {
+                    journal.discardBefore(mark);
+                    pendingChanges -= changes;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            failed = false;
+        } finally {
+            SNAPSHOT_STATS.record(start, failed);
+        }
+    }
+
+    /**
+     * This method saves every user in the <CODE>userList</CODE> to
+     * <CODE>"UserDB.ser"</CODE> by writing a snapshot, whether or not anything changed.
      * This should be the last method to be called before exiting the program.
      * @throws IOException if it cannot create a file in the current directory
      */
     public void flush() throws IOException 
     {
-        FileOutputStream fos = new FileOutputStream("UserDB.ser");
-        ObjectOutputStream oos = new ObjectOutputStream(fos);
-
-        oos.writeObject(userList);
-
-        fos.close();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            snapshot();
+            failed = false;
+        } finally {
+            FLUSH_STATS.record(start, failed);
+        }
     }
 
 }